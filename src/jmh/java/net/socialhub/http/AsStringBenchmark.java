@@ -0,0 +1,108 @@
+package net.socialhub.http;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.io.BufferedReader;
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.nio.charset.StandardCharsets;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Decoding of JSON response bodies by {@link HttpResponse#asString()}, by size and character mix,
+ * see {@link BenchmarkText}.
+ * {@code lineByLine} is the readLine based implementation used before, for comparison.
+ * Run with {@code ./gradlew jmh -Pjmh.includes=AsStringBenchmark}.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class AsStringBenchmark {
+
+    @Param({"4096", "1048576"})
+    public int size;
+
+    @Param({"true", "false"})
+    public boolean contentLength;
+
+    @Param({BenchmarkText.ASCII, BenchmarkText.UNICODE})
+    public String mix;
+
+    private byte[] body;
+
+    @Setup
+    public void setUp() {
+        String text = BenchmarkText.of(32, mix);
+        StringBuilder json = new StringBuilder(size + 256);
+        json.append('[');
+        for (int i = 0; json.length() < size; i++) {
+            json.append("{\"id\":").append(i).append(",\"text\":\"").append(text).append(i).append("\"},\n");
+        }
+        json.append("{}]");
+        body = json.toString().getBytes(StandardCharsets.UTF_8);
+    }
+
+    private static final class BytesResponse extends HttpResponse {
+
+        private final String contentLength;
+
+        BytesResponse(byte[] body, boolean contentLength) {
+            super(new HttpClientConfiguration.HttpClientDefaultConfiguration());
+            this.statusCode = HttpResponseCode.OK;
+            this.is = new ByteArrayInputStream(body);
+            this.contentLength = contentLength ? Integer.toString(body.length) : null;
+        }
+
+        @Override
+        public String getResponseHeader(String name) {
+            if ("Content-Type".equals(name)) {
+                return "application/json; charset=utf-8";
+            }
+            return "Content-Length".equals(name) ? contentLength : null;
+        }
+
+        @Override
+        public Map<String, List<String>> getResponseHeaderFields() {
+            return null;
+        }
+
+        @Override
+        public void disconnect() {
+        }
+    }
+
+    @Benchmark
+    public String lineByLine() throws IOException {
+        InputStream stream = new BytesResponse(body, contentLength).asStream();
+        BufferedReader br = new BufferedReader(new InputStreamReader(stream, "UTF-8"));
+        StringBuilder buf = new StringBuilder();
+        String line;
+        while ((line = br.readLine()) != null) {
+            buf.append(line).append("\n");
+        }
+        br.close();
+        return buf.toString();
+    }
+
+    @Benchmark
+    public String asString() throws HttpException {
+        return new BytesResponse(body, contentLength).asString();
+    }
+}
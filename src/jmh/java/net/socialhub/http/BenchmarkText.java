@@ -0,0 +1,54 @@
+package net.socialhub.http;
+
+/**
+ * Text payloads of the benchmarks, by character mix:
+ * <ul>
+ * <li>{@code ascii}: letters and digits, which no encoder changes.</li>
+ * <li>{@code reserved}: ASCII with a quarter of characters that are percent-encoded or escaped.</li>
+ * <li>{@code unicode}: mostly Japanese with some ASCII and emoji, as in user posts.</li>
+ * </ul>
+ */
+final class BenchmarkText {
+
+    static final String ASCII = "ascii";
+    static final String RESERVED = "reserved";
+    static final String UNICODE = "unicode";
+
+    private static final String[] WORDS = {
+            "lorem", "ipsum", "dolor", "sit", "amet", "2020", "jhttp", "client"};
+    private static final String[] SPECIALS = {
+            " ", "&", "<", ">", "\"", "=", "?", "/", "+", "%", "*", "~", "#", "'"};
+    private static final String[] JAPANESE = {
+            "こんにちは", "世界", "テスト", "日本語", "投稿", "です", "😀", "ok"};
+
+    private BenchmarkText() {
+    }
+
+    /**
+     * @param length number of chars, one less rather than splitting a surrogate pair
+     * @param mix    {@link #ASCII}, {@link #RESERVED} or {@link #UNICODE}
+     */
+    static String of(int length, String mix) {
+        StringBuilder text = new StringBuilder(length + 16);
+        for (int i = 0; text.length() < length; i++) {
+            switch (mix) {
+                case ASCII:
+                    text.append(WORDS[i % WORDS.length]);
+                    break;
+                case RESERVED:
+                    text.append(WORDS[i % WORDS.length]).append(SPECIALS[i % SPECIALS.length]);
+                    break;
+                case UNICODE:
+                    text.append(JAPANESE[i % JAPANESE.length]);
+                    if (i % 4 == 3) {
+                        text.append(' ').append(WORDS[i % WORDS.length]);
+                    }
+                    break;
+                default:
+                    throw new IllegalArgumentException("unknown mix: " + mix);
+            }
+        }
+        text.setLength(Character.isHighSurrogate(text.charAt(length - 1)) ? length - 1 : length);
+        return text.toString();
+    }
+}
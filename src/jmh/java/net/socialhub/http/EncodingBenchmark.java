@@ -0,0 +1,88 @@
+package net.socialhub.http;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.nio.charset.StandardCharsets;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Percent-encoding of parameters, HTML entity escaping and BASE64 encoding and decoding,
+ * by payload size and character mix, see {@link BenchmarkText}.
+ * {@code encodeParameters} splits the payload into 8 parameters.
+ * Run with {@code ./gradlew jmh -Pjmh.includes=EncodingBenchmark}.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class EncodingBenchmark {
+
+    private static final int PARAMETERS = 8;
+
+    @Param({"16", "256", "16384"})
+    public int size;
+
+    @Param({BenchmarkText.ASCII, BenchmarkText.RESERVED, BenchmarkText.UNICODE})
+    public String mix;
+
+    private String text;
+    private String escaped;
+    private byte[] bytes;
+    private String base64;
+    private HttpParameter[] params;
+
+    @Setup
+    public void setUp() {
+        text = BenchmarkText.of(size, mix);
+        escaped = HTMLEntity.escape(text);
+        bytes = text.getBytes(StandardCharsets.UTF_8);
+        base64 = BASE64Encoder.encode(bytes);
+        params = new HttpParameter[PARAMETERS];
+        int length = Math.max(1, size / PARAMETERS);
+        for (int i = 0; i < PARAMETERS; i++) {
+            params[i] = new HttpParameter("param" + i, BenchmarkText.of(length, mix));
+        }
+    }
+
+    @Benchmark
+    public String encode() {
+        return HttpParameter.encode(text);
+    }
+
+    @Benchmark
+    public String encodeParameters() {
+        return HttpParameter.encodeParameters(params);
+    }
+
+    @Benchmark
+    public String escape() {
+        return HTMLEntity.escape(text);
+    }
+
+    @Benchmark
+    public String unescape() {
+        return HTMLEntity.unescape(escaped);
+    }
+
+    @Benchmark
+    public String base64() {
+        return BASE64Encoder.encode(bytes);
+    }
+
+    @Benchmark
+    public byte[] base64Decode() {
+        return BASE64Encoder.decode(base64);
+    }
+}
@@ -0,0 +1,290 @@
+package net.socialhub.http;
+
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpHandler;
+import com.sun.net.httpserver.HttpServer;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.lang.management.ManagementFactory;
+import java.lang.management.ThreadInfo;
+import java.net.InetSocketAddress;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Load test of the clients against an in-process server, without network.
+ * Workers send requests back to back for the warmup, then for the measured duration, and the report gives
+ * the requests per second, the latency percentiles, the bytes allocated per request by the client side
+ * and the sockets the clients opened.
+ * <p>
+ * Options, as {@code name=value} arguments:
+ * <ul>
+ * <li>{@code api}: {@code client} ({@link HttpClient#request(HttpRequest)}), {@code wrapper}
+ * ({@link HttpClientWrapper}) or {@code builder} ({@link HttpRequestBuilder}, which always uses
+ * {@link HttpClientImpl}); default {@code client}.</li>
+ * <li>{@code transport}: {@code url} ({@link HttpClientImpl}) or {@code nio} ({@link HttpClientNioImpl});
+ * default {@code url}.</li>
+ * <li>{@code concurrency}: number of workers, default 16.</li>
+ * <li>{@code size}: bytes of each response body, and of each request body with {@code post}; default 1024.</li>
+ * <li>{@code post}: send a form of {@code size} bytes instead of a GET, default false.</li>
+ * <li>{@code keepAlive}: false to have the server close every connection, default true.</li>
+ * <li>{@code connections}: maximum connections per route of the clients, default 64.</li>
+ * <li>{@code warmup} and {@code duration}: seconds, default 5 and 10.</li>
+ * </ul>
+ * Run with {@code ./gradlew loadBenchmark -Pload.args="transport=nio concurrency=64"}.
+ * <p>
+ * Allocations are those of the live threads other than the server's, so those of threads
+ * which ended during the measure are missed. Sockets are counted by the server as distinct
+ * client addresses, so a client port reused within the measure is counted once.
+ */
+public class LoadBenchmark {
+
+    private static final String SERVER_THREAD = "load-server";
+
+    private final Map<String, String> options;
+    private final int concurrency;
+    private final int size;
+    private final boolean post;
+    private final boolean keepAlive;
+
+    private final Set<InetSocketAddress> sockets = Collections.newSetFromMap(new ConcurrentHashMap<InetSocketAddress, Boolean>());
+    private HttpServer server;
+    private String url;
+
+    private volatile HttpLatencyHistogram latency = new HttpLatencyHistogram();
+    private final LongAdder errors = new LongAdder();
+
+    private LoadBenchmark(Map<String, String> options) {
+        this.options = options;
+        this.concurrency = Integer.parseInt(option("concurrency", "16"));
+        this.size = Integer.parseInt(option("size", "1024"));
+        this.post = Boolean.parseBoolean(option("post", "false"));
+        this.keepAlive = Boolean.parseBoolean(option("keepAlive", "true"));
+    }
+
+    private String option(String name, String defaultValue) {
+        String value = options.get(name);
+        return (value != null) ? value : defaultValue;
+    }
+
+    public static void main(String[] args) throws Exception {
+        Map<String, String> options = new HashMap<>();
+        for (String arg : args) {
+            int i = arg.indexOf('=');
+            if (i < 0) {
+                throw new IllegalArgumentException("expected name=value: " + arg);
+            }
+            options.put(arg.substring(0, i), arg.substring(i + 1));
+        }
+        new LoadBenchmark(options).run();
+    }
+
+    private void startServer() throws IOException {
+        final byte[] body = new byte[size];
+        for (int i = 0; i < body.length; i++) {
+            body[i] = (byte) ('a' + i % 26);
+        }
+        // the server writes the head and the body of a response separately: without this, Nagle's algorithm
+        // and delayed acks add 40ms to every request on a kept-alive connection
+        System.setProperty("sun.net.httpserver.nodelay", "true");
+        server = HttpServer.create(new InetSocketAddress("127.0.0.1", 0), 1024);
+        server.setExecutor(Executors.newFixedThreadPool(Math.max(4, concurrency), new ThreadFactory() {
+            private final AtomicInteger count = new AtomicInteger();
+
+            @Override
+            public Thread newThread(Runnable r) {
+                Thread thread = new Thread(r, SERVER_THREAD + "-" + count.incrementAndGet());
+                thread.setDaemon(true);
+                return thread;
+            }
+        }));
+        server.createContext("/", new HttpHandler() {
+            @Override
+            public void handle(HttpExchange exchange) throws IOException {
+                sockets.add(exchange.getRemoteAddress());
+                byte[] buffer = new byte[8192];
+                try (InputStream in = exchange.getRequestBody()) {
+                    while (in.read(buffer) != -1) {
+                        // discard
+                    }
+                }
+                exchange.getResponseHeaders().set("Content-Type", "text/plain");
+                if (!keepAlive) {
+                    exchange.getResponseHeaders().set("Connection", "close");
+                }
+                exchange.sendResponseHeaders(HttpResponseCode.OK, body.length);
+                try (OutputStream out = exchange.getResponseBody()) {
+                    out.write(body);
+                }
+            }
+        });
+        server.start();
+        url = "http://127.0.0.1:" + server.getAddress().getPort() + "/load";
+    }
+
+    /**
+     * Sends one request the way the chosen api does.
+     */
+    private interface Sender {
+        HttpResponse send() throws HttpException;
+    }
+
+    private void run() throws Exception {
+        startServer();
+
+        final String transport = option("transport", "url");
+        final int connections = Integer.parseInt(option("connections", "64"));
+        final HttpClientConfiguration conf = new HttpClientConfiguration.HttpClientDefaultConfiguration() {
+            @Override
+            public boolean isHttpNioEnabled() {
+                return "nio".equals(transport);
+            }
+
+            @Override
+            public int getHttpMaxTotalConnections() {
+                return connections;
+            }
+
+            @Override
+            public int getHttpDefaultMaxPerRoute() {
+                return connections;
+            }
+        };
+        final HttpParameter[] params = post
+                ? new HttpParameter[]{new HttpParameter("body", BenchmarkText.of(size, BenchmarkText.ASCII))}
+                : null;
+
+        String api = option("api", "client");
+        final HttpClient client = conf.isHttpNioEnabled() ? new HttpClientNioImpl(conf) : new HttpClientImpl(conf);
+        final HttpClientWrapper wrapper = new HttpClientWrapper(conf);
+        Sender sender;
+        switch (api) {
+            case "client":
+                sender = new Sender() {
+                    @Override
+                    public HttpResponse send() throws HttpException {
+                        return client.request(new HttpRequest(post ? RequestMethod.POST : RequestMethod.GET, url, params, null));
+                    }
+                };
+                break;
+            case "wrapper":
+                sender = new Sender() {
+                    @Override
+                    public HttpResponse send() throws HttpException {
+                        return post ? wrapper.post(url, params) : wrapper.get(url);
+                    }
+                };
+                break;
+            case "builder":
+                sender = new Sender() {
+                    @Override
+                    public HttpResponse send() throws HttpException {
+                        HttpRequestBuilder builder = new HttpRequestBuilder(conf).target(url);
+                        if (post) {
+                            return builder.param("body", params[0].getValue()).post();
+                        }
+                        return builder.get();
+                    }
+                };
+                break;
+            default:
+                throw new IllegalArgumentException("unknown api: " + api);
+        }
+
+        System.out.println("LoadBenchmark api=" + api + ", transport=" + transport + ", concurrency=" + concurrency
+                + ", size=" + size + ", post=" + post + ", keepAlive=" + keepAlive + ", connections=" + connections);
+        try {
+            measure(sender, Integer.parseInt(option("warmup", "5")), false);
+            measure(sender, Integer.parseInt(option("duration", "10")), true);
+        } finally {
+            client.shutdown();
+            wrapper.shutdown();
+            server.stop(0);
+        }
+    }
+
+    private void measure(final Sender sender, int seconds, boolean report) throws InterruptedException {
+        latency = new HttpLatencyHistogram();
+        errors.reset();
+        sockets.clear();
+        long allocated = getClientAllocatedBytes();
+        boolean allocationMeasured = allocated >= 0;
+        long started = System.nanoTime();
+        final long end = started + seconds * 1000000000L;
+
+        ExecutorService workers = Executors.newFixedThreadPool(concurrency);
+        final CountDownLatch done = new CountDownLatch(concurrency);
+        for (int i = 0; i < concurrency; i++) {
+            workers.execute(new Runnable() {
+                @Override
+                public void run() {
+                    try {
+                        long now;
+                        while ((now = System.nanoTime()) < end) {
+                            try {
+                                sender.send().asBytes();
+                                latency.record(System.nanoTime() - now);
+                            } catch (HttpException e) {
+                                errors.increment();
+                            }
+                        }
+                    } finally {
+                        done.countDown();
+                    }
+                }
+            });
+        }
+        done.await();
+        long elapsed = System.nanoTime() - started;
+        allocated = allocationMeasured ? getClientAllocatedBytes() - allocated : -1;
+        workers.shutdown();
+
+        if (!report) {
+            return;
+        }
+        HttpLatencyHistogram.Snapshot snapshot = latency.snapshot();
+        long requests = snapshot.getCount();
+        System.out.printf("requests       %d in %.1f s, %d errors%n", requests, elapsed / 1e9, errors.sum());
+        System.out.printf("throughput     %.0f requests/s%n", requests / (elapsed / 1e9));
+        System.out.printf("latency (ms)   mean %.3f, p50 %.3f, p90 %.3f, p99 %.3f, p99.9 %.3f, max %.3f%n",
+                snapshot.getMean() / 1e6, snapshot.getPercentile(50) / 1e6, snapshot.getPercentile(90) / 1e6,
+                snapshot.getPercentile(99) / 1e6, snapshot.getPercentile(99.9) / 1e6, snapshot.getMax() / 1e6);
+        if (allocated >= 0 && requests > 0) {
+            System.out.printf("allocated      %d bytes/request%n", allocated / requests);
+        }
+        System.out.printf("sockets        %d opened%n", sockets.size());
+    }
+
+    /**
+     * @return bytes allocated so far by the live threads other than the server's, -1 if not supported
+     */
+    private static long getClientAllocatedBytes() {
+        java.lang.management.ThreadMXBean bean = ManagementFactory.getThreadMXBean();
+        if (!(bean instanceof com.sun.management.ThreadMXBean)) {
+            return -1;
+        }
+        long total = 0;
+        long[] ids = bean.getAllThreadIds();
+        ThreadInfo[] infos = bean.getThreadInfo(ids);
+        long[] allocated = ((com.sun.management.ThreadMXBean) bean).getThreadAllocatedBytes(ids);
+        for (int i = 0; i < ids.length; i++) {
+            if (infos[i] != null && allocated[i] > 0
+                    && !infos[i].getThreadName().startsWith(SERVER_THREAD)
+                    && !infos[i].getThreadName().startsWith("HTTP-Dispatcher")) {
+                total += allocated[i];
+            }
+        }
+        return total;
+    }
+}
@@ -0,0 +1,95 @@
+package net.socialhub.http;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.RandomAccessFile;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Writing of multipart bodies to a discarding stream: four text parts of the character mix,
+ * see {@link BenchmarkText}, and a file part, each of the payload size.
+ * The entity is built in each invocation, as the clients do for every request.
+ * Run with {@code ./gradlew jmh -Pjmh.includes=MultipartBenchmark}.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class MultipartBenchmark {
+
+    @Param({"256", "65536", "1048576"})
+    public int size;
+
+    @Param({BenchmarkText.ASCII, BenchmarkText.UNICODE})
+    public String mix;
+
+    private File file;
+    private HttpParameter[] params;
+
+    @Setup
+    public void setUp() throws IOException {
+        file = File.createTempFile("multipart", ".bin");
+        file.deleteOnExit();
+        try (RandomAccessFile raf = new RandomAccessFile(file, "rw")) {
+            raf.setLength(size);
+        }
+        params = new HttpParameter[]{
+                new HttpParameter("status", BenchmarkText.of(size, mix)),
+                new HttpParameter("title", BenchmarkText.of(size, mix)),
+                new HttpParameter("description", BenchmarkText.of(size, mix)),
+                new HttpParameter("tags", BenchmarkText.of(size, mix)),
+                new HttpParameter("media", file),
+        };
+    }
+
+    @TearDown
+    public void tearDown() {
+        file.delete();
+    }
+
+    /**
+     * Hands the written bytes to the blackhole without copying them.
+     */
+    private static final class BlackholeOutputStream extends OutputStream {
+
+        private final Blackhole blackhole;
+
+        BlackholeOutputStream(Blackhole blackhole) {
+            this.blackhole = blackhole;
+        }
+
+        @Override
+        public void write(int b) {
+            blackhole.consume(b);
+        }
+
+        @Override
+        public void write(byte[] b, int off, int len) {
+            blackhole.consume(b);
+        }
+    }
+
+    @Benchmark
+    public long writeTo(Blackhole blackhole) throws IOException {
+        HttpMultipartEntity entity = new HttpMultipartEntity(params, null, "----JHttpClient-benchmark");
+        entity.writeTo(new BlackholeOutputStream(blackhole));
+        return entity.getContentLength();
+    }
+}
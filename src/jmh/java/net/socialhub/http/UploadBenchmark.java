@@ -0,0 +1,135 @@
+package net.socialhub.http;
+
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpHandler;
+import com.sun.net.httpserver.HttpServer;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.io.BufferedInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.RandomAccessFile;
+import java.net.HttpURLConnection;
+import java.net.InetSocketAddress;
+import java.net.URL;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Throughput of raw file uploads to a local server.
+ * {@code byteByByte} is the copy loop the clients used before, for comparison.
+ * Run with {@code ./gradlew jmh -Pjmh.includes=UploadBenchmark}.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class UploadBenchmark {
+
+    @Param({"65536", "1048576", "16777216"})
+    public int size;
+
+    private HttpServer server;
+    private File file;
+    private String url;
+    private HttpClient urlConnection;
+    private HttpClient nio;
+
+    @Setup
+    public void setUp() throws IOException {
+        server = HttpServer.create(new InetSocketAddress("127.0.0.1", 0), 64);
+        server.setExecutor(Executors.newFixedThreadPool(4));
+        server.createContext("/", new HttpHandler() {
+            @Override
+            public void handle(HttpExchange exchange) throws IOException {
+                byte[] buffer = new byte[64 * 1024];
+                try (InputStream in = exchange.getRequestBody()) {
+                    while (in.read(buffer) != -1) {
+                        // discard
+                    }
+                }
+                exchange.sendResponseHeaders(HttpResponseCode.NO_CONTENT, -1);
+                exchange.close();
+            }
+        });
+        server.start();
+        url = "http://127.0.0.1:" + server.getAddress().getPort() + "/upload";
+
+        file = File.createTempFile("upload", ".bin");
+        file.deleteOnExit();
+        try (RandomAccessFile raf = new RandomAccessFile(file, "rw")) {
+            raf.setLength(size);
+        }
+
+        HttpClientConfiguration conf = new HttpClientConfiguration.HttpClientDefaultConfiguration() {
+            @Override
+            public String[] getRawContentTypes() {
+                return new String[]{HttpMediaType.APPLICATION_OCTET_STREAM};
+            }
+        };
+        urlConnection = new HttpClientImpl(conf);
+        nio = new HttpClientNioImpl(conf);
+    }
+
+    @TearDown
+    public void tearDown() {
+        urlConnection.shutdown();
+        nio.shutdown();
+        server.stop(0);
+        file.delete();
+    }
+
+    private HttpRequest request() {
+        return new HttpRequest(RequestMethod.POST, url,
+                new HttpParameter[]{new HttpParameter("media", file)}, null);
+    }
+
+    @Benchmark
+    public int byteByByte() throws IOException {
+        HttpURLConnection con = (HttpURLConnection) new URL(url).openConnection();
+        con.setRequestMethod("POST");
+        con.setRequestProperty("Content-Type", HttpMediaType.APPLICATION_OCTET_STREAM);
+        con.setDoOutput(true);
+        DataOutputStream out = new DataOutputStream(con.getOutputStream());
+        BufferedInputStream in = new BufferedInputStream(new FileInputStream(file));
+        int buff;
+        while ((buff = in.read()) != -1) {
+            out.write(buff);
+        }
+        in.close();
+        out.close();
+        int code = con.getResponseCode();
+        con.disconnect();
+        return code;
+    }
+
+    @Benchmark
+    public int urlConnection() throws HttpException, IOException {
+        HttpResponse res = urlConnection.request(request());
+        res.disconnect();
+        return res.getStatusCode();
+    }
+
+    @Benchmark
+    public int nio() throws HttpException, IOException {
+        HttpResponse res = nio.request(request());
+        res.disconnect();
+        return res.getStatusCode();
+    }
+}
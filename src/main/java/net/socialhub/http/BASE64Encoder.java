@@ -16,64 +16,175 @@
 
 package net.socialhub.http;
 
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+
 /**
- * A utility class encodes byte array into String using Base64 encoding scheme.
+ * A utility class encodes byte array into String using Base64 encoding scheme, and decodes it back.
+ * Every 3 bytes are encoded into 4 chars through a lookup table; the URL-safe variant uses
+ * {@code -} and {@code _} instead of {@code +} and {@code /} (RFC 4648, section 5).
+ * To encode or decode a stream without holding it in memory,
+ * see {@link BASE64OutputStream} and {@link BASE64InputStream}.
  *
  * @author Yusuke Yamamoto - yusuke at mac.com
  * @see HttpClient
  */
 public final class BASE64Encoder {
 
-    private static final char last2byte = (char) Integer.parseInt("00000011", 2);
-    private static final char last4byte = (char) Integer.parseInt("00001111", 2);
-    private static final char last6byte = (char) Integer.parseInt("00111111", 2);
-    private static final char lead6byte = (char) Integer.parseInt("11111100", 2);
-    private static final char lead4byte = (char) Integer.parseInt("11110000", 2);
-    private static final char lead2byte = (char) Integer.parseInt("11000000", 2);
-    private static final char[] encodeTable = new char[]{'A', 'B', 'C', 'D', 'E', 'F', 'G', 'H', 'I', 'J', 'K', 'L', 'M', 'N', 'O', 'P', 'Q', 'R', 'S', 'T', 'U', 'V', 'W', 'X', 'Y', 'Z', 'a', 'b', 'c', 'd', 'e', 'f', 'g', 'h', 'i', 'j', 'k', 'l', 'm', 'n', 'o', 'p', 'q', 'r', 's', 't', 'u', 'v', 'w', 'x', 'y', 'z', '0', '1', '2', '3', '4', '5', '6', '7', '8', '9', '+', '/'};
+    static final byte[] STANDARD = "ABCDEFGHIJKLMNOPQRSTUVWXYZabcdefghijklmnopqrstuvwxyz0123456789+/"
+            .getBytes(StandardCharsets.US_ASCII);
+    static final byte[] URL_SAFE = "ABCDEFGHIJKLMNOPQRSTUVWXYZabcdefghijklmnopqrstuvwxyz0123456789-_"
+            .getBytes(StandardCharsets.US_ASCII);
+    static final byte PAD = '=';
+
+    /** value of a char which is not part of the encoding */
+    static final int INVALID = -1;
+    /** value of a line break or a space, which are skipped */
+    static final int SKIPPED = -2;
+
+    /** 6-bit value of each ASCII char, of both alphabets */
+    private static final int[] decodeTable = new int[128];
+
+    static {
+        Arrays.fill(decodeTable, INVALID);
+        for (int i = 0; i < 64; i++) {
+            decodeTable[STANDARD[i]] = i;
+            decodeTable[URL_SAFE[i]] = i;
+        }
+        decodeTable['\r'] = SKIPPED;
+        decodeTable['\n'] = SKIPPED;
+        decodeTable[' '] = SKIPPED;
+        decodeTable['\t'] = SKIPPED;
+    }
 
     private BASE64Encoder() {
     }
 
     public static String encode(byte[] from) {
-        StringBuilder to = new StringBuilder((int) (from.length * 1.34) + 3);
-        int num = 0;
-        char currentByte = 0;
-        for (int i = 0; i < from.length; i++) {
-            num = num % 8;
-            while (num < 8) {
-                switch (num) {
-                    case 0:
-                        currentByte = (char) (from[i] & lead6byte);
-                        currentByte = (char) (currentByte >>> 2);
-                        break;
-                    case 2:
-                        currentByte = (char) (from[i] & last6byte);
-                        break;
-                    case 4:
-                        currentByte = (char) (from[i] & last4byte);
-                        currentByte = (char) (currentByte << 2);
-                        if ((i + 1) < from.length) {
-                            currentByte |= (from[i + 1] & lead2byte) >>> 6;
-                        }
-                        break;
-                    case 6:
-                        currentByte = (char) (from[i] & last2byte);
-                        currentByte = (char) (currentByte << 4);
-                        if ((i + 1) < from.length) {
-                            currentByte |= (from[i + 1] & lead4byte) >>> 4;
-                        }
-                        break;
-                }
-                to.append(encodeTable[currentByte]);
-                num += 6;
-            }
+        return encode(from, STANDARD);
+    }
+
+    /**
+     * Encodes with the URL and file name safe alphabet, with padding.
+     */
+    public static String encodeUrlSafe(byte[] from) {
+        return encode(from, URL_SAFE);
+    }
+
+    private static String encode(byte[] from, byte[] alphabet) {
+        byte[] to = new byte[encodedLength(from.length)];
+        int length = encodeTriples(from, 0, from.length, to, 0, alphabet);
+        int rest = from.length % 3;
+        if (rest > 0) {
+            encodeTail(from, from.length - rest, rest, to, length, alphabet);
         }
-        if (to.length() % 4 != 0) {
-            for (int i = 4 - to.length() % 4; i > 0; i--) {
-                to.append("=");
+        return new String(to, StandardCharsets.US_ASCII);
+    }
+
+    /**
+     * @return length of the encoding of the given number of bytes, with padding
+     */
+    static int encodedLength(int length) {
+        long encoded = (length + 2L) / 3 * 4;
+        if (encoded > Integer.MAX_VALUE - 8) {
+            throw new IllegalArgumentException("too large to encode: " + length + " bytes");
+        }
+        return (int) encoded;
+    }
+
+    /**
+     * Encodes the whole 3-byte groups of the range, leaving out the last 1 or 2 bytes.
+     *
+     * @return index in the destination after the last char written
+     */
+    static int encodeTriples(byte[] src, int off, int len, byte[] dst, int dp, byte[] alphabet) {
+        int end = off + len - len % 3;
+        for (int sp = off; sp < end; sp += 3) {
+            int bits = (src[sp] & 0xff) << 16 | (src[sp + 1] & 0xff) << 8 | (src[sp + 2] & 0xff);
+            dst[dp++] = alphabet[bits >>> 18];
+            dst[dp++] = alphabet[(bits >>> 12) & 0x3f];
+            dst[dp++] = alphabet[(bits >>> 6) & 0x3f];
+            dst[dp++] = alphabet[bits & 0x3f];
+        }
+        return dp;
+    }
+
+    /**
+     * Encodes the last 1 or 2 bytes, padded to 4 chars.
+     *
+     * @return index in the destination after the last char written
+     */
+    static int encodeTail(byte[] src, int off, int len, byte[] dst, int dp, byte[] alphabet) {
+        int bits = (src[off] & 0xff) << 16 | ((len > 1) ? (src[off + 1] & 0xff) << 8 : 0);
+        dst[dp++] = alphabet[bits >>> 18];
+        dst[dp++] = alphabet[(bits >>> 12) & 0x3f];
+        dst[dp++] = (len > 1) ? alphabet[(bits >>> 6) & 0x3f] : PAD;
+        dst[dp++] = PAD;
+        return dp;
+    }
+
+    /**
+     * Decodes text of either alphabet. Padding is optional, and line breaks and spaces are skipped.
+     *
+     * @throws IllegalArgumentException if the text is not valid Base64
+     */
+    public static byte[] decode(String from) {
+        byte[] to = new byte[from.length() / 4 * 3 + 2];
+        int length = 0;
+        int bits = 0;
+        int count = 0;
+        boolean padded = false;
+        for (int i = 0; i < from.length(); i++) {
+            char c = from.charAt(i);
+            int value = decodeValue(c);
+            if (value == SKIPPED) {
+                continue;
+            }
+            if (c == PAD) {
+                padded = true;
+                continue;
             }
+            if (value == INVALID || padded) {
+                throw new IllegalArgumentException("illegal base64 character at " + i + ": " + c);
+            }
+            bits = bits << 6 | value;
+            if (++count == 4) {
+                to[length++] = (byte) (bits >> 16);
+                to[length++] = (byte) (bits >> 8);
+                to[length++] = (byte) bits;
+                bits = 0;
+                count = 0;
+            }
+        }
+        length = decodeTail(bits, count, to, length);
+        return (length == to.length) ? to : Arrays.copyOf(to, length);
+    }
+
+    /**
+     * @return 6-bit value of the char, {@link #INVALID} or {@link #SKIPPED}; the padding char is {@link #INVALID}
+     */
+    static int decodeValue(int c) {
+        return (c >= 0 && c < decodeTable.length) ? decodeTable[c] : INVALID;
+    }
+
+    /**
+     * Decodes the 2 or 3 chars of an unfinished group, 0 chars being nothing to decode.
+     *
+     * @return index in the destination after the last byte written
+     */
+    static int decodeTail(int bits, int count, byte[] dst, int dp) {
+        switch (count) {
+            case 0:
+                return dp;
+            case 2:
+                dst[dp++] = (byte) (bits >> 4);
+                return dp;
+            case 3:
+                dst[dp++] = (byte) (bits >> 10);
+                dst[dp++] = (byte) (bits >> 2);
+                return dp;
+            default:
+                throw new IllegalArgumentException("truncated base64 input");
         }
-        return to.toString();
     }
 }
@@ -0,0 +1,128 @@
+package net.socialhub.http;
+
+import java.io.FilterInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+
+/**
+ * Input stream decoding the Base64 text, as ASCII bytes, of the underlying stream,
+ * through fixed buffers whatever the length of the data. Either alphabet is accepted,
+ * padding is optional, and line breaks and spaces are skipped, as by {@link BASE64Encoder#decode(String)}.
+ * Text which is not valid Base64 fails the read with an {@link IOException}.
+ */
+public class BASE64InputStream extends FilterInputStream {
+
+    private static final int BUFFER_SIZE = 4096;
+
+    private final byte[] text = new byte[BUFFER_SIZE];
+    private final byte[] decoded = new byte[BUFFER_SIZE / 4 * 3];
+    private final byte[] one = new byte[1];
+    private int pos;
+    private int limit;
+    private int bits;
+    private int count;
+    private boolean padded;
+    private boolean eof;
+
+    public BASE64InputStream(InputStream in) {
+        super(in);
+    }
+
+    @Override
+    public int read() throws IOException {
+        return (read(one, 0, 1) == -1) ? -1 : (one[0] & 0xff);
+    }
+
+    @Override
+    public int read(byte[] b, int off, int len) throws IOException {
+        if ((off | len | (b.length - (len + off)) | (off + len)) < 0) {
+            throw new IndexOutOfBoundsException();
+        }
+        if (len == 0) {
+            return 0;
+        }
+        while (pos == limit) {
+            if (eof) {
+                return -1;
+            }
+            decodeMore();
+        }
+        int n = Math.min(len, limit - pos);
+        System.arraycopy(decoded, pos, b, off, n);
+        pos += n;
+        return n;
+    }
+
+    /**
+     * Reads a chunk of text from the underlying stream and decodes it.
+     */
+    private void decodeMore() throws IOException {
+        pos = 0;
+        limit = 0;
+        int read = in.read(text, 0, text.length);
+        if (read == -1) {
+            eof = true;
+            try {
+                limit = BASE64Encoder.decodeTail(bits, count, decoded, 0);
+            } catch (IllegalArgumentException e) {
+                throw new IOException(e.getMessage(), e);
+            }
+            return;
+        }
+        for (int i = 0; i < read; i++) {
+            int c = text[i] & 0xff;
+            int value = BASE64Encoder.decodeValue(c);
+            if (value == BASE64Encoder.SKIPPED) {
+                continue;
+            }
+            if (c == BASE64Encoder.PAD) {
+                padded = true;
+                continue;
+            }
+            if (value == BASE64Encoder.INVALID || padded) {
+                throw new IOException("illegal base64 character: " + (char) c);
+            }
+            bits = bits << 6 | value;
+            if (++count == 4) {
+                decoded[limit++] = (byte) (bits >> 16);
+                decoded[limit++] = (byte) (bits >> 8);
+                decoded[limit++] = (byte) bits;
+                bits = 0;
+                count = 0;
+            }
+        }
+    }
+
+    @Override
+    public long skip(long n) throws IOException {
+        byte[] skipped = new byte[(int) Math.min(Math.max(n, 0), BUFFER_SIZE)];
+        long remaining = n;
+        while (remaining > 0) {
+            int read = read(skipped, 0, (int) Math.min(remaining, skipped.length));
+            if (read == -1) {
+                break;
+            }
+            remaining -= read;
+        }
+        return n - remaining;
+    }
+
+    @Override
+    public int available() {
+        return limit - pos;
+    }
+
+    @Override
+    public boolean markSupported() {
+        return false;
+    }
+
+    @Override
+    public synchronized void mark(int readlimit) {
+    }
+
+    @Override
+    public synchronized void reset() throws IOException {
+        throw new IOException("mark/reset not supported");
+    }
+}
@@ -0,0 +1,102 @@
+package net.socialhub.http;
+
+import java.io.FilterOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+
+/**
+ * Output stream encoding the bytes written to it into Base64 text, written to the underlying stream
+ * as ASCII bytes, through a fixed buffer whatever the length of the data.
+ * The last group is padded by {@link #finish()} or {@link #close()}; {@link #flush()} cannot write
+ * the up to 2 bytes of an unfinished group.
+ */
+public class BASE64OutputStream extends FilterOutputStream {
+
+    private static final int BUFFER_SIZE = 4096;
+
+    private final byte[] alphabet;
+    private final byte[] buf = new byte[BUFFER_SIZE];
+    private final byte[] pending = new byte[3];
+    private int pendingCount;
+    private boolean finished;
+
+    public BASE64OutputStream(OutputStream out) {
+        this(out, false);
+    }
+
+    /**
+     * @param urlSafe true to use the URL and file name safe alphabet
+     */
+    public BASE64OutputStream(OutputStream out, boolean urlSafe) {
+        super(out);
+        this.alphabet = urlSafe ? BASE64Encoder.URL_SAFE : BASE64Encoder.STANDARD;
+    }
+
+    @Override
+    public void write(int b) throws IOException {
+        ensureOpen();
+        pending[pendingCount++] = (byte) b;
+        if (pendingCount == 3) {
+            int length = BASE64Encoder.encodeTriples(pending, 0, 3, buf, 0, alphabet);
+            out.write(buf, 0, length);
+            pendingCount = 0;
+        }
+    }
+
+    @Override
+    public void write(byte[] b, int off, int len) throws IOException {
+        ensureOpen();
+        if ((off | len | (b.length - (len + off)) | (off + len)) < 0) {
+            throw new IndexOutOfBoundsException();
+        }
+        while (pendingCount > 0 && len > 0) {
+            write(b[off++]);
+            len--;
+        }
+        if (len == 0) {
+            // the bytes of an unfinished group stay pending
+            return;
+        }
+        int chunk = BUFFER_SIZE / 4 * 3;
+        while (len >= 3) {
+            int n = Math.min(len - len % 3, chunk);
+            int length = BASE64Encoder.encodeTriples(b, off, n, buf, 0, alphabet);
+            out.write(buf, 0, length);
+            off += n;
+            len -= n;
+        }
+        System.arraycopy(b, off, pending, 0, len);
+        pendingCount = len;
+    }
+
+    /**
+     * Writes the last group, padded, without closing the underlying stream.
+     * Nothing can be written afterwards.
+     */
+    public void finish() throws IOException {
+        if (finished) {
+            return;
+        }
+        if (pendingCount > 0) {
+            int length = BASE64Encoder.encodeTail(pending, 0, pendingCount, buf, 0, alphabet);
+            out.write(buf, 0, length);
+            pendingCount = 0;
+        }
+        finished = true;
+    }
+
+    @Override
+    public void close() throws IOException {
+        try {
+            finish();
+        } finally {
+            out.close();
+        }
+    }
+
+    private void ensureOpen() throws IOException {
+        if (finished) {
+            throw new IOException("Stream has been finished.");
+        }
+    }
+}
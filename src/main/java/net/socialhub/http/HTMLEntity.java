@@ -16,66 +16,213 @@
 
 package net.socialhub.http;
 
-import java.util.HashMap;
-import java.util.Map;
-
+/**
+ * Escapes the characters which have a named HTML 4 entity, and unescapes named entities
+ * and numeric character references, in one pass over the text.
+ * Text without anything to escape or unescape is returned as is.
+ * To escape or unescape a stream without holding it in memory,
+ * see {@link HTMLEntityWriter} and {@link HTMLEntityReader}.
+ */
 public final class HTMLEntity {
+
+    /** longest numeric reference decoded, {@code &#x10FFFF;} with leading zeros */
+    private static final int MAX_NUMERIC_LENGTH = 12;
+
     public static String escape(String original) {
-        StringBuilder buf = new StringBuilder(original);
-        escape(buf);
+        int first = indexOfEscaped(original);
+        if (first < 0) {
+            return original;
+        }
+        StringBuilder buf = new StringBuilder(original.length() + 16);
+        buf.append(original, 0, first);
+        escape(original, first, buf);
         return buf.toString();
     }
 
     public static void escape(StringBuilder original) {
-        int index = 0;
-        String escaped;
-        while (index < original.length()) {
-            escaped = entityEscapeMap.get(original.substring(index, index + 1));
-            if (escaped != null) {
-                original.replace(index, index + 1, escaped);
-                index += escaped.length();
-            } else {
-                index++;
+        int first = indexOfEscaped(original);
+        if (first < 0) {
+            return;
+        }
+        StringBuilder buf = new StringBuilder(original.length() - first + 16);
+        escape(original, first, buf);
+        original.setLength(first);
+        original.append(buf);
+    }
+
+    private static int indexOfEscaped(CharSequence text) {
+        for (int i = 0; i < text.length(); i++) {
+            char c = text.charAt(i);
+            if (c < escapes.length && escapes[c] != null) {
+                return i;
+            }
+        }
+        return -1;
+    }
+
+    /**
+     * Appends the text from the index on, escaped.
+     */
+    private static void escape(CharSequence text, int from, StringBuilder out) {
+        int length = text.length();
+        int start = from;
+        for (int i = from; i < length; i++) {
+            char c = text.charAt(i);
+            if (c < escapes.length && escapes[c] != null) {
+                out.append(text, start, i).append(escapes[c]);
+                start = i + 1;
             }
         }
+        out.append(text, start, length);
     }
 
     public static String unescape(String original) {
-        String returnValue = null;
-        if (original != null) {
-            StringBuilder buf = new StringBuilder(original);
-            unescape(buf);
-            returnValue = buf.toString();
+        if (original == null) {
+            return null;
         }
-        return returnValue;
+        int first = original.indexOf('&');
+        if (first < 0) {
+            return original;
+        }
+        StringBuilder buf = new StringBuilder(original.length());
+        buf.append(original, 0, first);
+        unescape(original, first, buf);
+        return buf.toString();
     }
 
     public static void unescape(StringBuilder original) {
-        int index = 0;
-        int semicolonIndex;
-        String escaped;
-        String entity;
-        while (index < original.length()) {
-            index = original.indexOf("&", index);
-            if (-1 == index) {
-                break;
+        int first = original.indexOf("&");
+        if (first < 0) {
+            return;
+        }
+        StringBuilder buf = new StringBuilder(original.length() - first);
+        unescape(original, first, buf);
+        original.setLength(first);
+        original.append(buf);
+    }
+
+    /**
+     * Appends the text from the index on, unescaped. An entity is the text from an ampersand
+     * to the first semicolon after it; entities which are not known are kept as they are.
+     */
+    private static void unescape(CharSequence text, int from, StringBuilder out) {
+        int length = text.length();
+        int start = from;
+        for (int i = from; i < length; i++) {
+            if (text.charAt(i) != '&') {
+                continue;
+            }
+            int limit = Math.min(length, i + maxEntityLength);
+            int semicolon = i + 1;
+            while (semicolon < limit && text.charAt(semicolon) != ';') {
+                semicolon++;
+            }
+            if (semicolon == limit) {
+                continue;
+            }
+            int codePoint = decode(text, i + 1, semicolon);
+            if (codePoint >= 0) {
+                out.append(text, start, i).appendCodePoint(codePoint);
+                start = semicolon + 1;
+                i = semicolon;
+            }
+        }
+        out.append(text, start, length);
+    }
+
+    /**
+     * @param from index after the ampersand
+     * @param to   index of the semicolon
+     * @return code point of the entity name or numeric reference, -1 if unknown
+     */
+    static int decode(CharSequence text, int from, int to) {
+        if (from < to && text.charAt(from) == '#') {
+            return parseCodePoint(text, from + 1, to);
+        }
+        return lookup(text, from, to);
+    }
+
+    /**
+     * @return entity of the character, or null if it is not escaped
+     */
+    static String getEntity(char c) {
+        return (c < escapes.length) ? escapes[c] : null;
+    }
+
+    /**
+     * @return length of the longest entity decoded, with ampersand and semicolon
+     */
+    static int getMaxEntityLength() {
+        return maxEntityLength;
+    }
+
+    /**
+     * @return code point of the decimal or {@code x} prefixed hexadecimal number, -1 if invalid
+     */
+    private static int parseCodePoint(CharSequence text, int from, int to) {
+        int radix = 10;
+        if (from < to && (text.charAt(from) == 'x' || text.charAt(from) == 'X')) {
+            radix = 16;
+            from++;
+        }
+        if (from == to) {
+            return -1;
+        }
+        int codePoint = 0;
+        for (int i = from; i < to; i++) {
+            int digit = Character.digit(text.charAt(i), radix);
+            if (digit < 0) {
+                return -1;
+            }
+            codePoint = codePoint * radix + digit;
+            if (codePoint > Character.MAX_CODE_POINT) {
+                return -1;
+            }
+        }
+        if (codePoint == 0 || (codePoint >= Character.MIN_SURROGATE && codePoint <= Character.MAX_SURROGATE)) {
+            return -1;
+        }
+        return codePoint;
+    }
+
+    /**
+     * @return character of the entity name, -1 if unknown
+     */
+    private static int lookup(CharSequence text, int from, int to) {
+        int mask = names.length - 1;
+        for (int slot = hash(text, from, to) & mask; names[slot] != null; slot = (slot + 1) & mask) {
+            String name = names[slot];
+            if (name.length() == to - from && regionMatches(name, text, from)) {
+                return namedChars[slot];
             }
-            semicolonIndex = original.indexOf(";", index);
-            if (-1 != semicolonIndex) {
-                escaped = original.substring(index, semicolonIndex + 1);
-                entity = escapeEntityMap.get(escaped);
-                if (entity != null) {
-                    original.replace(index, semicolonIndex + 1, entity);
-                }
-                index++;
-            } else {
-                break;
+        }
+        return -1;
+    }
+
+    private static boolean regionMatches(String name, CharSequence text, int from) {
+        for (int i = 0; i < name.length(); i++) {
+            if (name.charAt(i) != text.charAt(from + i)) {
+                return false;
             }
         }
+        return true;
     }
 
-    private static Map<String, String> entityEscapeMap = new HashMap<String, String>();
-    private static Map<String, String> escapeEntityMap = new HashMap<String, String>();
+    private static int hash(CharSequence text, int from, int to) {
+        int h = 0;
+        for (int i = from; i < to; i++) {
+            h = 31 * h + text.charAt(i);
+        }
+        return h ^ (h >>> 16);
+    }
+
+    /** entity of each escaped character, by character */
+    private static final String[] escapes;
+    /** open addressing table of the entity names, without ampersand and semicolon */
+    private static final String[] names;
+    private static final char[] namedChars;
+    /** longest entity, with ampersand and semicolon */
+    private static final int maxEntityLength;
 
     static {
         String[][] entities =
@@ -358,10 +505,27 @@ public final class HTMLEntity {
                         , {"&rsaquo;", "&#8250;"/* single right-pointing angle quotation mark */, "\u203A"}
 /* rsaquo is proposed but not yet ISO standardized */
                         , {"&euro;", "&#8364;" /* euro sign */, "\u20AC"}};
+        char maxChar = 0;
+        int maxLength = MAX_NUMERIC_LENGTH;
         for (String[] entity : entities) {
-            entityEscapeMap.put(entity[2], entity[0]);
-            escapeEntityMap.put(entity[0], entity[2]);
-            escapeEntityMap.put(entity[1], entity[2]);
+            maxChar = (char) Math.max(maxChar, entity[2].charAt(0));
+            maxLength = Math.max(maxLength, entity[0].length());
+        }
+        escapes = new String[maxChar + 1];
+        names = new String[Integer.highestOneBit(entities.length) * 4];
+        namedChars = new char[names.length];
+        maxEntityLength = maxLength;
+        int mask = names.length - 1;
+        for (String[] entity : entities) {
+            char c = entity[2].charAt(0);
+            String name = entity[0].substring(1, entity[0].length() - 1);
+            escapes[c] = entity[0];
+            int slot = hash(name, 0, name.length()) & mask;
+            while (names[slot] != null) {
+                slot = (slot + 1) & mask;
+            }
+            names[slot] = name;
+            namedChars[slot] = c;
         }
     }
 
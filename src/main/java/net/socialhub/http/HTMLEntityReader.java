@@ -0,0 +1,172 @@
+package net.socialhub.http;
+
+import java.io.FilterReader;
+import java.io.IOException;
+import java.io.Reader;
+import java.nio.CharBuffer;
+
+/**
+ * Reader unescaping the HTML entities of the text it reads, as {@link HTMLEntity#unescape(String)} does,
+ * with a fixed buffer whatever the length of the text. Entities split between reads of the underlying
+ * reader are decoded, for instance over {@link HttpResponse#asReader()}:
+ * <pre>
+ * try (Reader reader = new HTMLEntityReader(response.asReader())) {
+ *     ...
+ * }
+ * </pre>
+ */
+public class HTMLEntityReader extends FilterReader {
+
+    private static final int BUFFER_SIZE = 8192;
+
+    private final char[] buf = new char[BUFFER_SIZE];
+    private final CharSequence text = CharBuffer.wrap(buf);
+    private final int maxEntityLength = HTMLEntity.getMaxEntityLength();
+    private final char[] one = new char[1];
+    private int pos;
+    private int limit;
+    private boolean eof;
+    /** low surrogate of a decoded code point which did not fit in the last read */
+    private int pendingLowSurrogate = -1;
+
+    public HTMLEntityReader(Reader in) {
+        super(in);
+    }
+
+    @Override
+    public int read() throws IOException {
+        synchronized (lock) {
+            return (read(one, 0, 1) == -1) ? -1 : one[0];
+        }
+    }
+
+    @Override
+    public int read(char[] cbuf, int off, int len) throws IOException {
+        synchronized (lock) {
+            if (len == 0) {
+                return 0;
+            }
+            int n = 0;
+            if (pendingLowSurrogate >= 0) {
+                cbuf[off + n++] = (char) pendingLowSurrogate;
+                pendingLowSurrogate = -1;
+            }
+            while (n < len) {
+                if (pos == limit) {
+                    if (n > 0 || !fill()) {
+                        // hand over what has been decoded rather than block
+                        break;
+                    }
+                }
+                char c = buf[pos];
+                if (c != '&') {
+                    int end = pos + 1;
+                    int max = Math.min(limit, pos + len - n);
+                    while (end < max && buf[end] != '&') {
+                        end++;
+                    }
+                    System.arraycopy(buf, pos, cbuf, off + n, end - pos);
+                    n += end - pos;
+                    pos = end;
+                    continue;
+                }
+                if (limit - pos < maxEntityLength && !eof) {
+                    if (n > 0) {
+                        break;
+                    }
+                    fill();
+                }
+                int codePoint = -1;
+                int semicolon = pos + 1;
+                int max = Math.min(limit, pos + maxEntityLength);
+                while (semicolon < max && buf[semicolon] != ';') {
+                    semicolon++;
+                }
+                if (semicolon < max) {
+                    codePoint = HTMLEntity.decode(text, pos + 1, semicolon);
+                }
+                if (codePoint < 0) {
+                    cbuf[off + n++] = c;
+                    pos++;
+                    continue;
+                }
+                pos = semicolon + 1;
+                if (Character.isBmpCodePoint(codePoint)) {
+                    cbuf[off + n++] = (char) codePoint;
+                } else {
+                    cbuf[off + n++] = Character.highSurrogate(codePoint);
+                    if (n < len) {
+                        cbuf[off + n++] = Character.lowSurrogate(codePoint);
+                    } else {
+                        pendingLowSurrogate = Character.lowSurrogate(codePoint);
+                    }
+                }
+            }
+            return (n == 0) ? -1 : n;
+        }
+    }
+
+    /**
+     * Moves the unread chars to the start of the buffer and reads more after them.
+     *
+     * @return false at the end of the underlying reader with nothing left in the buffer
+     */
+    private boolean fill() throws IOException {
+        if (pos > 0) {
+            System.arraycopy(buf, pos, buf, 0, limit - pos);
+            limit -= pos;
+            pos = 0;
+        }
+        while (!eof && limit < buf.length) {
+            int read = in.read(buf, limit, buf.length - limit);
+            if (read == -1) {
+                eof = true;
+            } else if (read > 0) {
+                limit += read;
+                if (limit >= maxEntityLength) {
+                    break;
+                }
+            }
+        }
+        return limit > 0;
+    }
+
+    @Override
+    public long skip(long n) throws IOException {
+        if (n < 0) {
+            throw new IllegalArgumentException("skip value is negative");
+        }
+        char[] skipped = new char[(int) Math.min(n, BUFFER_SIZE)];
+        long remaining = n;
+        while (remaining > 0) {
+            int read = read(skipped, 0, (int) Math.min(remaining, skipped.length));
+            if (read == -1) {
+                break;
+            }
+            remaining -= read;
+        }
+        return n - remaining;
+    }
+
+    @Override
+    public boolean ready() throws IOException {
+        synchronized (lock) {
+            return pendingLowSurrogate >= 0 || pos < limit || in.ready();
+        }
+    }
+
+    @Override
+    public boolean markSupported() {
+        return false;
+    }
+
+    @Override
+    public void mark(int readAheadLimit) throws IOException {
+        throw new IOException("mark() not supported");
+    }
+
+    @Override
+    public void reset() throws IOException {
+        throw new IOException("reset() not supported");
+    }
+}
@@ -0,0 +1,61 @@
+package net.socialhub.http;
+
+import java.io.FilterWriter;
+import java.io.IOException;
+import java.io.Writer;
+
+/**
+ * Writer escaping the characters it writes into HTML entities, as {@link HTMLEntity#escape(String)} does.
+ * Runs of characters which need no escaping are passed to the underlying writer as they are,
+ * so the text is never held in memory.
+ */
+public class HTMLEntityWriter extends FilterWriter {
+
+    public HTMLEntityWriter(Writer out) {
+        super(out);
+    }
+
+    @Override
+    public void write(int c) throws IOException {
+        String entity = HTMLEntity.getEntity((char) c);
+        if (entity != null) {
+            out.write(entity);
+        } else {
+            out.write(c);
+        }
+    }
+
+    @Override
+    public void write(char[] cbuf, int off, int len) throws IOException {
+        synchronized (lock) {
+            int start = off;
+            int end = off + len;
+            for (int i = off; i < end; i++) {
+                String entity = HTMLEntity.getEntity(cbuf[i]);
+                if (entity != null) {
+                    out.write(cbuf, start, i - start);
+                    out.write(entity);
+                    start = i + 1;
+                }
+            }
+            out.write(cbuf, start, end - start);
+        }
+    }
+
+    @Override
+    public void write(String str, int off, int len) throws IOException {
+        synchronized (lock) {
+            int start = off;
+            int end = off + len;
+            for (int i = off; i < end; i++) {
+                String entity = HTMLEntity.getEntity(str.charAt(i));
+                if (entity != null) {
+                    out.write(str, start, i - start);
+                    out.write(entity);
+                    start = i + 1;
+                }
+            }
+            out.write(str, start, end - start);
+        }
+    }
+}
@@ -0,0 +1,143 @@
+package net.socialhub.http;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ThreadLocalRandom;
+
+/**
+ * Retries with exponential backoff and full jitter: the n-th retry waits a random time
+ * between 0 and {@code min(maxDelay, baseDelay * 2^n)}, so that clients failing together
+ * do not retry together. Retry-After of 429 and 503 responses is honored instead,
+ * giving up if the server asks for more than {@code maxDelay}.
+ * <p>
+ * By default 429 and 5xx responses and {@link IOException} are retried.
+ */
+public class HttpBackoffRetryPolicy implements HttpRetryPolicy, HttpResponseCode {
+
+    private final int maxRetries;
+    private final long baseDelay;
+    private final long maxDelay;
+    private final Set<Integer> statusCodes = new HashSet<>();
+    private final List<Class<? extends Throwable>> exceptions = new ArrayList<>();
+
+    /**
+     * @param maxRetries number of retries after the first attempt
+     * @param baseDelay  upper bound of the first delay in milliseconds
+     * @param maxDelay   upper bound of any delay in milliseconds
+     */
+    public HttpBackoffRetryPolicy(int maxRetries, long baseDelay, long maxDelay) {
+        this.maxRetries = maxRetries;
+        this.baseDelay = baseDelay;
+        this.maxDelay = maxDelay;
+        statusCodes.add(TOO_MANY_REQUESTS);
+        for (int code = INTERNAL_SERVER_ERROR; code < 600; code++) {
+            statusCodes.add(code);
+        }
+        exceptions.add(IOException.class);
+    }
+
+    /**
+     * Replaces the status codes to retry.
+     */
+    public HttpBackoffRetryPolicy retryOnStatus(Integer... statusCodes) {
+        this.statusCodes.clear();
+        this.statusCodes.addAll(Arrays.asList(statusCodes));
+        return this;
+    }
+
+    /**
+     * Replaces the exceptions to retry, matched against the error and its causes.
+     */
+    @SafeVarargs
+    public final HttpBackoffRetryPolicy retryOnException(Class<? extends Throwable>... exceptions) {
+        this.exceptions.clear();
+        // the array is not passed on, which keeps @SafeVarargs true
+        for (Class<? extends Throwable> exception : exceptions) {
+            this.exceptions.add(exception);
+        }
+        return this;
+    }
+
+    public int getMaxRetries() {
+        return maxRetries;
+    }
+
+    public Set<Integer> getStatusCodes() {
+        return Collections.unmodifiableSet(statusCodes);
+    }
+
+    @Override
+    public long getRetryDelay(HttpRequest req, int retriedCount, HttpResponse res, Throwable error) {
+        if (retriedCount >= maxRetries) {
+            return -1;
+        }
+        if (res != null) {
+            if (!statusCodes.contains(res.getStatusCode())) {
+                return -1;
+            }
+            if (res.getStatusCode() == TOO_MANY_REQUESTS || res.getStatusCode() == SERVICE_UNAVAILABLE) {
+                long retryAfter = getRetryAfter(res.getResponseHeader("Retry-After"), System.currentTimeMillis());
+                if (retryAfter >= 0) {
+                    return (retryAfter <= maxDelay) ? retryAfter : -1;
+                }
+            }
+        } else if (!isRetryable(error)) {
+            return -1;
+        }
+        return backoff(retriedCount);
+    }
+
+    private boolean isRetryable(Throwable error) {
+        for (Throwable e = error; e != null; e = (e.getCause() != e) ? e.getCause() : null) {
+            for (Class<? extends Throwable> type : exceptions) {
+                if (type.isInstance(e)) {
+                    return true;
+                }
+            }
+        }
+        return false;
+    }
+
+    /**
+     * @return a random delay up to the exponential bound of the retry
+     */
+    long backoff(int retriedCount) {
+        long bound = baseDelay << Math.min(retriedCount, 30);
+        if (bound <= 0 || bound > maxDelay) {
+            bound = maxDelay;
+        }
+        return (bound > 0) ? ThreadLocalRandom.current().nextLong(bound + 1) : 0;
+    }
+
+    /**
+     * @return milliseconds given by Retry-After in seconds or as an HTTP-date, or -1
+     */
+    static long getRetryAfter(String value, long now) {
+        if (value == null) {
+            return -1;
+        }
+        try {
+            long seconds = Long.parseLong(value.trim());
+            return (seconds >= 0) ? seconds * 1000 : -1;
+        } catch (NumberFormatException e) {
+            long date = HttpCacheEntry.parseDate(value);
+            return (date >= 0) ? Math.max(0, date - now) : -1;
+        }
+    }
+
+    @Override
+    public String toString() {
+        return "HttpBackoffRetryPolicy{" +
+                "maxRetries=" + maxRetries +
+                ", baseDelay=" + baseDelay +
+                ", maxDelay=" + maxDelay +
+                ", statusCodes=" + statusCodes.size() +
+                ", exceptions=" + exceptions +
+                '}';
+    }
+}
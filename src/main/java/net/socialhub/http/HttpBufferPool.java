@@ -0,0 +1,87 @@
+package net.socialhub.http;
+
+import java.nio.ByteBuffer;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Pool of equally sized buffers used to copy request and response bodies.
+ * At most {@code maxPooled} released buffers are kept, the rest are left to the GC.
+ *
+ * @see HttpResponse#asByteBuffer(HttpBufferPool)
+ */
+public final class HttpBufferPool {
+
+    public static final int DEFAULT_BUFFER_SIZE = 64 * 1024;
+
+    private static final HttpBufferPool HEAP = new HttpBufferPool(DEFAULT_BUFFER_SIZE, 32, false);
+
+    private final int bufferSize;
+    private final int maxPooled;
+    private final boolean direct;
+    private final ConcurrentLinkedQueue<ByteBuffer> buffers = new ConcurrentLinkedQueue<>();
+    private final AtomicInteger pooled = new AtomicInteger();
+
+    /**
+     * @param bufferSize capacity of the buffers
+     * @param maxPooled  number of released buffers kept for reuse
+     * @param direct     true to allocate direct buffers
+     */
+    public HttpBufferPool(int bufferSize, int maxPooled, boolean direct) {
+        this.bufferSize = bufferSize;
+        this.maxPooled = maxPooled;
+        this.direct = direct;
+    }
+
+    /**
+     * @return shared pool of heap buffers, which always have an accessible array
+     */
+    public static HttpBufferPool heap() {
+        return HEAP;
+    }
+
+    public int getBufferSize() {
+        return bufferSize;
+    }
+
+    public boolean isDirect() {
+        return direct;
+    }
+
+    /**
+     * @return a cleared buffer
+     */
+    public ByteBuffer acquire() {
+        ByteBuffer buffer = buffers.poll();
+        if (buffer == null) {
+            return direct ? ByteBuffer.allocateDirect(bufferSize) : ByteBuffer.allocate(bufferSize);
+        }
+        pooled.decrementAndGet();
+        buffer.clear();
+        return buffer;
+    }
+
+    /**
+     * Returns the buffer to the pool. Buffers of another size or kind are dropped.
+     */
+    public void release(ByteBuffer buffer) {
+        if (buffer == null || buffer.capacity() != bufferSize || buffer.isDirect() != direct) {
+            return;
+        }
+        if (pooled.incrementAndGet() <= maxPooled) {
+            buffers.offer(buffer);
+        } else {
+            pooled.decrementAndGet();
+        }
+    }
+
+    @Override
+    public String toString() {
+        return "HttpBufferPool{" +
+                "bufferSize=" + bufferSize +
+                ", maxPooled=" + maxPooled +
+                ", direct=" + direct +
+                ", pooled=" + pooled.get() +
+                '}';
+    }
+}
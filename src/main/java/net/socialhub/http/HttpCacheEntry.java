@@ -0,0 +1,279 @@
+package net.socialhub.http;
+
+import java.time.ZonedDateTime;
+import java.time.format.DateTimeFormatter;
+import java.time.format.DateTimeParseException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * A response stored by {@link HttpResponseCache}, with the times needed to compute its freshness.
+ */
+final class HttpCacheEntry {
+
+    /** part of the time since Last-Modified used as heuristic lifetime */
+    private static final int HEURISTIC_FRACTION = 10;
+
+    private final int statusCode;
+    private final Map<String, List<String>> headers;
+    private final byte[] body;
+    private final long requestTime;
+    private final long responseTime;
+
+    /**
+     * @param requestTime  time the request was sent, in milliseconds
+     * @param responseTime time the response was received, in milliseconds
+     */
+    HttpCacheEntry(int statusCode, Map<String, List<String>> headers, byte[] body,
+                   long requestTime, long responseTime) {
+        this.statusCode = statusCode;
+        this.headers = Collections.unmodifiableMap(copy(headers));
+        this.body = body;
+        this.requestTime = requestTime;
+        this.responseTime = responseTime;
+    }
+
+    /**
+     * Reads the body of the response.
+     *
+     * @param requestTime time the request was sent, in milliseconds
+     * @return the entry, or null if the response has no body stream
+     */
+    static HttpCacheEntry read(HttpResponse res, long requestTime) throws HttpException {
+        byte[] body = res.asBytes();
+        if (body == null) {
+            return null;
+        }
+        return of(res, body, requestTime);
+    }
+
+    /**
+     * @param body        the body read from the response
+     * @param requestTime time the request was sent, in milliseconds
+     */
+    static HttpCacheEntry of(HttpResponse res, byte[] body, long requestTime) {
+        Map<String, List<String>> headers = getStoredHeaders(res);
+        headers.put("Content-Length", Collections.singletonList(Integer.toString(body.length)));
+        return new HttpCacheEntry(res.getStatusCode(), headers, body, requestTime, System.currentTimeMillis());
+    }
+
+    /**
+     * @return the headers of the response without those describing its encoded body
+     */
+    static Map<String, List<String>> getStoredHeaders(HttpResponse res) {
+        // the body is stored decoded
+        Map<String, List<String>> headers = new LinkedHashMap<>();
+        for (Map.Entry<String, List<String>> header : res.getResponseHeaderFields().entrySet()) {
+            String name = header.getKey();
+            if (name != null && (name.equalsIgnoreCase("Content-Encoding")
+                    || name.equalsIgnoreCase("Content-Length") || name.equalsIgnoreCase("Transfer-Encoding"))) {
+                continue;
+            }
+            headers.put(name, header.getValue());
+        }
+        return headers;
+    }
+
+    private static Map<String, List<String>> copy(Map<String, List<String>> headers) {
+        Map<String, List<String>> copy = new LinkedHashMap<>();
+        if (headers != null) {
+            for (Map.Entry<String, List<String>> header : headers.entrySet()) {
+                copy.put(header.getKey(), Collections.unmodifiableList(new ArrayList<>(header.getValue())));
+            }
+        }
+        return copy;
+    }
+
+    int getStatusCode() {
+        return statusCode;
+    }
+
+    Map<String, List<String>> getHeaders() {
+        return headers;
+    }
+
+    byte[] getBody() {
+        return body;
+    }
+
+    long getRequestTime() {
+        return requestTime;
+    }
+
+    long getResponseTime() {
+        return responseTime;
+    }
+
+    /**
+     * @return last value of the header ignoring the case of the name, or null
+     */
+    String getHeader(String name) {
+        return getHeader(headers, name);
+    }
+
+    static String getHeader(Map<String, List<String>> headers, String name) {
+        String value = null;
+        for (Map.Entry<String, List<String>> header : headers.entrySet()) {
+            if (header.getKey() != null && header.getKey().equalsIgnoreCase(name) && !header.getValue().isEmpty()) {
+                value = header.getValue().get(header.getValue().size() - 1);
+            }
+        }
+        return value;
+    }
+
+    /**
+     * @return approximate memory used by the entry in bytes
+     */
+    long getSize() {
+        long size = body.length + 64;
+        for (Map.Entry<String, List<String>> header : headers.entrySet()) {
+            size += (header.getKey() != null) ? header.getKey().length() * 2 : 0;
+            for (String value : header.getValue()) {
+                size += value.length() * 2 + 16;
+            }
+        }
+        return size;
+    }
+
+    boolean hasValidator() {
+        return getHeader("ETag") != null || getHeader("Last-Modified") != null;
+    }
+
+    /**
+     * @return true if the entry can be served without asking the server
+     */
+    boolean isFresh(long now) {
+        return now < getFreshUntil();
+    }
+
+    /**
+     * @return the time in milliseconds until which the entry is fresh
+     */
+    long getFreshUntil() {
+        return responseTime + getFreshnessLifetime() - getCurrentAge(responseTime);
+    }
+
+    /**
+     * Freshness lifetime from max-age, Expires or, lacking both, Last-Modified.
+     */
+    long getFreshnessLifetime() {
+        Map<String, String> cacheControl = parseCacheControl(getHeader("Cache-Control"));
+        if (cacheControl.containsKey("no-cache")) {
+            return 0;
+        }
+        String maxAge = cacheControl.get("max-age");
+        if (maxAge != null) {
+            return Math.max(0, parseSeconds(maxAge)) * 1000;
+        }
+        long date = getDate();
+        String expires = getHeader("Expires");
+        if (expires != null) {
+            long time = parseDate(expires);
+            return (time < 0) ? 0 : Math.max(0, time - date);
+        }
+        long lastModified = parseDate(getHeader("Last-Modified"));
+        if (lastModified >= 0 && lastModified < date) {
+            return (date - lastModified) / HEURISTIC_FRACTION;
+        }
+        return 0;
+    }
+
+    /**
+     * Age of the response, counting the time spent in caches before it reached us.
+     */
+    long getCurrentAge(long now) {
+        long apparentAge = Math.max(0, responseTime - getDate());
+        long age = parseSeconds(getHeader("Age"));
+        long correctedAge = Math.max(apparentAge, (age > 0) ? age * 1000 : 0);
+        return correctedAge + (responseTime - requestTime) + (now - responseTime);
+    }
+
+    private long getDate() {
+        long date = parseDate(getHeader("Date"));
+        return (date < 0) ? responseTime : date;
+    }
+
+    /**
+     * Returns the entry updated with the headers of a 304 Not Modified response.
+     */
+    HttpCacheEntry revalidated(Map<String, List<String>> notModifiedHeaders, long requestTime, long responseTime) {
+        Map<String, List<String>> merged = new LinkedHashMap<>(headers);
+        for (Map.Entry<String, List<String>> header : notModifiedHeaders.entrySet()) {
+            String name = header.getKey();
+            if (name == null || name.equalsIgnoreCase("Content-Length")
+                    || name.equalsIgnoreCase("Transfer-Encoding") || name.equalsIgnoreCase("Content-Encoding")) {
+                continue;
+            }
+            for (String key : new ArrayList<>(merged.keySet())) {
+                if (key != null && key.equalsIgnoreCase(name)) {
+                    merged.remove(key);
+                }
+            }
+            merged.put(name, header.getValue());
+        }
+        return new HttpCacheEntry(statusCode, merged, body, requestTime, responseTime);
+    }
+
+    /**
+     * @return directives in lower case mapped to their unquoted value, or to null
+     */
+    static Map<String, String> parseCacheControl(String value) {
+        Map<String, String> directives = new HashMap<>();
+        if (value != null) {
+            for (String directive : value.split(",")) {
+                int eq = directive.indexOf('=');
+                if (eq < 0) {
+                    directives.put(directive.trim().toLowerCase(), null);
+                } else {
+                    String arg = directive.substring(eq + 1).trim();
+                    if (arg.length() > 1 && arg.startsWith("\"") && arg.endsWith("\"")) {
+                        arg = arg.substring(1, arg.length() - 1);
+                    }
+                    directives.put(directive.substring(0, eq).trim().toLowerCase(), arg);
+                }
+            }
+        }
+        return directives;
+    }
+
+    /**
+     * @return the seconds, or -1 if the value is missing or invalid
+     */
+    private static long parseSeconds(String value) {
+        if (value == null) {
+            return -1;
+        }
+        try {
+            return Long.parseLong(value.trim());
+        } catch (NumberFormatException e) {
+            return -1;
+        }
+    }
+
+    /**
+     * @return the time of an HTTP-date in milliseconds, or -1 if the value is missing or invalid
+     */
+    static long parseDate(String value) {
+        if (value == null) {
+            return -1;
+        }
+        try {
+            return ZonedDateTime.parse(value.trim(), DateTimeFormatter.RFC_1123_DATE_TIME).toInstant().toEpochMilli();
+        } catch (DateTimeParseException e) {
+            return -1;
+        }
+    }
+
+    @Override
+    public String toString() {
+        return "HttpCacheEntry{" +
+                "statusCode=" + statusCode +
+                ", bodyLength=" + body.length +
+                ", responseTime=" + responseTime +
+                '}';
+    }
+}
@@ -0,0 +1,45 @@
+package net.socialhub.http;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Response served from a {@link HttpResponseCache}. There is no connection behind it.
+ */
+public class HttpCachedResponse extends HttpResponse {
+
+    private final Map<String, List<String>> headers;
+
+    HttpCachedResponse(HttpClientConfiguration conf, HttpCacheEntry entry) {
+        this(conf, entry.getStatusCode(), entry.getHeaders(), new ByteArrayInputStream(entry.getBody()));
+    }
+
+    HttpCachedResponse(HttpClientConfiguration conf, int statusCode,
+                       Map<String, List<String>> headers, InputStream body) {
+        super(conf);
+        this.statusCode = statusCode;
+        this.headers = headers;
+        this.is = body;
+    }
+
+    @Override
+    public String getResponseHeader(String name) {
+        return HttpCacheEntry.getHeader(headers, name);
+    }
+
+    @Override
+    public Map<String, List<String>> getResponseHeaderFields() {
+        return headers;
+    }
+
+    /**
+     * Closes the body, which may be a file of {@link HttpDiskCache}.
+     */
+    @Override
+    public void disconnect() throws IOException {
+        is.close();
+    }
+}
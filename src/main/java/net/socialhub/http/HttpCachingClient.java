@@ -0,0 +1,453 @@
+package net.socialhub.http;
+
+import net.socialhub.logger.Logger;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.SequenceInputStream;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.function.BiConsumer;
+
+/**
+ * Client caching the GET responses of another client, as a private cache of RFC 7234.
+ * Fresh entries are served without a request, stale entries are revalidated with
+ * If-None-Match / If-Modified-Since and served again on 304 Not Modified.
+ * Other methods go to the server and invalidate the entries of their URL.
+ * With a {@link HttpDiskCache}, responses are also kept on disk, where large bodies are streamed to,
+ * and small bodies found on disk are promoted to the memory cache.
+ */
+public class HttpCachingClient implements HttpClient, HttpResponseCode {
+
+    private static final Logger logger = Logger.getLogger(HttpCachingClient.class);
+
+    private final HttpClientConfiguration CONF;
+    private final HttpClient client;
+    private final HttpResponseCache cache;
+    private final HttpDiskCache disk;
+
+    /** bodies up to this size are kept in memory as well as on disk */
+    static final int MAX_PROMOTED_SIZE = 64 * 1024;
+
+    public HttpCachingClient(HttpClientConfiguration conf, HttpClient client) {
+        this(conf, client, new HttpResponseCache(conf.getHttpCacheMaxBytes()));
+    }
+
+    public HttpCachingClient(HttpClientConfiguration conf, HttpClient client, HttpResponseCache cache) {
+        this(conf, client, cache, null);
+    }
+
+    /**
+     * @param disk disk tier, or null to cache in memory only
+     */
+    public HttpCachingClient(HttpClientConfiguration conf, HttpClient client,
+                             HttpResponseCache cache, HttpDiskCache disk) {
+        this.CONF = conf;
+        this.client = client;
+        this.cache = cache;
+        this.disk = disk;
+    }
+
+    public HttpResponseCache getCache() {
+        return cache;
+    }
+
+    /**
+     * @return the disk tier, or null
+     */
+    public HttpDiskCache getDiskCache() {
+        return disk;
+    }
+
+    @Override
+    public HttpResponse request(HttpRequest req) throws HttpException {
+        if (req.getMethod() != RequestMethod.GET) {
+            try {
+                return client.request(req);
+            } finally {
+                invalidate(req);
+            }
+        }
+        if (isNoStore(req)) {
+            return client.request(req);
+        }
+
+        long requestTime = System.currentTimeMillis();
+        HttpCacheEntry entry = cache.get(req);
+        HttpDiskCache.Record record = (entry == null && disk != null) ? disk.lookup(req) : null;
+        HttpResponse cached = getFresh(req, entry, record, requestTime);
+        if (cached != null) {
+            return cached;
+        }
+
+        HttpResponse res;
+        try {
+            res = client.request(conditional(req, entry, record));
+        } catch (HttpException e) {
+            if (isNotModified(entry, record, e)) {
+                HttpResponse revalidated = revalidated(req, entry, record, e.getResponse(), requestTime);
+                if (revalidated != null) {
+                    return revalidated;
+                }
+                // evicted from disk meanwhile
+                return store(req, client.request(req), requestTime);
+            }
+            throw e;
+        }
+        return store(req, res, requestTime);
+    }
+
+    @Override
+    public CompletableFuture<HttpResponse> requestAsync(final HttpRequest req) {
+        if (req.getMethod() != RequestMethod.GET) {
+            return HttpClientBase.relay(client.requestAsync(req), new BiConsumer<HttpResponse, Throwable>() {
+                @Override
+                public void accept(HttpResponse res, Throwable e) {
+                    invalidate(req);
+                }
+            });
+        }
+        if (isNoStore(req)) {
+            return client.requestAsync(req);
+        }
+
+        final long requestTime = System.currentTimeMillis();
+        final HttpCacheEntry entry = cache.get(req);
+        final HttpDiskCache.Record record = (entry == null && disk != null) ? disk.lookup(req) : null;
+        HttpResponse cached = getFresh(req, entry, record, requestTime);
+        if (cached != null) {
+            return CompletableFuture.completedFuture(cached);
+        }
+
+        final CompletableFuture<HttpResponse> result = new CompletableFuture<>();
+        CompletableFuture<HttpResponse> future = client.requestAsync(conditional(req, entry, record));
+        HttpClientBase.cancelWith(result, future);
+        future.whenComplete(new BiConsumer<HttpResponse, Throwable>() {
+            @Override
+            public void accept(HttpResponse res, Throwable e) {
+                if (e == null) {
+                    storeAsync(req, res, requestTime, result);
+                    return;
+                }
+                Throwable cause = (e instanceof CompletionException && e.getCause() != null) ? e.getCause() : e;
+                if (!(cause instanceof HttpException) || !isNotModified(entry, record, (HttpException) cause)) {
+                    result.completeExceptionally(cause);
+                    return;
+                }
+                HttpResponse revalidated = revalidated(req, entry, record,
+                        ((HttpException) cause).getResponse(), requestTime);
+                if (revalidated != null) {
+                    HttpClientBase.completeOrDisconnect(result, revalidated);
+                    return;
+                }
+                // evicted from disk meanwhile
+                CompletableFuture<HttpResponse> retry = client.requestAsync(req);
+                HttpClientBase.cancelWith(result, retry);
+                retry.whenComplete(new BiConsumer<HttpResponse, Throwable>() {
+                    @Override
+                    public void accept(HttpResponse retried, Throwable error) {
+                        if (error != null) {
+                            result.completeExceptionally(error);
+                        } else {
+                            storeAsync(req, retried, requestTime, result);
+                        }
+                    }
+                });
+            }
+        });
+        return result;
+    }
+
+    /**
+     * Stores the response and completes the result with the cached copy.
+     */
+    private void storeAsync(HttpRequest req, HttpResponse res, long requestTime, CompletableFuture<HttpResponse> result) {
+        try {
+            HttpClientBase.completeOrDisconnect(result, store(req, res, requestTime));
+        } catch (HttpException e) {
+            result.completeExceptionally(e);
+        }
+    }
+
+    /**
+     * @return the fresh response of the memory or disk tier, or null
+     */
+    private HttpResponse getFresh(HttpRequest req, HttpCacheEntry entry, HttpDiskCache.Record record, long now) {
+        if (isNoCache(req)) {
+            return null;
+        }
+        if (entry != null && entry.isFresh(now)) {
+            logger.debug("Cache hit: " + req.getURL());
+            return new HttpCachedResponse(CONF, entry);
+        }
+        if (record != null && record.isFresh(now)) {
+            HttpResponse res = fromDisk(req, record);
+            if (res != null) {
+                logger.debug("Disk cache hit: " + req.getURL());
+            }
+            return res;
+        }
+        return null;
+    }
+
+    /**
+     * Opens the entry on disk, promoting a small body to the memory cache.
+     *
+     * @return the response, or null if the entry is gone
+     */
+    private HttpResponse fromDisk(HttpRequest req, HttpDiskCache.Record record) {
+        if (record.bodyLength <= MAX_PROMOTED_SIZE) {
+            HttpCacheEntry entry = disk.load(record);
+            if (entry == null) {
+                return null;
+            }
+            cache.put(req, entry);
+            return new HttpCachedResponse(CONF, entry);
+        }
+        return disk.open(CONF, record);
+    }
+
+    private void invalidate(HttpRequest req) {
+        if (req.getMethod() != RequestMethod.HEAD) {
+            cache.removeURL(req.getURL());
+            if (disk != null) {
+                disk.removeURL(req.getURL());
+            }
+        }
+    }
+
+    private void remove(HttpRequest req) {
+        cache.remove(req);
+        if (disk != null) {
+            disk.remove(req);
+        }
+    }
+
+    private static boolean isNoStore(HttpRequest req) {
+        return HttpCacheEntry.parseCacheControl(getRequestHeader(req, "Cache-Control")).containsKey("no-store");
+    }
+
+    private static boolean isNoCache(HttpRequest req) {
+        Map<String, String> cacheControl = HttpCacheEntry.parseCacheControl(getRequestHeader(req, "Cache-Control"));
+        return cacheControl.containsKey("no-cache") || "0".equals(cacheControl.get("max-age"));
+    }
+
+    private static String getRequestHeader(HttpRequest req, String name) {
+        if (req.getRequestHeaders() != null) {
+            for (Map.Entry<String, String> header : req.getRequestHeaders().entrySet()) {
+                if (name.equalsIgnoreCase(header.getKey())) {
+                    return header.getValue();
+                }
+            }
+        }
+        return null;
+    }
+
+    private static boolean isNotModified(HttpCacheEntry entry, HttpDiskCache.Record record, HttpException e) {
+        return (entry != null || record != null)
+                && e.getResponse() != null && e.getResponse().getStatusCode() == NOT_MODIFIED;
+    }
+
+    /**
+     * @return the request with the validators of the entry, or the request itself
+     */
+    private static HttpRequest conditional(HttpRequest req, HttpCacheEntry entry, HttpDiskCache.Record record) {
+        String etag;
+        String lastModified;
+        if (entry != null && entry.hasValidator()) {
+            etag = entry.getHeader("ETag");
+            lastModified = entry.getHeader("Last-Modified");
+        } else if (record != null && record.hasValidator()) {
+            etag = record.etag;
+            lastModified = record.getLastModified();
+        } else {
+            return req;
+        }
+
+        Map<String, String> headers = new HashMap<>();
+        if (req.getRequestHeaders() != null) {
+            headers.putAll(req.getRequestHeaders());
+        }
+        if (etag != null) {
+            headers.put("If-None-Match", etag);
+        }
+        if (lastModified != null) {
+            headers.put("If-Modified-Since", lastModified);
+        }
+        return new HttpRequest(req.getMethod(), req.getURL(), req.getParameters(), headers, req.getTimeouts());
+    }
+
+    /**
+     * @return the stored response with updated headers, or null if the disk entry is gone
+     */
+    private HttpResponse revalidated(HttpRequest req, HttpCacheEntry entry, HttpDiskCache.Record record,
+                                     HttpResponse notModified, long requestTime) {
+        logger.debug("Cache revalidated: " + req.getURL());
+        long responseTime = System.currentTimeMillis();
+        if (entry != null) {
+            HttpCacheEntry updated = entry.revalidated(
+                    notModified.getResponseHeaderFields(), requestTime, responseTime);
+            cache.put(req, updated);
+            if (disk != null) {
+                disk.put(req, updated);
+            }
+            return new HttpCachedResponse(CONF, updated);
+        }
+        HttpDiskCache.Record updated = disk.revalidated(req, record,
+                notModified.getResponseHeaderFields(), requestTime, responseTime);
+        return (updated != null) ? fromDisk(req, updated) : null;
+    }
+
+    /**
+     * Reads and stores a cacheable response.
+     *
+     * @return the cached copy of the response, or the response itself if it cannot be stored
+     */
+    private HttpResponse store(HttpRequest req, HttpResponse res, long requestTime) throws HttpException {
+        if (!isCacheable(res)) {
+            remove(req);
+            return res;
+        }
+        if (disk != null && !isSmall(res)) {
+            HttpCacheEntry entry = new HttpCacheEntry(res.getStatusCode(), HttpCacheEntry.getStoredHeaders(res),
+                    new byte[0], requestTime, System.currentTimeMillis());
+            cache.remove(req);
+            return disk.put(CONF, req, entry, res);
+        }
+
+        HttpCacheEntry entry;
+        if (isSmall(res)) {
+            entry = HttpCacheEntry.read(res, requestTime);
+        } else {
+            // no disk tier, the size is unknown until the body is read
+            InputStream body = res.asStream();
+            if (body == null) {
+                return res;
+            }
+            byte[] head = readAtMost(res, body, cache.getMaxBytes());
+            if (head.length > cache.getMaxBytes()) {
+                logger.debug("Too large to cache: " + req.getURL());
+                remove(req);
+                return passThrough(res, head, body);
+            }
+            try {
+                body.close();
+            } catch (IOException ignore) {
+            }
+            res.disconnectForcibly();
+            entry = HttpCacheEntry.of(res, head, requestTime);
+        }
+        if (entry == null) {
+            return res;
+        }
+        cache.put(req, entry);
+        if (disk != null) {
+            disk.put(req, entry);
+        }
+        return new HttpCachedResponse(CONF, entry);
+    }
+
+    /**
+     * Reads the body until its end or until more than the limit has been read.
+     *
+     * @return the bytes read, more than the limit if the body is larger
+     */
+    private static byte[] readAtMost(HttpResponse res, InputStream body, long limit) throws HttpException {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        byte[] buffer = new byte[8192];
+        try {
+            int n;
+            while (out.size() <= limit && (n = body.read(buffer)) != -1) {
+                out.write(buffer, 0, n);
+            }
+        } catch (IOException e) {
+            res.disconnectForcibly();
+            throw new HttpException(e.getMessage(), e);
+        }
+        return out.toByteArray();
+    }
+
+    /**
+     * @return the response with the bytes already read put back in front of the rest of its body
+     */
+    private HttpResponse passThrough(final HttpResponse res, byte[] head, InputStream rest) {
+        return new HttpCachedResponse(CONF, res.getStatusCode(), res.getResponseHeaderFields(),
+                new SequenceInputStream(new ByteArrayInputStream(head), rest)) {
+            {
+                timings = res.getTimings();
+            }
+
+            @Override
+            public void disconnect() throws IOException {
+                try {
+                    super.disconnect();
+                } finally {
+                    res.disconnect();
+                }
+            }
+        };
+    }
+
+    /**
+     * @return true if the body is known to be small enough to be read into memory
+     */
+    private static boolean isSmall(HttpResponse res) {
+        if (res.getResponseHeader("Content-Encoding") != null) {
+            return false;
+        }
+        long length = getContentLength(res);
+        return length >= 0 && length <= MAX_PROMOTED_SIZE;
+    }
+
+    private static long getContentLength(HttpResponse res) {
+        String contentLength = res.getResponseHeader("Content-Length");
+        if (contentLength != null) {
+            try {
+                return Long.parseLong(contentLength.trim());
+            } catch (NumberFormatException ignore) {
+            }
+        }
+        return -1;
+    }
+
+    private boolean isCacheable(HttpResponse res) {
+        if (res.getStatusCode() != OK) {
+            return false;
+        }
+        Map<String, String> cacheControl = HttpCacheEntry.parseCacheControl(res.getResponseHeader("Cache-Control"));
+        if (cacheControl.containsKey("no-store")) {
+            return false;
+        }
+        long maxBytes = (disk != null) ? disk.getMaxBytes() : cache.getMaxBytes();
+        if (getContentLength(res) > maxBytes) {
+            return false;
+        }
+        return cacheControl.containsKey("max-age") || res.getResponseHeader("Expires") != null
+                || res.getResponseHeader("ETag") != null || res.getResponseHeader("Last-Modified") != null;
+    }
+
+    @Override
+    public void shutdown() {
+        client.shutdown();
+        if (disk != null) {
+            try {
+                disk.close();
+            } catch (IOException e) {
+                logger.debug("Failed to close the disk cache: " + e.getMessage());
+            }
+        }
+    }
+
+    @Override
+    public String toString() {
+        return "HttpCachingClient{" +
+                "client=" + client +
+                ", cache=" + cache +
+                ", disk=" + disk +
+                '}';
+    }
+}
@@ -0,0 +1,156 @@
+package net.socialhub.http;
+
+/**
+ * Circuit breaker of one route, fed with the outcome of every call.
+ * While closed, the outcomes of the last calls are kept in a sliding window; the circuit opens
+ * when the failure rate or the slow call rate of the window reaches its threshold.
+ * While open, calls are refused. After the open duration a few trial calls are let through
+ * (half-open), which close the circuit again if their rates are below the thresholds.
+ *
+ * @see HttpCircuitBreakerClient
+ */
+public final class HttpCircuitBreaker {
+
+    public enum State {
+        CLOSED, OPEN, HALF_OPEN
+    }
+
+    private final HttpRoute route;
+    private final HttpClientConfiguration CONF;
+    private final HttpCircuitBreakerListener listener;
+
+    // outcomes of the last calls, as a ring
+    private final boolean[] failures;
+    private final boolean[] slows;
+    private int calls;
+    private int next;
+    private int failureCount;
+    private int slowCount;
+
+    private State state = State.CLOSED;
+    private long openedAt;
+    private int trialCalls;
+
+    HttpCircuitBreaker(HttpRoute route, HttpClientConfiguration conf, HttpCircuitBreakerListener listener) {
+        this.route = route;
+        this.CONF = conf;
+        this.listener = listener;
+        this.failures = new boolean[Math.max(1, conf.getHttpCircuitBreakerWindowSize())];
+        this.slows = new boolean[failures.length];
+    }
+
+    public HttpRoute getRoute() {
+        return route;
+    }
+
+    public synchronized State getState() {
+        return state;
+    }
+
+    /**
+     * @return milliseconds until the open circuit lets trial calls through, 0 if not open
+     */
+    synchronized long getRemainingOpenMillis(long now) {
+        return (state == State.OPEN) ? Math.max(0, openedAt + CONF.getHttpCircuitBreakerOpenMillis() - now) : 0;
+    }
+
+    /**
+     * Asks for permission to call the route.
+     *
+     * @return false if the call must not be made
+     */
+    boolean tryAcquire(long now) {
+        State[] transition = null;
+        boolean permitted = true;
+        synchronized (this) {
+            if (state == State.OPEN) {
+                if (now < openedAt + CONF.getHttpCircuitBreakerOpenMillis()) {
+                    return false;
+                }
+                transition = transition(State.HALF_OPEN);
+            }
+            if (state == State.HALF_OPEN) {
+                if (trialCalls >= CONF.getHttpCircuitBreakerHalfOpenCalls()) {
+                    permitted = false;
+                } else {
+                    trialCalls++;
+                }
+            }
+        }
+        fire(transition);
+        return permitted;
+    }
+
+    /**
+     * Records the outcome of a permitted call.
+     */
+    void onResult(boolean failure, long durationMillis, long now) {
+        State[] transition = null;
+        synchronized (this) {
+            if (state == State.OPEN) {
+                // a call started before the circuit opened
+                return;
+            }
+            boolean slow = durationMillis >= CONF.getHttpCircuitBreakerSlowCallMillis();
+            if (calls == failures.length) {
+                failureCount -= failures[next] ? 1 : 0;
+                slowCount -= slows[next] ? 1 : 0;
+            } else {
+                calls++;
+            }
+            failures[next] = failure;
+            slows[next] = slow;
+            failureCount += failure ? 1 : 0;
+            slowCount += slow ? 1 : 0;
+            next = (next + 1) % failures.length;
+
+            if (state == State.HALF_OPEN) {
+                if (calls >= CONF.getHttpCircuitBreakerHalfOpenCalls()) {
+                    transition = transition(isOverThreshold() ? State.OPEN : State.CLOSED);
+                }
+            } else if (calls >= CONF.getHttpCircuitBreakerMinimumCalls() && isOverThreshold()) {
+                transition = transition(State.OPEN);
+            }
+            if (state == State.OPEN) {
+                openedAt = now;
+            }
+        }
+        fire(transition);
+    }
+
+    private void fire(State[] transition) {
+        if (transition != null && listener != null) {
+            listener.stateChanged(this, transition[0], transition[1]);
+        }
+    }
+
+    private boolean isOverThreshold() {
+        return failureCount * 100 >= CONF.getHttpCircuitBreakerFailureRate() * calls
+                || slowCount * 100 >= CONF.getHttpCircuitBreakerSlowCallRate() * calls;
+    }
+
+    /**
+     * Changes the state and starts an empty window.
+     */
+    private State[] transition(State to) {
+        State from = state;
+        state = to;
+        calls = 0;
+        next = 0;
+        failureCount = 0;
+        slowCount = 0;
+        trialCalls = 0;
+        return new State[]{from, to};
+    }
+
+    @Override
+    public synchronized String toString() {
+        return "HttpCircuitBreaker{" +
+                "route=" + route +
+                ", state=" + state +
+                ", calls=" + calls +
+                ", failureCount=" + failureCount +
+                ", slowCount=" + slowCount +
+                '}';
+    }
+}
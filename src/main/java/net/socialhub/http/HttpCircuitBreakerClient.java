@@ -0,0 +1,150 @@
+package net.socialhub.http;
+
+import net.socialhub.logger.Logger;
+
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.function.BiConsumer;
+
+/**
+ * Client failing fast with {@link HttpCircuitOpenException} while the upstream of a route is down,
+ * instead of letting every caller wait for the connect timeout.
+ * Each route has a {@link HttpCircuitBreaker}; a call fails if no response is received or
+ * the status is 5xx, and is slow if it takes more than
+ * {@link HttpClientConfiguration#getHttpCircuitBreakerSlowCallMillis()}.
+ * The outcome recorded is the one of the whole request, after the retries of the wrapped client.
+ */
+public class HttpCircuitBreakerClient implements HttpClient, HttpResponseCode {
+
+    private static final Logger logger = Logger.getLogger(HttpCircuitBreakerClient.class);
+
+    private final HttpClientConfiguration CONF;
+    private final HttpClient client;
+    private final ConcurrentMap<HttpRoute, HttpCircuitBreaker> breakers = new ConcurrentHashMap<>();
+    private volatile HttpCircuitBreakerListener listener;
+
+    public HttpCircuitBreakerClient(HttpClientConfiguration conf, HttpClient client) {
+        this.CONF = conf;
+        this.client = client;
+        this.listener = conf.getHttpCircuitBreakerListener();
+    }
+
+    /**
+     * Sets the listener notified of the state transitions, replacing the configured one.
+     */
+    public void setListener(HttpCircuitBreakerListener listener) {
+        this.listener = listener;
+    }
+
+    /**
+     * @return the circuit breaker of the route of the url
+     */
+    public HttpCircuitBreaker getCircuitBreaker(String url) {
+        return getCircuitBreaker(HttpRoute.of(url));
+    }
+
+    private HttpCircuitBreaker getCircuitBreaker(HttpRoute route) {
+        HttpCircuitBreaker breaker = breakers.get(route);
+        if (breaker == null) {
+            HttpCircuitBreaker created = new HttpCircuitBreaker(route, CONF, new HttpCircuitBreakerListener() {
+                @Override
+                public void stateChanged(HttpCircuitBreaker breaker, HttpCircuitBreaker.State from, HttpCircuitBreaker.State to) {
+                    logger.debug("Circuit breaker " + from + " -> " + to + ": " + breaker.getRoute());
+                    HttpCircuitBreakerListener current = listener;
+                    if (current != null) {
+                        current.stateChanged(breaker, from, to);
+                    }
+                }
+            });
+            breaker = breakers.putIfAbsent(route, created);
+            if (breaker == null) {
+                breaker = created;
+            }
+        }
+        return breaker;
+    }
+
+    /**
+     * @return the breaker which permitted the request
+     */
+    private HttpCircuitBreaker acquire(HttpRequest req) throws HttpException {
+        HttpCircuitBreaker breaker;
+        try {
+            breaker = getCircuitBreaker(HttpRoute.of(req.getURL()));
+        } catch (IllegalArgumentException e) {
+            throw new HttpException(e.getMessage(), e);
+        }
+        long now = System.currentTimeMillis();
+        if (!breaker.tryAcquire(now)) {
+            throw new HttpCircuitOpenException(breaker.getRoute(), breaker.getRemainingOpenMillis(now));
+        }
+        return breaker;
+    }
+
+    @Override
+    public HttpResponse request(HttpRequest req) throws HttpException {
+        HttpCircuitBreaker breaker = acquire(req);
+        long start = System.currentTimeMillis();
+        boolean failure = true;
+        try {
+            HttpResponse res = client.request(req);
+            failure = false;
+            return res;
+        } catch (HttpException e) {
+            failure = isFailure(e);
+            throw e;
+        } finally {
+            long now = System.currentTimeMillis();
+            breaker.onResult(failure, now - start, now);
+        }
+    }
+
+    @Override
+    public CompletableFuture<HttpResponse> requestAsync(HttpRequest req) {
+        final HttpCircuitBreaker breaker;
+        try {
+            breaker = acquire(req);
+        } catch (HttpException e) {
+            CompletableFuture<HttpResponse> future = new CompletableFuture<>();
+            future.completeExceptionally(e);
+            return future;
+        }
+        final long start = System.currentTimeMillis();
+        return HttpClientBase.relay(client.requestAsync(req), new BiConsumer<HttpResponse, Throwable>() {
+            @Override
+            public void accept(HttpResponse res, Throwable e) {
+                Throwable cause = (e instanceof CompletionException && e.getCause() != null) ? e.getCause() : e;
+                long now = System.currentTimeMillis();
+                // a request cancelled by the caller says nothing about the upstream
+                boolean failure = cause != null && !(cause instanceof CancellationException) && isFailure(cause);
+                breaker.onResult(failure, now - start, now);
+            }
+        });
+    }
+
+    /**
+     * @return true unless the server answered with a status other than 5xx
+     */
+    private static boolean isFailure(Throwable e) {
+        if (e instanceof HttpException && ((HttpException) e).getResponse() != null) {
+            return ((HttpException) e).getResponse().getStatusCode() >= INTERNAL_SERVER_ERROR;
+        }
+        return true;
+    }
+
+    @Override
+    public void shutdown() {
+        client.shutdown();
+    }
+
+    @Override
+    public String toString() {
+        return "HttpCircuitBreakerClient{" +
+                "client=" + client +
+                ", breakers=" + breakers.values() +
+                '}';
+    }
+}
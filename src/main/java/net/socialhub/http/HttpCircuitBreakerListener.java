@@ -0,0 +1,13 @@
+package net.socialhub.http;
+
+import net.socialhub.http.HttpCircuitBreaker.State;
+
+/**
+ * Receives the state transitions of the circuit breakers of a {@link HttpCircuitBreakerClient}.
+ * Called on the thread making the transition, outside of any lock of the breaker.
+ */
+public interface HttpCircuitBreakerListener {
+
+    public void stateChanged(HttpCircuitBreaker breaker, State from, State to);
+
+}
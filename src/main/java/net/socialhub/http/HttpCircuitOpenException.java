@@ -0,0 +1,31 @@
+package net.socialhub.http;
+
+/**
+ * Thrown without sending the request while the circuit breaker of its route is open.
+ *
+ * @see HttpCircuitBreakerClient
+ */
+public class HttpCircuitOpenException extends HttpException {
+
+    private static final long serialVersionUID = 6218924671246914179L;
+
+    private final HttpRoute route;
+    private final long remainingMillis;
+
+    public HttpCircuitOpenException(HttpRoute route, long remainingMillis) {
+        super("Circuit breaker is open: " + route, (Exception) null);
+        this.route = route;
+        this.remainingMillis = remainingMillis;
+    }
+
+    public HttpRoute getRoute() {
+        return route;
+    }
+
+    /**
+     * @return milliseconds until the circuit lets trial requests through
+     */
+    public long getRemainingMillis() {
+        return remainingMillis;
+    }
+}
@@ -16,6 +16,10 @@
 
 package net.socialhub.http;
 
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.function.Supplier;
+
 /**
  * A utility class to handle HTTP request/response.
  *
@@ -25,5 +29,26 @@ public interface HttpClient {
 
     HttpResponse request(HttpRequest req) throws HttpException;
 
+    /**
+     * Sends the request without blocking the caller.
+     * The future fails with {@link HttpException} where {@link #request(HttpRequest)} would throw it.
+     * By default the request is sent by {@link #request(HttpRequest)} on the common pool.
+     *
+     * @param req request
+     * @return future of the response
+     */
+    default CompletableFuture<HttpResponse> requestAsync(final HttpRequest req) {
+        return CompletableFuture.supplyAsync(new Supplier<HttpResponse>() {
+            @Override
+            public HttpResponse get() {
+                try {
+                    return request(req);
+                } catch (HttpException e) {
+                    throw new CompletionException(e);
+                }
+            }
+        });
+    }
+
     void shutdown();
 }
@@ -1,19 +1,214 @@
 package net.socialhub.http;
 
+import net.socialhub.logger.Logger;
+
 import java.io.DataOutputStream;
 import java.io.IOException;
+import java.io.OutputStream;
 import java.io.Serializable;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.BiConsumer;
 
 
 public class HttpClientBase implements Serializable {
 
+    private static final Logger logger = Logger.getLogger(HttpClientBase.class);
+
     protected final HttpClientConfiguration CONF;
 
+    private transient ExecutorService asyncExecutor;
+    private transient HttpRetryPolicy retryPolicy;
+    private transient HttpRetryBudget retryBudget;
+
     public HttpClientBase(HttpClientConfiguration conf) {
         this.CONF = conf;
     }
 
-    public void shutdown() {
+    public synchronized void shutdown() {
+        if (asyncExecutor != null) {
+            asyncExecutor.shutdown();
+        }
+    }
+
+    /**
+     * Returns the executor running asynchronous requests.
+     * It runs at most {@link HttpClientConfiguration#getHttpAsyncThreads()} requests at once
+     * and queues at most {@link HttpClientConfiguration#getHttpAsyncQueueSize()} more.
+     */
+    protected synchronized ExecutorService getAsyncExecutor() {
+        if (asyncExecutor == null) {
+            ThreadPoolExecutor executor = new ThreadPoolExecutor(
+                    CONF.getHttpAsyncThreads(), CONF.getHttpAsyncThreads(),
+                    60, TimeUnit.SECONDS,
+                    new LinkedBlockingQueue<Runnable>(CONF.getHttpAsyncQueueSize()),
+                    daemonThreadFactory("JHttpClient-async"));
+            executor.allowCoreThreadTimeOut(true);
+            asyncExecutor = executor;
+        }
+        return asyncExecutor;
+    }
+
+    protected synchronized HttpRetryPolicy getRetryPolicy() {
+        if (retryPolicy == null) {
+            retryPolicy = CONF.getHttpRetryPolicy();
+        }
+        return retryPolicy;
+    }
+
+    protected synchronized HttpRetryBudget getRetryBudget() {
+        if (retryBudget == null) {
+            retryBudget = new HttpRetryBudget(CONF.getHttpRetryBudgetRatio(), CONF.getHttpRetryBudgetMinPerSecond());
+        }
+        return retryBudget;
+    }
+
+    /**
+     * Consults the retry policy, the deadline of the request and the retry budget after a failed attempt.
+     * A 420 or 429 response is not retried when {@link HttpClientConfiguration#isHttpRateLimitEnabled()},
+     * it is left to the rate limiter, which would not be consulted for the retry.
+     *
+     * @param res   the response of the attempt, or null
+     * @param error the error of the attempt, or null
+     * @return milliseconds to wait before the next attempt, or -1 to give up
+     */
+    protected long getRetryDelay(HttpRequest req, int retriedCount, HttpResponse res, Throwable error) {
+        if (CONF.isHttpRateLimitEnabled()) {
+            int status = (res != null) ? res.getStatusCode() : getStatusCode(error);
+            if (status == HttpResponseCode.TOO_MANY_REQUESTS || status == HttpResponseCode.ENHANCE_YOUR_CLAIM) {
+                logger.debug("Rate limited, leaving it to the rate limiter: " + req.getURL());
+                return -1;
+            }
+        }
+        long delay = getRetryPolicy().getRetryDelay(req, retriedCount, res, error);
+        if (delay < 0) {
+            return -1;
+        }
+        if (delay >= req.getTimeouts().getRemainingMillis(System.currentTimeMillis())) {
+            logger.debug("Deadline too close to retry, giving up: " + req.getURL());
+            return -1;
+        }
+        if (!getRetryBudget().tryRetry()) {
+            logger.debug("Retry budget exhausted, giving up: " + req.getURL());
+            return -1;
+        }
+        return delay;
+    }
+
+    /**
+     * @return true if the deadline of the request has passed
+     */
+    protected static boolean isDeadlineExceeded(HttpRequest req) {
+        return req.getTimeouts().getRemainingMillis(System.currentTimeMillis()) <= 0;
+    }
+
+    /**
+     * Starts recording a request, counting it as active in the metrics of the configuration.
+     * The timings must be finished once the request is done, whatever its outcome.
+     */
+    HttpTimings startTimings(HttpRequest req) {
+        HttpMetrics metrics = CONF.getHttpMetrics();
+        if (metrics == null) {
+            return new HttpTimings();
+        }
+        HttpRoute route;
+        try {
+            route = HttpRoute.of(req.getURL());
+        } catch (IllegalArgumentException e) {
+            route = null;
+        }
+        return new HttpTimings(metrics, route);
+    }
+
+    /**
+     * @return status of the response the request failed with, {@link HttpRouteMetrics#NO_RESPONSE} if none
+     */
+    static int getStatusCode(Throwable e) {
+        if (e instanceof HttpException) {
+            HttpException he = (HttpException) e;
+            if (he.getResponse() != null) {
+                return he.getResponse().getStatusCode();
+            }
+            if (he.getResponseCode() > 0) {
+                return he.getResponseCode();
+            }
+        }
+        return HttpRouteMetrics.NO_RESPONSE;
+    }
+
+    protected static ThreadFactory daemonThreadFactory(final String prefix) {
+        return new ThreadFactory() {
+            private final AtomicInteger count = new AtomicInteger();
+
+            @Override
+            public Thread newThread(Runnable r) {
+                Thread thread = new Thread(r, prefix + "-" + count.incrementAndGet());
+                thread.setDaemon(true);
+                return thread;
+            }
+        };
+    }
+
+    /**
+     * Cancels the inner future when the result is cancelled, so that the request is not left running.
+     */
+    static void cancelWith(final CompletableFuture<?> result, final Future<?> inner) {
+        result.whenComplete(new BiConsumer<Object, Throwable>() {
+            @Override
+            public void accept(Object res, Throwable e) {
+                if (result.isCancelled()) {
+                    inner.cancel(false);
+                }
+            }
+        });
+    }
+
+    /**
+     * Completes the result with the response, disconnecting it if the result is already done.
+     */
+    static void completeOrDisconnect(CompletableFuture<HttpResponse> result, HttpResponse res) {
+        if (!result.complete(res) && res != null) {
+            res.disconnectForcibly();
+        }
+    }
+
+    /**
+     * Returns a future completed with the outcome of the inner one once the callback has seen it.
+     * Cancelling the returned future cancels the inner one.
+     *
+     * @param inner    future of the wrapped client
+     * @param callback called with the outcome before the returned future completes
+     */
+    static CompletableFuture<HttpResponse> relay(final CompletableFuture<HttpResponse> inner,
+                                                 final BiConsumer<HttpResponse, Throwable> callback) {
+        final CompletableFuture<HttpResponse> result = new CompletableFuture<>();
+        cancelWith(result, inner);
+        inner.whenComplete(new BiConsumer<HttpResponse, Throwable>() {
+            @Override
+            public void accept(HttpResponse res, Throwable e) {
+                try {
+                    callback.accept(res, e);
+                } catch (RuntimeException ce) {
+                    if (res != null) {
+                        res.disconnectForcibly();
+                    }
+                    result.completeExceptionally(ce);
+                    return;
+                }
+                if (e != null) {
+                    result.completeExceptionally(e);
+                } else {
+                    completeOrDisconnect(result, res);
+                }
+            }
+        });
+        return result;
     }
 
     protected boolean isProxyConfigured() {
@@ -24,6 +219,16 @@ public class HttpClientBase implements Serializable {
         out.writeBytes(outStr);
     }
 
+    /**
+     * writes the content of the file parameter
+     *
+     * @param out   output stream
+     * @param param file parameter
+     */
+    protected void writeFileBody(OutputStream out, HttpParameter param) throws IOException {
+        param.writeFileTo(out);
+    }
+
     @Override
     public boolean equals(Object o) {
         if (this == o) return true;
@@ -37,10 +37,41 @@ public interface HttpClientConfiguration {
 
     int getHttpRetryIntervalSeconds();
 
+    default int getHttpRetryMaxIntervalSeconds() {
+        return 60;
+    }
+
+    /**
+     * @return policy deciding when failed requests are retried, created once per client
+     */
+    default HttpRetryPolicy getHttpRetryPolicy() {
+        return new HttpBackoffRetryPolicy(getHttpRetryCount(),
+                getHttpRetryIntervalSeconds() * 1000L, getHttpRetryMaxIntervalSeconds() * 1000L);
+    }
+
+    /**
+     * @return retries allowed per request, see {@link HttpRetryBudget}
+     */
+    default double getHttpRetryBudgetRatio() {
+        return 0.2;
+    }
+
+    default int getHttpRetryBudgetMinPerSecond() {
+        return 10;
+    }
+
     int getHttpMaxTotalConnections();
 
     int getHttpDefaultMaxPerRoute();
 
+    default int getHttpConnectionRequestTimeout() {
+        return 20000;
+    }
+
+    default int getHttpConnectionIdleTimeout() {
+        return 30000;
+    }
+
     String getFormTextContentType();
 
     String[] getRawContentTypes();
@@ -49,6 +80,141 @@ public interface HttpClientConfiguration {
 
     boolean isGZIPEnabled();
 
+    default boolean isHttpNioEnabled() {
+        return false;
+    }
+
+    default int getHttpNioThreads() {
+        return 2;
+    }
+
+    default int getHttpAsyncThreads() {
+        return 4;
+    }
+
+    default int getHttpAsyncQueueSize() {
+        return 256;
+    }
+
+    default boolean isHttpCacheEnabled() {
+        return false;
+    }
+
+    default long getHttpCacheMaxBytes() {
+        return 10 * 1024 * 1024;
+    }
+
+    default String getHttpDiskCacheDirectory() {
+        return null;
+    }
+
+    default long getHttpDiskCacheMaxBytes() {
+        return 256L * 1024 * 1024;
+    }
+
+    default boolean isHttpCoalescingEnabled() {
+        return false;
+    }
+
+    default boolean isHttpCircuitBreakerEnabled() {
+        return false;
+    }
+
+    /**
+     * @return number of the last calls of a route over which the rates are computed
+     */
+    default int getHttpCircuitBreakerWindowSize() {
+        return 20;
+    }
+
+    /**
+     * @return number of calls needed in the window before the circuit can open
+     */
+    default int getHttpCircuitBreakerMinimumCalls() {
+        return 10;
+    }
+
+    /**
+     * @return percentage of failed calls opening the circuit
+     */
+    default int getHttpCircuitBreakerFailureRate() {
+        return 50;
+    }
+
+    /**
+     * @return percentage of slow calls opening the circuit
+     */
+    default int getHttpCircuitBreakerSlowCallRate() {
+        return 80;
+    }
+
+    default int getHttpCircuitBreakerSlowCallMillis() {
+        return 10000;
+    }
+
+    /**
+     * @return time the circuit stays open before trial calls are let through
+     */
+    default int getHttpCircuitBreakerOpenMillis() {
+        return 30000;
+    }
+
+    default int getHttpCircuitBreakerHalfOpenCalls() {
+        return 3;
+    }
+
+    default HttpCircuitBreakerListener getHttpCircuitBreakerListener() {
+        return null;
+    }
+
+    default boolean isHttpRateLimitEnabled() {
+        return false;
+    }
+
+    /**
+     * @return requests per second allowed to each host
+     */
+    default double getHttpRateLimitPerSecond() {
+        return 10;
+    }
+
+    default int getHttpRateLimitBurst() {
+        return 10;
+    }
+
+    /**
+     * @return longest time a request waits for the rate limit, 0 to fail fast
+     */
+    default int getHttpRateLimitMaxWaitMillis() {
+        return 10000;
+    }
+
+    default boolean isHttpHedgingEnabled() {
+        return false;
+    }
+
+    /**
+     * @return time before a GET or HEAD request without response is sent again,
+     * 0 to use the 95th percentile of the recent latencies of the route
+     */
+    default int getHttpHedgeDelayMillis() {
+        return 0;
+    }
+
+    /**
+     * @return hedged requests allowed per request, see {@link HttpRetryBudget}
+     */
+    default double getHttpHedgeBudgetRatio() {
+        return 0.05;
+    }
+
+    /**
+     * @return registry the requests are recorded in, shared by the clients returning it, or null
+     */
+    default HttpMetrics getHttpMetrics() {
+        return null;
+    }
+
 
     public static class HttpClientDefaultConfiguration implements HttpClientConfiguration {
 
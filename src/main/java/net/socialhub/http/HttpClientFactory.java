@@ -16,6 +16,10 @@
 
 package net.socialhub.http;
 
+import net.socialhub.logger.Logger;
+
+import java.io.File;
+import java.io.IOException;
 import java.lang.reflect.Constructor;
 import java.lang.reflect.InvocationTargetException;
 
@@ -25,19 +29,54 @@ import java.lang.reflect.InvocationTargetException;
  */
 public final class HttpClientFactory {
 
-    private static final Constructor HTTP_CLIENT_CONSTRUCTOR;
+    private static final Logger logger = Logger.getLogger(HttpClientFactory.class);
+
+    private static final Constructor<? extends HttpClient> HTTP_CLIENT_CONSTRUCTOR;
+    private static final Constructor<? extends HttpClient> HTTP_CLIENT_NIO_CONSTRUCTOR;
 
     static {
         try {
             HTTP_CLIENT_CONSTRUCTOR = HttpClientImpl.class.getConstructor(HttpClientConfiguration.class);
+            HTTP_CLIENT_NIO_CONSTRUCTOR = HttpClientNioImpl.class.getConstructor(HttpClientConfiguration.class);
         } catch (NoSuchMethodException nsme) {
             throw new AssertionError(nsme);
         }
     }
 
+    /**
+     * Returns {@link HttpClientNioImpl} if {@link HttpClientConfiguration#isHttpNioEnabled()}
+     * and no proxy is configured, {@link HttpClientImpl} otherwise.
+     * The client is wrapped in a {@link HttpRateLimitedClient} if {@link HttpClientConfiguration#isHttpRateLimitEnabled()}
+     * (first, so that every hedge takes a permit),
+     * in a {@link HttpHedgingClient} if {@link HttpClientConfiguration#isHttpHedgingEnabled()},
+     * in a {@link HttpCircuitBreakerClient} if {@link HttpClientConfiguration#isHttpCircuitBreakerEnabled()},
+     * in a {@link HttpCachingClient} if {@link HttpClientConfiguration#isHttpCacheEnabled()},
+     * with a {@link HttpDiskCache} if {@link HttpClientConfiguration#getHttpDiskCacheDirectory()} is set,
+     * and in a {@link HttpCoalescingClient} if {@link HttpClientConfiguration#isHttpCoalescingEnabled()}.
+     */
     public static HttpClient getInstance(HttpClientConfiguration conf) {
+        boolean proxy = conf.getHttpProxyHost() != null && !conf.getHttpProxyHost().equals("");
+        Constructor<? extends HttpClient> constructor = (conf.isHttpNioEnabled() && !proxy)
+                ? HTTP_CLIENT_NIO_CONSTRUCTOR : HTTP_CLIENT_CONSTRUCTOR;
         try {
-            return (HttpClient) HTTP_CLIENT_CONSTRUCTOR.newInstance(conf);
+            HttpClient client = constructor.newInstance(conf);
+            if (conf.isHttpRateLimitEnabled()) {
+                client = new HttpRateLimitedClient(conf, client);
+            }
+            if (conf.isHttpHedgingEnabled()) {
+                client = new HttpHedgingClient(conf, client);
+            }
+            if (conf.isHttpCircuitBreakerEnabled()) {
+                client = new HttpCircuitBreakerClient(conf, client);
+            }
+            if (conf.isHttpCacheEnabled()) {
+                client = new HttpCachingClient(conf, client,
+                        new HttpResponseCache(conf.getHttpCacheMaxBytes()), getDiskCache(conf));
+            }
+            if (conf.isHttpCoalescingEnabled()) {
+                client = new HttpCoalescingClient(conf, client);
+            }
+            return client;
         } catch (InstantiationException e) {
             throw new AssertionError(e);
         } catch (IllegalAccessException e) {
@@ -46,4 +85,20 @@ public final class HttpClientFactory {
             throw new AssertionError(e);
         }
     }
+
+    /**
+     * @return the disk cache, or null if not configured or the directory cannot be used
+     */
+    private static HttpDiskCache getDiskCache(HttpClientConfiguration conf) {
+        if (conf.getHttpDiskCacheDirectory() == null) {
+            return null;
+        }
+        try {
+            return new HttpDiskCache(new File(conf.getHttpDiskCacheDirectory()),
+                    conf.getHttpDiskCacheMaxBytes(), HttpDiskCache.DEFAULT_MAX_ENTRIES);
+        } catch (IOException e) {
+            logger.debug("Disk cache is disabled: " + e.getMessage());
+            return null;
+        }
+    }
 }
@@ -20,9 +20,8 @@ package net.socialhub.http;
 import net.socialhub.http.HttpClientConfiguration.HttpClientDefaultConfiguration;
 import net.socialhub.logger.Logger;
 
-import java.io.BufferedInputStream;
-import java.io.DataOutputStream;
-import java.io.FileInputStream;
+import java.io.Closeable;
+import java.io.FilterOutputStream;
 import java.io.IOException;
 import java.io.OutputStream;
 import java.io.Serializable;
@@ -33,9 +32,12 @@ import java.net.PasswordAuthentication;
 import java.net.Proxy;
 import java.net.URL;
 import java.net.URLEncoder;
+import java.nio.charset.StandardCharsets;
 import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.RejectedExecutionException;
 
 import static net.socialhub.logger.Logger.LogLevel.DEBUG;
 
@@ -65,6 +67,8 @@ public class HttpClientImpl extends HttpClientBase implements HttpClient, HttpRe
         }
     }
 
+    private transient HttpConnectionPool<Closeable> pool;
+
     public HttpClientImpl(HttpClientConfiguration conf) {
         super(conf);
     }
@@ -73,6 +77,24 @@ public class HttpClientImpl extends HttpClientBase implements HttpClient, HttpRe
         super(new HttpClientDefaultConfiguration());
     }
 
+    /**
+     * Returns the pool bounding the requests of this client waiting for their response head
+     * by {@link HttpClientConfiguration#getHttpMaxTotalConnections()}
+     * and {@link HttpClientConfiguration#getHttpDefaultMaxPerRoute()}.
+     */
+    public synchronized HttpConnectionPool<Closeable> getConnectionPool() {
+        if (pool == null) {
+            pool = new HttpConnectionPool<>(CONF);
+        }
+        return pool;
+    }
+
+    @Override
+    public void shutdown() {
+        super.shutdown();
+        getConnectionPool().shutdown();
+    }
+
     private static final Map<HttpClientConfiguration, HttpClient> instanceMap = new HashMap<>(1);
 
     public static HttpClient getInstance(HttpClientConfiguration conf) {
@@ -93,60 +115,78 @@ public class HttpClientImpl extends HttpClientBase implements HttpClient, HttpRe
     }
 
     public HttpResponse request(HttpRequest req) throws HttpException {
+        HttpTimings timings = startTimings(req);
+        timings.setQueueNanos(0);
+        return request(req, timings);
+    }
+
+    /**
+     * Sends the request, recording the timings of the attempts.
+     */
+    private HttpResponse request(HttpRequest req, HttpTimings timings) throws HttpException {
+        try {
+            HttpResponse res = execute(req, timings);
+            timings.finish(res.getStatusCode(), null);
+            return res;
+        } catch (HttpException e) {
+            timings.finish(getStatusCode(e), e);
+            e.setTimings(timings);
+            throw e;
+        } catch (RuntimeException e) {
+            timings.finish(HttpRouteMetrics.NO_RESPONSE, e);
+            throw e;
+        }
+    }
+
+    private HttpResponse execute(HttpRequest req, HttpTimings timings) throws HttpException {
         int retriedCount;
-        int retry = CONF.getHttpRetryCount() + 1;
         HttpResponse res = null;
-        for (retriedCount = 0; retriedCount < retry; retriedCount++) {
+        HttpConnectionPool<Closeable> pool = getConnectionPool();
+        HttpRoute route;
+        try {
+            route = HttpRoute.of(req.getURL());
+        } catch (IllegalArgumentException e) {
+            throw new HttpException(e.getMessage(), e);
+        }
+        HttpTimeouts timeouts = req.getTimeouts();
+        getRetryBudget().onRequest();
+        for (retriedCount = 0; ; retriedCount++) {
             int responseCode = -1;
+            long delay;
+            if (isDeadlineExceeded(req)) {
+                throw new HttpDeadlineExceededException(req.getURL(), null);
+            }
+            timings.startAttempt(retriedCount);
+            long leaseStart = System.nanoTime();
+            // released once the response head has arrived
+            HttpPoolEntry<Closeable> entry = pool.lease(route,
+                    timeouts.limit(CONF.getHttpConnectionRequestTimeout(), System.currentTimeMillis()));
+            timings.setConnectionAcquireNanos(System.nanoTime() - leaseStart);
             try {
                 HttpURLConnection con;
                 OutputStream os = null;
                 try {
                     con = getConnection(req.getURL());
+                    setTimeouts(con, timeouts);
                     con.setDoInput(true);
                     setHeaders(req, con);
                     con.setRequestMethod(req.getMethod().name());
                     if (req.getMethod() == RequestMethod.POST) {
                         if (HttpParameter.isMultipartRequest(req.getParameters(), CONF.getRawContentTypes())) {
-                            String boundary = "----JHttpClient-upload" + System.currentTimeMillis();
-                            con.setRequestProperty("Content-Type", "multipart/form-data; boundary=" + boundary);
-                            boundary = "--" + boundary;
-                            con.setDoOutput(true);
-                            os = con.getOutputStream();
-                            DataOutputStream out = new DataOutputStream(os);
-                            for (HttpParameter param : req.getParameters()) {
-
-                                if (param.isFile()) {
-                                    write(out, boundary + "\r\n");
-                                    write(out, "Content-Disposition: form-data; name=\"" + param.getName() + "\"; filename=\"" + param.getFile().getName() + "\"\r\n");
-                                    write(out, "Content-Type: " + param.getContentType() + "\r\n\r\n");
-                                    BufferedInputStream in = new BufferedInputStream(
-                                            param.hasFileBody() ? param.getFileBody() : new FileInputStream(param.getFile())
-                                    );
-                                    int buff;
-                                    while ((buff = in.read()) != -1) {
-                                        out.write(buff);
-                                    }
-                                    write(out, "\r\n");
-                                    in.close();
-
-                                } else {
-                                    write(out, boundary + "\r\n");
-                                    write(out, "Content-Disposition: form-data; name=\"" + param.getName() + "\"\r\n");
-
-                                    // フォーム中のコンテンツタイプの設定
-                                    if (CONF.getFormTextContentType() != null) {
-                                        write(out, "Content-Type: " + CONF.getFormTextContentType() + "; charset=UTF-8\r\n");
-                                    }
-
-                                    write(out, "\r\n");
-                                    logger.debug(param.getValue());
-                                    out.write(param.getValue().getBytes("UTF-8"));
-                                    write(out, "\r\n");
-                                }
+                            HttpMultipartEntity multipart = new HttpMultipartEntity(
+                                    req.getParameters(), CONF.getFormTextContentType());
+                            con.setRequestProperty("Content-Type", multipart.getContentType());
+
+                            // stream the parts instead of letting HttpURLConnection buffer them
+                            long length = multipart.getContentLength();
+                            if (length >= 0) {
+                                con.setFixedLengthStreamingMode(length);
+                            } else {
+                                con.setChunkedStreamingMode(0);
                             }
-                            write(out, boundary + "--\r\n");
-                            write(out, "\r\n");
+                            con.setDoOutput(true);
+                            os = openRequestBody(con, timings);
+                            multipart.writeTo(os);
 
                         } else {
                             if ((req.getParameters().length == 1) &&
@@ -154,35 +194,41 @@ public class HttpClientImpl extends HttpClientBase implements HttpClient, HttpRe
 
                                 HttpParameter param = req.getParameters()[0];
                                 con.setRequestProperty("Content-Type", param.getContentType());
+                                if (!param.hasFileBody()) {
+                                    con.setFixedLengthStreamingMode(param.getFile().length());
+                                }
 
                                 con.setDoOutput(true);
-                                os = con.getOutputStream();
-                                DataOutputStream out = new DataOutputStream(os);
-                                BufferedInputStream in = new BufferedInputStream(
-                                        param.hasFileBody() ? param.getFileBody() : new FileInputStream(param.getFile())
-                                );
-                                int buff;
-                                while ((buff = in.read()) != -1) {
-                                    out.write(buff);
-                                }
+                                os = openRequestBody(con, timings);
+                                writeFileBody(os, param);
 
                             } else {
                                 con.setRequestProperty("Content-Type",
                                         "application/x-www-form-urlencoded");
-                                String postParam = HttpParameter.encodeParameters(req.getParameters());
-                                logger.debug("Post Params: " + postParam);
-                                byte[] bytes = postParam.getBytes("UTF-8");
+                                byte[] bytes = HttpParameter.encodeParametersAsBytes(req.getParameters());
+                                if (logger.getLogLevel().isLogTarget(DEBUG)) {
+                                    logger.debug("Post Params: " + new String(bytes, StandardCharsets.US_ASCII));
+                                }
                                 con.setRequestProperty("Content-Length",
                                         Integer.toString(bytes.length));
                                 con.setDoOutput(true);
-                                os = con.getOutputStream();
+                                os = openRequestBody(con, timings);
                                 os.write(bytes);
                             }
                         }
                         os.flush();
                         os.close();
                     }
-                    res = new HttpResponseImpl(con, CONF);
+                    if (os == null) {
+                        connect(con, timings);
+                    }
+                    long requested = System.nanoTime();
+                    res = new HttpResponseImpl(con, CONF, timings);
+                    timings.setTimeToFirstByteNanos(System.nanoTime() - requested);
+                    // HttpURLConnection keeps the socket alive by itself, so the slot only has to bound
+                    // the requests waiting for their head, whether or not the caller reads the body
+                    pool.release(entry, false);
+                    entry = null;
                     responseCode = con.getResponseCode();
 
                     if (logger.getLogLevel().isLogTarget(DEBUG)) {
@@ -201,13 +247,10 @@ public class HttpClientImpl extends HttpClientBase implements HttpClient, HttpRe
                         }
                     }
                     if (responseCode < OK || (responseCode != FOUND && MULTIPLE_CHOICES <= responseCode)) {
-                        if (responseCode == ENHANCE_YOUR_CLAIM ||
-                                responseCode == BAD_REQUEST ||
-                                responseCode < INTERNAL_SERVER_ERROR ||
-                                retriedCount == CONF.getHttpRetryCount()) {
+                        delay = getRetryDelay(req, retriedCount, res, null);
+                        if (delay < 0) {
                             throw new HttpException(res.asString(), res);
                         }
-                        // will retry if the status code is INTERNAL_SERVER_ERROR
                     } else {
                         break;
                     }
@@ -219,24 +262,74 @@ public class HttpClientImpl extends HttpClientBase implements HttpClient, HttpRe
                 }
             } catch (IOException ioe) {
                 // connection timeout or read timeout
-                if (retriedCount == CONF.getHttpRetryCount()) {
+                if (isDeadlineExceeded(req)) {
+                    throw new HttpDeadlineExceededException(req.getURL(), ioe);
+                }
+                delay = getRetryDelay(req, retriedCount, null, ioe);
+                if (delay < 0) {
                     throw new HttpException(ioe.getMessage(), ioe, responseCode);
                 }
+            } finally {
+                if (entry != null) {
+                    pool.release(entry, false);
+                }
             }
-            try {
-                if (logger.getLogLevel().isLogTarget(DEBUG) && res != null) {
+            // drain the failed response so that its connection is released
+            if (res != null) {
+                try {
                     res.asString();
+                } catch (HttpException ignore) {
                 }
+                res = null;
+            }
 
-                logger.debug("Sleeping " + CONF.getHttpRetryIntervalSeconds() + " seconds until the next retry.");
-                Thread.sleep(CONF.getHttpRetryIntervalSeconds() * 1000);
-            } catch (InterruptedException ignore) {
-                //nothing to do
+            logger.debug("Sleeping " + delay + " milliseconds until the next retry.");
+            try {
+                Thread.sleep(delay);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new HttpException("Interrupted while waiting to retry.", e);
             }
         }
         return res;
     }
 
+    /**
+     * Runs {@link #request(HttpRequest)} on the executor returned by {@link #getAsyncExecutor()}.
+     * The future fails immediately if the executor's queue is full.
+     */
+    public CompletableFuture<HttpResponse> requestAsync(final HttpRequest req) {
+        final CompletableFuture<HttpResponse> future = new CompletableFuture<>();
+        final long queued = System.nanoTime();
+        try {
+            getAsyncExecutor().execute(new Runnable() {
+                @Override
+                public void run() {
+                    if (future.isDone()) {
+                        // cancelled while queued
+                        return;
+                    }
+                    try {
+                        HttpTimings timings = startTimings(req);
+                        timings.setQueueNanos(System.nanoTime() - queued);
+                        HttpResponse res = request(req, timings);
+                        if (!future.complete(res)) {
+                            // cancelled while running
+                            res.disconnectForcibly();
+                        }
+                    } catch (HttpException e) {
+                        future.completeExceptionally(e);
+                    } catch (RuntimeException e) {
+                        future.completeExceptionally(e);
+                    }
+                }
+            });
+        } catch (RejectedExecutionException e) {
+            future.completeExceptionally(new HttpException("Too many asynchronous requests.", e));
+        }
+        return future;
+    }
+
     public static String encode(String str) {
         try {
             return URLEncoder.encode(str, "UTF-8");
@@ -265,6 +358,66 @@ public class HttpClientImpl extends HttpClientBase implements HttpClient, HttpRe
         }
     }
 
+    /**
+     * Opens the connection, which includes the DNS lookup and the TLS handshake.
+     */
+    private static void connect(HttpURLConnection con, HttpTimings timings) throws IOException {
+        long start = System.nanoTime();
+        con.connect();
+        timings.setConnectNanos(System.nanoTime() - start);
+    }
+
+    /**
+     * Connects and opens the request body, which records the time and the bytes written until it is closed.
+     */
+    private static OutputStream openRequestBody(HttpURLConnection con, final HttpTimings timings) throws IOException {
+        connect(con, timings);
+        final long start = System.nanoTime();
+        return new FilterOutputStream(con.getOutputStream()) {
+            private boolean closed = false;
+
+            @Override
+            public void write(int b) throws IOException {
+                out.write(b);
+                timings.addBytesOut(1);
+            }
+
+            @Override
+            public void write(byte[] b, int off, int len) throws IOException {
+                out.write(b, off, len);
+                timings.addBytesOut(len);
+            }
+
+            @Override
+            public void close() throws IOException {
+                if (!closed) {
+                    closed = true;
+                    super.close();
+                    timings.setRequestWriteNanos(System.nanoTime() - start);
+                }
+            }
+        };
+    }
+
+    /**
+     * Applies the timeouts of the request, shortened to its deadline.
+     * The first byte timeout is the read timeout, which also applies to the reads of the body.
+     */
+    private void setTimeouts(HttpURLConnection con, HttpTimeouts timeouts) {
+        if (timeouts.equals(HttpTimeouts.DEFAULT)) {
+            return;
+        }
+        long now = System.currentTimeMillis();
+        int connectTimeout = timeouts.limit(timeouts.getConnectTimeout(CONF), now);
+        if (connectTimeout > 0) {
+            con.setConnectTimeout(connectTimeout);
+        }
+        int readTimeout = timeouts.limit(timeouts.getFirstByteTimeout(CONF), now);
+        if (readTimeout > 0) {
+            con.setReadTimeout(readTimeout);
+        }
+    }
+
     protected HttpURLConnection getConnection(String url) throws IOException {
         HttpURLConnection con;
         if (isProxyConfigured()) {
@@ -0,0 +1,649 @@
+package net.socialhub.http;
+
+import net.socialhub.http.HttpClientConfiguration.HttpClientDefaultConfiguration;
+import net.socialhub.logger.Logger;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.Serializable;
+import java.net.MalformedURLException;
+import java.net.URL;
+import java.nio.ByteBuffer;
+import java.nio.channels.ClosedChannelException;
+import java.nio.channels.SelectableChannel;
+import java.nio.channels.SelectionKey;
+import java.nio.channels.Selector;
+import java.nio.charset.StandardCharsets;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.Map;
+import java.util.Queue;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledThreadPoolExecutor;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.BiConsumer;
+
+import static net.socialhub.logger.Logger.LogLevel.DEBUG;
+
+/**
+ * Non-blocking HTTP/1.1 client.
+ * A few event loop threads, each owning a {@link Selector}, drive all exchanges,
+ * so the number of requests in flight is not bound to the number of threads.
+ * Connections are kept per route in a {@link HttpConnectionPool} and reused with keep-alive.
+ * Proxies are not supported, {@link HttpClientFactory} falls back to {@link HttpClientImpl} for them.
+ * File parameters given as an {@link java.io.InputStream} are read into memory before being sent,
+ * unlike {@link HttpClientImpl} which streams them; {@link java.io.File} parameters are sent from disk.
+ */
+public class HttpClientNioImpl extends HttpClientBase implements HttpClient, HttpResponseCode, Serializable {
+
+    private static final long serialVersionUID = 6255591687163648334L;
+
+    private static final Logger logger = Logger.getLogger(HttpClientNioImpl.class);
+
+    private static final int READ_BUFFER_SIZE = 64 * 1024;
+    private static final int BODY_BUFFER_SIZE = 256 * 1024;
+    private static final long SELECT_TIMEOUT = 100;
+    private static final long EVICT_INTERVAL = 1000;
+
+    private static final AtomicInteger clientCount = new AtomicInteger();
+
+    private transient HttpConnectionPool<HttpNioConnection> pool;
+    private transient EventLoop[] loops;
+    private transient ScheduledExecutorService scheduler;
+    private transient ExecutorService callbackExecutor;
+    private transient ExecutorService offloadExecutor;
+    private final AtomicInteger next = new AtomicInteger();
+    private volatile boolean shutdown = false;
+
+    public HttpClientNioImpl(HttpClientConfiguration conf) {
+        super(conf);
+    }
+
+    public HttpClientNioImpl() {
+        super(new HttpClientDefaultConfiguration());
+    }
+
+    public HttpResponse request(HttpRequest req) throws HttpException {
+        CompletableFuture<HttpResponse> future = requestAsync(req);
+        try {
+            return future.get();
+        } catch (ExecutionException e) {
+            if (e.getCause() instanceof HttpException) {
+                throw (HttpException) e.getCause();
+            }
+            throw new HttpException(e.getCause().getMessage(), e);
+        } catch (InterruptedException e) {
+            future.cancel(false);
+            Thread.currentThread().interrupt();
+            throw new HttpException(e.getMessage(), e);
+        }
+    }
+
+    /**
+     * Sends the request on the event loops, retrying as {@link HttpClientConfiguration#getHttpRetryPolicy()} decides.
+     * The future is completed on a callback thread, never on an event loop,
+     * so dependent stages may read the body.
+     */
+    public CompletableFuture<HttpResponse> requestAsync(HttpRequest req) {
+        CompletableFuture<HttpResponse> result = new CompletableFuture<>();
+        getRetryBudget().onRequest();
+        final HttpTimings timings = startTimings(req);
+        timings.setQueueNanos(0);
+        result.whenComplete(new BiConsumer<HttpResponse, Throwable>() {
+            @Override
+            public void accept(HttpResponse res, Throwable e) {
+                if (result.isCancelled()) {
+                    timings.finish(HttpRouteMetrics.NO_RESPONSE, e);
+                }
+            }
+        });
+        final HttpNioRequestBody content;
+        try {
+            // encoded once, an attempt rewinds it
+            content = encodeRequest(req);
+        } catch (IOException | IllegalArgumentException e) {
+            giveUp(result, new HttpException(e.getMessage(), e), timings);
+            return result;
+        }
+        attempt(req, content, 0, result, timings);
+        return result;
+    }
+
+    private void attempt(final HttpRequest req, final HttpNioRequestBody content, final int retriedCount,
+                         final CompletableFuture<HttpResponse> result, final HttpTimings timings) {
+        if (result.isDone()) {
+            // cancelled by the caller
+            return;
+        }
+        if (isDeadlineExceeded(req)) {
+            giveUp(result, new HttpDeadlineExceededException(req.getURL(), null), timings);
+            return;
+        }
+        timings.startAttempt(retriedCount);
+        content.rewind();
+        final CompletableFuture<HttpResponse> exchange = execute(req, content, timings);
+        result.whenComplete(new BiConsumer<HttpResponse, Throwable>() {
+            @Override
+            public void accept(HttpResponse res, Throwable e) {
+                if (result.isCancelled()) {
+                    exchange.cancel(false);
+                }
+            }
+        });
+        exchange.whenComplete(new BiConsumer<HttpResponse, Throwable>() {
+            @Override
+            public void accept(HttpResponse res, Throwable e) {
+                long delay;
+                if (result.isDone()) {
+                    // cancelled by the caller
+                    if (res != null) {
+                        res.disconnectForcibly();
+                    }
+                    return;
+                }
+                if (e == null) {
+                    int responseCode = res.getStatusCode();
+                    if (responseCode >= OK && (responseCode == FOUND || responseCode < MULTIPLE_CHOICES)) {
+                        timings.finish(responseCode, null);
+                        if (!result.complete(res)) {
+                            res.disconnectForcibly();
+                        }
+                        return;
+                    }
+                    try {
+                        String body = res.asString();
+                        delay = shutdown ? -1 : getRetryDelay(req, retriedCount, res, null);
+                        if (delay < 0) {
+                            giveUp(result, new HttpException(body, res), timings);
+                            return;
+                        }
+                    } catch (HttpException he) {
+                        delay = shutdown ? -1 : getRetryDelay(req, retriedCount, null, he);
+                        if (delay < 0) {
+                            giveUp(result, he, timings);
+                            return;
+                        }
+                    }
+                } else {
+                    // connection timeout or read timeout
+                    if (isDeadlineExceeded(req)) {
+                        giveUp(result, new HttpDeadlineExceededException(req.getURL(),
+                                (e instanceof Exception) ? (Exception) e : null), timings);
+                        return;
+                    }
+                    delay = shutdown ? -1 : getRetryDelay(req, retriedCount, null, e);
+                    if (delay < 0) {
+                        giveUp(result, e, timings);
+                        return;
+                    }
+                }
+
+                logger.debug("Sleeping " + delay + " milliseconds until the next retry.");
+                try {
+                    scheduler.schedule(new Runnable() {
+                        @Override
+                        public void run() {
+                            attempt(req, content, retriedCount + 1, result, timings);
+                        }
+                    }, delay, TimeUnit.MILLISECONDS);
+                } catch (RejectedExecutionException re) {
+                    giveUp(result, new HttpException("Client has been shut down.", re), timings);
+                }
+            }
+        });
+    }
+
+    /**
+     * Fails the request with the timings of its attempts.
+     */
+    private static void giveUp(CompletableFuture<HttpResponse> result, Throwable e, HttpTimings timings) {
+        timings.finish(getStatusCode(e), e);
+        if (e instanceof HttpException) {
+            ((HttpException) e).setTimings(timings);
+        }
+        result.completeExceptionally(e);
+    }
+
+    /**
+     * Sends the request once.
+     * The future is completed as soon as the response head has been received,
+     * the body is streamed while it is being read.
+     *
+     * @param req     request
+     * @param content request head and body, rewound
+     * @param timings timings of the request, recorded by the exchange
+     * @return future of the response
+     */
+    private CompletableFuture<HttpResponse> execute(final HttpRequest req, final HttpNioRequestBody content,
+                                                    final HttpTimings timings) {
+        final CompletableFuture<HttpResponse> future = new CompletableFuture<>();
+        final HttpRoute route;
+        try {
+            start();
+            route = HttpRoute.of(req.getURL());
+        } catch (IOException | IllegalArgumentException e) {
+            future.completeExceptionally(new HttpException(e.getMessage(), e));
+            return future;
+        } catch (HttpException e) {
+            future.completeExceptionally(e);
+            return future;
+        }
+
+        final long leaseStart = System.nanoTime();
+        final CompletableFuture<HttpPoolEntry<HttpNioConnection>> lease = pool.leaseAsync(route);
+        final int leaseTimeout = req.getTimeouts().limit(CONF.getHttpConnectionRequestTimeout(), System.currentTimeMillis());
+        if (!lease.isDone() && leaseTimeout > 0) {
+            scheduler.schedule(new Runnable() {
+                @Override
+                public void run() {
+                    lease.completeExceptionally(new HttpException("Timeout waiting for connection from pool: " + route,
+                            new TimeoutException(route.toString())));
+                }
+            }, leaseTimeout, TimeUnit.MILLISECONDS);
+        }
+        lease.whenComplete(new BiConsumer<HttpPoolEntry<HttpNioConnection>, Throwable>() {
+            @Override
+            public void accept(HttpPoolEntry<HttpNioConnection> entry, Throwable e) {
+                if (e != null) {
+                    fail(future, e);
+                    return;
+                }
+                timings.setConnectionAcquireNanos(System.nanoTime() - leaseStart);
+                final HttpNioExchange exchange = new HttpNioExchange(HttpClientNioImpl.this, req, entry, content,
+                        timings, future);
+                future.whenComplete(new BiConsumer<HttpResponse, Throwable>() {
+                    @Override
+                    public void accept(HttpResponse res, Throwable e) {
+                        if (future.isCancelled()) {
+                            // abandoned by the caller, e.g. the loser of a hedged request
+                            exchange.abort();
+                        }
+                    }
+                });
+                HttpNioConnection conn = entry.getConnection();
+                final EventLoop loop = (conn != null && conn.isOpen()) ? conn.getLoop() : nextLoop();
+                loop.execute(new Runnable() {
+                    @Override
+                    public void run() {
+                        exchange.start(loop);
+                    }
+                });
+            }
+        });
+        return future;
+    }
+
+    /**
+     * Serializes the request line, headers and body.
+     */
+    private HttpNioRequestBody encodeRequest(HttpRequest req) throws IOException {
+        URL url;
+        try {
+            url = new URL(req.getURL());
+        } catch (MalformedURLException e) {
+            throw new IllegalArgumentException(e.getMessage(), e);
+        }
+
+        HttpNioRequestBody body = null;
+        String contentType = null;
+        HttpParameter[] params = req.getParameters();
+        if (req.getMethod() == RequestMethod.POST) {
+            body = new HttpNioRequestBody();
+            if (HttpParameter.isMultipartRequest(params, CONF.getRawContentTypes())) {
+                HttpMultipartEntity multipart = new HttpMultipartEntity(params, CONF.getFormTextContentType());
+                contentType = multipart.getContentType();
+                for (HttpMultipartEntity.Part part : multipart.getParts()) {
+                    body.add(part.getHead());
+                    addContent(body, part.getFile(), part.getValue());
+                    body.add(HttpMultipartEntity.CRLF);
+                }
+                body.add(multipart.getClosing());
+            } else if (params.length == 1 && params[0].isFile()) {
+                contentType = params[0].getContentType();
+                addContent(body, params[0], null);
+            } else {
+                contentType = "application/x-www-form-urlencoded";
+                body.add(HttpParameter.encodeParametersAsBytes(params));
+            }
+        }
+
+        String path = url.getFile().isEmpty() ? "/" : url.getFile();
+        StringBuilder head = new StringBuilder(256);
+        head.append(req.getMethod().name()).append(' ').append(path).append(" HTTP/1.1\r\n");
+
+        Map<String, String> headers = req.getRequestHeaders();
+        if (!containsHeader(headers, "Host")) {
+            head.append("Host: ").append(url.getHost());
+            if (url.getPort() != -1 && url.getPort() != url.getDefaultPort()) {
+                head.append(':').append(url.getPort());
+            }
+            head.append("\r\n");
+        }
+        if (headers != null) {
+            for (Map.Entry<String, String> header : headers.entrySet()) {
+                head.append(header.getKey()).append(": ").append(header.getValue()).append("\r\n");
+            }
+        }
+        if (contentType != null && !containsHeader(headers, "Content-Type")) {
+            head.append("Content-Type: ").append(contentType).append("\r\n");
+        }
+        if (body != null) {
+            head.append("Content-Length: ").append(body.getLength()).append("\r\n");
+        }
+        head.append("\r\n");
+
+        if (logger.getLogLevel().isLogTarget(DEBUG)) {
+            logger.debug("Request: ");
+            logger.debug(head.toString());
+        }
+
+        ByteBuffer headBuffer = ByteBuffer.wrap(head.toString().getBytes(StandardCharsets.ISO_8859_1));
+        if (body == null) {
+            body = new HttpNioRequestBody();
+        }
+        body.addFirst(headBuffer);
+        return body;
+    }
+
+    /**
+     * Adds a file parameter as a file segment, so that it is sent with sendfile,
+     * or reads it into memory if it only has a stream: reading a stream would block the event loop,
+     * and the request needs a Content-Length. Large uploads should be given as a {@link java.io.File}.
+     * This is done once per request, retries send the same bytes again.
+     */
+    private static void addContent(HttpNioRequestBody body, HttpParameter file, byte[] value) throws IOException {
+        if (file == null) {
+            body.add(value);
+        } else if (file.hasFileBody()) {
+            ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+            file.writeFileTo(bytes);
+            body.add(bytes.toByteArray());
+        } else {
+            body.add(file.getFile());
+        }
+    }
+
+    private static boolean containsHeader(Map<String, String> headers, String name) {
+        if (headers != null) {
+            for (String key : headers.keySet()) {
+                if (name.equalsIgnoreCase(key)) {
+                    return true;
+                }
+            }
+        }
+        return false;
+    }
+
+    public synchronized HttpConnectionPool<HttpNioConnection> getConnectionPool() {
+        if (pool == null) {
+            pool = new HttpConnectionPool<>(CONF);
+        }
+        return pool;
+    }
+
+    @Override
+    public synchronized void shutdown() {
+        super.shutdown();
+        shutdown = true;
+        if (loops != null) {
+            for (EventLoop loop : loops) {
+                loop.shutdown();
+            }
+            scheduler.shutdownNow();
+            callbackExecutor.shutdown();
+            offloadExecutor.shutdown();
+        }
+        getConnectionPool().shutdown();
+    }
+
+    /**
+     * Starts the event loops on first use.
+     */
+    private synchronized void start() throws IOException, HttpException {
+        if (shutdown) {
+            throw new HttpException("Client has been shut down.", (Exception) null);
+        }
+        if (loops == null) {
+            int id = clientCount.incrementAndGet();
+            getConnectionPool();
+            scheduler = new ScheduledThreadPoolExecutor(1, daemonThreadFactory("JHttpClient-nio-" + id + "-timer"));
+            // futures are completed off the event loops, the queue is bounded by the pool limits
+            callbackExecutor = new ThreadPoolExecutor(CONF.getHttpAsyncThreads(), CONF.getHttpAsyncThreads(),
+                    60, TimeUnit.SECONDS, new LinkedBlockingQueue<Runnable>(),
+                    daemonThreadFactory("JHttpClient-nio-" + id + "-callback"));
+            // DNS lookups and TLS tasks must not wait behind slow user callbacks, nor hold them up
+            ThreadPoolExecutor offload = new ThreadPoolExecutor(CONF.getHttpAsyncThreads(), CONF.getHttpAsyncThreads(),
+                    60, TimeUnit.SECONDS, new LinkedBlockingQueue<Runnable>(),
+                    daemonThreadFactory("JHttpClient-nio-" + id + "-offload"));
+            offload.allowCoreThreadTimeOut(true);
+            offloadExecutor = offload;
+            EventLoop[] created = new EventLoop[Math.max(1, CONF.getHttpNioThreads())];
+            for (int i = 0; i < created.length; i++) {
+                // the first loop also evicts idle connections
+                created[i] = new EventLoop("JHttpClient-nio-" + id + "-" + i, i == 0);
+                created[i].start();
+            }
+            loops = created;
+        }
+    }
+
+    private EventLoop nextLoop() {
+        return loops[(next.getAndIncrement() & Integer.MAX_VALUE) % loops.length];
+    }
+
+    // called by the exchanges
+
+    HttpClientConfiguration getConfiguration() {
+        return CONF;
+    }
+
+    int getBodyBufferSize() {
+        return BODY_BUFFER_SIZE;
+    }
+
+    void complete(final CompletableFuture<HttpResponse> future, final HttpResponse response) {
+        try {
+            callbackExecutor.execute(new Runnable() {
+                @Override
+                public void run() {
+                    if (!future.complete(response)) {
+                        response.disconnectForcibly();
+                    }
+                }
+            });
+        } catch (RejectedExecutionException e) {
+            if (!future.complete(response)) {
+                response.disconnectForcibly();
+            }
+        }
+    }
+
+    void fail(final CompletableFuture<HttpResponse> future, final Throwable e) {
+        try {
+            callbackExecutor.execute(new Runnable() {
+                @Override
+                public void run() {
+                    future.completeExceptionally(e);
+                }
+            });
+        } catch (RejectedExecutionException re) {
+            future.completeExceptionally(e);
+        }
+    }
+
+    void release(HttpPoolEntry<HttpNioConnection> entry, boolean reusable) {
+        pool.release(entry, reusable);
+    }
+
+    /**
+     * A selector thread driving the exchanges of its connections.
+     */
+    final class EventLoop implements Runnable {
+
+        private final String name;
+        private final boolean evictor;
+        private final Queue<Runnable> tasks = new ConcurrentLinkedQueue<>();
+        private final Queue<HttpNioConnection> closing = new ConcurrentLinkedQueue<>();
+        private final Set<HttpNioExchange> exchanges = new HashSet<>();
+        private final ByteBuffer readBuffer = ByteBuffer.allocate(READ_BUFFER_SIZE);
+        private Selector selector;
+        private Thread thread;
+        private volatile boolean running;
+        private volatile boolean stopped;
+
+        EventLoop(String name, boolean evictor) {
+            this.name = name;
+            this.evictor = evictor;
+        }
+
+        void start() throws IOException {
+            selector = Selector.open();
+            running = true;
+            thread = new Thread(this, name);
+            thread.setDaemon(true);
+            thread.start();
+        }
+
+        void shutdown() {
+            running = false;
+            if (selector != null) {
+                selector.wakeup();
+            }
+        }
+
+        /**
+         * Runs the task on the loop thread.
+         */
+        void execute(Runnable task) {
+            tasks.add(task);
+            if (Thread.currentThread() != thread) {
+                selector.wakeup();
+            }
+        }
+
+        boolean inLoop() {
+            return Thread.currentThread() == thread;
+        }
+
+        /**
+         * Closes the connection on the loop thread, or on the calling thread once the loop has stopped.
+         * The pool closes connections from any thread.
+         */
+        void close(HttpNioConnection connection) {
+            closing.add(connection);
+            if (stopped) {
+                // raced with the last round of the loop
+                closeConnections();
+            } else {
+                selector.wakeup();
+            }
+        }
+
+        private void closeConnections() {
+            HttpNioConnection connection;
+            while ((connection = closing.poll()) != null) {
+                connection.closeNow();
+            }
+        }
+
+        /**
+         * Runs a blocking task, such as a DNS lookup, on an offload thread, then the continuation on the loop thread.
+         */
+        void offload(final Runnable task, final Runnable continuation) {
+            Runnable offloaded = new Runnable() {
+                @Override
+                public void run() {
+                    try {
+                        task.run();
+                    } finally {
+                        execute(continuation);
+                    }
+                }
+            };
+            try {
+                offloadExecutor.execute(offloaded);
+            } catch (RejectedExecutionException e) {
+                offloaded.run();
+            }
+        }
+
+        SelectionKey register(SelectableChannel channel, int ops, Object attachment) throws ClosedChannelException {
+            return channel.register(selector, ops, attachment);
+        }
+
+        void register(HttpNioExchange exchange) {
+            exchanges.add(exchange);
+        }
+
+        void unregister(HttpNioExchange exchange) {
+            exchanges.remove(exchange);
+        }
+
+        ByteBuffer getReadBuffer() {
+            return readBuffer;
+        }
+
+        @Override
+        public void run() {
+            long lastEvict = System.currentTimeMillis();
+            long lastCheck = System.nanoTime();
+            while (running) {
+                try {
+                    selector.select(SELECT_TIMEOUT);
+
+                    Iterator<SelectionKey> keys = selector.selectedKeys().iterator();
+                    while (keys.hasNext()) {
+                        SelectionKey key = keys.next();
+                        keys.remove();
+                        Object attachment = key.attachment();
+                        if (key.isValid() && attachment instanceof HttpNioExchange) {
+                            ((HttpNioExchange) attachment).handle(key);
+                        }
+                    }
+
+                    Runnable task;
+                    while ((task = tasks.poll()) != null) {
+                        task.run();
+                    }
+                    closeConnections();
+
+                    // timeouts are checked once per select timeout, not on every wakeup
+                    long now = System.nanoTime();
+                    if (now - lastCheck >= TimeUnit.MILLISECONDS.toNanos(SELECT_TIMEOUT)) {
+                        lastCheck = now;
+                        for (HttpNioExchange exchange : exchanges.toArray(new HttpNioExchange[0])) {
+                            exchange.checkTimeout(now);
+                        }
+                    }
+
+                    if (evictor && System.currentTimeMillis() - lastEvict > EVICT_INTERVAL) {
+                        lastEvict = System.currentTimeMillis();
+                        pool.closeExpired();
+                    }
+                } catch (Exception e) {
+                    logger.debug("Unexpected error in event loop: " + e.getMessage());
+                }
+            }
+
+            for (HttpNioExchange exchange : exchanges.toArray(new HttpNioExchange[0])) {
+                exchange.fail(new IOException("Client has been shut down."));
+            }
+            stopped = true;
+            closeConnections();
+            try {
+                selector.close();
+            } catch (IOException ignore) {
+            }
+        }
+    }
+}
@@ -21,6 +21,9 @@ import net.socialhub.http.HttpClientConfiguration.HttpClientDefaultConfiguration
 import java.io.Serializable;
 import java.util.HashMap;
 import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.function.BiConsumer;
 
 import static net.socialhub.http.RequestMethod.*;
 
@@ -71,6 +74,33 @@ public class HttpClientWrapper implements Serializable {
         return res;
     }
 
+    /**
+     * Sends the request without blocking.
+     * The listener is notified when the future completes.
+     * Cancelling the returned future cancels the request.
+     */
+    protected CompletableFuture<HttpResponse> requestAsync(final HttpRequest req) {
+        final CompletableFuture<HttpResponse> future = http.requestAsync(req);
+        final HttpResponseListener listener = httpResponseListener;
+        if (listener == null) {
+            return future;
+        }
+        return HttpClientBase.relay(future, new BiConsumer<HttpResponse, Throwable>() {
+            @Override
+            public void accept(HttpResponse res, Throwable e) {
+                //fire HttpResponseEvent
+                if (e == null) {
+                    listener.httpResponseReceived(new HttpResponseEvent(req, res, null));
+                } else {
+                    Throwable cause = (e instanceof CompletionException && e.getCause() != null) ? e.getCause() : e;
+                    HttpException he = (cause instanceof HttpException) ? (HttpException) cause
+                            : new HttpException(cause.getMessage(), (cause instanceof Exception) ? (Exception) cause : null);
+                    listener.httpResponseReceived(new HttpResponseEvent(req, null, he));
+                }
+            }
+        });
+    }
+
     public void setHttpResponseListener(HttpResponseListener listener) {
         httpResponseListener = listener;
     }
@@ -131,6 +161,54 @@ public class HttpClientWrapper implements Serializable {
         return request(new HttpRequest(PUT, url, parameters, this.requestHeaders));
     }
 
+    // Async
+
+    public CompletableFuture<HttpResponse> getAsync(String url) {
+        return requestAsync(new HttpRequest(GET, url, null, this.requestHeaders));
+    }
+
+    public CompletableFuture<HttpResponse> getAsync(String url, HttpParameter[] parameters) {
+        return requestAsync(new HttpRequest(GET, url, parameters, this.requestHeaders));
+    }
+
+    public CompletableFuture<HttpResponse> postAsync(String url) {
+        return requestAsync(new HttpRequest(POST, url, null, this.requestHeaders));
+    }
+
+    public CompletableFuture<HttpResponse> postAsync(String url, HttpParameter[] parameters) {
+        return requestAsync(new HttpRequest(POST, url, parameters, this.requestHeaders));
+    }
+
+    public CompletableFuture<HttpResponse> postAsync(String url, HttpParameter[] parameters, Map<String, String> requestHeaders) {
+        Map<String, String> headers = new HashMap<String, String>(this.requestHeaders);
+        if (requestHeaders != null) headers.putAll(requestHeaders);
+        return requestAsync(new HttpRequest(POST, url, parameters, headers));
+    }
+
+    public CompletableFuture<HttpResponse> deleteAsync(String url) {
+        return requestAsync(new HttpRequest(DELETE, url, null, this.requestHeaders));
+    }
+
+    public CompletableFuture<HttpResponse> deleteAsync(String url, HttpParameter[] parameters) {
+        return requestAsync(new HttpRequest(DELETE, url, parameters, this.requestHeaders));
+    }
+
+    public CompletableFuture<HttpResponse> headAsync(String url) {
+        return requestAsync(new HttpRequest(HEAD, url, null, this.requestHeaders));
+    }
+
+    public CompletableFuture<HttpResponse> headAsync(String url, HttpParameter[] parameters) {
+        return requestAsync(new HttpRequest(HEAD, url, parameters, this.requestHeaders));
+    }
+
+    public CompletableFuture<HttpResponse> putAsync(String url) {
+        return requestAsync(new HttpRequest(PUT, url, null, this.requestHeaders));
+    }
+
+    public CompletableFuture<HttpResponse> putAsync(String url, HttpParameter[] parameters) {
+        return requestAsync(new HttpRequest(PUT, url, parameters, this.requestHeaders));
+    }
+
 
     @Override
     public boolean equals(Object o) {
@@ -0,0 +1,250 @@
+package net.socialhub.http;
+
+import net.socialhub.logger.Logger;
+
+import java.util.Locale;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.BiConsumer;
+
+/**
+ * Client sending identical concurrent GET requests to the server only once.
+ * Requests equal by {@link HttpRequest#equals(Object)} issued while one of them waits for its response head
+ * wait for that one, and a failure is thrown to every caller.
+ * If the response has a Content-Length of at most {@link #MAX_SHARED_BODY_LENGTH} bytes,
+ * its body is read into memory and every caller gets its own copy. Otherwise, as for an event stream,
+ * the first caller gets the response as it streams in and the others send their own request.
+ * Without any other caller the response is never buffered. Requests of other methods are sent as they are.
+ */
+public class HttpCoalescingClient implements HttpClient {
+
+    private static final Logger logger = Logger.getLogger(HttpCoalescingClient.class);
+
+    /** largest body read into memory to be shared */
+    public static final long MAX_SHARED_BODY_LENGTH = 1024 * 1024;
+
+    private final HttpClientConfiguration CONF;
+    private final HttpClient client;
+    private final ConcurrentMap<HttpRequest, Flight> inFlight = new ConcurrentHashMap<>();
+    private final AtomicLong coalescedCount = new AtomicLong();
+
+    /**
+     * A request in flight and the callers waiting for it.
+     * The entry is null if the response was not shared.
+     */
+    private static final class Flight {
+        final CompletableFuture<HttpCacheEntry> entry = new CompletableFuture<>();
+        final AtomicInteger followers = new AtomicInteger();
+    }
+
+    public HttpCoalescingClient(HttpClientConfiguration conf, HttpClient client) {
+        this.CONF = conf;
+        this.client = client;
+    }
+
+    @Override
+    public HttpResponse request(HttpRequest req) throws HttpException {
+        if (req.getMethod() != RequestMethod.GET) {
+            return client.request(req);
+        }
+
+        Flight flight = new Flight();
+        Flight leader = inFlight.putIfAbsent(req, flight);
+        if (leader != null) {
+            leader.followers.incrementAndGet();
+            coalescedCount.incrementAndGet();
+            logger.debug("Coalesced: " + req.getURL());
+            HttpCacheEntry entry = await(leader.entry);
+            if (entry == null) {
+                coalescedCount.decrementAndGet();
+                return client.request(req);
+            }
+            return copy(entry);
+        }
+
+        try {
+            return share(req, flight, client.request(req), System.currentTimeMillis());
+        } catch (HttpException | RuntimeException e) {
+            inFlight.remove(req, flight);
+            flight.entry.completeExceptionally(e);
+            throw e;
+        }
+    }
+
+    @Override
+    public CompletableFuture<HttpResponse> requestAsync(final HttpRequest req) {
+        if (req.getMethod() != RequestMethod.GET) {
+            return client.requestAsync(req);
+        }
+
+        final Flight flight = new Flight();
+        Flight leader = inFlight.putIfAbsent(req, flight);
+        if (leader != null) {
+            leader.followers.incrementAndGet();
+            coalescedCount.incrementAndGet();
+            logger.debug("Coalesced: " + req.getURL());
+            final CompletableFuture<HttpResponse> result = new CompletableFuture<>();
+            leader.entry.whenComplete(new BiConsumer<HttpCacheEntry, Throwable>() {
+                @Override
+                public void accept(HttpCacheEntry entry, Throwable e) {
+                    if (e != null) {
+                        result.completeExceptionally(e);
+                    } else if (entry != null) {
+                        result.complete(copy(entry));
+                    } else if (!result.isDone()) {
+                        coalescedCount.decrementAndGet();
+                        send(req, result);
+                    }
+                }
+            });
+            return result;
+        }
+
+        final long requestTime = System.currentTimeMillis();
+        final CompletableFuture<HttpResponse> result = new CompletableFuture<>();
+        CompletableFuture<HttpResponse> sent = client.requestAsync(req);
+        HttpClientBase.cancelWith(result, sent);
+        sent.whenComplete(new BiConsumer<HttpResponse, Throwable>() {
+            @Override
+            public void accept(HttpResponse res, Throwable e) {
+                if (e == null) {
+                    try {
+                        HttpClientBase.completeOrDisconnect(result, share(req, flight, res, requestTime));
+                        return;
+                    } catch (HttpException | RuntimeException ex) {
+                        e = ex;
+                    }
+                }
+                Throwable cause = (e instanceof CompletionException && e.getCause() != null) ? e.getCause() : e;
+                inFlight.remove(req, flight);
+                if (result.isCancelled()) {
+                    // the followers, if any, send their own request
+                    flight.entry.complete(null);
+                } else {
+                    flight.entry.completeExceptionally(cause);
+                }
+                result.completeExceptionally(cause);
+            }
+        });
+        return result;
+    }
+
+    /**
+     * Sends the request on its own, completing the result with its outcome.
+     */
+    private void send(HttpRequest req, final CompletableFuture<HttpResponse> result) {
+        CompletableFuture<HttpResponse> sent = client.requestAsync(req);
+        HttpClientBase.cancelWith(result, sent);
+        sent.whenComplete(new BiConsumer<HttpResponse, Throwable>() {
+            @Override
+            public void accept(HttpResponse res, Throwable e) {
+                if (e != null) {
+                    result.completeExceptionally(e);
+                } else {
+                    HttpClientBase.completeOrDisconnect(result, res);
+                }
+            }
+        });
+    }
+
+    /**
+     * Hands the response of the leader to the callers waiting for it, once its head has arrived.
+     *
+     * @return the response of the leader
+     */
+    private HttpResponse share(HttpRequest req, Flight flight, HttpResponse res, long requestTime) throws HttpException {
+        // later requests are sent on their own
+        inFlight.remove(req, flight);
+        if (flight.followers.get() == 0 || !isShareable(res)) {
+            // the followers, if any, send their own request
+            flight.entry.complete(null);
+            return res;
+        }
+        HttpCacheEntry entry = read(res, requestTime);
+        flight.entry.complete(entry);
+        return copy(entry);
+    }
+
+    /**
+     * @return true if the body of the response can be read into memory
+     */
+    static boolean isShareable(HttpResponse res) {
+        String type = res.getResponseHeader("Content-Type");
+        if (type != null && type.toLowerCase(Locale.ROOT).startsWith(HttpEventSource.EVENT_STREAM)) {
+            return false;
+        }
+        String length = res.getResponseHeader("Content-Length");
+        if (length == null) {
+            return false;
+        }
+        try {
+            return Long.parseLong(length.trim()) <= MAX_SHARED_BODY_LENGTH;
+        } catch (NumberFormatException e) {
+            return false;
+        }
+    }
+
+    private static HttpCacheEntry read(HttpResponse res, long requestTime) throws HttpException {
+        HttpCacheEntry entry = HttpCacheEntry.read(res, requestTime);
+        if (entry == null) {
+            entry = new HttpCacheEntry(res.getStatusCode(), HttpCacheEntry.getStoredHeaders(res),
+                    new byte[0], requestTime, System.currentTimeMillis());
+        }
+        return entry;
+    }
+
+    private HttpResponse copy(HttpCacheEntry entry) {
+        return new HttpCachedResponse(CONF, entry);
+    }
+
+    private static HttpCacheEntry await(CompletableFuture<HttpCacheEntry> leader) throws HttpException {
+        try {
+            return leader.get();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new HttpException(e.getMessage(), e);
+        } catch (ExecutionException e) {
+            Throwable cause = e.getCause();
+            if (cause instanceof HttpException) {
+                throw (HttpException) cause;
+            }
+            if (cause instanceof RuntimeException) {
+                throw (RuntimeException) cause;
+            }
+            throw new HttpException(cause.getMessage(), (cause instanceof Exception) ? (Exception) cause : null);
+        }
+    }
+
+    /**
+     * @return number of requests waiting for, or answered with, the response of an identical request
+     */
+    public long getCoalescedCount() {
+        return coalescedCount.get();
+    }
+
+    /**
+     * @return number of GET requests waiting for their response head
+     */
+    public int getInFlightCount() {
+        return inFlight.size();
+    }
+
+    @Override
+    public void shutdown() {
+        client.shutdown();
+    }
+
+    @Override
+    public String toString() {
+        return "HttpCoalescingClient{" +
+                "client=" + client +
+                ", inFlight=" + inFlight.size() +
+                ", coalescedCount=" + coalescedCount.get() +
+                '}';
+    }
+}
@@ -0,0 +1,471 @@
+package net.socialhub.http;
+
+import java.io.Closeable;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.LinkedList;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.locks.Condition;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * Connection pool bounded by a total limit and a per route limit.
+ * Callers lease an entry, perform the exchange, and release it.
+ * When no entry is available the caller blocks until one is released
+ * or the lease timeout elapses.
+ * Non-blocking transports use {@link #leaseAsync(HttpRoute)} instead,
+ * which queues the request and completes it when an entry frees up.
+ * Idle entries are evicted lazily on lease, or explicitly by {@link #closeIdle(long)}.
+ *
+ * @param <C> transport connection type kept by the entries
+ */
+public class HttpConnectionPool<C extends Closeable> {
+
+    private final ReentrantLock lock = new ReentrantLock();
+    private final Condition released = lock.newCondition();
+
+    private final Map<HttpRoute, RoutePool<C>> routePools = new HashMap<>();
+    private final Map<HttpRoute, Integer> maxPerRoute = new HashMap<>();
+    private final Set<HttpPoolEntry<C>> leased = new HashSet<>();
+    // least recently used first
+    private final LinkedList<HttpPoolEntry<C>> available = new LinkedList<>();
+
+    private int maxTotal;
+    private int defaultMaxPerRoute;
+    private long idleTimeout;
+    private int pending;
+    private boolean shutdown;
+
+    /**
+     * @param maxTotal           maximum number of entries over all routes
+     * @param defaultMaxPerRoute maximum number of entries per route
+     * @param idleTimeout        milliseconds an idle entry is kept, 0 to keep it forever
+     */
+    public HttpConnectionPool(int maxTotal, int defaultMaxPerRoute, long idleTimeout) {
+        if (maxTotal <= 0 || defaultMaxPerRoute <= 0) {
+            throw new IllegalArgumentException("pool limits must be positive");
+        }
+        this.maxTotal = maxTotal;
+        this.defaultMaxPerRoute = defaultMaxPerRoute;
+        this.idleTimeout = idleTimeout;
+    }
+
+    public HttpConnectionPool(HttpClientConfiguration conf) {
+        this(conf.getHttpMaxTotalConnections(),
+                conf.getHttpDefaultMaxPerRoute(),
+                conf.getHttpConnectionIdleTimeout());
+    }
+
+    /**
+     * Leases an entry for the route, blocking while the pool is exhausted.
+     *
+     * @param route         route of the request
+     * @param timeoutMillis max milliseconds to wait, 0 to wait forever
+     * @return leased entry, which must be passed to {@link #release(HttpPoolEntry, boolean)}
+     * @throws HttpException on timeout, interruption or when the pool is shut down
+     */
+    public HttpPoolEntry<C> lease(HttpRoute route, long timeoutMillis) throws HttpException {
+        long deadline = (timeoutMillis > 0) ? System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(timeoutMillis) : 0;
+        List<HttpPoolEntry<C>> toClose = new ArrayList<>();
+
+        lock.lock();
+        try {
+            RoutePool<C> pool = getRoutePool(route);
+            pool.pending++;
+            pending++;
+            try {
+                for (; ; ) {
+                    if (shutdown) {
+                        throw new HttpException("Connection pool has been shut down.", (Exception) null);
+                    }
+                    long now = System.currentTimeMillis();
+                    evictIdle(idleTimeout, now, toClose);
+
+                    HttpPoolEntry<C> entry = allocate(pool, now, toClose);
+                    if (entry != null) {
+                        return entry;
+                    }
+
+                    if (deadline == 0) {
+                        released.await();
+                    } else {
+                        long remaining = deadline - System.nanoTime();
+                        if (remaining <= 0) {
+                            throw new HttpException("Timeout waiting for connection from pool: " + route,
+                                    new TimeoutException(route.toString()));
+                        }
+                        released.awaitNanos(remaining);
+                    }
+                }
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new HttpException("Interrupted while waiting for connection from pool: " + route, e);
+            } finally {
+                pool.pending--;
+                pending--;
+            }
+        } finally {
+            lock.unlock();
+            closeAll(toClose);
+        }
+    }
+
+    /**
+     * Leases an entry for the route without blocking.
+     * If the pool is exhausted the returned future is completed once an entry is released.
+     * A caller giving up on the lease should cancel the future.
+     *
+     * @param route route of the request
+     * @return future of the leased entry
+     */
+    public CompletableFuture<HttpPoolEntry<C>> leaseAsync(HttpRoute route) {
+        CompletableFuture<HttpPoolEntry<C>> future = new CompletableFuture<>();
+        List<HttpPoolEntry<C>> toClose = new ArrayList<>();
+        HttpPoolEntry<C> entry = null;
+
+        lock.lock();
+        try {
+            if (shutdown) {
+                future.completeExceptionally(new HttpException("Connection pool has been shut down.", (Exception) null));
+                return future;
+            }
+            long now = System.currentTimeMillis();
+            evictIdle(idleTimeout, now, toClose);
+
+            RoutePool<C> pool = getRoutePool(route);
+            if (pool.waiters.isEmpty()) {
+                entry = allocate(pool, now, toClose);
+            }
+            if (entry == null) {
+                pool.waiters.addLast(future);
+            }
+        } finally {
+            lock.unlock();
+            closeAll(toClose);
+        }
+
+        if (entry != null) {
+            future.complete(entry);
+        }
+        return future;
+    }
+
+    /**
+     * Returns an entry to the pool.
+     *
+     * @param entry    leased entry
+     * @param reusable true if the entry's connection may be used by the next lease
+     */
+    public void release(HttpPoolEntry<C> entry, boolean reusable) {
+        List<HttpPoolEntry<C>> toClose = new ArrayList<>();
+        List<Handoff<C>> handoffs = new ArrayList<>();
+        lock.lock();
+        try {
+            RoutePool<C> pool = getRoutePool(entry.getRoute());
+            if (!leased.remove(entry)) {
+                return;
+            }
+            pool.leased.remove(entry);
+            long now = System.currentTimeMillis();
+            if (reusable && !shutdown && entry.hasConnection()) {
+                entry.touch(now);
+                pool.available.addLast(entry);
+                available.addLast(entry);
+            } else {
+                toClose.add(entry);
+            }
+            dispatchWaiters(now, handoffs, toClose);
+            released.signalAll();
+        } finally {
+            lock.unlock();
+            closeAll(toClose);
+        }
+        handOff(handoffs);
+    }
+
+    /**
+     * Closes entries that have been idle for longer than the given time.
+     *
+     * @param idleMillis idle time in milliseconds
+     */
+    public void closeIdle(long idleMillis) {
+        List<HttpPoolEntry<C>> toClose = new ArrayList<>();
+        List<Handoff<C>> handoffs = new ArrayList<>();
+        lock.lock();
+        try {
+            long now = System.currentTimeMillis();
+            evictIdle(idleMillis, now, toClose);
+            if (!toClose.isEmpty()) {
+                dispatchWaiters(now, handoffs, toClose);
+                released.signalAll();
+            }
+        } finally {
+            lock.unlock();
+            closeAll(toClose);
+        }
+        handOff(handoffs);
+    }
+
+    /**
+     * Closes entries that have been idle for longer than the configured idle timeout.
+     */
+    public void closeExpired() {
+        closeIdle(idleTimeout);
+    }
+
+    /**
+     * Closes all idle entries and makes every further lease fail.
+     * Leased entries are closed as they are released.
+     */
+    public void shutdown() {
+        List<HttpPoolEntry<C>> toClose;
+        List<CompletableFuture<HttpPoolEntry<C>>> waiters = new ArrayList<>();
+        lock.lock();
+        try {
+            shutdown = true;
+            toClose = new ArrayList<>(available);
+            available.clear();
+            for (RoutePool<C> pool : routePools.values()) {
+                pool.available.clear();
+                waiters.addAll(pool.waiters);
+                pool.waiters.clear();
+            }
+            released.signalAll();
+        } finally {
+            lock.unlock();
+        }
+        closeAll(toClose);
+        for (CompletableFuture<HttpPoolEntry<C>> waiter : waiters) {
+            waiter.completeExceptionally(new HttpException("Connection pool has been shut down.", (Exception) null));
+        }
+    }
+
+    public void setMaxTotal(int maxTotal) {
+        lock.lock();
+        try {
+            this.maxTotal = maxTotal;
+        } finally {
+            lock.unlock();
+        }
+        limitsChanged();
+    }
+
+    public void setDefaultMaxPerRoute(int defaultMaxPerRoute) {
+        lock.lock();
+        try {
+            this.defaultMaxPerRoute = defaultMaxPerRoute;
+        } finally {
+            lock.unlock();
+        }
+        limitsChanged();
+    }
+
+    public void setMaxPerRoute(HttpRoute route, int max) {
+        lock.lock();
+        try {
+            maxPerRoute.put(route, max);
+        } finally {
+            lock.unlock();
+        }
+        limitsChanged();
+    }
+
+    public int getMaxPerRoute(HttpRoute route) {
+        lock.lock();
+        try {
+            Integer max = maxPerRoute.get(route);
+            return (max != null) ? max : defaultMaxPerRoute;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    public HttpPoolStats getTotalStats() {
+        lock.lock();
+        try {
+            int waiting = pending;
+            for (RoutePool<C> pool : routePools.values()) {
+                waiting += pool.waiters.size();
+            }
+            return new HttpPoolStats(leased.size(), available.size(), waiting, maxTotal);
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    public HttpPoolStats getStats(HttpRoute route) {
+        lock.lock();
+        try {
+            RoutePool<C> pool = routePools.get(route);
+            int max = getMaxPerRoute(route);
+            if (pool == null) {
+                return new HttpPoolStats(0, 0, 0, max);
+            }
+            return new HttpPoolStats(pool.leased.size(), pool.available.size(),
+                    pool.pending + pool.waiters.size(), max);
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * @return routes the pool has seen so far
+     */
+    public Set<HttpRoute> getRoutes() {
+        lock.lock();
+        try {
+            return new HashSet<>(routePools.keySet());
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Leases an idle entry of the route or a new one if the limits allow it.
+     *
+     * @return leased entry, or null if the caller has to wait
+     */
+    private HttpPoolEntry<C> allocate(RoutePool<C> pool, long now, List<HttpPoolEntry<C>> toClose) {
+        // reuse the most recently released entry of the route
+        HttpPoolEntry<C> entry = pool.available.pollLast();
+        if (entry != null) {
+            available.remove(entry);
+            return lease(pool, entry, now);
+        }
+
+        if (pool.leased.size() < getMaxPerRoute(pool.route)) {
+            // free a slot held by an idle entry of another route
+            if (leased.size() + available.size() >= maxTotal && !available.isEmpty()) {
+                HttpPoolEntry<C> oldest = available.removeFirst();
+                getRoutePool(oldest.getRoute()).available.remove(oldest);
+                toClose.add(oldest);
+            }
+            if (leased.size() + available.size() < maxTotal) {
+                return lease(pool, new HttpPoolEntry<C>(pool.route), now);
+            }
+        }
+        return null;
+    }
+
+    private HttpPoolEntry<C> lease(RoutePool<C> pool, HttpPoolEntry<C> entry, long now) {
+        entry.touch(now);
+        pool.leased.add(entry);
+        leased.add(entry);
+        return entry;
+    }
+
+    /**
+     * Assigns entries to queued asynchronous leases while the limits allow it.
+     */
+    private void dispatchWaiters(long now, List<Handoff<C>> handoffs, List<HttpPoolEntry<C>> toClose) {
+        if (shutdown) {
+            return;
+        }
+        for (RoutePool<C> pool : routePools.values()) {
+            while (!pool.waiters.isEmpty()) {
+                CompletableFuture<HttpPoolEntry<C>> waiter = pool.waiters.peekFirst();
+                if (waiter.isDone()) {
+                    // cancelled or timed out by the caller
+                    pool.waiters.pollFirst();
+                    continue;
+                }
+                HttpPoolEntry<C> entry = allocate(pool, now, toClose);
+                if (entry == null) {
+                    break;
+                }
+                pool.waiters.pollFirst();
+                handoffs.add(new Handoff<>(waiter, entry));
+            }
+        }
+    }
+
+    private void handOff(List<Handoff<C>> handoffs) {
+        for (Handoff<C> handoff : handoffs) {
+            if (!handoff.waiter.complete(handoff.entry)) {
+                release(handoff.entry, true);
+            }
+        }
+    }
+
+    private void limitsChanged() {
+        List<HttpPoolEntry<C>> toClose = new ArrayList<>();
+        List<Handoff<C>> handoffs = new ArrayList<>();
+        lock.lock();
+        try {
+            dispatchWaiters(System.currentTimeMillis(), handoffs, toClose);
+            released.signalAll();
+        } finally {
+            lock.unlock();
+            closeAll(toClose);
+        }
+        handOff(handoffs);
+    }
+
+    private void evictIdle(long idleMillis, long now, List<HttpPoolEntry<C>> toClose) {
+        if (idleMillis <= 0) {
+            return;
+        }
+        Iterator<HttpPoolEntry<C>> it = available.iterator();
+        while (it.hasNext()) {
+            HttpPoolEntry<C> entry = it.next();
+            if (!entry.isIdleLongerThan(idleMillis, now)) {
+                // the list is ordered by release time
+                break;
+            }
+            it.remove();
+            getRoutePool(entry.getRoute()).available.remove(entry);
+            toClose.add(entry);
+        }
+    }
+
+    private RoutePool<C> getRoutePool(HttpRoute route) {
+        RoutePool<C> pool = routePools.get(route);
+        if (pool == null) {
+            pool = new RoutePool<>(route);
+            routePools.put(route, pool);
+        }
+        return pool;
+    }
+
+    private void closeAll(List<HttpPoolEntry<C>> entries) {
+        for (HttpPoolEntry<C> entry : entries) {
+            entry.closeQuietly();
+        }
+    }
+
+    private static final class RoutePool<C extends Closeable> {
+        private final HttpRoute route;
+        private final Set<HttpPoolEntry<C>> leased = new HashSet<>();
+        private final LinkedList<HttpPoolEntry<C>> available = new LinkedList<>();
+        private final LinkedList<CompletableFuture<HttpPoolEntry<C>>> waiters = new LinkedList<>();
+        private int pending;
+
+        RoutePool(HttpRoute route) {
+            this.route = route;
+        }
+    }
+
+    private static final class Handoff<C extends Closeable> {
+        private final CompletableFuture<HttpPoolEntry<C>> waiter;
+        private final HttpPoolEntry<C> entry;
+
+        Handoff(CompletableFuture<HttpPoolEntry<C>> waiter, HttpPoolEntry<C> entry) {
+            this.waiter = waiter;
+            this.entry = entry;
+        }
+    }
+
+    @Override
+    public String toString() {
+        return "HttpConnectionPool{" +
+                "total=" + getTotalStats() +
+                '}';
+    }
+}
@@ -0,0 +1,14 @@
+package net.socialhub.http;
+
+/**
+ * Thrown when the deadline of a request passes before a response is received,
+ * see {@link HttpTimeouts#getDeadline()}. The cause is the error of the last attempt, if any.
+ */
+public class HttpDeadlineExceededException extends HttpException {
+
+    private static final long serialVersionUID = -3750347575036479591L;
+
+    public HttpDeadlineExceededException(String url, Exception cause) {
+        super("Deadline exceeded: " + url, cause);
+    }
+}
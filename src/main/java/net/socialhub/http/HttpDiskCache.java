@@ -0,0 +1,720 @@
+package net.socialhub.http;
+
+import net.socialhub.logger.Logger;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.Closeable;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.RandomAccessFile;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.channels.FileLock;
+import java.nio.channels.OverlappingFileLockException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.time.Instant;
+import java.time.ZoneOffset;
+import java.time.format.DateTimeFormatter;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.Deque;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeMap;
+import java.util.regex.Pattern;
+
+/**
+ * Disk tier of the response cache, which survives restarts of the JVM.
+ * Each entry is a body file and a header file in the directory. The index file is memory-mapped,
+ * a fixed size slot per entry holds its key, status, validators, expiry and sizes,
+ * so that a lookup reads a few fields of the mapping and deserializes nothing.
+ * The least recently used entries are evicted once the files take more than the byte bound
+ * or all slots are used. A directory can be used by one cache at a time.
+ *
+ * @see HttpCachingClient
+ */
+public class HttpDiskCache implements Closeable {
+
+    private static final Logger logger = Logger.getLogger(HttpDiskCache.class);
+
+    public static final int DEFAULT_MAX_ENTRIES = 8192;
+
+    private static final String INDEX = "index";
+    private static final String BODY = ".body";
+    private static final String HEAD = ".head";
+    private static final int MAGIC = 0x4A484443;
+    private static final int VERSION = 1;
+    private static final int HEADER_SIZE = 16;
+
+    // slot layout
+    private static final int SLOT_SIZE = 256;
+    private static final int STATE = 0;
+    private static final int STATUS = 4;
+    private static final int KEY = 8;
+    private static final int KEY_LENGTH = 20;
+    private static final int ETAG_LENGTH = 28;
+    private static final int URL_HASH = 32;
+    private static final int REQUEST_TIME = 40;
+    private static final int RESPONSE_TIME = 48;
+    private static final int FRESH_UNTIL = 56;
+    private static final int LAST_MODIFIED = 64;
+    private static final int LAST_ACCESS = 72;
+    private static final int BODY_LENGTH = 80;
+    private static final int HEAD_LENGTH = 88;
+    private static final int ETAG = 96;
+    private static final int MAX_ETAG_LENGTH = SLOT_SIZE - ETAG;
+
+    /** names of the body, header and temporary files; nothing else in the directory is touched */
+    private static final Pattern FILE_NAME = Pattern.compile(
+            "[0-9a-f]{" + KEY_LENGTH * 2 + "}(\\" + BODY + "|\\" + HEAD + "|\\.-?[0-9]+\\.tmp)");
+
+    private static final int FREE = 0;
+    private static final int USED = 1;
+
+    private final File directory;
+    private final long maxBytes;
+    private final int maxEntries;
+
+    private final RandomAccessFile indexFile;
+    private final FileLock lock;
+    private final MappedByteBuffer index;
+
+    /** hex key to slot, in access order */
+    private final LinkedHashMap<String, Integer> slots = new LinkedHashMap<>(16, 0.75f, true);
+    private final Deque<Integer> freeSlots = new ArrayDeque<>();
+    /** bumped whenever the files of a slot change, so that a reader can tell they were replaced */
+    private final long[] generations;
+    private long bytes = 0;
+    private boolean closed = false;
+
+    /**
+     * Snapshot of an index slot.
+     */
+    static final class Record {
+
+        final int slot;
+        final long generation;
+        final String key;
+        final int statusCode;
+        final long freshUntil;
+        final String etag;
+        final long lastModified;
+        final long bodyLength;
+
+        private Record(int slot, long generation, String key, int statusCode, long freshUntil,
+                       String etag, long lastModified, long bodyLength) {
+            this.slot = slot;
+            this.generation = generation;
+            this.key = key;
+            this.statusCode = statusCode;
+            this.freshUntil = freshUntil;
+            this.etag = etag;
+            this.lastModified = lastModified;
+            this.bodyLength = bodyLength;
+        }
+
+        boolean isFresh(long now) {
+            return now < freshUntil;
+        }
+
+        boolean hasValidator() {
+            return etag != null || lastModified >= 0;
+        }
+
+        /**
+         * @return Last-Modified as an HTTP-date, or null
+         */
+        String getLastModified() {
+            if (lastModified < 0) {
+                return null;
+            }
+            return DateTimeFormatter.RFC_1123_DATE_TIME.format(
+                    Instant.ofEpochMilli(lastModified).atZone(ZoneOffset.UTC));
+        }
+    }
+
+    /**
+     * @param directory  directory of the cache, created if needed
+     * @param maxBytes   upper bound of the size of the body and header files
+     * @param maxEntries number of slots of the index, positive
+     */
+    public HttpDiskCache(File directory, long maxBytes, int maxEntries) throws IOException {
+        if (maxEntries <= 0) {
+            throw new IllegalArgumentException("maxEntries must be positive: " + maxEntries);
+        }
+        this.directory = directory;
+        this.maxBytes = maxBytes;
+        this.maxEntries = maxEntries;
+        this.generations = new long[maxEntries];
+
+        if (!directory.isDirectory() && !directory.mkdirs()) {
+            throw new IOException("Cannot create the cache directory: " + directory);
+        }
+        indexFile = new RandomAccessFile(new File(directory, INDEX), "rw");
+        try {
+            try {
+                lock = indexFile.getChannel().tryLock();
+            } catch (OverlappingFileLockException e) {
+                throw new IOException("Cache directory is used by another cache of this JVM: " + directory, e);
+            }
+            if (lock == null) {
+                throw new IOException("Cache directory is used by another process: " + directory);
+            }
+            long size = HEADER_SIZE + (long) SLOT_SIZE * maxEntries;
+            boolean valid = indexFile.length() == size;
+            index = indexFile.getChannel().map(FileChannel.MapMode.READ_WRITE, 0, size);
+            if (!valid || index.getInt(0) != MAGIC || index.getInt(4) != VERSION || index.getInt(8) != maxEntries) {
+                reset();
+            }
+            load();
+        } catch (IOException | RuntimeException e) {
+            indexFile.close();
+            throw e;
+        }
+    }
+
+    /**
+     * Clears the index of an unknown or incompatible format.
+     */
+    private void reset() {
+        for (int i = 0; i < index.capacity(); i++) {
+            index.put(i, (byte) 0);
+        }
+        index.putInt(0, MAGIC);
+        index.putInt(4, VERSION);
+        index.putInt(8, maxEntries);
+    }
+
+    /**
+     * Rebuilds the LRU order from the index and deletes the cache files that have no slot.
+     */
+    private void load() {
+        List<Integer> used = new ArrayList<>();
+        Set<String> names = new HashSet<>();
+        for (int slot = 0; slot < maxEntries; slot++) {
+            if (index.getInt(offset(slot) + STATE) != USED) {
+                freeSlots.add(slot);
+                continue;
+            }
+            String key = getKey(slot);
+            if (!bodyFile(key).isFile() || !headFile(key).isFile()) {
+                index.putInt(offset(slot) + STATE, FREE);
+                freeSlots.add(slot);
+                continue;
+            }
+            used.add(slot);
+        }
+        Collections.sort(used, new Comparator<Integer>() {
+            @Override
+            public int compare(Integer a, Integer b) {
+                return Long.compare(index.getLong(offset(a) + LAST_ACCESS), index.getLong(offset(b) + LAST_ACCESS));
+            }
+        });
+        for (int slot : used) {
+            String key = getKey(slot);
+            slots.put(key, slot);
+            bytes += getFileSize(slot);
+            names.add(key + BODY);
+            names.add(key + HEAD);
+        }
+
+        File[] files = directory.listFiles();
+        if (files != null) {
+            for (File file : files) {
+                String name = file.getName();
+                if (FILE_NAME.matcher(name).matches() && !names.contains(name)) {
+                    // a write interrupted by a crash
+                    file.delete();
+                }
+            }
+        }
+        evict();
+    }
+
+    private static int offset(int slot) {
+        return HEADER_SIZE + slot * SLOT_SIZE;
+    }
+
+    private String getKey(int slot) {
+        StringBuilder hex = new StringBuilder(KEY_LENGTH * 2);
+        for (int i = 0; i < KEY_LENGTH; i++) {
+            int b = index.get(offset(slot) + KEY + i) & 0xff;
+            hex.append(Character.forDigit(b >> 4, 16)).append(Character.forDigit(b & 0xf, 16));
+        }
+        return hex.toString();
+    }
+
+    private long getFileSize(int slot) {
+        return index.getLong(offset(slot) + BODY_LENGTH) + index.getLong(offset(slot) + HEAD_LENGTH);
+    }
+
+    private File bodyFile(String key) {
+        return new File(directory, key + BODY);
+    }
+
+    private File headFile(String key) {
+        return new File(directory, key + HEAD);
+    }
+
+    /**
+     * @return the slot of the request, or null
+     */
+    synchronized Record lookup(HttpRequest request) {
+        if (closed) {
+            return null;
+        }
+        String key = toHex(digest(key(request)));
+        Integer slot = slots.get(key);
+        if (slot == null) {
+            return null;
+        }
+        int offset = offset(slot);
+        index.putLong(offset + LAST_ACCESS, System.currentTimeMillis());
+
+        String etag = null;
+        int etagLength = index.getInt(offset + ETAG_LENGTH);
+        if (etagLength > 0) {
+            byte[] bytes = new byte[etagLength];
+            for (int i = 0; i < etagLength; i++) {
+                bytes[i] = index.get(offset + ETAG + i);
+            }
+            etag = new String(bytes, StandardCharsets.ISO_8859_1);
+        }
+        return new Record(slot, generations[slot], key, index.getInt(offset + STATUS),
+                index.getLong(offset + FRESH_UNTIL), etag, index.getLong(offset + LAST_MODIFIED), index.getLong(offset + BODY_LENGTH));
+    }
+
+    /**
+     * Opens the stored response, with the body streamed from its file.
+     *
+     * @return the response, or null if the entry has been replaced or evicted since the lookup
+     */
+    HttpCachedResponse open(HttpClientConfiguration conf, Record record) {
+        try {
+            Map<String, List<String>> headers = readHead(record.key);
+            InputStream body = new FileInputStream(bodyFile(record.key));
+            if (!isCurrent(record)) {
+                body.close();
+                return null;
+            }
+            return new HttpCachedResponse(conf, record.statusCode, headers, body);
+        } catch (IOException e) {
+            logger.debug("Cache entry is gone: " + e.getMessage());
+            return null;
+        }
+    }
+
+    /**
+     * Reads the stored response into memory.
+     *
+     * @return the entry, or null if the entry has been replaced or evicted since the lookup
+     */
+    HttpCacheEntry load(Record record) {
+        try {
+            Map<String, List<String>> headers = readHead(record.key);
+            byte[] body = Files.readAllBytes(bodyFile(record.key).toPath());
+            if (!isCurrent(record)) {
+                return null;
+            }
+            int offset = offset(record.slot);
+            return new HttpCacheEntry(record.statusCode, headers, body,
+                    index.getLong(offset + REQUEST_TIME), index.getLong(offset + RESPONSE_TIME));
+        } catch (IOException e) {
+            logger.debug("Cache entry is gone: " + e.getMessage());
+            return null;
+        }
+    }
+
+    /**
+     * @return true if the files of the record have not been replaced or removed since the lookup
+     */
+    private synchronized boolean isCurrent(Record record) {
+        Integer slot = slots.get(record.key);
+        return slot != null && slot == record.slot && generations[slot] == record.generation;
+    }
+
+    /**
+     * Stores an entry read into memory.
+     */
+    void put(HttpRequest request, HttpCacheEntry entry) {
+        String key = toHex(digest(key(request)));
+        File body = tempFile(key);
+        try {
+            try (FileOutputStream out = new FileOutputStream(body)) {
+                out.write(entry.getBody());
+            }
+            if (!install(request, key, entry, body)) {
+                body.delete();
+            }
+        } catch (IOException e) {
+            logger.debug("Cannot store cache entry: " + e.getMessage());
+            body.delete();
+        }
+    }
+
+    /**
+     * Streams the body of the response into the cache.
+     *
+     * @param entry status, headers and times of the response, its body is ignored
+     * @return the stored response, read from the file of the entry
+     */
+    HttpCachedResponse put(HttpClientConfiguration conf, HttpRequest request,
+                           HttpCacheEntry entry, HttpResponse response) throws HttpException {
+        String key = toHex(digest(key(request)));
+        final File body = tempFile(key);
+        try {
+            response.transferTo(body.toPath());
+        } catch (HttpException e) {
+            body.delete();
+            throw e;
+        }
+
+        Map<String, List<String>> headers = new LinkedHashMap<>(entry.getHeaders());
+        headers.put("Content-Length", Collections.singletonList(Long.toString(body.length())));
+        HttpCacheEntry stored = new HttpCacheEntry(entry.getStatusCode(), headers, new byte[0],
+                entry.getRequestTime(), entry.getResponseTime());
+        try {
+            if (install(request, key, stored, body)) {
+                Record record = lookup(request);
+                HttpCachedResponse cached = (record != null) ? open(conf, record) : null;
+                if (cached != null) {
+                    return cached;
+                }
+            }
+        } catch (IOException e) {
+            logger.debug("Cannot store cache entry: " + e.getMessage());
+        }
+
+        // not stored, the body has been read into the file already
+        try {
+            InputStream in = new FileInputStream(body) {
+                @Override
+                public void close() throws IOException {
+                    super.close();
+                    body.delete();
+                }
+            };
+            return new HttpCachedResponse(conf, stored.getStatusCode(), stored.getHeaders(), in);
+        } catch (IOException e) {
+            body.delete();
+            throw new HttpException(e.getMessage(), e);
+        }
+    }
+
+    /**
+     * Updates the headers and expiry of an entry after a 304 Not Modified.
+     *
+     * @return the record of the updated entry, or null if it is gone
+     */
+    Record revalidated(HttpRequest request, Record record,
+                       Map<String, List<String>> notModifiedHeaders, long requestTime, long responseTime) {
+        try {
+            Map<String, List<String>> headers = readHead(record.key);
+            HttpCacheEntry updated = new HttpCacheEntry(record.statusCode, headers, new byte[0], 0, 0)
+                    .revalidated(notModifiedHeaders, requestTime, responseTime);
+            File head = tempFile(record.key);
+            long headLength = writeHead(head, updated.getHeaders());
+            synchronized (this) {
+                if (!isCurrent(record)) {
+                    head.delete();
+                    return null;
+                }
+                move(head, headFile(record.key));
+                generations[record.slot]++;
+                int offset = offset(record.slot);
+                bytes += headLength - index.getLong(offset + HEAD_LENGTH);
+                writeSlot(offset, request, record.key, updated, record.bodyLength, headLength);
+            }
+            return lookup(request);
+        } catch (IOException e) {
+            logger.debug("Cannot update cache entry: " + e.getMessage());
+            return null;
+        }
+    }
+
+    /**
+     * Writes the header file and fills a slot for the body file.
+     *
+     * @return false if the entry does not fit, in which case the body file is left as is
+     */
+    private boolean install(HttpRequest request, String key, HttpCacheEntry entry, File body) throws IOException {
+        long bodyLength = body.length();
+        File head = tempFile(key);
+        long headLength;
+        try {
+            headLength = writeHead(head, entry.getHeaders());
+        } catch (IOException e) {
+            head.delete();
+            throw e;
+        }
+        if (bodyLength + headLength > maxBytes) {
+            head.delete();
+            remove(request);
+            return false;
+        }
+
+        synchronized (this) {
+            if (closed) {
+                head.delete();
+                return false;
+            }
+            Integer slot = slots.remove(key);
+            if (slot != null) {
+                bytes -= getFileSize(slot);
+                index.putInt(offset(slot) + STATE, FREE);
+            } else {
+                if (freeSlots.isEmpty()) {
+                    evictEldest();
+                }
+                slot = freeSlots.poll();
+            }
+            move(body, bodyFile(key));
+            move(head, headFile(key));
+            generations[slot]++;
+
+            writeSlot(offset(slot), request, key, entry, bodyLength, headLength);
+            slots.put(key, slot);
+            bytes += bodyLength + headLength;
+            evict();
+            return true;
+        }
+    }
+
+    private void writeSlot(int offset, HttpRequest request, String key, HttpCacheEntry entry,
+                           long bodyLength, long headLength) {
+        byte[] digest = fromHex(key);
+        for (int i = 0; i < KEY_LENGTH; i++) {
+            index.put(offset + KEY + i, digest[i]);
+        }
+        index.putInt(offset + STATUS, entry.getStatusCode());
+        index.putLong(offset + URL_HASH, urlHash(request.getURL()));
+        index.putLong(offset + REQUEST_TIME, entry.getRequestTime());
+        index.putLong(offset + RESPONSE_TIME, entry.getResponseTime());
+        index.putLong(offset + FRESH_UNTIL, entry.getFreshUntil());
+        index.putLong(offset + LAST_MODIFIED, HttpCacheEntry.parseDate(entry.getHeader("Last-Modified")));
+        index.putLong(offset + LAST_ACCESS, System.currentTimeMillis());
+        index.putLong(offset + BODY_LENGTH, bodyLength);
+        index.putLong(offset + HEAD_LENGTH, headLength);
+
+        String etag = entry.getHeader("ETag");
+        byte[] etagBytes = (etag != null) ? etag.getBytes(StandardCharsets.ISO_8859_1) : null;
+        if (etagBytes == null || etagBytes.length > MAX_ETAG_LENGTH) {
+            // revalidated with Last-Modified only
+            index.putInt(offset + ETAG_LENGTH, -1);
+        } else {
+            for (int i = 0; i < etagBytes.length; i++) {
+                index.put(offset + ETAG + i, etagBytes[i]);
+            }
+            index.putInt(offset + ETAG_LENGTH, etagBytes.length);
+        }
+        // marked used last, so that a crash leaves a free slot
+        index.putInt(offset + STATE, USED);
+    }
+
+    private void evict() {
+        while (bytes > maxBytes && !slots.isEmpty()) {
+            evictEldest();
+        }
+    }
+
+    private void evictEldest() {
+        Iterator<Map.Entry<String, Integer>> eldest = slots.entrySet().iterator();
+        Map.Entry<String, Integer> entry = eldest.next();
+        eldest.remove();
+        free(entry.getKey(), entry.getValue());
+    }
+
+    private void free(String key, int slot) {
+        generations[slot]++;
+        bytes -= getFileSize(slot);
+        index.putInt(offset(slot) + STATE, FREE);
+        freeSlots.add(slot);
+        bodyFile(key).delete();
+        headFile(key).delete();
+    }
+
+    synchronized void remove(HttpRequest request) {
+        String key = toHex(digest(key(request)));
+        Integer slot = slots.remove(key);
+        if (slot != null) {
+            free(key, slot);
+        }
+    }
+
+    /**
+     * Removes the entries of every request to the URL.
+     */
+    public synchronized void removeURL(String url) {
+        long hash = urlHash(url);
+        Iterator<Map.Entry<String, Integer>> it = slots.entrySet().iterator();
+        while (it.hasNext()) {
+            Map.Entry<String, Integer> entry = it.next();
+            if (index.getLong(offset(entry.getValue()) + URL_HASH) == hash) {
+                it.remove();
+                free(entry.getKey(), entry.getValue());
+            }
+        }
+    }
+
+    public synchronized void clear() {
+        Iterator<Map.Entry<String, Integer>> it = slots.entrySet().iterator();
+        while (it.hasNext()) {
+            Map.Entry<String, Integer> entry = it.next();
+            it.remove();
+            free(entry.getKey(), entry.getValue());
+        }
+    }
+
+    public long getMaxBytes() {
+        return maxBytes;
+    }
+
+    public synchronized long getByteCount() {
+        return bytes;
+    }
+
+    public synchronized int getEntryCount() {
+        return slots.size();
+    }
+
+    /**
+     * Flushes the index and releases the directory.
+     */
+    @Override
+    public synchronized void close() throws IOException {
+        if (closed) {
+            return;
+        }
+        closed = true;
+        index.force();
+        try {
+            lock.release();
+        } finally {
+            indexFile.close();
+        }
+    }
+
+    // files
+
+    private File tempFile(String key) {
+        return new File(directory, key + "." + System.nanoTime() + ".tmp");
+    }
+
+    private static void move(File from, File to) throws IOException {
+        Files.move(from.toPath(), to.toPath(), StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+    }
+
+    /**
+     * @return length of the file
+     */
+    private static long writeHead(File file, Map<String, List<String>> headers) throws IOException {
+        try (DataOutputStream out = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(file)))) {
+            out.writeInt(headers.size());
+            for (Map.Entry<String, List<String>> header : headers.entrySet()) {
+                out.writeBoolean(header.getKey() != null);
+                if (header.getKey() != null) {
+                    out.writeUTF(header.getKey());
+                }
+                out.writeInt(header.getValue().size());
+                for (String value : header.getValue()) {
+                    out.writeUTF(value);
+                }
+            }
+            out.flush();
+            return out.size();
+        }
+    }
+
+    private Map<String, List<String>> readHead(String key) throws IOException {
+        try (DataInputStream in = new DataInputStream(new BufferedInputStream(new FileInputStream(headFile(key))))) {
+            int count = in.readInt();
+            Map<String, List<String>> headers = new LinkedHashMap<>();
+            for (int i = 0; i < count; i++) {
+                String name = in.readBoolean() ? in.readUTF() : null;
+                int size = in.readInt();
+                List<String> values = new ArrayList<>(size);
+                for (int j = 0; j < size; j++) {
+                    values.add(in.readUTF());
+                }
+                headers.put(name, Collections.unmodifiableList(values));
+            }
+            return Collections.unmodifiableMap(headers);
+        }
+    }
+
+    // keys
+
+    /**
+     * @return text identifying the request, independent of the order of its headers
+     */
+    private static String key(HttpRequest request) {
+        StringBuilder key = new StringBuilder(256);
+        key.append(request.getMethod()).append(' ').append(request.getURL()).append('\n');
+        key.append(HttpParameter.encodeParameters(request.getParameters())).append('\n');
+        if (request.getRequestHeaders() != null) {
+            for (Map.Entry<String, String> header : new TreeMap<>(request.getRequestHeaders()).entrySet()) {
+                key.append(header.getKey()).append(": ").append(header.getValue()).append('\n');
+            }
+        }
+        return key.toString();
+    }
+
+    private static byte[] digest(String value) {
+        try {
+            return MessageDigest.getInstance("SHA-1").digest(value.getBytes(StandardCharsets.UTF_8));
+        } catch (NoSuchAlgorithmException e) {
+            throw new AssertionError(e);
+        }
+    }
+
+    private static long urlHash(String url) {
+        byte[] digest = digest(url);
+        long hash = 0;
+        for (int i = 0; i < 8; i++) {
+            hash = (hash << 8) | (digest[i] & 0xff);
+        }
+        return hash;
+    }
+
+    private static String toHex(byte[] bytes) {
+        StringBuilder hex = new StringBuilder(bytes.length * 2);
+        for (byte b : bytes) {
+            hex.append(Character.forDigit((b >> 4) & 0xf, 16)).append(Character.forDigit(b & 0xf, 16));
+        }
+        return hex.toString();
+    }
+
+    private static byte[] fromHex(String hex) {
+        byte[] bytes = new byte[hex.length() / 2];
+        for (int i = 0; i < bytes.length; i++) {
+            bytes[i] = (byte) Integer.parseInt(hex.substring(i * 2, i * 2 + 2), 16);
+        }
+        return bytes;
+    }
+
+    @Override
+    public synchronized String toString() {
+        return "HttpDiskCache{" +
+                "directory=" + directory +
+                ", maxBytes=" + maxBytes +
+                ", bytes=" + bytes +
+                ", entries=" + slots.size() +
+                '}';
+    }
+}
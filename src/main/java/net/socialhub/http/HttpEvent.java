@@ -0,0 +1,69 @@
+package net.socialhub.http;
+
+/**
+ * An event received from a text/event-stream.
+ *
+ * @see HttpEventSource
+ */
+public final class HttpEvent {
+
+    private final String type;
+    private final String data;
+    private final String lastEventId;
+
+    public HttpEvent(String type, String data, String lastEventId) {
+        this.type = type;
+        this.data = data;
+        this.lastEventId = lastEventId;
+    }
+
+    /**
+     * @return the event field, "message" if the server did not set it
+     */
+    public String getType() {
+        return type;
+    }
+
+    /**
+     * @return the data lines joined with "\n"
+     */
+    public String getData() {
+        return data;
+    }
+
+    /**
+     * @return the last event id seen on the stream, or null
+     */
+    public String getLastEventId() {
+        return lastEventId;
+    }
+
+    @Override
+    public boolean equals(Object o) {
+        if (this == o) return true;
+        if (!(o instanceof HttpEvent)) return false;
+
+        HttpEvent that = (HttpEvent) o;
+
+        if (!type.equals(that.type)) return false;
+        if (!data.equals(that.data)) return false;
+        return lastEventId != null ? lastEventId.equals(that.lastEventId) : that.lastEventId == null;
+    }
+
+    @Override
+    public int hashCode() {
+        int result = type.hashCode();
+        result = 31 * result + data.hashCode();
+        result = 31 * result + (lastEventId != null ? lastEventId.hashCode() : 0);
+        return result;
+    }
+
+    @Override
+    public String toString() {
+        return "HttpEvent{" +
+                "type='" + type + '\'' +
+                ", data='" + data + '\'' +
+                ", lastEventId='" + lastEventId + '\'' +
+                '}';
+    }
+}
@@ -0,0 +1,22 @@
+package net.socialhub.http;
+
+/**
+ * Receives the events of a {@link HttpEventSource} on its reader thread.
+ */
+public interface HttpEventListener {
+
+    /**
+     * The stream has been (re)opened.
+     */
+    public void onOpen(HttpResponse response);
+
+    public void onEvent(HttpEvent event);
+
+    /**
+     * The connection failed or could not be opened.
+     *
+     * @param reconnect true if the source connects again after the retry delay
+     */
+    public void onError(HttpException e, boolean reconnect);
+
+}
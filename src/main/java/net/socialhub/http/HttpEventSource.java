@@ -0,0 +1,215 @@
+package net.socialhub.http;
+
+import net.socialhub.logger.Logger;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * Server-Sent Events client.
+ * Reads a text/event-stream on a daemon thread and hands the events to the listener as they arrive.
+ * When the stream ends or the connection fails, the request is sent again after the retry delay
+ * (which the server can change with the retry field), with the Last-Event-ID header.
+ * The source stops on a 204 No Content, a 4xx status, a response that is not an event stream,
+ * or {@link #close()}. An exception thrown by the listener is reported to {@link HttpEventListener#onError}
+ * and the source reconnects.
+ */
+public class HttpEventSource implements Closeable {
+
+    private static final Logger logger = Logger.getLogger(HttpEventSource.class);
+
+    public static final String EVENT_STREAM = "text/event-stream";
+    public static final long DEFAULT_RETRY = 3000;
+
+    private final HttpClient client;
+    private final HttpRequest request;
+    private final HttpEventListener listener;
+
+    private volatile String lastEventId;
+    private volatile long retry = DEFAULT_RETRY;
+    private volatile boolean closed = false;
+    private volatile HttpResponse response;
+    private Thread thread;
+
+    public HttpEventSource(HttpClient client, String url, HttpEventListener listener) {
+        this(client, new HttpRequest(RequestMethod.GET, url, null, null), listener);
+    }
+
+    /**
+     * @param client   client used for every connection
+     * @param request  request opening the stream, its headers are sent on every connection
+     * @param listener listener of the events
+     */
+    public HttpEventSource(HttpClient client, HttpRequest request, HttpEventListener listener) {
+        this.client = client;
+        this.request = request;
+        this.listener = listener;
+    }
+
+    /**
+     * Starts reading the stream on a daemon thread.
+     */
+    public synchronized void start() {
+        if (closed) {
+            throw new IllegalStateException("Event source has been closed.");
+        }
+        if (thread == null) {
+            thread = HttpClientBase.daemonThreadFactory("JHttpClient-sse").newThread(new Runnable() {
+                @Override
+                public void run() {
+                    HttpEventSource.this.run();
+                }
+            });
+            thread.start();
+        }
+    }
+
+    private void run() {
+        try {
+            while (!closed) {
+                HttpResponse res = null;
+                try {
+                    res = client.request(newRequest());
+                    response = res;
+                    if (closed) {
+                        break;
+                    }
+                    if (res.getStatusCode() == HttpResponseCode.NO_CONTENT) {
+                        // the server asks the client to stop reconnecting
+                        break;
+                    }
+                    String contentType = res.getResponseHeader("Content-Type");
+                    if (contentType == null || !contentType.toLowerCase().startsWith(EVENT_STREAM)) {
+                        listener.onError(new HttpException("Unexpected content type: " + contentType, res), false);
+                        break;
+                    }
+                    listener.onOpen(res);
+                    read(res.asStream());
+
+                } catch (HttpException e) {
+                    if (closed) {
+                        break;
+                    }
+                    int status = (e.getResponse() != null) ? e.getResponse().getStatusCode() : e.getResponseCode();
+                    boolean reconnect = (status < 400 || status >= 500);
+                    listener.onError(e, reconnect);
+                    if (!reconnect) {
+                        break;
+                    }
+                } catch (IOException e) {
+                    if (closed) {
+                        break;
+                    }
+                    listener.onError(new HttpException(e.getMessage(), e), true);
+                } catch (RuntimeException e) {
+                    // thrown by the listener: the stream is dropped, as if the connection had failed
+                    if (closed) {
+                        break;
+                    }
+                    listener.onError(new HttpException(e.getMessage(), e), true);
+                } finally {
+                    if (res != null) {
+                        try {
+                            res.disconnect();
+                        } catch (IOException ignore) {
+                        }
+                    }
+                }
+
+                if (!closed) {
+                    logger.debug("Reconnecting to " + request.getURL() + " in " + retry + "ms");
+                    try {
+                        Thread.sleep(retry);
+                    } catch (InterruptedException e) {
+                        break;
+                    }
+                }
+            }
+        } finally {
+            // also when onError throws
+            closed = true;
+        }
+    }
+
+    private void read(InputStream stream) throws IOException {
+        HttpEventStreamReader reader = new HttpEventStreamReader(stream, lastEventId);
+        try {
+            HttpEvent event;
+            while (!closed && (event = reader.next()) != null) {
+                sync(reader);
+                listener.onEvent(event);
+            }
+        } finally {
+            sync(reader);
+        }
+    }
+
+    private void sync(HttpEventStreamReader reader) {
+        lastEventId = reader.getLastEventId();
+        if (reader.getRetry() >= 0) {
+            retry = reader.getRetry();
+        }
+    }
+
+    private HttpRequest newRequest() {
+        Map<String, String> headers = new HashMap<>();
+        if (request.getRequestHeaders() != null) {
+            headers.putAll(request.getRequestHeaders());
+        }
+        headers.put("Accept", EVENT_STREAM);
+        headers.put("Cache-Control", "no-cache");
+        if (lastEventId != null && !lastEventId.isEmpty()) {
+            headers.put("Last-Event-ID", lastEventId);
+        }
+        return new HttpRequest(request.getMethod(), request.getURL(), request.getParameters(), headers,
+                request.getTimeouts());
+    }
+
+    public String getLastEventId() {
+        return lastEventId;
+    }
+
+    /**
+     * @return current reconnection delay in milliseconds
+     */
+    public long getRetry() {
+        return retry;
+    }
+
+    public boolean isClosed() {
+        return closed;
+    }
+
+    /**
+     * Stops reading and closes the current connection.
+     */
+    @Override
+    public void close() {
+        closed = true;
+        HttpResponse res = response;
+        if (res != null) {
+            try {
+                res.disconnect();
+            } catch (IOException ignore) {
+            }
+        }
+        synchronized (this) {
+            if (thread != null) {
+                thread.interrupt();
+            }
+        }
+    }
+
+    @Override
+    public String toString() {
+        return "HttpEventSource{" +
+                "request=" + request +
+                ", lastEventId='" + lastEventId + '\'' +
+                ", retry=" + retry +
+                ", closed=" + closed +
+                '}';
+    }
+}
@@ -0,0 +1,169 @@
+package net.socialhub.http;
+
+import java.io.BufferedInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+
+/**
+ * Incremental text/event-stream parser.
+ * Lines are read as they arrive, an event is returned as soon as its blank line has been read.
+ */
+final class HttpEventStreamReader {
+
+    private static final String DEFAULT_TYPE = "message";
+
+    private final InputStream in;
+
+    private byte[] line = new byte[256];
+    private int lineLength;
+    private boolean skipLF = false;
+    private boolean firstLine = true;
+
+    private String type;
+    private final StringBuilder data = new StringBuilder();
+    private String lastEventId;
+    private long retry = -1;
+
+    /**
+     * @param lastEventId last event id of the previous connection, or null
+     */
+    HttpEventStreamReader(InputStream in, String lastEventId) {
+        this.in = new BufferedInputStream(in);
+        this.lastEventId = lastEventId;
+    }
+
+    /**
+     * @return last event id buffer, which survives reconnections
+     */
+    String getLastEventId() {
+        return lastEventId;
+    }
+
+    /**
+     * @return reconnection time in milliseconds set by the server, or -1
+     */
+    long getRetry() {
+        return retry;
+    }
+
+    /**
+     * Blocks until the next event has been received.
+     *
+     * @return the event, or null at the end of the stream
+     */
+    HttpEvent next() throws IOException {
+        String value;
+        while ((value = readLine()) != null) {
+            if (value.isEmpty()) {
+                if (data.length() == 0) {
+                    type = null;
+                    continue;
+                }
+                data.setLength(data.length() - 1);
+                HttpEvent event = new HttpEvent((type == null) ? DEFAULT_TYPE : type, data.toString(), lastEventId);
+                data.setLength(0);
+                type = null;
+                return event;
+            }
+            field(value);
+        }
+        // an incomplete event at the end of the stream is discarded
+        return null;
+    }
+
+    private void field(String value) {
+        if (value.charAt(0) == ':') {
+            // comment
+            return;
+        }
+        String name = value;
+        String content = "";
+        int colon = value.indexOf(':');
+        if (colon >= 0) {
+            name = value.substring(0, colon);
+            int start = colon + 1;
+            if (start < value.length() && value.charAt(start) == ' ') {
+                start++;
+            }
+            content = value.substring(start);
+        }
+
+        switch (name) {
+            case "event":
+                type = content;
+                break;
+            case "data":
+                data.append(content).append('\n');
+                break;
+            case "id":
+                if (content.indexOf('\0') < 0) {
+                    lastEventId = content;
+                }
+                break;
+            case "retry":
+                if (!content.isEmpty() && isDigits(content)) {
+                    try {
+                        retry = Long.parseLong(content);
+                    } catch (NumberFormatException ignore) {
+                        // too large
+                    }
+                }
+                break;
+            default:
+        }
+    }
+
+    private static boolean isDigits(String value) {
+        for (int i = 0; i < value.length(); i++) {
+            char c = value.charAt(i);
+            if (c < '0' || c > '9') {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Reads a line terminated by CRLF, LF or CR.
+     *
+     * @return the line, or null at the end of the stream
+     */
+    private String readLine() throws IOException {
+        lineLength = 0;
+        for (; ; ) {
+            int b = in.read();
+            if (b == -1) {
+                return null;
+            }
+            if (skipLF) {
+                skipLF = false;
+                if (b == '\n') {
+                    continue;
+                }
+            }
+            if (b == '\r') {
+                skipLF = true;
+                break;
+            }
+            if (b == '\n') {
+                break;
+            }
+            if (lineLength == line.length) {
+                line = Arrays.copyOf(line, line.length * 2);
+            }
+            line[lineLength++] = (byte) b;
+        }
+
+        int offset = 0;
+        if (firstLine) {
+            firstLine = false;
+            if (lineLength >= 3 && (line[0] & 0xff) == 0xEF && (line[1] & 0xff) == 0xBB && (line[2] & 0xff) == 0xBF) {
+                // byte order mark
+                offset = 3;
+            }
+        }
+        return new String(line, offset, lineLength - offset, StandardCharsets.UTF_8);
+    }
+}
@@ -5,7 +5,7 @@ public class HttpException extends Exception {
     private HttpResponse response;
     private String message;
     private int responseCode;
-
+    private HttpTimings timings;
 
     public HttpException(String message, Exception e, int responseCode) {
         this.responseCode = responseCode;
@@ -48,5 +48,19 @@ public class HttpException extends Exception {
     public void setMessage(String message) {
         this.message = message;
     }
+
+    /**
+     * @return timings of the failed request, those of the response if none were recorded
+     */
+    public HttpTimings getTimings() {
+        if (timings != null) {
+            return timings;
+        }
+        return (response != null) ? response.getTimings() : HttpTimings.NONE;
+    }
+
+    public void setTimings(HttpTimings timings) {
+        this.timings = timings;
+    }
     //</editor-fold>
 }
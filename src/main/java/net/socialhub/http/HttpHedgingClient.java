@@ -0,0 +1,320 @@
+package net.socialhub.http;
+
+import net.socialhub.logger.Logger;
+
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.ScheduledThreadPoolExecutor;
+import java.util.concurrent.SynchronousQueue;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+import java.util.function.BiConsumer;
+
+/**
+ * Client cutting the tail latency of GET and HEAD requests by hedging:
+ * if no response has arrived after {@link HttpClientConfiguration#getHttpHedgeDelayMillis()}
+ * (by default the 95th percentile of the recent latencies of the route),
+ * the request is sent a second time and the first response is used.
+ * The other attempt is cancelled, which aborts its exchange with {@link HttpClientNioImpl}.
+ * {@link HttpClientImpl} cannot abort a request in progress: its losing attempt runs until its response head
+ * arrives, and only then is the response disconnected.
+ * <p>
+ * The attempts of {@link #request(HttpRequest)} run on threads of this client, created as needed
+ * up to {@link HttpClientConfiguration#getHttpMaxTotalConnections()},
+ * so that blocking callers are not limited by the asynchronous executor of the client below.
+ * Once they are all busy, requests are sent on the calling thread without hedging.
+ * <p>
+ * The latency recorded for a route is the one seen by the caller, from the first attempt to the first response,
+ * whichever attempt wins.
+ * <p>
+ * Hedged requests are limited to {@link HttpClientConfiguration#getHttpHedgeBudgetRatio()}
+ * of the requests by a {@link HttpRetryBudget}, and no request is hedged
+ * until the latencies of its route are known.
+ * Other methods are passed through, since they may not be idempotent.
+ */
+public class HttpHedgingClient implements HttpClient {
+
+    private static final Logger logger = Logger.getLogger(HttpHedgingClient.class);
+
+    private static final double PERCENTILE = 0.95;
+
+    private final HttpClientConfiguration CONF;
+    private final HttpClient client;
+    private final ConcurrentMap<HttpRoute, HttpLatencyWindow> latencies = new ConcurrentHashMap<>();
+    private final HttpRetryBudget budget;
+    private final AtomicLong hedgedCount = new AtomicLong();
+    private final AtomicLong hedgeWonCount = new AtomicLong();
+    private ScheduledThreadPoolExecutor scheduler;
+    private ExecutorService executor;
+
+    public HttpHedgingClient(HttpClientConfiguration conf, HttpClient client) {
+        this.CONF = conf;
+        this.client = client;
+        this.budget = new HttpRetryBudget(conf.getHttpHedgeBudgetRatio(), 1);
+    }
+
+    @Override
+    public HttpResponse request(HttpRequest req) throws HttpException {
+        if (!isHedgeable(req)) {
+            return client.request(req);
+        }
+        CompletableFuture<HttpResponse> future = hedge(req, true);
+        try {
+            return future.get();
+        } catch (InterruptedException e) {
+            future.cancel(false);
+            Thread.currentThread().interrupt();
+            throw new HttpException("Interrupted while waiting for the response.", e);
+        } catch (ExecutionException e) {
+            Throwable cause = e.getCause();
+            if (cause instanceof HttpException) {
+                throw (HttpException) cause;
+            }
+            if (cause instanceof RuntimeException) {
+                throw (RuntimeException) cause;
+            }
+            throw new HttpException(cause.getMessage(), (cause instanceof Exception) ? (Exception) cause : null);
+        }
+    }
+
+    @Override
+    public CompletableFuture<HttpResponse> requestAsync(HttpRequest req) {
+        if (!isHedgeable(req)) {
+            return client.requestAsync(req);
+        }
+        return hedge(req, false);
+    }
+
+    /**
+     * @param blocking true to send the attempts with {@link HttpClient#request(HttpRequest)} on the threads
+     *                 of this client, false to send them with {@link HttpClient#requestAsync(HttpRequest)}
+     */
+    private CompletableFuture<HttpResponse> hedge(final HttpRequest req, final boolean blocking) {
+        final HttpLatencyWindow window;
+        try {
+            window = getLatencyWindow(HttpRoute.of(req.getURL()));
+        } catch (IllegalArgumentException e) {
+            CompletableFuture<HttpResponse> future = new CompletableFuture<>();
+            future.completeExceptionally(new HttpException(e.getMessage(), e));
+            return future;
+        }
+        budget.onRequest();
+
+        final CompletableFuture<HttpResponse> result = new CompletableFuture<>();
+        final AtomicReferenceArray<CompletableFuture<HttpResponse>> attempts = new AtomicReferenceArray<>(2);
+        final AtomicInteger pending = new AtomicInteger(1);
+        final AtomicBoolean answered = new AtomicBoolean();
+        final long start = System.nanoTime();
+        send(req, blocking, 0, start, attempts, pending, answered, result, window);
+
+        long delay = getHedgeDelayMillis(window);
+        if (delay >= 0 && !result.isDone()) {
+            try {
+                final ScheduledFuture<?> timer = getScheduler().schedule(new Runnable() {
+                    @Override
+                    public void run() {
+                        if (result.isDone() || !budget.tryRetry()) {
+                            return;
+                        }
+                        logger.debug("Hedging request: " + req.getURL());
+                        hedgedCount.incrementAndGet();
+                        pending.incrementAndGet();
+                        send(req, blocking, 1, start, attempts, pending, answered, result, window);
+                    }
+                }, delay, TimeUnit.MILLISECONDS);
+                result.whenComplete(new BiConsumer<HttpResponse, Throwable>() {
+                    @Override
+                    public void accept(HttpResponse res, Throwable e) {
+                        timer.cancel(false);
+                    }
+                });
+            } catch (RejectedExecutionException e) {
+                // shut down, no hedging
+            }
+        }
+
+        result.whenComplete(new BiConsumer<HttpResponse, Throwable>() {
+            @Override
+            public void accept(HttpResponse res, Throwable e) {
+                // cancel the loser, or both attempts if the caller cancelled
+                for (int i = 0; i < attempts.length(); i++) {
+                    CompletableFuture<HttpResponse> attempt = attempts.get(i);
+                    if (attempt != null) {
+                        attempt.cancel(false);
+                    }
+                }
+            }
+        });
+        return result;
+    }
+
+    /**
+     * Sends an attempt of the request; the first response completes the result.
+     *
+     * @param start time the first attempt was sent, in nanoseconds
+     */
+    private void send(HttpRequest req, boolean blocking, final int index, final long start,
+                      final AtomicReferenceArray<CompletableFuture<HttpResponse>> attempts,
+                      final AtomicInteger pending,
+                      final AtomicBoolean answered,
+                      final CompletableFuture<HttpResponse> result,
+                      final HttpLatencyWindow window) {
+        CompletableFuture<HttpResponse> attempt = blocking ? submit(req, index == 0) : client.requestAsync(req);
+        attempts.set(index, attempt);
+        if (result.isDone()) {
+            attempt.cancel(false);
+        }
+        attempt.whenComplete(new BiConsumer<HttpResponse, Throwable>() {
+            @Override
+            public void accept(HttpResponse res, Throwable e) {
+                Throwable cause = (e instanceof CompletionException && e.getCause() != null) ? e.getCause() : e;
+                if (cause == null) {
+                    if (answered.compareAndSet(false, true)) {
+                        // counted before the caller sees the response, from the first attempt
+                        window.record(TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start));
+                        if (index > 0) {
+                            hedgeWonCount.incrementAndGet();
+                        }
+                        if (!result.complete(res)) {
+                            // cancelled by the caller
+                            res.disconnectForcibly();
+                        }
+                    } else {
+                        // the other attempt won
+                        res.disconnectForcibly();
+                    }
+                } else if (!(cause instanceof CancellationException) && pending.decrementAndGet() == 0) {
+                    result.completeExceptionally(cause);
+                }
+            }
+        });
+    }
+
+    /**
+     * Runs {@link HttpClient#request(HttpRequest)} on a thread of this client.
+     * A response arriving once the attempt has been cancelled is disconnected.
+     *
+     * @param callerRuns true to run the attempt on the calling thread if all the threads are busy
+     */
+    private CompletableFuture<HttpResponse> submit(final HttpRequest req, boolean callerRuns) {
+        final CompletableFuture<HttpResponse> future = new CompletableFuture<>();
+        Runnable attempt = new Runnable() {
+            @Override
+            public void run() {
+                if (future.isDone()) {
+                    return;
+                }
+                try {
+                    HttpResponse res = client.request(req);
+                    if (!future.complete(res)) {
+                        res.disconnectForcibly();
+                    }
+                } catch (HttpException | RuntimeException e) {
+                    future.completeExceptionally(e);
+                }
+            }
+        };
+        ExecutorService executor = getExecutor();
+        try {
+            executor.execute(attempt);
+        } catch (RejectedExecutionException e) {
+            if (callerRuns && !executor.isShutdown()) {
+                attempt.run();
+            } else {
+                future.completeExceptionally(new HttpException(executor.isShutdown()
+                        ? "Client has been shut down." : "Too many hedged requests.", e));
+            }
+        }
+        return future;
+    }
+
+    /**
+     * @return milliseconds before hedging, or -1 not to hedge
+     */
+    private long getHedgeDelayMillis(HttpLatencyWindow window) {
+        int delay = CONF.getHttpHedgeDelayMillis();
+        return (delay > 0) ? delay : window.getValue();
+    }
+
+    private static boolean isHedgeable(HttpRequest req) {
+        return req.getMethod() == RequestMethod.GET || req.getMethod() == RequestMethod.HEAD;
+    }
+
+    HttpLatencyWindow getLatencyWindow(HttpRoute route) {
+        HttpLatencyWindow window = latencies.get(route);
+        if (window == null) {
+            HttpLatencyWindow created = new HttpLatencyWindow(PERCENTILE);
+            window = latencies.putIfAbsent(route, created);
+            if (window == null) {
+                window = created;
+            }
+        }
+        return window;
+    }
+
+    private synchronized ScheduledThreadPoolExecutor getScheduler() {
+        if (scheduler == null) {
+            scheduler = new ScheduledThreadPoolExecutor(1, HttpClientBase.daemonThreadFactory("JHttpClient-hedge"));
+            // most timers are cancelled by a response
+            scheduler.setRemoveOnCancelPolicy(true);
+        }
+        return scheduler;
+    }
+
+    private synchronized ExecutorService getExecutor() {
+        if (executor == null) {
+            // no queue: an attempt waiting for a thread would not be sent any sooner than a hedge
+            executor = new ThreadPoolExecutor(0, Math.max(1, CONF.getHttpMaxTotalConnections()),
+                    60, TimeUnit.SECONDS, new SynchronousQueue<Runnable>(),
+                    HttpClientBase.daemonThreadFactory("JHttpClient-hedge-request"));
+        }
+        return executor;
+    }
+
+    /**
+     * @return number of requests sent a second time
+     */
+    public long getHedgedCount() {
+        return hedgedCount.get();
+    }
+
+    /**
+     * @return number of hedged requests answered first by the second attempt
+     */
+    public long getHedgeWonCount() {
+        return hedgeWonCount.get();
+    }
+
+    @Override
+    public void shutdown() {
+        synchronized (this) {
+            if (scheduler != null) {
+                scheduler.shutdown();
+            }
+            if (executor != null) {
+                executor.shutdown();
+            }
+        }
+        client.shutdown();
+    }
+
+    @Override
+    public String toString() {
+        return "HttpHedgingClient{" +
+                "client=" + client +
+                ", hedgedCount=" + hedgedCount +
+                ", hedgeWonCount=" + hedgeWonCount +
+                '}';
+    }
+}
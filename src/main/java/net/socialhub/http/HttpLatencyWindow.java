@@ -0,0 +1,57 @@
+package net.socialhub.http;
+
+import java.util.Arrays;
+
+/**
+ * Latencies of the last requests of a route, as a ring,
+ * with a percentile recomputed every {@value #RECOMPUTE_INTERVAL} samples.
+ *
+ * @see HttpHedgingClient
+ */
+final class HttpLatencyWindow {
+
+    static final int SIZE = 128;
+    static final int MIN_SAMPLES = 20;
+    private static final int RECOMPUTE_INTERVAL = 16;
+
+    private final double percentile;
+    private final long[] samples = new long[SIZE];
+    private int count;
+    private int next;
+    private volatile long value = -1;
+
+    /**
+     * @param percentile percentile to track, between 0 and 1
+     */
+    HttpLatencyWindow(double percentile) {
+        this.percentile = percentile;
+    }
+
+    synchronized void record(long millis) {
+        samples[next] = millis;
+        next = (next + 1) % SIZE;
+        if (count < SIZE) {
+            count++;
+        }
+        if (count >= MIN_SAMPLES && (value < 0 || next % RECOMPUTE_INTERVAL == 0)) {
+            long[] sorted = Arrays.copyOf(samples, count);
+            Arrays.sort(sorted);
+            value = sorted[Math.min(count - 1, (int) Math.ceil(count * percentile) - 1)];
+        }
+    }
+
+    /**
+     * @return the percentile in milliseconds, or -1 until {@value #MIN_SAMPLES} samples are recorded
+     */
+    long getValue() {
+        return value;
+    }
+
+    @Override
+    public String toString() {
+        return "HttpLatencyWindow{" +
+                "percentile=" + percentile +
+                ", value=" + value +
+                '}';
+    }
+}
@@ -0,0 +1,228 @@
+package net.socialhub.http;
+
+import javax.management.JMException;
+import javax.management.MBeanServer;
+import javax.management.ObjectName;
+import java.lang.management.ManagementFactory;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Metrics of the requests sent by the clients configured with it,
+ * see {@link HttpClientConfiguration#getHttpMetrics()}: active requests, retries, errors by class,
+ * bytes sent and received, pool waits, and per route the statuses and latency histograms.
+ * Everything is recorded with {@link LongAdder}s and {@link HttpLatencyHistogram}s, without locking,
+ * from the {@link HttpTimings} of each request; the getters return snapshots.
+ * <p>
+ * Only requests sent to the network are counted, not cache hits nor requests
+ * refused by a circuit breaker or a rate limiter.
+ */
+public final class HttpMetrics implements HttpMetricsMXBean {
+
+    private final ConcurrentMap<HttpRoute, HttpRouteMetrics> routes = new ConcurrentHashMap<>();
+    private final ConcurrentMap<String, LongAdder> errors = new ConcurrentHashMap<>();
+    private final LongAdder active = new LongAdder();
+    private final LongAdder requests = new LongAdder();
+    private final LongAdder retries = new LongAdder();
+    private final LongAdder bytesSent = new LongAdder();
+    private final LongAdder bytesReceived = new LongAdder();
+    private volatile HttpLatencyHistogram poolWait = new HttpLatencyHistogram();
+
+    // recorded by HttpTimings
+
+    void onStart() {
+        active.increment();
+    }
+
+    void onFinish(HttpRoute route, HttpTimings timings, int statusCode, Throwable error) {
+        active.decrement();
+        requests.increment();
+        retries.add(timings.getRetryCount());
+        poolWait.record(timings.getConnectionAcquireNanos());
+        if (route != null) {
+            getRouteMetrics(route).record(statusCode, timings);
+        }
+        if (error != null) {
+            count(errors, getErrorClass(error));
+        }
+    }
+
+    void addBytesSent(long n) {
+        bytesSent.add(n);
+    }
+
+    void addBytesReceived(long n) {
+        bytesReceived.add(n);
+    }
+
+    /**
+     * @return the cause of a {@link HttpException} if it has one, since the exception only wraps it
+     */
+    private static String getErrorClass(Throwable error) {
+        if (error instanceof HttpException && error.getClass() == HttpException.class && error.getCause() != null) {
+            error = error.getCause();
+        }
+        return error.getClass().getName();
+    }
+
+    private static void count(ConcurrentMap<String, LongAdder> counters, String key) {
+        LongAdder counter = counters.get(key);
+        if (counter == null) {
+            LongAdder created = new LongAdder();
+            counter = counters.putIfAbsent(key, created);
+            if (counter == null) {
+                counter = created;
+            }
+        }
+        counter.increment();
+    }
+
+    private HttpRouteMetrics getRouteMetrics(HttpRoute route) {
+        HttpRouteMetrics metrics = routes.get(route);
+        if (metrics == null) {
+            HttpRouteMetrics created = new HttpRouteMetrics(route);
+            metrics = routes.putIfAbsent(route, created);
+            if (metrics == null) {
+                metrics = created;
+            }
+        }
+        return metrics;
+    }
+
+    /**
+     * Registers the metrics with the platform MBean server
+     * as {@code net.socialhub.http:type=HttpMetrics,name=<name>}.
+     *
+     * @return the name of the MBean, to unregister it
+     */
+    public ObjectName registerMBean(String name) throws JMException {
+        ObjectName objectName = new ObjectName("net.socialhub.http:type=HttpMetrics,name=" + ObjectName.quote(name));
+        MBeanServer server = ManagementFactory.getPlatformMBeanServer();
+        server.registerMBean(this, objectName);
+        return objectName;
+    }
+
+    /**
+     * @return metrics of the routes which have been requested
+     */
+    public Map<HttpRoute, HttpRouteMetrics> getRouteMetrics() {
+        return new HashMap<>(routes);
+    }
+
+    public HttpLatencyHistogram.Snapshot getPoolWait() {
+        return poolWait.snapshot();
+    }
+
+    @Override
+    public long getActiveRequests() {
+        return active.sum();
+    }
+
+    @Override
+    public long getRequestCount() {
+        return requests.sum();
+    }
+
+    @Override
+    public long getRetryCount() {
+        return retries.sum();
+    }
+
+    @Override
+    public long getBytesSent() {
+        return bytesSent.sum();
+    }
+
+    @Override
+    public long getBytesReceived() {
+        return bytesReceived.sum();
+    }
+
+    @Override
+    public Map<String, Long> getErrorCounts() {
+        Map<String, Long> counts = new TreeMap<>();
+        for (Map.Entry<String, LongAdder> entry : errors.entrySet()) {
+            counts.put(entry.getKey(), entry.getValue().sum());
+        }
+        return counts;
+    }
+
+    @Override
+    public Map<String, Long> getStatusCounts() {
+        Map<String, Long> counts = new TreeMap<>();
+        for (HttpRouteMetrics metrics : routes.values()) {
+            for (Map.Entry<Integer, Long> entry : metrics.getStatusCounts().entrySet()) {
+                counts.put(metrics.getRoute() + " " + entry.getKey(), entry.getValue());
+            }
+        }
+        return counts;
+    }
+
+    @Override
+    public Map<String, Double> getLatencyMeanMillis() {
+        Map<String, Double> values = new TreeMap<>();
+        for (HttpRouteMetrics metrics : routes.values()) {
+            values.put(metrics.getRoute().toString(), metrics.getLatency().getMean() / 1000000);
+        }
+        return values;
+    }
+
+    @Override
+    public Map<String, Double> getLatencyP50Millis() {
+        return getLatencyMillis(50);
+    }
+
+    @Override
+    public Map<String, Double> getLatencyP99Millis() {
+        return getLatencyMillis(99);
+    }
+
+    @Override
+    public Map<String, Double> getLatencyMaxMillis() {
+        return getLatencyMillis(100);
+    }
+
+    private Map<String, Double> getLatencyMillis(double percentile) {
+        Map<String, Double> values = new TreeMap<>();
+        for (HttpRouteMetrics metrics : routes.values()) {
+            values.put(metrics.getRoute().toString(), metrics.getLatency().getPercentile(percentile) / 1000000.0);
+        }
+        return values;
+    }
+
+    @Override
+    public long getPoolWaitCount() {
+        return poolWait.snapshot().getCount();
+    }
+
+    @Override
+    public double getPoolWaitP99Millis() {
+        return poolWait.snapshot().getPercentile(99) / 1000000.0;
+    }
+
+    @Override
+    public void reset() {
+        routes.clear();
+        errors.clear();
+        requests.reset();
+        retries.reset();
+        bytesSent.reset();
+        bytesReceived.reset();
+        poolWait = new HttpLatencyHistogram();
+    }
+
+    @Override
+    public String toString() {
+        return "HttpMetrics{" +
+                "activeRequests=" + getActiveRequests() +
+                ", requests=" + getRequestCount() +
+                ", retries=" + getRetryCount() +
+                ", errors=" + getErrorCounts() +
+                ", routes=" + routes.values() +
+                '}';
+    }
+}
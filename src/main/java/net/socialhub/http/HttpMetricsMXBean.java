@@ -0,0 +1,47 @@
+package net.socialhub.http;
+
+import java.util.Map;
+
+/**
+ * Management interface of {@link HttpMetrics}, registered with {@link HttpMetrics#registerMBean(String)}.
+ * Latencies are in milliseconds; per-route values are keyed by {@link HttpRoute#toString()}.
+ */
+public interface HttpMetricsMXBean {
+
+    long getActiveRequests();
+
+    long getRequestCount();
+
+    long getRetryCount();
+
+    long getBytesSent();
+
+    long getBytesReceived();
+
+    /**
+     * @return failed requests by exception class
+     */
+    Map<String, Long> getErrorCounts();
+
+    /**
+     * @return requests by route and status code, keyed "route status"
+     */
+    Map<String, Long> getStatusCounts();
+
+    Map<String, Double> getLatencyMeanMillis();
+
+    Map<String, Double> getLatencyP50Millis();
+
+    Map<String, Double> getLatencyP99Millis();
+
+    Map<String, Double> getLatencyMaxMillis();
+
+    long getPoolWaitCount();
+
+    double getPoolWaitP99Millis();
+
+    /**
+     * Forgets all the counts.
+     */
+    void reset();
+}
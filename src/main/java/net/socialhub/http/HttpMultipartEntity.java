@@ -0,0 +1,171 @@
+package net.socialhub.http;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * multipart/form-data body built from parameters.
+ * The exact length is known before sending unless a part is backed by an {@link InputStream},
+ * and the parts are streamed to the output without being buffered.
+ */
+public final class HttpMultipartEntity {
+
+    static final byte[] CRLF = {'\r', '\n'};
+
+    private final String boundary;
+    private final List<Part> parts;
+    private final byte[] closing;
+
+    /**
+     * @param params              parameters
+     * @param formTextContentType content type of the text parts, or null to omit it
+     */
+    public HttpMultipartEntity(HttpParameter[] params, String formTextContentType) {
+        this(params, formTextContentType, "----JHttpClient-upload" + System.currentTimeMillis());
+    }
+
+    public HttpMultipartEntity(HttpParameter[] params, String formTextContentType, String boundary) {
+        this.boundary = boundary;
+        List<Part> list = new ArrayList<>(params.length);
+        for (HttpParameter param : params) {
+            StringBuilder head = new StringBuilder(128);
+            head.append("--").append(boundary).append("\r\n");
+            if (param.isFile()) {
+                head.append("Content-Disposition: form-data; name=\"").append(param.getName())
+                        .append("\"; filename=\"").append(param.getFile().getName()).append("\"\r\n");
+                head.append("Content-Type: ").append(param.getContentType()).append("\r\n\r\n");
+                list.add(new Part(bytes(head), param, null));
+            } else {
+                head.append("Content-Disposition: form-data; name=\"").append(param.getName()).append("\"\r\n");
+                if (formTextContentType != null) {
+                    head.append("Content-Type: ").append(formTextContentType).append("; charset=UTF-8\r\n");
+                }
+                head.append("\r\n");
+                list.add(new Part(bytes(head), null, param.getValue().getBytes(StandardCharsets.UTF_8)));
+            }
+        }
+        this.parts = Collections.unmodifiableList(list);
+        this.closing = bytes(new StringBuilder("--").append(boundary).append("--\r\n\r\n"));
+    }
+
+    /**
+     * Encodes header text as {@link java.io.DataOutputStream#writeBytes(String)} does.
+     */
+    private static byte[] bytes(CharSequence text) {
+        byte[] bytes = new byte[text.length()];
+        for (int i = 0; i < bytes.length; i++) {
+            bytes[i] = (byte) text.charAt(i);
+        }
+        return bytes;
+    }
+
+    public String getBoundary() {
+        return boundary;
+    }
+
+    public String getContentType() {
+        return HttpMediaType.MULTIPART_FORM_DATA + "; boundary=" + boundary;
+    }
+
+    /**
+     * @return exact length of the body, or -1 if a part has unknown length
+     */
+    public long getContentLength() {
+        long length = closing.length;
+        for (Part part : parts) {
+            long partLength = part.getContentLength();
+            if (partLength < 0) {
+                return -1;
+            }
+            length += part.head.length + partLength + CRLF.length;
+        }
+        return length;
+    }
+
+    List<Part> getParts() {
+        return parts;
+    }
+
+    byte[] getClosing() {
+        return closing;
+    }
+
+    /**
+     * Streams the body to the output.
+     *
+     * @param out output stream
+     */
+    public void writeTo(OutputStream out) throws IOException {
+        for (Part part : parts) {
+            out.write(part.head);
+            part.writeContentTo(out);
+            out.write(CRLF);
+        }
+        out.write(closing);
+    }
+
+    /**
+     * A part: its headers, its content and the trailing CRLF.
+     */
+    static final class Part {
+
+        private final byte[] head;
+        private final HttpParameter file;
+        private final byte[] value;
+
+        Part(byte[] head, HttpParameter file, byte[] value) {
+            this.head = head;
+            this.file = file;
+            this.value = value;
+        }
+
+        byte[] getHead() {
+            return head;
+        }
+
+        /**
+         * @return parameter of a file part, or null for a text part
+         */
+        HttpParameter getFile() {
+            return file;
+        }
+
+        byte[] getValue() {
+            return value;
+        }
+
+        /**
+         * @return length of the content, or -1 if it is read from a stream
+         */
+        long getContentLength() {
+            if (file == null) {
+                return value.length;
+            }
+            if (file.hasFileBody()) {
+                return -1;
+            }
+            return file.getFile().length();
+        }
+
+        void writeContentTo(OutputStream out) throws IOException {
+            if (file == null) {
+                out.write(value);
+                return;
+            }
+            file.writeFileTo(out);
+        }
+    }
+
+    @Override
+    public String toString() {
+        return "HttpMultipartEntity{" +
+                "boundary='" + boundary + '\'' +
+                ", parts=" + parts.size() +
+                '}';
+    }
+}
@@ -0,0 +1,226 @@
+package net.socialhub.http;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InterruptedIOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.WritableByteChannel;
+import java.util.LinkedList;
+
+/**
+ * Response body fed by an {@link HttpClientNioImpl} event loop and read by the caller.
+ * The event loop stops reading the socket while more than the high water mark
+ * is buffered, and resumes once the reader has drained it below the low water mark.
+ */
+final class HttpNioBodyInputStream extends InputStream {
+
+    /**
+     * Callbacks into the exchange feeding this stream.
+     */
+    interface Control {
+
+        /** the reader drained the buffer, the socket can be read again */
+        void resume();
+
+        /** the reader closed the stream before the end of the body */
+        void abort();
+    }
+
+    private final LinkedList<byte[]> chunks = new LinkedList<>();
+    private final int highWaterMark;
+    private final int lowWaterMark;
+    private final long readTimeout;
+
+    private Control control;
+    private byte[] current;
+    private int offset;
+    private int buffered;
+    private boolean suspended;
+    private boolean finished;
+    private boolean closed;
+    private IOException failure;
+
+    /**
+     * @param highWaterMark bytes buffered before the socket stops being read
+     * @param readTimeout   milliseconds a read waits for data, 0 to wait forever
+     */
+    HttpNioBodyInputStream(int highWaterMark, long readTimeout) {
+        this.highWaterMark = highWaterMark;
+        this.lowWaterMark = highWaterMark / 2;
+        this.readTimeout = readTimeout;
+    }
+
+    synchronized void setControl(Control control) {
+        this.control = control;
+    }
+
+    // event loop side
+
+    /**
+     * @return false if the event loop should stop reading until {@link Control#resume()}
+     */
+    synchronized boolean offer(byte[] chunk) {
+        if (closed) {
+            return true;
+        }
+        chunks.addLast(chunk);
+        buffered += chunk.length;
+        notifyAll();
+        if (buffered > highWaterMark) {
+            suspended = true;
+            return false;
+        }
+        return true;
+    }
+
+    synchronized void finish() {
+        finished = true;
+        notifyAll();
+    }
+
+    synchronized void fail(IOException e) {
+        if (!finished) {
+            failure = e;
+            finished = true;
+            notifyAll();
+        }
+    }
+
+    synchronized boolean isFinished() {
+        return finished && failure == null;
+    }
+
+    // reader side
+
+    @Override
+    public int read() throws IOException {
+        byte[] one = new byte[1];
+        int n = read(one, 0, 1);
+        return (n == -1) ? -1 : (one[0] & 0xff);
+    }
+
+    @Override
+    public int read(byte[] b, int off, int len) throws IOException {
+        if (len == 0) {
+            return 0;
+        }
+        Control resume = null;
+        int n;
+        synchronized (this) {
+            if (!fill()) {
+                return -1;
+            }
+            n = Math.min(len, current.length - offset);
+            System.arraycopy(current, offset, b, off, n);
+            offset += n;
+            buffered -= n;
+            if (offset == current.length) {
+                current = null;
+            }
+            if (suspended && buffered < lowWaterMark) {
+                suspended = false;
+                resume = control;
+            }
+        }
+        if (resume != null) {
+            resume.resume();
+        }
+        return n;
+    }
+
+    /**
+     * Writes the rest of the body to the channel, chunk by chunk as received.
+     *
+     * @return number of bytes written
+     */
+    long transferTo(WritableByteChannel target) throws IOException {
+        long written = 0;
+        for (; ; ) {
+            Control resume = null;
+            ByteBuffer chunk;
+            synchronized (this) {
+                if (!fill()) {
+                    return written;
+                }
+                chunk = ByteBuffer.wrap(current, offset, current.length - offset);
+                buffered -= chunk.remaining();
+                current = null;
+                if (suspended && buffered < lowWaterMark) {
+                    suspended = false;
+                    resume = control;
+                }
+            }
+            if (resume != null) {
+                resume.resume();
+            }
+            while (chunk.hasRemaining()) {
+                written += target.write(chunk);
+            }
+        }
+    }
+
+    @Override
+    public synchronized int available() {
+        return buffered;
+    }
+
+    /**
+     * Waits for the next chunk.
+     *
+     * @return false at the end of the body
+     */
+    private boolean fill() throws IOException {
+        if (closed) {
+            throw new IOException("Stream closed");
+        }
+        long deadline = (readTimeout > 0) ? System.currentTimeMillis() + readTimeout : 0;
+        while (current == null) {
+            if (!chunks.isEmpty()) {
+                current = chunks.removeFirst();
+                offset = 0;
+                return true;
+            }
+            if (failure != null) {
+                throw failure;
+            }
+            if (finished) {
+                return false;
+            }
+            try {
+                if (deadline == 0) {
+                    wait();
+                } else {
+                    long remaining = deadline - System.currentTimeMillis();
+                    if (remaining <= 0) {
+                        throw new InterruptedIOException("Read timed out");
+                    }
+                    wait(remaining);
+                }
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new InterruptedIOException(e.getMessage());
+            }
+        }
+        return true;
+    }
+
+    @Override
+    public void close() {
+        Control abort = null;
+        synchronized (this) {
+            if (closed) {
+                return;
+            }
+            closed = true;
+            chunks.clear();
+            current = null;
+            buffered = 0;
+            if (!finished) {
+                abort = control;
+            }
+        }
+        if (abort != null) {
+            abort.abort();
+        }
+    }
+}
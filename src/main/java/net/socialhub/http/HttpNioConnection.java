@@ -0,0 +1,366 @@
+package net.socialhub.http;
+
+import javax.net.ssl.SSLContext;
+import javax.net.ssl.SSLEngine;
+import javax.net.ssl.SSLEngineResult;
+import javax.net.ssl.SSLException;
+import javax.net.ssl.SSLParameters;
+import java.io.Closeable;
+import java.io.EOFException;
+import java.io.IOException;
+import java.net.InetSocketAddress;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.channels.SelectionKey;
+import java.nio.channels.SocketChannel;
+import java.security.NoSuchAlgorithmException;
+
+/**
+ * A non-blocking connection owned by one {@link HttpClientNioImpl} event loop.
+ * Plain connections read and write the channel directly,
+ * https connections go through an {@link SSLEngine}.
+ * All methods but {@link #close()} must be called on the owning event loop thread.
+ */
+final class HttpNioConnection implements Closeable {
+
+    private static final ByteBuffer EMPTY = ByteBuffer.allocate(0);
+
+    private final HttpClientNioImpl.EventLoop loop;
+    private final SocketChannel channel;
+    private final SSLEngine ssl;
+
+    private SelectionKey key;
+    private ByteBuffer netIn;
+    private ByteBuffer netOut;
+    private ByteBuffer appIn;
+    private boolean handshaking;
+    private boolean closed;
+
+    private HttpNioConnection(HttpClientNioImpl.EventLoop loop, SocketChannel channel, SSLEngine ssl) {
+        this.loop = loop;
+        this.channel = channel;
+        this.ssl = ssl;
+        if (ssl != null) {
+            int packet = ssl.getSession().getPacketBufferSize();
+            int app = ssl.getSession().getApplicationBufferSize();
+            netIn = ByteBuffer.allocate(packet);
+            netOut = ByteBuffer.allocate(packet);
+            appIn = ByteBuffer.allocate(app);
+            netOut.flip();
+            appIn.flip();
+            handshaking = true;
+        }
+    }
+
+    /**
+     * Opens a non-blocking channel and starts connecting to the resolved address of the route.
+     */
+    static HttpNioConnection open(HttpClientNioImpl.EventLoop loop, HttpRoute route, InetSocketAddress address)
+            throws IOException {
+        SocketChannel channel = SocketChannel.open();
+        try {
+            channel.configureBlocking(false);
+            channel.socket().setTcpNoDelay(true);
+            channel.connect(address);
+            SSLEngine ssl = null;
+            if (route.isSecure()) {
+                ssl = createSSLEngine(route);
+            }
+            return new HttpNioConnection(loop, channel, ssl);
+        } catch (IOException e) {
+            channel.close();
+            throw e;
+        }
+    }
+
+    private static SSLEngine createSSLEngine(HttpRoute route) throws IOException {
+        try {
+            SSLEngine engine = SSLContext.getDefault().createSSLEngine(route.getHost(), route.getPort());
+            engine.setUseClientMode(true);
+            SSLParameters params = engine.getSSLParameters();
+            params.setEndpointIdentificationAlgorithm("HTTPS");
+            engine.setSSLParameters(params);
+            engine.beginHandshake();
+            return engine;
+        } catch (NoSuchAlgorithmException e) {
+            throw new SSLException(e);
+        }
+    }
+
+    HttpClientNioImpl.EventLoop getLoop() {
+        return loop;
+    }
+
+    SocketChannel getChannel() {
+        return channel;
+    }
+
+    void setKey(SelectionKey key) {
+        this.key = key;
+    }
+
+    SelectionKey getKey() {
+        return key;
+    }
+
+    boolean isOpen() {
+        return !closed && channel.isOpen();
+    }
+
+    void interest(int ops) {
+        if (key != null && key.isValid()) {
+            key.interestOps(ops);
+        }
+    }
+
+    /**
+     * @return true once the TCP connection is established
+     */
+    boolean finishConnect() throws IOException {
+        return channel.finishConnect();
+    }
+
+    /**
+     * Advances the TLS handshake as far as possible without blocking.
+     * The delegated tasks of the engine, which may block or take long, run off the loop,
+     * with the connection silenced, and the loop runs {@code resume} once they are done.
+     *
+     * @return true once the connection is ready to exchange application data
+     */
+    boolean handshake(Runnable resume) throws IOException {
+        if (!handshaking) {
+            return true;
+        }
+        for (; ; ) {
+            if (!flushNet()) {
+                interest(SelectionKey.OP_WRITE);
+                return false;
+            }
+            SSLEngineResult.HandshakeStatus status = ssl.getHandshakeStatus();
+            switch (status) {
+                case NEED_WRAP:
+                    wrap(EMPTY);
+                    break;
+                case NEED_UNWRAP:
+                    if (!unwrap()) {
+                        if (ssl.isInboundDone()) {
+                            throw new EOFException("Connection closed during TLS handshake");
+                        }
+                        interest(SelectionKey.OP_READ);
+                        return false;
+                    }
+                    break;
+                case NEED_TASK:
+                    interest(0);
+                    loop.offload(new Runnable() {
+                        @Override
+                        public void run() {
+                            Runnable task;
+                            while ((task = ssl.getDelegatedTask()) != null) {
+                                task.run();
+                            }
+                        }
+                    }, resume);
+                    return false;
+                default:
+                    handshaking = false;
+                    return true;
+            }
+        }
+    }
+
+    /**
+     * Reads application bytes into the buffer.
+     *
+     * @return number of bytes read, or -1 when the peer closed the connection
+     */
+    int read(ByteBuffer dst) throws IOException {
+        if (ssl == null) {
+            return channel.read(dst);
+        }
+        if (!appIn.hasRemaining()) {
+            if (!unwrap() && !appIn.hasRemaining()) {
+                return ssl.isInboundDone() ? -1 : 0;
+            }
+        }
+        int n = Math.min(appIn.remaining(), dst.remaining());
+        ByteBuffer slice = appIn.duplicate();
+        slice.limit(slice.position() + n);
+        dst.put(slice);
+        appIn.position(appIn.position() + n);
+        return n;
+    }
+
+    /**
+     * Writes as much of the buffer as the socket accepts.
+     *
+     * @return true if the buffer has been written completely
+     */
+    boolean write(ByteBuffer src) throws IOException {
+        if (ssl == null) {
+            channel.write(src);
+            return !src.hasRemaining();
+        }
+        while (src.hasRemaining()) {
+            if (!flushNet()) {
+                return false;
+            }
+            wrap(src);
+        }
+        return flushNet();
+    }
+
+    /**
+     * Writes a region of the file as far as the socket accepts.
+     * Plain connections hand the region to the kernel with {@link FileChannel#transferTo},
+     * https connections encrypt it one record at a time.
+     *
+     * @return number of bytes of the region consumed
+     */
+    long transferFrom(FileChannel file, long position, long count) throws IOException {
+        if (ssl == null) {
+            return file.transferTo(position, count, channel);
+        }
+        if (!flushNet()) {
+            return 0;
+        }
+        ByteBuffer src = loop.getReadBuffer();
+        src.clear();
+        src.limit((int) Math.min(count, Math.min(src.capacity(), ssl.getSession().getApplicationBufferSize())));
+        if (file.read(src, position) < 0) {
+            throw new EOFException("Unexpected end of file");
+        }
+        src.flip();
+        wrap(src);
+        flushNet();
+        return src.position();
+    }
+
+    /**
+     * @return true if no encrypted bytes are waiting to be written
+     */
+    boolean flush() throws IOException {
+        return ssl == null || flushNet();
+    }
+
+    private void wrap(ByteBuffer src) throws IOException {
+        netOut.compact();
+        try {
+            for (; ; ) {
+                SSLEngineResult result = ssl.wrap(src, netOut);
+                if (result.getStatus() == SSLEngineResult.Status.BUFFER_OVERFLOW) {
+                    netOut = enlarge(netOut, ssl.getSession().getPacketBufferSize());
+                    continue;
+                }
+                if (result.getStatus() == SSLEngineResult.Status.CLOSED) {
+                    throw new EOFException("SSL engine closed");
+                }
+                return;
+            }
+        } finally {
+            netOut.flip();
+        }
+    }
+
+    /**
+     * Reads and decrypts network bytes into the application buffer.
+     *
+     * @return true if the engine made progress
+     */
+    private boolean unwrap() throws IOException {
+        int read = channel.read(netIn);
+        if (read < 0) {
+            try {
+                ssl.closeInbound();
+            } catch (SSLException ignore) {
+                // truncated stream, reported as end of stream
+            }
+        }
+        netIn.flip();
+        appIn.compact();
+        try {
+            for (; ; ) {
+                SSLEngineResult result = ssl.unwrap(netIn, appIn);
+                switch (result.getStatus()) {
+                    case OK:
+                        if (result.bytesProduced() > 0 || result.bytesConsumed() > 0) {
+                            if (!netIn.hasRemaining() || handshaking) {
+                                return true;
+                            }
+                            continue;
+                        }
+                        return false;
+                    case BUFFER_OVERFLOW:
+                        appIn = enlarge(appIn, ssl.getSession().getApplicationBufferSize());
+                        continue;
+                    case BUFFER_UNDERFLOW:
+                        if (netIn.remaining() == netIn.capacity()) {
+                            netIn = enlargeForRead(netIn, ssl.getSession().getPacketBufferSize());
+                        }
+                        return false;
+                    default:
+                        // CLOSED
+                        return false;
+                }
+            }
+        } finally {
+            netIn.compact();
+            appIn.flip();
+        }
+    }
+
+    private boolean flushNet() throws IOException {
+        if (netOut.hasRemaining()) {
+            channel.write(netOut);
+        }
+        return !netOut.hasRemaining();
+    }
+
+    private static ByteBuffer enlarge(ByteBuffer buffer, int size) {
+        ByteBuffer bigger = ByteBuffer.allocate(Math.max(size, buffer.capacity() * 2));
+        buffer.flip();
+        bigger.put(buffer);
+        return bigger;
+    }
+
+    private static ByteBuffer enlargeForRead(ByteBuffer buffer, int size) {
+        ByteBuffer bigger = ByteBuffer.allocate(Math.max(size, buffer.capacity() * 2));
+        bigger.put(buffer);
+        bigger.flip();
+        return bigger;
+    }
+
+    /**
+     * Closes the connection on its event loop, from any thread.
+     */
+    @Override
+    public void close() {
+        if (loop.inLoop()) {
+            closeNow();
+        } else {
+            loop.close(this);
+        }
+    }
+
+    void closeNow() {
+        if (closed) {
+            return;
+        }
+        closed = true;
+        if (key != null) {
+            key.cancel();
+        }
+        try {
+            channel.close();
+        } catch (IOException ignore) {
+        }
+    }
+
+    @Override
+    public String toString() {
+        return "HttpNioConnection{" +
+                "channel=" + channel +
+                ", secure=" + (ssl != null) +
+                '}';
+    }
+}
@@ -0,0 +1,623 @@
+package net.socialhub.http;
+
+import java.io.EOFException;
+import java.io.IOException;
+import java.net.InetSocketAddress;
+import java.net.SocketTimeoutException;
+import java.net.UnknownHostException;
+import java.nio.ByteBuffer;
+import java.nio.channels.SelectionKey;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+
+/**
+ * One HTTP/1.1 request/response exchange driven by an {@link HttpClientNioImpl} event loop.
+ * All methods except the {@link HttpNioBodyInputStream.Control} callbacks run on the loop thread.
+ */
+final class HttpNioExchange implements HttpNioBodyInputStream.Control {
+
+    private static final int MAX_HEAD_SIZE = 64 * 1024;
+
+    private enum State {
+        RESOLVING, CONNECTING, HANDSHAKING, WRITING, READING_HEAD, READING_BODY, DONE
+    }
+
+    private enum BodyMode {
+        NONE, LENGTH, CHUNKED, UNTIL_CLOSE
+    }
+
+    private enum ChunkState {
+        SIZE, DATA, DATA_END, TRAILER
+    }
+
+    private final HttpClientNioImpl engine;
+    private final HttpRequest request;
+    private final HttpPoolEntry<HttpNioConnection> entry;
+    private final HttpNioRequestBody requestBody;
+    private final HttpTimings timings;
+    private final CompletableFuture<HttpResponse> future;
+
+    private HttpClientNioImpl.EventLoop loop;
+    private HttpNioConnection conn;
+    private State state;
+    private boolean reused;
+    private final long connectTimeout;
+    private final long firstByteTimeout;
+    private final long idleTimeout;
+    // deadline of the whole request, in System.nanoTime(), or 0
+    private final long requestDeadline;
+    private long deadline;
+    private boolean suspended;
+    // start of the current phase, in System.nanoTime()
+    private long phaseStart;
+
+    // response head
+    private byte[] head = new byte[1024];
+    private int headLength;
+    private int statusCode;
+    private boolean keepAlive;
+
+    // response body
+    private BodyMode bodyMode;
+    private long remaining;
+    private ChunkState chunkState;
+    private final StringBuilder line = new StringBuilder();
+    private HttpNioBodyInputStream body;
+
+    // continues the handshake once the delegated tasks of the TLS engine have run off the loop
+    private final Runnable resumeHandshake = new Runnable() {
+        @Override
+        public void run() {
+            if (state == State.HANDSHAKING) {
+                handle(conn.getKey());
+            }
+        }
+    };
+
+    HttpNioExchange(HttpClientNioImpl engine, HttpRequest request, HttpPoolEntry<HttpNioConnection> entry,
+                    HttpNioRequestBody requestBody, HttpTimings timings, CompletableFuture<HttpResponse> future) {
+        this.engine = engine;
+        this.request = request;
+        this.entry = entry;
+        this.requestBody = requestBody;
+        this.timings = timings;
+        this.future = future;
+
+        HttpTimeouts timeouts = request.getTimeouts();
+        HttpClientConfiguration conf = engine.getConfiguration();
+        this.connectTimeout = timeouts.getConnectTimeout(conf);
+        this.firstByteTimeout = timeouts.getFirstByteTimeout(conf);
+        this.idleTimeout = timeouts.getIdleTimeout(conf);
+        this.requestDeadline = timeouts.hasDeadline() ? System.nanoTime()
+                + Math.max(0, timeouts.getRemainingMillis(System.currentTimeMillis())) * 1000000L : 0;
+    }
+
+    /**
+     * Starts the exchange on a pooled connection or on a new one.
+     */
+    void start(HttpClientNioImpl.EventLoop loop) {
+        this.loop = loop;
+        loop.register(this);
+        HttpNioConnection pooled = entry.getConnection();
+        if (pooled != null && pooled.isOpen() && pooled.getLoop() == loop) {
+            conn = pooled;
+            reused = true;
+            timings.setConnectionReused(true);
+            conn.getKey().attach(this);
+            state = State.WRITING;
+            phaseStart = System.nanoTime();
+            deadline = deadline(idleTimeout);
+            conn.interest(SelectionKey.OP_WRITE);
+        } else {
+            entry.closeQuietly();
+            connect();
+        }
+    }
+
+    /**
+     * Resolves the host off the loop, so that a slow lookup does not hold up the other exchanges,
+     * then connects. The connect timeout covers both.
+     */
+    private void connect() {
+        reused = false;
+        state = State.RESOLVING;
+        deadline = deadline(connectTimeout);
+        final HttpRoute route = entry.getRoute();
+        final long start = System.nanoTime();
+        final InetSocketAddress[] address = new InetSocketAddress[1];
+        loop.offload(new Runnable() {
+            @Override
+            public void run() {
+                address[0] = new InetSocketAddress(route.getHost(), route.getPort());
+            }
+        }, new Runnable() {
+            @Override
+            public void run() {
+                resolved(address[0], start);
+            }
+        });
+    }
+
+    private void resolved(InetSocketAddress address, long start) {
+        if (state != State.RESOLVING) {
+            // timed out or aborted during the lookup
+            return;
+        }
+        try {
+            HttpRoute route = entry.getRoute();
+            if (address == null || address.isUnresolved()) {
+                throw new UnknownHostException(route.getHost());
+            }
+            phaseStart = System.nanoTime();
+            timings.setDnsNanos(phaseStart - start);
+            conn = HttpNioConnection.open(loop, route, address);
+            entry.setConnection(conn);
+            conn.setKey(loop.register(conn.getChannel(), SelectionKey.OP_CONNECT, this));
+            state = State.CONNECTING;
+        } catch (IOException e) {
+            fail(e);
+        }
+    }
+
+    /**
+     * Called by the loop when the channel is ready.
+     * Each phase falls through to the next one as soon as it is done.
+     */
+    @SuppressWarnings("fallthrough")
+    void handle(SelectionKey key) {
+        try {
+            switch (state) {
+                case CONNECTING:
+                    if (!conn.finishConnect()) {
+                        return;
+                    }
+                    state = State.HANDSHAKING;
+                    timings.setConnectNanos(System.nanoTime() - phaseStart);
+                    phaseStart = System.nanoTime();
+                    // fall through
+                case HANDSHAKING:
+                    if (!conn.handshake(resumeHandshake)) {
+                        return;
+                    }
+                    if (entry.getRoute().isSecure()) {
+                        timings.setTlsNanos(System.nanoTime() - phaseStart);
+                    }
+                    phaseStart = System.nanoTime();
+                    state = State.WRITING;
+                    deadline = deadline(idleTimeout);
+                    // fall through
+                case WRITING:
+                    if (!requestBody.writeTo(conn)) {
+                        conn.interest(SelectionKey.OP_WRITE);
+                        return;
+                    }
+                    state = State.READING_HEAD;
+                    timings.setRequestWriteNanos(System.nanoTime() - phaseStart);
+                    timings.addBytesOut(requestBody.getLength());
+                    phaseStart = System.nanoTime();
+                    deadline = deadline(firstByteTimeout);
+                    conn.interest(SelectionKey.OP_READ);
+                    return;
+                case READING_HEAD:
+                case READING_BODY:
+                    if (key.isReadable()) {
+                        read();
+                    }
+                    return;
+                default:
+            }
+        } catch (IOException e) {
+            if (!reconnect()) {
+                fail(e);
+            }
+        }
+    }
+
+    private void read() throws IOException {
+        ByteBuffer buffer = loop.getReadBuffer();
+        buffer.clear();
+        int n = conn.read(buffer);
+        if (n == 0) {
+            return;
+        }
+        if (n < 0) {
+            endOfStream();
+            return;
+        }
+        if (state == State.READING_HEAD && timings.getTimeToFirstByteNanos() < 0) {
+            timings.setTimeToFirstByteNanos(System.nanoTime() - phaseStart);
+        }
+        timings.addBytesIn(n);
+        deadline = deadline(idleTimeout);
+        consume(buffer.array(), 0, n);
+    }
+
+    private void consume(byte[] b, int off, int len) throws IOException {
+        if (state == State.READING_HEAD) {
+            int used = readHead(b, off, len);
+            if (state == State.READING_HEAD) {
+                return;
+            }
+            off += used;
+            len -= used;
+        }
+        if (state == State.READING_BODY) {
+            readBody(b, off, len);
+        } else if (state == State.DONE && len > 0) {
+            // pipelined garbage, the connection cannot be reused
+            conn.close();
+        }
+    }
+
+    /**
+     * @return number of bytes used by the head
+     */
+    private int readHead(byte[] b, int off, int len) throws IOException {
+        for (int i = 0; i < len; i++) {
+            if (headLength == head.length) {
+                if (head.length >= MAX_HEAD_SIZE) {
+                    throw new IOException("Response header is too large");
+                }
+                byte[] bigger = new byte[head.length * 2];
+                System.arraycopy(head, 0, bigger, 0, headLength);
+                head = bigger;
+            }
+            head[headLength++] = b[off + i];
+            if (headLength >= 4
+                    && head[headLength - 1] == '\n' && head[headLength - 2] == '\r'
+                    && head[headLength - 3] == '\n' && head[headLength - 4] == '\r') {
+                int used = i + 1;
+                if (parseHead()) {
+                    return used;
+                }
+                // interim response, the final one follows
+                return used + readHead(b, off + used, len - used);
+            }
+        }
+        return len;
+    }
+
+    /**
+     * @return false for an interim (1xx) response
+     */
+    private boolean parseHead() throws IOException {
+        String[] lines = new String(head, 0, headLength - 4, StandardCharsets.ISO_8859_1).split("\r\n");
+        headLength = 0;
+
+        String statusLine = lines[0];
+        String[] status = statusLine.split(" ", 3);
+        if (status.length < 2 || !status[0].startsWith("HTTP/")) {
+            throw new IOException("Invalid status line: " + statusLine);
+        }
+        try {
+            statusCode = Integer.parseInt(status[1]);
+        } catch (NumberFormatException e) {
+            throw new IOException("Invalid status line: " + statusLine);
+        }
+        if (statusCode >= 100 && statusCode < 200) {
+            return false;
+        }
+
+        Map<String, List<String>> headers = new LinkedHashMap<>();
+        List<String> statusValue = new ArrayList<>(1);
+        statusValue.add(statusLine);
+        headers.put(null, statusValue);
+        for (int i = 1; i < lines.length; i++) {
+            int colon = lines[i].indexOf(':');
+            if (colon <= 0) {
+                continue;
+            }
+            String name = lines[i].substring(0, colon).trim();
+            String value = lines[i].substring(colon + 1).trim();
+            List<String> values = headers.get(name);
+            if (values == null) {
+                values = new ArrayList<>(1);
+                headers.put(name, values);
+            }
+            values.add(value);
+        }
+
+        String connection = lastValue(headers, "Connection");
+        if ("HTTP/1.0".equals(status[0])) {
+            keepAlive = "keep-alive".equalsIgnoreCase(connection);
+        } else {
+            keepAlive = !"close".equalsIgnoreCase(connection);
+        }
+
+        String transferEncoding = lastValue(headers, "Transfer-Encoding");
+        String contentLength = lastValue(headers, "Content-Length");
+        if (request.getMethod() == RequestMethod.HEAD
+                || statusCode == HttpResponseCode.NO_CONTENT
+                || statusCode == HttpResponseCode.NOT_MODIFIED) {
+            bodyMode = BodyMode.NONE;
+        } else if (transferEncoding != null && transferEncoding.toLowerCase().contains("chunked")) {
+            bodyMode = BodyMode.CHUNKED;
+            chunkState = ChunkState.SIZE;
+        } else if (contentLength != null) {
+            try {
+                remaining = Long.parseLong(contentLength);
+            } catch (NumberFormatException e) {
+                throw new IOException("Invalid Content-Length: " + contentLength);
+            }
+            bodyMode = (remaining == 0) ? BodyMode.NONE : BodyMode.LENGTH;
+        } else {
+            bodyMode = BodyMode.UNTIL_CLOSE;
+            keepAlive = false;
+        }
+
+        state = State.READING_BODY;
+        body = new HttpNioBodyInputStream(engine.getBodyBufferSize(), idleTimeout);
+        body.setControl(this);
+        HttpNioResponse response = new HttpNioResponse(engine.getConfiguration(), statusCode, headers, body);
+        response.timings = timings;
+        phaseStart = System.nanoTime();
+        if (bodyMode == BodyMode.NONE) {
+            complete();
+        }
+        engine.complete(future, response);
+        return true;
+    }
+
+    private void readBody(byte[] b, int off, int len) throws IOException {
+        while (len > 0 && state == State.READING_BODY) {
+            switch (bodyMode) {
+                case LENGTH: {
+                    int n = (int) Math.min(remaining, len);
+                    offer(b, off, n);
+                    off += n;
+                    len -= n;
+                    remaining -= n;
+                    if (remaining == 0) {
+                        complete();
+                    }
+                    break;
+                }
+                case UNTIL_CLOSE:
+                    offer(b, off, len);
+                    len = 0;
+                    break;
+                case CHUNKED: {
+                    int used = readChunked(b, off, len);
+                    off += used;
+                    len -= used;
+                    break;
+                }
+                default:
+                    return;
+            }
+        }
+        if (len > 0) {
+            // bytes beyond the end of the message
+            conn.close();
+        }
+    }
+
+    /**
+     * @return number of bytes used
+     */
+    private int readChunked(byte[] b, int off, int len) throws IOException {
+        switch (chunkState) {
+            case DATA: {
+                int n = (int) Math.min(remaining, len);
+                offer(b, off, n);
+                remaining -= n;
+                if (remaining == 0) {
+                    chunkState = ChunkState.DATA_END;
+                }
+                return n;
+            }
+            default: {
+                int used = 0;
+                while (used < len) {
+                    char c = (char) (b[off + used++] & 0xff);
+                    if (c == '\n') {
+                        lineEnd();
+                        return used;
+                    }
+                    if (c != '\r') {
+                        if (line.length() > 1024) {
+                            throw new IOException("Chunk header is too large");
+                        }
+                        line.append(c);
+                    }
+                }
+                return used;
+            }
+        }
+    }
+
+    private void lineEnd() throws IOException {
+        String value = line.toString().trim();
+        line.setLength(0);
+        switch (chunkState) {
+            case SIZE:
+                int ext = value.indexOf(';');
+                if (ext >= 0) {
+                    value = value.substring(0, ext).trim();
+                }
+                try {
+                    remaining = Long.parseLong(value, 16);
+                } catch (NumberFormatException e) {
+                    throw new IOException("Invalid chunk size: " + value);
+                }
+                chunkState = (remaining == 0) ? ChunkState.TRAILER : ChunkState.DATA;
+                break;
+            case DATA_END:
+                chunkState = ChunkState.SIZE;
+                break;
+            case TRAILER:
+                if (value.isEmpty()) {
+                    complete();
+                }
+                break;
+            default:
+        }
+    }
+
+    private void offer(byte[] b, int off, int len) {
+        if (len == 0) {
+            return;
+        }
+        byte[] chunk = new byte[len];
+        System.arraycopy(b, off, chunk, 0, len);
+        if (!body.offer(chunk)) {
+            suspended = true;
+            conn.interest(0);
+        }
+    }
+
+    private void endOfStream() throws IOException {
+        if (reconnect()) {
+            return;
+        }
+        if (state == State.READING_BODY && bodyMode == BodyMode.UNTIL_CLOSE) {
+            complete();
+            return;
+        }
+        throw new EOFException("Unexpected end of stream");
+    }
+
+    /**
+     * Sends the request again on a new connection if the pooled one failed before any byte of the response,
+     * as when the server closed it while it was idle: writing then fails with a broken pipe or a reset,
+     * or reading ends at once. This is done once, the new connection is not reused.
+     *
+     * @return true if the request is sent again
+     */
+    private boolean reconnect() {
+        if (!reused || (state != State.WRITING && state != State.READING_HEAD) || headLength > 0
+                || timings.getTimeToFirstByteNanos() >= 0) {
+            return false;
+        }
+        conn.close();
+        entry.setConnection(null);
+        timings.setConnectionReused(false);
+        requestBody.rewind();
+        connect();
+        return true;
+    }
+
+    /**
+     * The whole response has been received.
+     */
+    private void complete() {
+        state = State.DONE;
+        timings.setBodyReadNanos(System.nanoTime() - phaseStart);
+        loop.unregister(this);
+        requestBody.close();
+        if (keepAlive && conn.isOpen()) {
+            conn.interest(0);
+            conn.getKey().attach(null);
+            engine.release(entry, true);
+        } else {
+            conn.close();
+            engine.release(entry, false);
+        }
+        // released first, so that a request sent once the body has been read can reuse the connection
+        body.finish();
+    }
+
+    void fail(IOException e) {
+        if (state == State.DONE) {
+            return;
+        }
+        state = State.DONE;
+        loop.unregister(this);
+        requestBody.close();
+        if (conn != null) {
+            conn.close();
+        }
+        engine.release(entry, false);
+        if (body != null) {
+            body.fail(e);
+        } else {
+            engine.fail(future, new HttpException(e.getMessage(), e));
+        }
+    }
+
+    /**
+     * Fails the exchange if the current phase has timed out.
+     */
+    void checkTimeout(long now) {
+        if (state != State.DONE && !suspended && deadline != 0 && now - deadline > 0) {
+            boolean connecting = (state == State.RESOLVING || state == State.CONNECTING
+                    || state == State.HANDSHAKING);
+            if (requestDeadline != 0 && now - requestDeadline >= 0) {
+                fail(new SocketTimeoutException("Deadline exceeded"));
+            } else if (connecting) {
+                fail(new SocketTimeoutException("connect timed out"));
+            } else {
+                fail(new SocketTimeoutException(state == State.READING_HEAD && headLength == 0
+                        ? "first byte timed out" : "Read timed out"));
+            }
+        }
+    }
+
+    /**
+     * @return deadline of a phase in System.nanoTime(), no later than the deadline of the request
+     */
+    private long deadline(long timeoutMillis) {
+        long phase = (timeoutMillis > 0) ? System.nanoTime() + timeoutMillis * 1000000L : 0;
+        if (requestDeadline != 0 && (phase == 0 || phase - requestDeadline > 0)) {
+            return requestDeadline;
+        }
+        return phase;
+    }
+
+    private static String lastValue(Map<String, List<String>> headers, String name) {
+        String value = null;
+        for (Map.Entry<String, List<String>> header : headers.entrySet()) {
+            if (header.getKey() != null && header.getKey().equalsIgnoreCase(name) && !header.getValue().isEmpty()) {
+                value = header.getValue().get(header.getValue().size() - 1);
+            }
+        }
+        return value;
+    }
+
+    // body stream callbacks, called on the reader thread
+
+    @Override
+    public void resume() {
+        loop.execute(new Runnable() {
+            @Override
+            public void run() {
+                if (state == State.READING_BODY && suspended) {
+                    suspended = false;
+                    deadline = deadline(idleTimeout);
+                    conn.interest(SelectionKey.OP_READ);
+                }
+            }
+        });
+    }
+
+    @Override
+    public void abort() {
+        loop.execute(new Runnable() {
+            @Override
+            public void run() {
+                if (state != State.DONE) {
+                    state = State.DONE;
+                    loop.unregister(HttpNioExchange.this);
+                    requestBody.close();
+                    if (conn != null) {
+                        conn.close();
+                    }
+                    engine.release(entry, false);
+                }
+            }
+        });
+    }
+
+    @Override
+    public String toString() {
+        return "HttpNioExchange{" +
+                "request=" + request +
+                ", state=" + state +
+                ", route=" + entry.getRoute() +
+                '}';
+    }
+}
@@ -0,0 +1,143 @@
+package net.socialhub.http;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Request head and body written by an {@link HttpNioExchange}.
+ * In-memory segments are written from buffers, file segments are sent
+ * with {@link HttpNioConnection#transferFrom} without being copied into the heap.
+ */
+final class HttpNioRequestBody {
+
+    private final List<Object> segments = new ArrayList<>();
+    private long length;
+    private int index;
+
+    void add(byte[] bytes) {
+        add(ByteBuffer.wrap(bytes));
+    }
+
+    void add(ByteBuffer buffer) {
+        segments.add(buffer);
+        length += buffer.remaining();
+    }
+
+    /**
+     * Puts the buffer in front of the segments added so far, used for the request head.
+     */
+    void addFirst(ByteBuffer buffer) {
+        segments.add(0, buffer);
+        length += buffer.remaining();
+    }
+
+    void add(File file) {
+        FileRegion region = new FileRegion(file, file.length());
+        segments.add(region);
+        length += region.count;
+    }
+
+    /**
+     * @return number of bytes added so far
+     */
+    long getLength() {
+        return length;
+    }
+
+    /**
+     * Writes as much as the socket accepts.
+     *
+     * @return true if everything has been written
+     */
+    boolean writeTo(HttpNioConnection conn) throws IOException {
+        while (index < segments.size()) {
+            Object segment = segments.get(index);
+            boolean done = (segment instanceof ByteBuffer)
+                    ? conn.write((ByteBuffer) segment)
+                    : ((FileRegion) segment).writeTo(conn);
+            if (!done) {
+                return false;
+            }
+            index++;
+        }
+        return conn.flush();
+    }
+
+    /**
+     * Rewinds to the beginning to send the request again.
+     */
+    void rewind() {
+        index = 0;
+        for (Object segment : segments) {
+            if (segment instanceof ByteBuffer) {
+                ((ByteBuffer) segment).rewind();
+            } else {
+                ((FileRegion) segment).position = 0;
+            }
+        }
+    }
+
+    /**
+     * Closes the files opened while writing.
+     */
+    void close() {
+        for (Object segment : segments) {
+            if (segment instanceof FileRegion) {
+                ((FileRegion) segment).close();
+            }
+        }
+    }
+
+    private static final class FileRegion {
+
+        private final File file;
+        private final long count;
+        private FileChannel channel;
+        private long position;
+
+        FileRegion(File file, long count) {
+            this.file = file;
+            this.count = count;
+        }
+
+        boolean writeTo(HttpNioConnection conn) throws IOException {
+            if (channel == null) {
+                channel = FileChannel.open(file.toPath(), StandardOpenOption.READ);
+                if (channel.size() < count) {
+                    throw new IOException("File has been truncated: " + file);
+                }
+            }
+            while (position < count) {
+                long n = conn.transferFrom(channel, position, count - position);
+                if (n <= 0) {
+                    return false;
+                }
+                position += n;
+            }
+            return true;
+        }
+
+        void close() {
+            if (channel != null) {
+                try {
+                    channel.close();
+                } catch (IOException ignore) {
+                }
+                channel = null;
+            }
+        }
+    }
+
+    @Override
+    public String toString() {
+        return "HttpNioRequestBody{" +
+                "segments=" + segments.size() +
+                ", length=" + length +
+                '}';
+    }
+}
@@ -0,0 +1,129 @@
+package net.socialhub.http;
+
+import java.io.BufferedInputStream;
+import java.io.FilterInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.channels.WritableByteChannel;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.zip.GZIPInputStream;
+import java.util.zip.ZipException;
+
+/**
+ * Response received by {@link HttpClientNioImpl}.
+ * The body is streamed from the event loop while it is being read.
+ */
+public class HttpNioResponse extends HttpResponse {
+
+    private final Map<String, List<String>> headers;
+    private final HttpNioBodyInputStream body;
+
+    HttpNioResponse(HttpClientConfiguration conf, int statusCode,
+                    Map<String, List<String>> headers, HttpNioBodyInputStream body) {
+        super(conf);
+        this.statusCode = statusCode;
+        this.headers = Collections.unmodifiableMap(headers);
+        this.body = body;
+        this.is = body;
+
+        if ("gzip".equals(getResponseHeader("Content-Encoding"))) {
+            // the gzip header is read on first use, never on the event loop
+            is = new GZIPBodyInputStream(body);
+        }
+    }
+
+    /**
+     * Returns the last value of the header, ignoring the case of the name.
+     */
+    @Override
+    public String getResponseHeader(String name) {
+        List<String> values = null;
+        for (Map.Entry<String, List<String>> header : headers.entrySet()) {
+            if (header.getKey() != null && header.getKey().equalsIgnoreCase(name)) {
+                values = header.getValue();
+            }
+        }
+        if (values == null || values.isEmpty()) {
+            return null;
+        }
+        return values.get(values.size() - 1);
+    }
+
+    /**
+     * Returns the header fields. As with HttpURLConnection the status line is mapped to the null key.
+     */
+    @Override
+    public Map<String, List<String>> getResponseHeaderFields() {
+        return headers;
+    }
+
+    /**
+     * {@inheritDoc}
+     * Undecoded bodies are written from the chunks received by the event loop without copying.
+     */
+    @Override
+    protected long transferBody(InputStream stream, WritableByteChannel target) throws IOException {
+        if (stream == body) {
+            return body.transferTo(target);
+        }
+        return super.transferBody(stream, target);
+    }
+
+    private static final class GZIPBodyInputStream extends FilterInputStream {
+
+        private boolean opened = false;
+
+        GZIPBodyInputStream(InputStream in) {
+            super(in);
+        }
+
+        private void open() throws IOException {
+            if (!opened) {
+                opened = true;
+                InputStream buffered = new BufferedInputStream(in);
+                buffered.mark(64);
+                try {
+                    // the response is gzipped
+                    in = new GZIPInputStream(buffered);
+                } catch (ZipException ignore) {
+                    buffered.reset();
+                    in = buffered;
+                }
+            }
+        }
+
+        @Override
+        public int read() throws IOException {
+            open();
+            return in.read();
+        }
+
+        @Override
+        public int read(byte[] b, int off, int len) throws IOException {
+            open();
+            return in.read(b, off, len);
+        }
+
+        @Override
+        public long skip(long n) throws IOException {
+            open();
+            return in.skip(n);
+        }
+
+        @Override
+        public int available() throws IOException {
+            return opened ? in.available() : 0;
+        }
+    }
+
+    /**
+     * {@inheritDoc}
+     * Aborts the exchange if the body has not been received completely.
+     */
+    @Override
+    public void disconnect() {
+        body.close();
+    }
+}
@@ -17,10 +17,13 @@
 package net.socialhub.http;
 
 import java.io.File;
+import java.io.IOException;
 import java.io.InputStream;
+import java.io.OutputStream;
 import java.io.Serializable;
-import java.io.UnsupportedEncodingException;
-import java.net.URLEncoder;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.StandardOpenOption;
 import java.util.List;
 
 /**
@@ -139,6 +142,39 @@ public final class HttpParameter implements Comparable, Serializable {
         return contentType;
     }
 
+    /**
+     * Copies the file content to the output through a pooled buffer and closes the file body.
+     *
+     * @return number of bytes written
+     */
+    long writeFileTo(OutputStream out) throws IOException {
+        HttpBufferPool pool = HttpBufferPool.heap();
+        ByteBuffer buffer = pool.acquire();
+        try {
+            long written = 0;
+            if (fileBody != null) {
+                try (InputStream in = fileBody) {
+                    int n;
+                    while ((n = in.read(buffer.array(), 0, buffer.capacity())) != -1) {
+                        out.write(buffer.array(), 0, n);
+                        written += n;
+                    }
+                }
+            } else {
+                try (FileChannel channel = FileChannel.open(file.toPath(), StandardOpenOption.READ)) {
+                    while (channel.read(buffer) != -1) {
+                        out.write(buffer.array(), 0, buffer.position());
+                        written += buffer.position();
+                        buffer.clear();
+                    }
+                }
+            }
+            return written;
+        } finally {
+            pool.release(buffer);
+        }
+    }
+
     @Override
     public boolean equals(Object o) {
         if (this == o) return true;
@@ -248,21 +284,82 @@ public final class HttpParameter implements Comparable, Serializable {
         if (null == httpParams) {
             return "";
         }
-        StringBuilder buf = new StringBuilder();
+        return encodeParameters(httpParams, new StringBuilder(httpParams.length * 32)).toString();
+    }
+
+    /**
+     * Appends the parameters to the buffer as {@code name=value} pairs joined with {@code &}.
+     *
+     * @return the buffer
+     */
+    public static StringBuilder encodeParameters(HttpParameter[] httpParams, StringBuilder buf) {
         for (int j = 0; j < httpParams.length; j++) {
-            if (httpParams[j].isFile()) {
-                throw new IllegalArgumentException("parameter [" + httpParams[j].name + "]should be text");
+            checkText(httpParams[j]);
+            if (j != 0) {
+                buf.append('&');
             }
+            encode(httpParams[j].name, buf).append('=');
+            encode(httpParams[j].value, buf);
+        }
+        return buf;
+    }
+
+    /**
+     * Encodes the parameters as {@link #encodeParameters(HttpParameter[])} does, straight into
+     * an exactly sized array of ASCII bytes, as sent in a form body.
+     */
+    public static byte[] encodeParametersAsBytes(HttpParameter[] httpParams) {
+        if (null == httpParams) {
+            return new byte[0];
+        }
+        int length = Math.max(0, httpParams.length - 1);
+        for (HttpParameter param : httpParams) {
+            checkText(param);
+            length += encodedLength(param.name) + 1 + encodedLength(param.value);
+        }
+        byte[] bytes = new byte[length];
+        int off = 0;
+        for (int j = 0; j < httpParams.length; j++) {
             if (j != 0) {
-                buf.append("&");
+                bytes[off++] = '&';
             }
-            buf.append(encode(httpParams[j].name))
-                    .append("=").append(encode(httpParams[j].value));
+            off = encode(httpParams[j].name, bytes, off);
+            bytes[off++] = '=';
+            off = encode(httpParams[j].value, bytes, off);
         }
-        return buf.toString();
+        return bytes;
+    }
+
+    private static void checkText(HttpParameter param) {
+        if (param.isFile()) {
+            throw new IllegalArgumentException("parameter [" + param.name + "]should be text");
+        }
+    }
+
+    /** hexadecimal digits of the percent-encoding, upper case as RFC 3986 recommends */
+    private static final char[] HEX = "0123456789ABCDEF".toCharArray();
+
+    /** ASCII chars left as they are: the unreserved chars of RFC 3986 */
+    private static final boolean[] UNRESERVED = new boolean[128];
+
+    static {
+        for (char c = 'A'; c <= 'Z'; c++) {
+            UNRESERVED[c] = true;
+            UNRESERVED[Character.toLowerCase(c)] = true;
+        }
+        for (char c = '0'; c <= '9'; c++) {
+            UNRESERVED[c] = true;
+        }
+        UNRESERVED['-'] = true;
+        UNRESERVED['.'] = true;
+        UNRESERVED['_'] = true;
+        UNRESERVED['~'] = true;
     }
 
     /**
+     * Percent-encodes the UTF-8 bytes of the value, except the unreserved characters of RFC 3986.
+     * A value which needs no encoding is returned as is.
+     *
      * @param value string to be encoded
      * @return encoded string
      * @see <a href="http://wiki.oauth.net/TestCases">OAuth / TestCases</a>
@@ -270,28 +367,138 @@ public final class HttpParameter implements Comparable, Serializable {
      * @see <a href="http://tools.ietf.org/html/rfc3986#section-2.1">RFC 3986 - Uniform Resource Identifier (URI): Generic Syntax - 2.1. Percent-Encoding</a>
      */
     public static String encode(String value) {
-        String encoded = null;
-        try {
-            encoded = URLEncoder.encode(value, "UTF-8");
-        } catch (UnsupportedEncodingException ignore) {
+        int length = value.length();
+        int first = 0;
+        while (first < length && isUnreserved(value.charAt(first))) {
+            first++;
+        }
+        if (first == length) {
+            return value;
         }
-        StringBuilder buf = new StringBuilder(encoded.length());
-        char focus;
-        for (int i = 0; i < encoded.length(); i++) {
-            focus = encoded.charAt(i);
-            if (focus == '*') {
-                buf.append("%2A");
-            } else if (focus == '+') {
-                buf.append("%20");
-            } else if (focus == '%' && (i + 1) < encoded.length()
-                    && encoded.charAt(i + 1) == '7' && encoded.charAt(i + 2) == 'E') {
-                buf.append('~');
-                i += 2;
+        StringBuilder buf = new StringBuilder(length + 2 * (length - first) + 8);
+        buf.append(value, 0, first);
+        encode(value, first, buf);
+        return buf.toString();
+    }
+
+    /**
+     * Appends the value, encoded as {@link #encode(String)} does, to the buffer.
+     *
+     * @return the buffer
+     */
+    public static StringBuilder encode(CharSequence value, StringBuilder buf) {
+        encode(value, 0, buf);
+        return buf;
+    }
+
+    private static void encode(CharSequence value, int from, StringBuilder buf) {
+        int length = value.length();
+        for (int i = from; i < length; i++) {
+            char c = value.charAt(i);
+            if (c < 0x80) {
+                if (UNRESERVED[c]) {
+                    buf.append(c);
+                } else {
+                    appendEscaped(buf, c);
+                }
+            } else if (c < 0x800) {
+                appendEscaped(buf, 0xC0 | (c >> 6));
+                appendEscaped(buf, 0x80 | (c & 0x3F));
+            } else if (!Character.isSurrogate(c)) {
+                appendEscaped(buf, 0xE0 | (c >> 12));
+                appendEscaped(buf, 0x80 | ((c >> 6) & 0x3F));
+                appendEscaped(buf, 0x80 | (c & 0x3F));
+            } else if (isSurrogatePair(value, i)) {
+                int codePoint = Character.toCodePoint(c, value.charAt(++i));
+                appendEscaped(buf, 0xF0 | (codePoint >> 18));
+                appendEscaped(buf, 0x80 | ((codePoint >> 12) & 0x3F));
+                appendEscaped(buf, 0x80 | ((codePoint >> 6) & 0x3F));
+                appendEscaped(buf, 0x80 | (codePoint & 0x3F));
             } else {
-                buf.append(focus);
+                // replaced as String#getBytes does with malformed input
+                appendEscaped(buf, '?');
             }
         }
-        return buf.toString();
+    }
+
+    private static void appendEscaped(StringBuilder buf, int b) {
+        buf.append('%').append(HEX[b >> 4]).append(HEX[b & 0xF]);
+    }
+
+    /**
+     * Writes the value, encoded as {@link #encode(String)} does, as ASCII bytes.
+     *
+     * @param bytes destination, with room for {@link #encodedLength(CharSequence)} bytes from the offset
+     * @return offset after the last byte written
+     */
+    public static int encode(CharSequence value, byte[] bytes, int off) {
+        int length = value.length();
+        for (int i = 0; i < length; i++) {
+            char c = value.charAt(i);
+            if (c < 0x80) {
+                if (UNRESERVED[c]) {
+                    bytes[off++] = (byte) c;
+                } else {
+                    off = putEscaped(bytes, off, c);
+                }
+            } else if (c < 0x800) {
+                off = putEscaped(bytes, off, 0xC0 | (c >> 6));
+                off = putEscaped(bytes, off, 0x80 | (c & 0x3F));
+            } else if (!Character.isSurrogate(c)) {
+                off = putEscaped(bytes, off, 0xE0 | (c >> 12));
+                off = putEscaped(bytes, off, 0x80 | ((c >> 6) & 0x3F));
+                off = putEscaped(bytes, off, 0x80 | (c & 0x3F));
+            } else if (isSurrogatePair(value, i)) {
+                int codePoint = Character.toCodePoint(c, value.charAt(++i));
+                off = putEscaped(bytes, off, 0xF0 | (codePoint >> 18));
+                off = putEscaped(bytes, off, 0x80 | ((codePoint >> 12) & 0x3F));
+                off = putEscaped(bytes, off, 0x80 | ((codePoint >> 6) & 0x3F));
+                off = putEscaped(bytes, off, 0x80 | (codePoint & 0x3F));
+            } else {
+                off = putEscaped(bytes, off, '?');
+            }
+        }
+        return off;
+    }
+
+    private static int putEscaped(byte[] bytes, int off, int b) {
+        bytes[off++] = '%';
+        bytes[off++] = (byte) HEX[b >> 4];
+        bytes[off++] = (byte) HEX[b & 0xF];
+        return off;
+    }
+
+    /**
+     * @return number of chars of the encoding of the value
+     */
+    public static int encodedLength(CharSequence value) {
+        int length = value.length();
+        int encoded = 0;
+        for (int i = 0; i < length; i++) {
+            char c = value.charAt(i);
+            if (c < 0x80) {
+                encoded += UNRESERVED[c] ? 1 : 3;
+            } else if (c < 0x800) {
+                encoded += 6;
+            } else if (!Character.isSurrogate(c)) {
+                encoded += 9;
+            } else if (isSurrogatePair(value, i)) {
+                encoded += 12;
+                i++;
+            } else {
+                encoded += 3;
+            }
+        }
+        return encoded;
+    }
+
+    private static boolean isUnreserved(char c) {
+        return c < 0x80 && UNRESERVED[c];
+    }
+
+    private static boolean isSurrogatePair(CharSequence value, int i) {
+        return Character.isHighSurrogate(value.charAt(i)) && i + 1 < value.length()
+                && Character.isLowSurrogate(value.charAt(i + 1));
     }
 
     public static HttpParameter[] merge(HttpParameter[] params1, HttpParameter[] params2) {
@@ -0,0 +1,83 @@
+package net.socialhub.http;
+
+import java.io.Closeable;
+import java.io.IOException;
+
+/**
+ * A slot leased from {@link HttpConnectionPool}.
+ * The slot may carry a transport connection that is kept for reuse
+ * when the entry is released as reusable.
+ *
+ * @param <C> transport connection type
+ */
+public final class HttpPoolEntry<C extends Closeable> {
+
+    private final HttpRoute route;
+
+    private final long created;
+
+    private long updated;
+
+    private C connection;
+
+    HttpPoolEntry(HttpRoute route) {
+        this.route = route;
+        this.created = System.currentTimeMillis();
+        this.updated = created;
+    }
+
+    public HttpRoute getRoute() {
+        return route;
+    }
+
+    /**
+     * @return the connection kept by this entry, or null if none has been assigned yet
+     */
+    public C getConnection() {
+        return connection;
+    }
+
+    public void setConnection(C connection) {
+        this.connection = connection;
+    }
+
+    public boolean hasConnection() {
+        return connection != null;
+    }
+
+    public long getCreated() {
+        return created;
+    }
+
+    public long getUpdated() {
+        return updated;
+    }
+
+    void touch(long now) {
+        this.updated = now;
+    }
+
+    boolean isIdleLongerThan(long idleMillis, long now) {
+        return idleMillis > 0 && (now - updated) > idleMillis;
+    }
+
+    void closeQuietly() {
+        if (connection != null) {
+            try {
+                connection.close();
+            } catch (IOException ignore) {
+            }
+            connection = null;
+        }
+    }
+
+    @Override
+    public String toString() {
+        return "HttpPoolEntry{" +
+                "route=" + route +
+                ", created=" + created +
+                ", updated=" + updated +
+                ", connection=" + connection +
+                '}';
+    }
+}
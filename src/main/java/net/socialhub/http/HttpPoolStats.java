@@ -0,0 +1,64 @@
+package net.socialhub.http;
+
+import java.io.Serializable;
+
+/**
+ * Snapshot of {@link HttpConnectionPool} usage, either for a route or for the whole pool.
+ */
+public final class HttpPoolStats implements Serializable {
+
+    private static final long serialVersionUID = 1535782730223368162L;
+
+    private final int leased;
+
+    private final int available;
+
+    private final int pending;
+
+    private final int max;
+
+    HttpPoolStats(int leased, int available, int pending, int max) {
+        this.leased = leased;
+        this.available = available;
+        this.pending = pending;
+        this.max = max;
+    }
+
+    /**
+     * @return number of entries currently leased
+     */
+    public int getLeased() {
+        return leased;
+    }
+
+    /**
+     * @return number of idle entries kept for reuse
+     */
+    public int getAvailable() {
+        return available;
+    }
+
+    /**
+     * @return number of callers blocked waiting for an entry
+     */
+    public int getPending() {
+        return pending;
+    }
+
+    /**
+     * @return maximum number of entries allowed
+     */
+    public int getMax() {
+        return max;
+    }
+
+    @Override
+    public String toString() {
+        return "HttpPoolStats{" +
+                "leased=" + leased +
+                ", available=" + available +
+                ", pending=" + pending +
+                ", max=" + max +
+                '}';
+    }
+}
@@ -0,0 +1,47 @@
+package net.socialhub.http;
+
+import java.io.Closeable;
+import java.nio.ByteBuffer;
+
+/**
+ * A response body held in a buffer leased from a {@link HttpBufferPool}.
+ * The buffer must not be used after {@link #close()} hands it back to the pool.
+ */
+public final class HttpPooledBuffer implements Closeable {
+
+    private final HttpBufferPool pool;
+    private ByteBuffer buffer;
+
+    HttpPooledBuffer(HttpBufferPool pool, ByteBuffer buffer) {
+        this.pool = pool;
+        this.buffer = buffer;
+    }
+
+    /**
+     * @return the body, from position 0 to the limit
+     */
+    public ByteBuffer getBuffer() {
+        if (buffer == null) {
+            throw new IllegalStateException("Buffer has already been released.");
+        }
+        return buffer;
+    }
+
+    /**
+     * Releases the buffer to the pool.
+     */
+    @Override
+    public void close() {
+        if (buffer != null) {
+            pool.release(buffer);
+            buffer = null;
+        }
+    }
+
+    @Override
+    public String toString() {
+        return "HttpPooledBuffer{" +
+                "buffer=" + buffer +
+                '}';
+    }
+}
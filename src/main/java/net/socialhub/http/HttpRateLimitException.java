@@ -0,0 +1,26 @@
+package net.socialhub.http;
+
+/**
+ * Thrown without sending the request when the rate limiter of its host has no permit
+ * within {@link HttpClientConfiguration#getHttpRateLimitMaxWaitMillis()}.
+ *
+ * @see HttpRateLimitedClient
+ */
+public class HttpRateLimitException extends HttpException {
+
+    private static final long serialVersionUID = -2016002781006038471L;
+
+    private final String key;
+
+    public HttpRateLimitException(String key) {
+        super("Rate limit exceeded: " + key, (Exception) null);
+        this.key = key;
+    }
+
+    /**
+     * @return the host or key of the limiter
+     */
+    public String getKey() {
+        return key;
+    }
+}
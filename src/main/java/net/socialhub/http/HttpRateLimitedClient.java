@@ -0,0 +1,242 @@
+package net.socialhub.http;
+
+import net.socialhub.logger.Logger;
+
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.function.BiConsumer;
+
+/**
+ * Client keeping the requests to each host under a rate, with a {@link HttpRateLimiter} per host.
+ * A request waits for a permit up to {@link HttpClientConfiguration#getHttpRateLimitMaxWaitMillis()}
+ * and no later than its deadline, or fails with {@link HttpRateLimitException} (immediately if the wait is 0).
+ * Asynchronous requests wait on a timer, not on the calling thread; cancelling one stops the wait or the request.
+ * <p>
+ * The limiter slows down on 420 Enhance Your Calm and 429 Too Many Requests,
+ * pausing for Retry-After, and pauses until the reset time when
+ * X-Rate-Limit-Remaining (or X-RateLimit-Remaining) reaches 0.
+ * Override {@link #getKey(HttpRequest)} to limit per account or endpoint instead of per host.
+ */
+public class HttpRateLimitedClient implements HttpClient, HttpResponseCode {
+
+    private static final Logger logger = Logger.getLogger(HttpRateLimitedClient.class);
+
+    private final HttpClientConfiguration CONF;
+    private final HttpClient client;
+    private final ConcurrentMap<String, HttpRateLimiter> limiters = new ConcurrentHashMap<>();
+    private ScheduledExecutorService scheduler;
+
+    public HttpRateLimitedClient(HttpClientConfiguration conf, HttpClient client) {
+        this.CONF = conf;
+        this.client = client;
+    }
+
+    /**
+     * @return key of the limiter of the request, the host by default
+     */
+    protected String getKey(HttpRequest req) {
+        return HttpRoute.of(req.getURL()).getHost();
+    }
+
+    /**
+     * @return the limiter of the key, created on first use
+     */
+    public HttpRateLimiter getRateLimiter(String key) {
+        HttpRateLimiter limiter = limiters.get(key);
+        if (limiter == null) {
+            HttpRateLimiter created = new HttpRateLimiter(CONF.getHttpRateLimitPerSecond(), CONF.getHttpRateLimitBurst());
+            limiter = limiters.putIfAbsent(key, created);
+            if (limiter == null) {
+                limiter = created;
+            }
+        }
+        return limiter;
+    }
+
+    /**
+     * @return nanoseconds to wait before sending, no later than the deadline of the request
+     */
+    private long reserve(HttpRequest req, String key, HttpRateLimiter limiter) throws HttpRateLimitException {
+        long maxWait = Math.min(CONF.getHttpRateLimitMaxWaitMillis(),
+                req.getTimeouts().getRemainingMillis(System.currentTimeMillis()));
+        long wait = limiter.reserve(TimeUnit.MILLISECONDS.toNanos(maxWait));
+        if (wait < 0) {
+            throw new HttpRateLimitException(key);
+        }
+        return wait;
+    }
+
+    @Override
+    public HttpResponse request(HttpRequest req) throws HttpException {
+        String key;
+        try {
+            key = getKey(req);
+        } catch (IllegalArgumentException e) {
+            throw new HttpException(e.getMessage(), e);
+        }
+        HttpRateLimiter limiter = getRateLimiter(key);
+        long wait = reserve(req, key, limiter);
+        if (wait > 0) {
+            logger.debug("Rate limited, waiting " + TimeUnit.NANOSECONDS.toMillis(wait) + " ms: " + key);
+            try {
+                TimeUnit.NANOSECONDS.sleep(wait);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new HttpException("Interrupted while waiting for the rate limit.", e);
+            }
+        }
+
+        try {
+            HttpResponse res = client.request(req);
+            onResponse(limiter, res);
+            return res;
+        } catch (HttpException e) {
+            if (e.getResponse() != null) {
+                onResponse(limiter, e.getResponse());
+            }
+            throw e;
+        }
+    }
+
+    @Override
+    public CompletableFuture<HttpResponse> requestAsync(final HttpRequest req) {
+        final CompletableFuture<HttpResponse> future = new CompletableFuture<>();
+        final HttpRateLimiter limiter;
+        long wait;
+        try {
+            String key;
+            try {
+                key = getKey(req);
+            } catch (IllegalArgumentException e) {
+                throw new HttpException(e.getMessage(), e);
+            }
+            limiter = getRateLimiter(key);
+            wait = reserve(req, key, limiter);
+        } catch (HttpException e) {
+            future.completeExceptionally(e);
+            return future;
+        }
+
+        final Runnable send = new Runnable() {
+            @Override
+            public void run() {
+                if (future.isDone()) {
+                    // cancelled while waiting
+                    return;
+                }
+                CompletableFuture<HttpResponse> sent = client.requestAsync(req);
+                HttpClientBase.cancelWith(future, sent);
+                sent.whenComplete(new BiConsumer<HttpResponse, Throwable>() {
+                    @Override
+                    public void accept(HttpResponse res, Throwable e) {
+                        Throwable cause = (e instanceof CompletionException && e.getCause() != null) ? e.getCause() : e;
+                        if (cause == null) {
+                            onResponse(limiter, res);
+                            HttpClientBase.completeOrDisconnect(future, res);
+                        } else {
+                            if (cause instanceof HttpException && ((HttpException) cause).getResponse() != null) {
+                                onResponse(limiter, ((HttpException) cause).getResponse());
+                            }
+                            future.completeExceptionally(cause);
+                        }
+                    }
+                });
+            }
+        };
+        if (wait == 0) {
+            send.run();
+        } else {
+            try {
+                HttpClientBase.cancelWith(future, getScheduler().schedule(send, wait, TimeUnit.NANOSECONDS));
+            } catch (RejectedExecutionException e) {
+                future.completeExceptionally(new HttpException("Client has been shut down.", e));
+            }
+        }
+        return future;
+    }
+
+    private synchronized ScheduledExecutorService getScheduler() {
+        if (scheduler == null) {
+            scheduler = Executors.newSingleThreadScheduledExecutor(HttpClientBase.daemonThreadFactory("JHttpClient-ratelimit"));
+        }
+        return scheduler;
+    }
+
+    /**
+     * Adapts the limiter to the rate limit status and headers of the response.
+     */
+    private void onResponse(HttpRateLimiter limiter, HttpResponse res) {
+        long now = System.currentTimeMillis();
+        int status = res.getStatusCode();
+        if (status == ENHANCE_YOUR_CLAIM || status == TOO_MANY_REQUESTS) {
+            long pause = HttpBackoffRetryPolicy.getRetryAfter(res.getResponseHeader("Retry-After"), now);
+            if (pause < 0) {
+                pause = getResetMillis(res, now);
+            }
+            logger.debug("Rate limited by the server (" + status + "), pausing " + Math.max(0, pause) + " ms");
+            limiter.onRateLimited(TimeUnit.MILLISECONDS.toNanos(Math.max(0, pause)));
+            return;
+        }
+        String remaining = getHeader(res, "X-Rate-Limit-Remaining", "X-RateLimit-Remaining");
+        if (remaining != null && remaining.trim().equals("0")) {
+            long pause = getResetMillis(res, now);
+            if (pause > 0) {
+                logger.debug("Rate limit exhausted, pausing " + pause + " ms");
+                limiter.pause(TimeUnit.MILLISECONDS.toNanos(pause));
+                return;
+            }
+        }
+        limiter.onSuccess();
+    }
+
+    /**
+     * @return milliseconds until the reset time of the rate limit headers, or -1
+     */
+    private static long getResetMillis(HttpResponse res, long now) {
+        String reset = getHeader(res, "X-Rate-Limit-Reset", "X-RateLimit-Reset");
+        if (reset == null) {
+            return -1;
+        }
+        try {
+            long value = Long.parseLong(reset.trim());
+            // epoch seconds, or seconds from now
+            return (value > 1000000000L) ? Math.max(0, value * 1000 - now) : value * 1000;
+        } catch (NumberFormatException e) {
+            return -1;
+        }
+    }
+
+    private static String getHeader(HttpResponse res, String... names) {
+        for (String name : names) {
+            String value = res.getResponseHeader(name);
+            if (value != null) {
+                return value;
+            }
+        }
+        return null;
+    }
+
+    @Override
+    public void shutdown() {
+        synchronized (this) {
+            if (scheduler != null) {
+                scheduler.shutdown();
+            }
+        }
+        client.shutdown();
+    }
+
+    @Override
+    public String toString() {
+        return "HttpRateLimitedClient{" +
+                "client=" + client +
+                ", limiters=" + limiters +
+                '}';
+    }
+}
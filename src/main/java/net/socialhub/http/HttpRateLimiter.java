@@ -0,0 +1,125 @@
+package net.socialhub.http;
+
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Token bucket of one host or key, implemented as a virtual scheduling time
+ * (the time the bucket is empty until) advanced with compare-and-set, so that taking a permit
+ * neither locks nor allocates. Up to {@code burst} permits are available at once,
+ * refilled at {@code permitsPerSecond}.
+ * <p>
+ * The rate adapts to the server: it is halved whenever the server answers with a rate limit status,
+ * and recovers gradually towards the configured rate on successful responses.
+ *
+ * @see HttpRateLimitedClient
+ */
+public final class HttpRateLimiter {
+
+    /** slowest rate the limiter adapts to, as a fraction of the configured one */
+    private static final int MAX_SLOWDOWN = 64;
+    /** part of the gap to the configured rate recovered per successful response */
+    private static final int RECOVERY_FRACTION = 16;
+
+    private final long baseInterval;
+    private final int burst;
+    private final AtomicLong interval;
+    private final AtomicLong emptyUntil;
+
+    /**
+     * @param permitsPerSecond rate of the requests
+     * @param burst            number of requests which may be sent at once
+     */
+    public HttpRateLimiter(double permitsPerSecond, int burst) {
+        this.baseInterval = Math.max(1, (long) (1000000000L / permitsPerSecond));
+        this.burst = Math.max(1, burst);
+        this.interval = new AtomicLong(baseInterval);
+        this.emptyUntil = new AtomicLong(System.nanoTime());
+    }
+
+    /**
+     * Takes a permit, possibly in the future.
+     *
+     * @param maxWaitNanos longest acceptable wait
+     * @return nanoseconds to wait before using the permit, or -1 if no permit was taken
+     * because the wait would be longer than {@code maxWaitNanos}
+     */
+    public long reserve(long maxWaitNanos) {
+        long now = System.nanoTime();
+        for (; ; ) {
+            long until = emptyUntil.get();
+            long step = interval.get();
+            long start = (until - now > 0) ? until : now;
+            long wait = Math.max(0, start - now - (burst - 1) * step);
+            if (wait > maxWaitNanos) {
+                return -1;
+            }
+            if (emptyUntil.compareAndSet(until, start + step)) {
+                return wait;
+            }
+        }
+    }
+
+    /**
+     * @return true if a permit is available now, in which case it is taken
+     */
+    public boolean tryAcquire() {
+        return reserve(0) == 0;
+    }
+
+    /**
+     * Halves the rate and lets no request through for the given time,
+     * after a 420 Enhance Your Calm or 429 Too Many Requests.
+     */
+    public void onRateLimited(long pauseNanos) {
+        for (; ; ) {
+            long step = interval.get();
+            long slower = Math.min(baseInterval * MAX_SLOWDOWN, step * 2);
+            if (interval.compareAndSet(step, slower)) {
+                break;
+            }
+        }
+        pause(pauseNanos);
+    }
+
+    /**
+     * Lets no request through for the given time, then one at a time at the current rate.
+     */
+    public void pause(long pauseNanos) {
+        long resume = System.nanoTime() + Math.max(0, pauseNanos) + (burst - 1) * interval.get();
+        for (; ; ) {
+            long until = emptyUntil.get();
+            if (until - resume >= 0 || emptyUntil.compareAndSet(until, resume)) {
+                return;
+            }
+        }
+    }
+
+    /**
+     * Moves the rate back towards the configured one after a response which was not rate limited.
+     */
+    public void onSuccess() {
+        long step = interval.get();
+        if (step > baseInterval) {
+            interval.compareAndSet(step, step - Math.max(1, (step - baseInterval) / RECOVERY_FRACTION));
+        }
+    }
+
+    /**
+     * @return current rate of the limiter in permits per second
+     */
+    public double getRate() {
+        return 1000000000.0 / interval.get();
+    }
+
+    public int getBurst() {
+        return burst;
+    }
+
+    @Override
+    public String toString() {
+        return "HttpRateLimiter{" +
+                "rate=" + getRate() +
+                ", burst=" + burst +
+                '}';
+    }
+}
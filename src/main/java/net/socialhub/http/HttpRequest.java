@@ -40,6 +40,8 @@ public final class HttpRequest implements Serializable {
 
     private Map<String, String> requestHeaders;
 
+    private final HttpTimeouts timeouts;
+
     private static final HttpParameter[] NULL_PARAMETERS = new HttpParameter[0];
 
     /**
@@ -48,15 +50,24 @@ public final class HttpRequest implements Serializable {
      * @param parameters     parameters
      */
     public HttpRequest(RequestMethod method, String url, HttpParameter[] parameters, Map<String, String> requestHeaders) {
+        this(method, url, parameters, requestHeaders, HttpTimeouts.DEFAULT);
+    }
+
+    /**
+     * @param method         Specifies the HTTP method
+     * @param url            the request to request
+     * @param parameters     parameters
+     * @param timeouts       deadline and timeouts of the request
+     */
+    public HttpRequest(RequestMethod method, String url, HttpParameter[] parameters, Map<String, String> requestHeaders,
+                       HttpTimeouts timeouts) {
 
         this.method = method;
 
         if (method != RequestMethod.POST && parameters != null && parameters.length != 0) {
-            if (url.contains("?")) {
-                this.url = url + "&" + HttpParameter.encodeParameters(parameters);
-            } else {
-                this.url = url + "?" + HttpParameter.encodeParameters(parameters);
-            }
+            StringBuilder buf = new StringBuilder(url.length() + parameters.length * 32);
+            buf.append(url).append(url.indexOf('?') >= 0 ? '&' : '?');
+            this.url = HttpParameter.encodeParameters(parameters, buf).toString();
             this.parameters = NULL_PARAMETERS;
         } else {
             this.url = url;
@@ -67,6 +78,22 @@ public final class HttpRequest implements Serializable {
             }
         }
         this.requestHeaders = requestHeaders;
+        this.timeouts = (timeouts != null) ? timeouts : HttpTimeouts.DEFAULT;
+    }
+
+    private HttpRequest(HttpRequest req, HttpTimeouts timeouts) {
+        this.method = req.method;
+        this.url = req.url;
+        this.parameters = req.parameters;
+        this.requestHeaders = req.requestHeaders;
+        this.timeouts = (timeouts != null) ? timeouts : HttpTimeouts.DEFAULT;
+    }
+
+    /**
+     * @return a copy of the request with other timeouts
+     */
+    public HttpRequest withTimeouts(HttpTimeouts timeouts) {
+        return new HttpRequest(this, timeouts);
     }
 
     public RequestMethod getMethod() {
@@ -85,6 +112,14 @@ public final class HttpRequest implements Serializable {
         return requestHeaders;
     }
 
+    /**
+     * Timeouts are not part of the identity of the request,
+     * so requests differing only by their timeouts are cached and coalesced together.
+     */
+    public HttpTimeouts getTimeouts() {
+        return timeouts;
+    }
+
     @Override
     public boolean equals(Object o) {
         if (this == o) return true;
@@ -119,6 +154,7 @@ public final class HttpRequest implements Serializable {
                 ", url='" + url + '\'' +
                 ", postParams=" + (parameters == null ? null : Arrays.asList(parameters)) +
                 ", requestHeaders=" + requestHeaders +
+                ", timeouts=" + timeouts +
                 '}';
     }
 }
@@ -26,6 +26,10 @@ public class HttpRequestBuilder {
 
     private Map<String, String> header = new HashMap<>();
 
+    private HttpTimeouts timeouts = HttpTimeouts.DEFAULT;
+
+    private long timeout;
+
     public HttpRequestBuilder() {
         this(new HttpClientDefaultConfiguration());
     }
@@ -88,6 +92,29 @@ public class HttpRequestBuilder {
         return this;
     }
 
+    /**
+     * Sets the time the whole request may take, retries included, from the time it is sent.
+     */
+    public HttpRequestBuilder timeout(long timeoutMillis) {
+        this.timeout = timeoutMillis;
+        return this;
+    }
+
+    public HttpRequestBuilder connectTimeout(int connectTimeoutMillis) {
+        this.timeouts = timeouts.withConnectTimeout(connectTimeoutMillis);
+        return this;
+    }
+
+    public HttpRequestBuilder firstByteTimeout(int firstByteTimeoutMillis) {
+        this.timeouts = timeouts.withFirstByteTimeout(firstByteTimeoutMillis);
+        return this;
+    }
+
+    public HttpRequestBuilder idleTimeout(int idleTimeoutMillis) {
+        this.timeouts = timeouts.withIdleTimeout(idleTimeoutMillis);
+        return this;
+    }
+
     public HttpRequestBuilder pathValue(String key, String value) {
         path = path.replaceAll("\\{" + key + "\\}", value);
         return this;
@@ -132,7 +159,8 @@ public class HttpRequestBuilder {
 
         HttpRequest request = new HttpRequest(method, getUrl(), //
                 params.isEmpty() ? null : params.toArray(new HttpParameter[0]),
-                header.isEmpty() ? null : header);
+                header.isEmpty() ? null : header,
+                (timeout > 0) ? timeouts.withTimeout(timeout) : timeouts);
         return httpClient.request(request);
     }
 
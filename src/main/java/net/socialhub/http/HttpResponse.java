@@ -19,6 +19,14 @@ package net.socialhub.http;
 import net.socialhub.logger.Logger;
 
 import java.io.*;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.channels.WritableByteChannel;
+import java.nio.charset.Charset;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.Arrays;
 import java.util.List;
 import java.util.Map;
 
@@ -30,6 +38,8 @@ import java.util.Map;
 public abstract class HttpResponse {
 
     private static final Logger logger = Logger.getLogger(HttpResponseImpl.class);
+    private static final int DEFAULT_BODY_SIZE = 8192;
+    private static final long MAX_BODY_SIZE_HINT = 16 * 1024 * 1024;
     protected final HttpClientConfiguration CONF;
 
     public HttpResponse(HttpClientConfiguration conf) {
@@ -39,6 +49,7 @@ public abstract class HttpResponse {
     protected int statusCode;
     protected String responseAsString = null;
     protected InputStream is;
+    protected HttpTimings timings = HttpTimings.NONE;
     private boolean streamConsumed = false;
 
     public int getStatusCode() {
@@ -67,58 +78,295 @@ public abstract class HttpResponse {
 
     /**
      * Returns the response body as string.
+     * The body is decoded byte-exact with the charset of the Content-Type header, UTF-8 by default.
      * Disconnects the internal HttpURLConnection silently.
      */
     public String asString() throws HttpException {
         if (null == responseAsString) {
-            BufferedReader br = null;
-            InputStream stream = null;
-            try {
-                stream = asStream();
-                if (null == stream) {
-                    return null;
+            ByteBuffer body = readBody(null);
+            if (null == body) {
+                return null;
+            }
+            this.responseAsString = new String(body.array(), 0, body.limit(), getCharset());
+            logger.debug(responseAsString);
+        }
+        return responseAsString;
+    }
+
+    /**
+     * Returns the response body as bytes, without decoding.
+     * This method cannot be called after the stream has been consumed.
+     * Disconnects the internal HttpURLConnection silently.
+     */
+    public byte[] asBytes() throws HttpException {
+        ByteBuffer body = readBody(null);
+        if (null == body) {
+            return null;
+        }
+        if (body.limit() == body.capacity()) {
+            return body.array();
+        }
+        return Arrays.copyOf(body.array(), body.limit());
+    }
+
+    /**
+     * Returns the response body in a heap buffer, from position 0 to the limit.
+     * Unlike {@link #asBytes()} the buffer is not trimmed to the body size.
+     * Disconnects the internal HttpURLConnection silently.
+     */
+    public ByteBuffer asByteBuffer() throws HttpException {
+        return readBody(null);
+    }
+
+    /**
+     * Returns the response body in a buffer leased from the pool.
+     * The caller must close the returned buffer to release it,
+     * bodies larger than the pooled buffers are held in a buffer that is not pooled.
+     * Disconnects the internal HttpURLConnection silently.
+     *
+     * @param pool pool of heap or direct buffers
+     */
+    public HttpPooledBuffer asByteBuffer(HttpBufferPool pool) throws HttpException {
+        ByteBuffer body = readBody(pool);
+        if (null == body) {
+            return null;
+        }
+        return new HttpPooledBuffer(pool, body);
+    }
+
+    /**
+     * Consumes the body stream and disconnects.
+     *
+     * @param pool pool to lease the buffer from, or null for a new heap buffer
+     * @return the body from position 0 to the limit, or null if there is no stream
+     */
+    private ByteBuffer readBody(HttpBufferPool pool) throws HttpException {
+        InputStream stream = null;
+        try {
+            stream = asStream();
+            if (null == stream) {
+                return null;
+            }
+            int sizeHint = getContentLengthHint();
+            ByteBuffer body = (pool == null) ? readFully(stream, sizeHint) : readFully(stream, sizeHint, pool);
+            stream.close();
+            streamConsumed = true;
+            return body;
+        } catch (IOException ioe) {
+            throw new HttpException(ioe.getMessage(), ioe);
+        } finally {
+            if (stream != null) {
+                try {
+                    stream.close();
+                } catch (IOException ignore) {
                 }
-                br = new BufferedReader(new InputStreamReader(stream, "UTF-8"));
-                StringBuilder buf = new StringBuilder();
-                String line;
-                while ((line = br.readLine()) != null) {
-                    buf.append(line).append("\n");
+            }
+            disconnectForcibly();
+        }
+    }
+
+    /**
+     * Reads the whole stream into one array.
+     * An exact size hint fills the array without growing or trimming it.
+     */
+    private static ByteBuffer readFully(InputStream stream, int sizeHint) throws IOException {
+        byte[] bytes = new byte[(sizeHint < 0) ? DEFAULT_BODY_SIZE : sizeHint];
+        int length = 0;
+        for (; ; ) {
+            if (length == bytes.length) {
+                // probe for the end before growing, so that an exact hint costs nothing
+                int b = stream.read();
+                if (b == -1) {
+                    break;
                 }
-                this.responseAsString = buf.toString();
-                logger.debug(responseAsString);
-                stream.close();
-                streamConsumed = true;
-            } catch (IOException ioe) {
-                throw new HttpException(ioe.getMessage(), ioe);
-            } finally {
-                if (stream != null) {
-                    try {
-                        stream.close();
-                    } catch (IOException ignore) {
+                bytes = Arrays.copyOf(bytes, Math.max(bytes.length * 2, DEFAULT_BODY_SIZE));
+                bytes[length++] = (byte) b;
+            }
+            int n = stream.read(bytes, length, bytes.length - length);
+            if (n == -1) {
+                break;
+            }
+            length += n;
+        }
+        return ByteBuffer.wrap(bytes, 0, length);
+    }
+
+    /**
+     * Reads the whole stream into a pooled buffer, or a larger one if it does not fit.
+     * Direct buffers are filled through a pooled heap buffer.
+     */
+    private static ByteBuffer readFully(InputStream stream, int sizeHint, HttpBufferPool pool) throws IOException {
+        ByteBuffer buffer = (sizeHint > pool.getBufferSize())
+                ? allocate(sizeHint, pool.isDirect()) : pool.acquire();
+        ByteBuffer scratch = buffer.hasArray() ? null : HttpBufferPool.heap().acquire();
+        try {
+            for (; ; ) {
+                if (!buffer.hasRemaining()) {
+                    int b = stream.read();
+                    if (b == -1) {
+                        break;
                     }
+                    ByteBuffer bigger = allocate(Math.max(buffer.capacity() * 2, DEFAULT_BODY_SIZE), pool.isDirect());
+                    buffer.flip();
+                    bigger.put(buffer);
+                    pool.release(buffer);
+                    buffer = bigger;
+                    buffer.put((byte) b);
                 }
-                if (br != null) {
-                    try {
-                        br.close();
-                    } catch (IOException ignore) {
+                int n;
+                if (scratch == null) {
+                    n = stream.read(buffer.array(), buffer.arrayOffset() + buffer.position(), buffer.remaining());
+                    if (n == -1) {
+                        break;
                     }
+                    buffer.position(buffer.position() + n);
+                } else {
+                    n = stream.read(scratch.array(), 0, Math.min(scratch.capacity(), buffer.remaining()));
+                    if (n == -1) {
+                        break;
+                    }
+                    buffer.put(scratch.array(), 0, n);
                 }
-                disconnectForcibly();
+            }
+            buffer.flip();
+            return buffer;
+        } catch (IOException e) {
+            pool.release(buffer);
+            throw e;
+        } finally {
+            if (scratch != null) {
+                HttpBufferPool.heap().release(scratch);
             }
         }
-        return responseAsString;
     }
 
+    private static ByteBuffer allocate(int capacity, boolean direct) {
+        return direct ? ByteBuffer.allocateDirect(capacity) : ByteBuffer.allocate(capacity);
+    }
+
+    /**
+     * @return expected size of the decoded body from the Content-Length header, or -1 if unknown
+     */
+    private int getContentLengthHint() {
+        String contentLength = getResponseHeader("Content-Length");
+        if (contentLength == null) {
+            return -1;
+        }
+        long length;
+        try {
+            length = Long.parseLong(contentLength.trim());
+        } catch (NumberFormatException e) {
+            return -1;
+        }
+        if ("gzip".equalsIgnoreCase(getResponseHeader("Content-Encoding"))) {
+            // the header counts compressed bytes, text usually inflates a few times
+            length *= 4;
+        }
+        return (int) Math.max(0, Math.min(length, MAX_BODY_SIZE_HINT));
+    }
+
+    /**
+     * @return charset of the Content-Type header, or UTF-8 if it is missing or unsupported
+     */
+    protected Charset getCharset() {
+        String contentType = getResponseHeader("Content-Type");
+        if (contentType != null) {
+            for (String param : contentType.split(";")) {
+                int eq = param.indexOf('=');
+                if (eq > 0 && param.substring(0, eq).trim().equalsIgnoreCase("charset")) {
+                    String name = param.substring(eq + 1).trim();
+                    if (name.length() > 1 && name.startsWith("\"") && name.endsWith("\"")) {
+                        name = name.substring(1, name.length() - 1);
+                    }
+                    try {
+                        return Charset.forName(name);
+                    } catch (IllegalArgumentException ignore) {
+                        // illegal or unsupported charset name
+                    }
+                }
+            }
+        }
+        return StandardCharsets.UTF_8;
+    }
 
     public Reader asReader() {
+        return new BufferedReader(new InputStreamReader(is, getCharset()));
+    }
+
+    /**
+     * Writes the response body to the file, replacing its content.
+     * Gzipped bodies are decompressed. The connection is released afterwards.
+     *
+     * @param path destination file
+     * @return number of bytes written
+     */
+    public long transferTo(Path path) throws HttpException {
+        try (FileChannel channel = FileChannel.open(path, StandardOpenOption.CREATE,
+                StandardOpenOption.WRITE, StandardOpenOption.TRUNCATE_EXISTING)) {
+            return transferTo(channel);
+        } catch (IOException ioe) {
+            disconnectForcibly();
+            throw new HttpException(ioe.getMessage(), ioe);
+        }
+    }
+
+    /**
+     * Writes the response body to the channel without going through a string.
+     * Gzipped bodies are decompressed. The connection is released afterwards,
+     * the channel is left open.
+     *
+     * @param target blocking channel
+     * @return number of bytes written
+     */
+    public long transferTo(WritableByteChannel target) throws HttpException {
+        InputStream stream = null;
         try {
-            return new BufferedReader(new InputStreamReader(is, "UTF-8"));
-        } catch (java.io.UnsupportedEncodingException uee) {
-            return new InputStreamReader(is);
+            stream = asStream();
+            if (null == stream) {
+                return 0;
+            }
+            long written = transferBody(stream, target);
+            stream.close();
+            streamConsumed = true;
+            return written;
+        } catch (IOException ioe) {
+            throw new HttpException(ioe.getMessage(), ioe);
+        } finally {
+            if (stream != null) {
+                try {
+                    stream.close();
+                } catch (IOException ignore) {
+                }
+            }
+            disconnectForcibly();
         }
     }
 
-    private void disconnectForcibly() {
+    /**
+     * Copies the body stream to the channel through a pooled buffer.
+     * Subclasses may write the received bytes directly when the stream is not decoded.
+     *
+     * @return number of bytes written
+     */
+    protected long transferBody(InputStream stream, WritableByteChannel target) throws IOException {
+        HttpBufferPool pool = HttpBufferPool.heap();
+        ByteBuffer buffer = pool.acquire();
+        try {
+            long written = 0;
+            int n;
+            while ((n = stream.read(buffer.array(), 0, buffer.capacity())) != -1) {
+                buffer.position(0).limit(n);
+                while (buffer.hasRemaining()) {
+                    written += target.write(buffer);
+                }
+            }
+            return written;
+        } finally {
+            pool.release(buffer);
+        }
+    }
+
+    void disconnectForcibly() {
         try {
             disconnect();
         } catch (Exception ignore) {
@@ -127,6 +375,13 @@ public abstract class HttpResponse {
 
     public abstract void disconnect() throws IOException;
 
+    /**
+     * @return timings of the request, updated while the body is read
+     */
+    public HttpTimings getTimings() {
+        return timings;
+    }
+
     @Override
     public String toString() {
         return "HttpResponse{" +
@@ -0,0 +1,121 @@
+package net.socialhub.http;
+
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * In-memory store of cached responses keyed on the request.
+ * The least recently used entries are evicted once the entries take more than the byte bound.
+ *
+ * @see HttpCachingClient
+ */
+public class HttpResponseCache {
+
+    private final long maxBytes;
+    private final LinkedHashMap<HttpRequest, HttpCacheEntry> entries = new LinkedHashMap<>(16, 0.75f, true);
+    private long bytes = 0;
+    private long hitCount = 0;
+    private long missCount = 0;
+    private long evictionCount = 0;
+
+    /**
+     * @param maxBytes upper bound of the memory taken by the entries
+     */
+    public HttpResponseCache(long maxBytes) {
+        this.maxBytes = maxBytes;
+    }
+
+    synchronized HttpCacheEntry get(HttpRequest request) {
+        HttpCacheEntry entry = entries.get(request);
+        if (entry == null) {
+            missCount++;
+        } else {
+            hitCount++;
+        }
+        return entry;
+    }
+
+    /**
+     * Stores the entry, unless it is larger than the whole cache.
+     */
+    synchronized void put(HttpRequest request, HttpCacheEntry entry) {
+        long size = entry.getSize();
+        if (size > maxBytes) {
+            remove(request);
+            return;
+        }
+        HttpCacheEntry previous = entries.put(request, entry);
+        if (previous != null) {
+            bytes -= previous.getSize();
+        }
+        bytes += size;
+        Iterator<HttpCacheEntry> eldest = entries.values().iterator();
+        while (bytes > maxBytes && eldest.hasNext()) {
+            bytes -= eldest.next().getSize();
+            eldest.remove();
+            evictionCount++;
+        }
+    }
+
+    synchronized void remove(HttpRequest request) {
+        HttpCacheEntry entry = entries.remove(request);
+        if (entry != null) {
+            bytes -= entry.getSize();
+        }
+    }
+
+    /**
+     * Removes the entries of every request to the URL.
+     */
+    public synchronized void removeURL(String url) {
+        Iterator<Map.Entry<HttpRequest, HttpCacheEntry>> it = entries.entrySet().iterator();
+        while (it.hasNext()) {
+            Map.Entry<HttpRequest, HttpCacheEntry> entry = it.next();
+            if (url.equals(entry.getKey().getURL())) {
+                bytes -= entry.getValue().getSize();
+                it.remove();
+            }
+        }
+    }
+
+    public synchronized void clear() {
+        entries.clear();
+        bytes = 0;
+    }
+
+    public long getMaxBytes() {
+        return maxBytes;
+    }
+
+    public synchronized long getByteCount() {
+        return bytes;
+    }
+
+    public synchronized int getEntryCount() {
+        return entries.size();
+    }
+
+    public synchronized long getHitCount() {
+        return hitCount;
+    }
+
+    public synchronized long getMissCount() {
+        return missCount;
+    }
+
+    public synchronized long getEvictionCount() {
+        return evictionCount;
+    }
+
+    @Override
+    public synchronized String toString() {
+        return "HttpResponseCache{" +
+                "maxBytes=" + maxBytes +
+                ", bytes=" + bytes +
+                ", entries=" + entries.size() +
+                ", hitCount=" + hitCount +
+                ", missCount=" + missCount +
+                '}';
+    }
+}
@@ -22,6 +22,7 @@ package net.socialhub.http;
  */
 public interface HttpResponseCode {
     int OK = 200;// OK: Success!
+    int NO_CONTENT = 204;// No Content: Success without a response body.
     int MULTIPLE_CHOICES = 300;//
     int FOUND = 302;//
     int NOT_MODIFIED = 304;// Not Modified: There was no new data to return.
@@ -35,7 +36,9 @@ public interface HttpResponseCode {
      * @see <a href="http://groups.google.com/group/twitter-api-announce/browse_thread/thread/3f3b0fd38deb9b0f?hl=en">Search API: new HTTP response code 420 for rate limiting starting 1/18/2010</a>
      */
     int ENHANCE_YOUR_CLAIM = 420;// Enhance Your Calm: Returned by the Search and Trends API  when you are being rate limited. Not registered in RFC.
+    int TOO_MANY_REQUESTS = 429;// Too Many Requests: The request cannot be served due to the rate limit, see Retry-After.
     int INTERNAL_SERVER_ERROR = 500;// Internal Server Error: Something is broken. Please post to the group so the Twitter team can investigate.
     int BAD_GATEWAY = 502;// Bad Gateway: Twitter is down or being upgraded.
     int SERVICE_UNAVAILABLE = 503;// Service Unavailable: The Twitter servers are up, but overloaded with requests. Try again later. The search and trend methods use this to indicate when you are being rate limited.
+    int GATEWAY_TIMEOUT = 504;// Gateway Timeout: An upstream server did not respond in time.
 }
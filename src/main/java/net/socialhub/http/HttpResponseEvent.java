@@ -62,6 +62,18 @@ public final class HttpResponseEvent {
         return httpException;
     }
 
+    /**
+     * returns the timing breakdown of the request, of the response or of the failure
+     *
+     * @return the timings of the request
+     */
+    public HttpTimings getTimings() {
+        if (response != null) {
+            return response.getTimings();
+        }
+        return (httpException != null) ? httpException.getTimings() : HttpTimings.NONE;
+    }
+
     @Override
     public boolean equals(Object o) {
         if (this == o) return true;
@@ -89,6 +101,7 @@ public final class HttpResponseEvent {
         return "HttpResponseEvent{" +
                 "request=" + request +
                 ", response=" + response +
+                ", timings=" + getTimings() +
                 '}';
     }
 }
@@ -17,7 +17,9 @@
 package net.socialhub.http;
 
 import java.io.BufferedInputStream;
+import java.io.FilterInputStream;
 import java.io.IOException;
+import java.io.InputStream;
 import java.net.HttpURLConnection;
 import java.util.List;
 import java.util.Map;
@@ -31,14 +33,35 @@ import java.util.zip.ZipException;
 public class HttpResponseImpl extends HttpResponse {
     private HttpURLConnection con;
 
+    private boolean streamClosed = false;
+
     HttpResponseImpl(HttpURLConnection con, HttpClientConfiguration conf) throws IOException {
+        this(con, conf, null);
+    }
+
+    /**
+     * @param timings timings of the request, updated while the body is read, or null
+     */
+    HttpResponseImpl(HttpURLConnection con, HttpClientConfiguration conf, HttpTimings timings) throws IOException {
         super(conf);
         this.con = con;
+        if (timings != null) {
+            this.timings = timings;
+        }
         this.statusCode = con.getResponseCode();
         if (null == (is = con.getErrorStream())) {
             is = con.getInputStream();
         }
 
+        if (is == null) {
+            if (timings != null) {
+                timings.setBodyReadNanos(0);
+            }
+        } else {
+            // closing the body hands the socket back to the keep-alive cache
+            is = new BodyInputStream(is);
+        }
+
         if (is != null && "gzip".equals(con.getContentEncoding())) {
             is  = new BufferedInputStream(is);
             if(is.markSupported()) {
@@ -68,9 +91,59 @@ public class HttpResponseImpl extends HttpResponse {
 
     /**
      * {@inheritDoc}
+     * The underlying socket is kept alive if the body has already been closed.
      */
     @Override
     public void disconnect() {
-        con.disconnect();
+        if (!streamClosed) {
+            con.disconnect();
+        }
+    }
+
+    /**
+     * Records the bytes and the time of the body.
+     */
+    private class BodyInputStream extends FilterInputStream {
+
+        private final long headReceived = System.nanoTime();
+
+        BodyInputStream(InputStream in) {
+            super(in);
+        }
+
+        @Override
+        public int read() throws IOException {
+            int b = super.read();
+            if (b < 0) {
+                bodyRead();
+            } else if (timings != HttpTimings.NONE) {
+                timings.addBytesIn(1);
+            }
+            return b;
+        }
+
+        @Override
+        public int read(byte[] b, int off, int len) throws IOException {
+            int n = super.read(b, off, len);
+            if (n < 0) {
+                bodyRead();
+            } else if (timings != HttpTimings.NONE) {
+                timings.addBytesIn(n);
+            }
+            return n;
+        }
+
+        @Override
+        public void close() throws IOException {
+            bodyRead();
+            super.close();
+            streamClosed = true;
+        }
+
+        private void bodyRead() {
+            if (timings != HttpTimings.NONE && !timings.isBodyRead()) {
+                timings.setBodyReadNanos(System.nanoTime() - headReceived);
+            }
+        }
     }
 }
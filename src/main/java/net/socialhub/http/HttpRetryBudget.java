@@ -0,0 +1,90 @@
+package net.socialhub.http;
+
+/**
+ * Bounds the load added by retries across all the requests of a client.
+ * Over a sliding window of {@value #WINDOW_SECONDS} seconds, retries are allowed
+ * up to {@code ratio} of the requests plus {@code minPerSecond} per second,
+ * so that an outage does not multiply the traffic sent to the failing server.
+ */
+public class HttpRetryBudget {
+
+    static final int WINDOW_SECONDS = 10;
+
+    private final double ratio;
+    private final int minPerSecond;
+
+    // counts per second of the window, as a ring
+    private final long[] requests = new long[WINDOW_SECONDS];
+    private final long[] retries = new long[WINDOW_SECONDS];
+    private long second;
+
+    /**
+     * @param ratio        retries allowed per request
+     * @param minPerSecond retries allowed per second regardless of the requests
+     */
+    public HttpRetryBudget(double ratio, int minPerSecond) {
+        this.ratio = ratio;
+        this.minPerSecond = minPerSecond;
+        this.second = now();
+    }
+
+    /**
+     * Records a first attempt of a request.
+     */
+    public synchronized void onRequest() {
+        advance();
+        requests[index(second)]++;
+    }
+
+    /**
+     * Withdraws a retry from the budget.
+     *
+     * @return false if the budget is exhausted and the request should not be retried
+     */
+    public synchronized boolean tryRetry() {
+        advance();
+        long requestCount = 0;
+        long retryCount = 0;
+        for (int i = 0; i < WINDOW_SECONDS; i++) {
+            requestCount += requests[i];
+            retryCount += retries[i];
+        }
+        if (retryCount >= (long) (requestCount * ratio) + (long) minPerSecond * WINDOW_SECONDS) {
+            return false;
+        }
+        retries[index(second)]++;
+        return true;
+    }
+
+    /**
+     * Clears the seconds which have left the window.
+     */
+    private void advance() {
+        long now = now();
+        if (now <= second) {
+            return;
+        }
+        long elapsed = Math.min(now - second, WINDOW_SECONDS);
+        for (long s = now - elapsed + 1; s <= now; s++) {
+            requests[index(s)] = 0;
+            retries[index(s)] = 0;
+        }
+        second = now;
+    }
+
+    private static int index(long second) {
+        return (int) Math.floorMod(second, (long) WINDOW_SECONDS);
+    }
+
+    long now() {
+        return System.nanoTime() / 1000000000L;
+    }
+
+    @Override
+    public String toString() {
+        return "HttpRetryBudget{" +
+                "ratio=" + ratio +
+                ", minPerSecond=" + minPerSecond +
+                '}';
+    }
+}
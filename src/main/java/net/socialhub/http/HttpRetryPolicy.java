@@ -0,0 +1,20 @@
+package net.socialhub.http;
+
+/**
+ * Decides whether and when a failed request is sent again.
+ * Both {@link HttpClientImpl} and {@link HttpClientNioImpl} consult the policy
+ * of {@link HttpClientConfiguration#getHttpRetryPolicy()} after every failed attempt.
+ *
+ * @see HttpBackoffRetryPolicy
+ */
+public interface HttpRetryPolicy {
+
+    /**
+     * @param req          the failed request
+     * @param retriedCount number of retries sent so far
+     * @param res          the response of the failed attempt, or null if no response was received
+     * @param error        the error of the failed attempt, or null if an error status was received
+     * @return milliseconds to wait before the next attempt, or -1 to give up
+     */
+    long getRetryDelay(HttpRequest req, int retriedCount, HttpResponse res, Throwable error);
+}
@@ -0,0 +1,86 @@
+package net.socialhub.http;
+
+import java.io.Serializable;
+import java.net.MalformedURLException;
+import java.net.URL;
+
+/**
+ * A connection route: the scheme, host and port a request is sent to.
+ * Connection limits and pool statistics are tracked per route.
+ */
+public final class HttpRoute implements Serializable {
+
+    private static final long serialVersionUID = -4117074787850769893L;
+
+    private final String scheme;
+
+    private final String host;
+
+    private final int port;
+
+    public HttpRoute(String scheme, String host, int port) {
+        this.scheme = scheme.toLowerCase();
+        this.host = host.toLowerCase();
+        this.port = (port != -1) ? port : defaultPort(this.scheme);
+    }
+
+    /**
+     * @param url request url
+     * @return route of the url
+     */
+    public static HttpRoute of(String url) {
+        try {
+            URL u = new URL(url);
+            return new HttpRoute(u.getProtocol(), u.getHost(), u.getPort());
+        } catch (MalformedURLException e) {
+            throw new IllegalArgumentException("malformed url: " + url, e);
+        }
+    }
+
+    private static int defaultPort(String scheme) {
+        return "https".equals(scheme) ? 443 : 80;
+    }
+
+    public String getScheme() {
+        return scheme;
+    }
+
+    public String getHost() {
+        return host;
+    }
+
+    public int getPort() {
+        return port;
+    }
+
+    public boolean isSecure() {
+        return "https".equals(scheme);
+    }
+
+    @Override
+    public boolean equals(Object o) {
+        if (this == o) return true;
+        if (!(o instanceof HttpRoute)) return false;
+
+        HttpRoute that = (HttpRoute) o;
+
+        if (port != that.port) return false;
+        if (!scheme.equals(that.scheme)) return false;
+        if (!host.equals(that.host)) return false;
+
+        return true;
+    }
+
+    @Override
+    public int hashCode() {
+        int result = scheme.hashCode();
+        result = 31 * result + host.hashCode();
+        result = 31 * result + port;
+        return result;
+    }
+
+    @Override
+    public String toString() {
+        return scheme + "://" + host + ":" + port;
+    }
+}
@@ -0,0 +1,86 @@
+package net.socialhub.http;
+
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Requests, statuses and latencies of one route, recorded without locking.
+ *
+ * @see HttpMetrics#getRouteMetrics()
+ */
+public final class HttpRouteMetrics {
+
+    /** status recorded for a request which got no response */
+    public static final int NO_RESPONSE = -1;
+
+    private final HttpRoute route;
+    private final LongAdder requests = new LongAdder();
+    private final ConcurrentMap<Integer, LongAdder> statuses = new ConcurrentHashMap<>();
+    private final HttpLatencyHistogram latency = new HttpLatencyHistogram();
+    private final HttpLatencyHistogram timeToFirstByte = new HttpLatencyHistogram();
+
+    HttpRouteMetrics(HttpRoute route) {
+        this.route = route;
+    }
+
+    void record(int statusCode, HttpTimings timings) {
+        requests.increment();
+        LongAdder status = statuses.get(statusCode);
+        if (status == null) {
+            LongAdder created = new LongAdder();
+            status = statuses.putIfAbsent(statusCode, created);
+            if (status == null) {
+                status = created;
+            }
+        }
+        status.increment();
+        latency.record(timings.getTotalNanos());
+        timeToFirstByte.record(timings.getTimeToFirstByteNanos());
+    }
+
+    public HttpRoute getRoute() {
+        return route;
+    }
+
+    public long getRequestCount() {
+        return requests.sum();
+    }
+
+    /**
+     * @return requests by status code, {@link #NO_RESPONSE} for the failed ones
+     */
+    public Map<Integer, Long> getStatusCounts() {
+        Map<Integer, Long> counts = new TreeMap<>();
+        for (Map.Entry<Integer, LongAdder> entry : statuses.entrySet()) {
+            counts.put(entry.getKey(), entry.getValue().sum());
+        }
+        return counts;
+    }
+
+    /**
+     * @return time from the start of the request to the response head or the failure, retries included
+     */
+    public HttpLatencyHistogram.Snapshot getLatency() {
+        return latency.snapshot();
+    }
+
+    /**
+     * @return time to first byte of the last attempts
+     */
+    public HttpLatencyHistogram.Snapshot getTimeToFirstByte() {
+        return timeToFirstByte.snapshot();
+    }
+
+    @Override
+    public String toString() {
+        return "HttpRouteMetrics{" +
+                "route=" + route +
+                ", requests=" + requests.sum() +
+                ", statuses=" + getStatusCounts() +
+                ", latency=" + latency.snapshot() +
+                '}';
+    }
+}
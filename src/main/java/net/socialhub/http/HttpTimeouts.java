@@ -0,0 +1,168 @@
+package net.socialhub.http;
+
+import java.io.Serializable;
+
+/**
+ * Timeouts of one {@link HttpRequest}, overriding those of the {@link HttpClientConfiguration}.
+ * <ul>
+ * <li>deadline: time by which the whole request, including its retries and the waits between them,
+ * must be done. Each attempt is given only the time left, and no retry is made which could not
+ * finish in time.</li>
+ * <li>connect: time to open the connection, including the TLS handshake.</li>
+ * <li>first byte: time from the end of the request to the first byte of the response.</li>
+ * <li>idle: longest time without data while the request is written or the response is read.</li>
+ * </ul>
+ * Instances are immutable; {@link #DEFAULT} uses the configuration for every phase and has no deadline.
+ * With {@link HttpClientImpl} the first byte timeout also applies to the reads of the body,
+ * since {@link java.net.HttpURLConnection} has a single read timeout.
+ */
+public final class HttpTimeouts implements Serializable {
+
+    private static final long serialVersionUID = -2442749112388628255L;
+
+    /** value of a phase timeout taken from the configuration */
+    public static final int FROM_CONFIGURATION = -1;
+
+    public static final HttpTimeouts DEFAULT = new HttpTimeouts(0,
+            FROM_CONFIGURATION, FROM_CONFIGURATION, FROM_CONFIGURATION);
+
+    private final long deadline;
+    private final int connectTimeout;
+    private final int firstByteTimeout;
+    private final int idleTimeout;
+
+    private HttpTimeouts(long deadline, int connectTimeout, int firstByteTimeout, int idleTimeout) {
+        this.deadline = deadline;
+        this.connectTimeout = connectTimeout;
+        this.firstByteTimeout = firstByteTimeout;
+        this.idleTimeout = idleTimeout;
+    }
+
+    /**
+     * @param deadline time in milliseconds since the epoch, 0 for no deadline
+     */
+    public HttpTimeouts withDeadline(long deadline) {
+        return new HttpTimeouts(deadline, connectTimeout, firstByteTimeout, idleTimeout);
+    }
+
+    /**
+     * Sets the deadline to the given time from now.
+     */
+    public HttpTimeouts withTimeout(long timeoutMillis) {
+        return withDeadline(System.currentTimeMillis() + timeoutMillis);
+    }
+
+    /**
+     * @param connectTimeout milliseconds, 0 to wait forever
+     */
+    public HttpTimeouts withConnectTimeout(int connectTimeout) {
+        return new HttpTimeouts(deadline, connectTimeout, firstByteTimeout, idleTimeout);
+    }
+
+    /**
+     * @param firstByteTimeout milliseconds, 0 to wait forever
+     */
+    public HttpTimeouts withFirstByteTimeout(int firstByteTimeout) {
+        return new HttpTimeouts(deadline, connectTimeout, firstByteTimeout, idleTimeout);
+    }
+
+    /**
+     * @param idleTimeout milliseconds, 0 to wait forever
+     */
+    public HttpTimeouts withIdleTimeout(int idleTimeout) {
+        return new HttpTimeouts(deadline, connectTimeout, firstByteTimeout, idleTimeout);
+    }
+
+    /**
+     * @return time in milliseconds since the epoch, 0 for no deadline
+     */
+    public long getDeadline() {
+        return deadline;
+    }
+
+    public boolean hasDeadline() {
+        return deadline != 0;
+    }
+
+    /**
+     * @return milliseconds left until the deadline, {@link Long#MAX_VALUE} without deadline
+     */
+    public long getRemainingMillis(long now) {
+        return (deadline != 0) ? deadline - now : Long.MAX_VALUE;
+    }
+
+    public int getConnectTimeout() {
+        return connectTimeout;
+    }
+
+    public int getFirstByteTimeout() {
+        return firstByteTimeout;
+    }
+
+    public int getIdleTimeout() {
+        return idleTimeout;
+    }
+
+    /**
+     * @return connect timeout of the request in milliseconds, 0 to wait forever
+     */
+    int getConnectTimeout(HttpClientConfiguration conf) {
+        return (connectTimeout != FROM_CONFIGURATION) ? connectTimeout : conf.getHttpConnectionTimeout();
+    }
+
+    /**
+     * @return first byte timeout of the request in milliseconds, 0 to wait forever
+     */
+    int getFirstByteTimeout(HttpClientConfiguration conf) {
+        return (firstByteTimeout != FROM_CONFIGURATION) ? firstByteTimeout : conf.getHttpReadTimeout();
+    }
+
+    /**
+     * @return idle timeout of the request in milliseconds, 0 to wait forever
+     */
+    int getIdleTimeout(HttpClientConfiguration conf) {
+        return (idleTimeout != FROM_CONFIGURATION) ? idleTimeout : conf.getHttpReadTimeout();
+    }
+
+    /**
+     * @return the timeout shortened to the time left until the deadline, at least 1 millisecond
+     */
+    int limit(int timeoutMillis, long now) {
+        if (deadline == 0) {
+            return timeoutMillis;
+        }
+        long remaining = Math.max(1, deadline - now);
+        return (int) ((timeoutMillis > 0) ? Math.min(timeoutMillis, remaining) : Math.min(Integer.MAX_VALUE, remaining));
+    }
+
+    @Override
+    public boolean equals(Object o) {
+        if (this == o) return true;
+        if (o == null || getClass() != o.getClass()) return false;
+
+        HttpTimeouts that = (HttpTimeouts) o;
+        return deadline == that.deadline
+                && connectTimeout == that.connectTimeout
+                && firstByteTimeout == that.firstByteTimeout
+                && idleTimeout == that.idleTimeout;
+    }
+
+    @Override
+    public int hashCode() {
+        int result = (int) (deadline ^ (deadline >>> 32));
+        result = 31 * result + connectTimeout;
+        result = 31 * result + firstByteTimeout;
+        result = 31 * result + idleTimeout;
+        return result;
+    }
+
+    @Override
+    public String toString() {
+        return "HttpTimeouts{" +
+                "deadline=" + deadline +
+                ", connectTimeout=" + connectTimeout +
+                ", firstByteTimeout=" + firstByteTimeout +
+                ", idleTimeout=" + idleTimeout +
+                '}';
+    }
+}
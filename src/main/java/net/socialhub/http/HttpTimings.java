@@ -0,0 +1,239 @@
+package net.socialhub.http;
+
+import java.util.concurrent.atomic.AtomicBoolean;
+
+/**
+ * Where the time of a request went, in nanoseconds, as recorded by the client which sent it.
+ * The phases are those of the last attempt; the retry count, the total time and the bytes
+ * cover all the attempts. A phase is -1 when it did not happen or the client cannot measure it:
+ * {@link HttpClientImpl} measures DNS, connect and TLS together as connect, and the writing
+ * of a request without body as part of the time to first byte.
+ * <p>
+ * The body is read after the response is handed over, so its read time and the bytes received
+ * are updated until the body has been read; see {@link #isBodyRead()}.
+ * Responses which did not come from the network, such as cache hits, have no timings.
+ * The timings of each request are also recorded in the {@link HttpMetrics} of the client, if any.
+ *
+ * @see HttpResponseEvent#getTimings()
+ */
+public final class HttpTimings {
+
+    /** timings of a response which was not received from the network */
+    static final HttpTimings NONE = new HttpTimings();
+
+    private final HttpMetrics metrics;
+    private final HttpRoute route;
+    private final AtomicBoolean finished = new AtomicBoolean();
+    private final long started = System.nanoTime();
+    private volatile long queueNanos = -1;
+    private volatile long acquireNanos = -1;
+    private volatile long dnsNanos = -1;
+    private volatile long connectNanos = -1;
+    private volatile long tlsNanos = -1;
+    private volatile long writeNanos = -1;
+    private volatile long firstByteNanos = -1;
+    private volatile long bodyReadNanos = -1;
+    private volatile long totalNanos = -1;
+    private volatile int retryCount;
+    private volatile boolean connectionReused;
+    private volatile long bytesOut;
+    private volatile long bytesIn;
+
+    HttpTimings() {
+        this(null, null);
+    }
+
+    /**
+     * @param metrics registry to record the request in, or null
+     * @param route   route of the request, or null if the url is invalid
+     */
+    HttpTimings(HttpMetrics metrics, HttpRoute route) {
+        this.metrics = metrics;
+        this.route = route;
+        if (metrics != null) {
+            metrics.onStart();
+        }
+    }
+
+    /**
+     * @return time waiting for an asynchronous worker before the first attempt
+     */
+    public long getQueueNanos() {
+        return queueNanos;
+    }
+
+    /**
+     * @return time waiting for a connection from the pool
+     */
+    public long getConnectionAcquireNanos() {
+        return acquireNanos;
+    }
+
+    public long getDnsNanos() {
+        return dnsNanos;
+    }
+
+    public long getConnectNanos() {
+        return connectNanos;
+    }
+
+    /**
+     * @return time of the TLS handshake, -1 for plain connections
+     */
+    public long getTlsNanos() {
+        return tlsNanos;
+    }
+
+    /**
+     * @return time writing the request line, headers and body
+     */
+    public long getRequestWriteNanos() {
+        return writeNanos;
+    }
+
+    /**
+     * @return time from the end of the request to the first byte of the response
+     */
+    public long getTimeToFirstByteNanos() {
+        return firstByteNanos;
+    }
+
+    /**
+     * @return time from the response head to the end of the body, -1 until the body is read
+     */
+    public long getBodyReadNanos() {
+        return bodyReadNanos;
+    }
+
+    /**
+     * @return time from the start of the first attempt to the response head or the failure
+     */
+    public long getTotalNanos() {
+        return totalNanos;
+    }
+
+    public int getRetryCount() {
+        return retryCount;
+    }
+
+    /**
+     * @return true if the last attempt used a pooled keep-alive connection
+     */
+    public boolean isConnectionReused() {
+        return connectionReused;
+    }
+
+    public long getBytesOut() {
+        return bytesOut;
+    }
+
+    public long getBytesIn() {
+        return bytesIn;
+    }
+
+    public boolean isBodyRead() {
+        return bodyReadNanos >= 0;
+    }
+
+    // recorded by the clients, each request on one thread at a time
+
+    void setQueueNanos(long queueNanos) {
+        this.queueNanos = queueNanos;
+    }
+
+    /**
+     * Starts an attempt, forgetting the phases of the previous one.
+     */
+    void startAttempt(int retriedCount) {
+        retryCount = retriedCount;
+        acquireNanos = -1;
+        dnsNanos = -1;
+        connectNanos = -1;
+        tlsNanos = -1;
+        writeNanos = -1;
+        firstByteNanos = -1;
+        bodyReadNanos = -1;
+        connectionReused = false;
+    }
+
+    void setConnectionAcquireNanos(long acquireNanos) {
+        this.acquireNanos = acquireNanos;
+    }
+
+    void setDnsNanos(long dnsNanos) {
+        this.dnsNanos = dnsNanos;
+    }
+
+    void setConnectNanos(long connectNanos) {
+        this.connectNanos = connectNanos;
+    }
+
+    void setTlsNanos(long tlsNanos) {
+        this.tlsNanos = tlsNanos;
+    }
+
+    void setConnectionReused(boolean connectionReused) {
+        this.connectionReused = connectionReused;
+    }
+
+    void setRequestWriteNanos(long writeNanos) {
+        this.writeNanos = writeNanos;
+    }
+
+    void setTimeToFirstByteNanos(long firstByteNanos) {
+        this.firstByteNanos = firstByteNanos;
+    }
+
+    void setBodyReadNanos(long bodyReadNanos) {
+        this.bodyReadNanos = bodyReadNanos;
+    }
+
+    /**
+     * Records the end of the request at the response head or the failure, once.
+     *
+     * @param statusCode status of the response, {@link HttpRouteMetrics#NO_RESPONSE} if none
+     * @param error      the failure, or null
+     */
+    void finish(int statusCode, Throwable error) {
+        if (!finished.compareAndSet(false, true)) {
+            return;
+        }
+        totalNanos = System.nanoTime() - started;
+        if (metrics != null) {
+            metrics.onFinish(route, this, statusCode, error);
+        }
+    }
+
+    void addBytesOut(long n) {
+        bytesOut += n;
+        if (metrics != null) {
+            metrics.addBytesSent(n);
+        }
+    }
+
+    void addBytesIn(long n) {
+        bytesIn += n;
+        if (metrics != null) {
+            metrics.addBytesReceived(n);
+        }
+    }
+
+    @Override
+    public String toString() {
+        return "HttpTimings{" +
+                "queueNanos=" + queueNanos +
+                ", acquireNanos=" + acquireNanos +
+                ", dnsNanos=" + dnsNanos +
+                ", connectNanos=" + connectNanos +
+                ", tlsNanos=" + tlsNanos +
+                ", writeNanos=" + writeNanos +
+                ", firstByteNanos=" + firstByteNanos +
+                ", bodyReadNanos=" + bodyReadNanos +
+                ", totalNanos=" + totalNanos +
+                ", retryCount=" + retryCount +
+                ", connectionReused=" + connectionReused +
+                ", bytesOut=" + bytesOut +
+                ", bytesIn=" + bytesIn +
+                '}';
+    }
+}
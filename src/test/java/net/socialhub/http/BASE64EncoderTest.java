@@ -0,0 +1,102 @@
+package net.socialhub.http;
+
+import org.junit.Test;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.Base64;
+import java.util.Random;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+
+public class BASE64EncoderTest {
+
+    @Test
+    public void testEncodeAndDecode() {
+        Random random = new Random(0);
+        for (int length = 0; length < 300; length++) {
+            byte[] data = new byte[length];
+            random.nextBytes(data);
+            String encoded = BASE64Encoder.encode(data);
+            assertEquals(Base64.getEncoder().encodeToString(data), encoded);
+            assertEquals(Base64.getUrlEncoder().encodeToString(data), BASE64Encoder.encodeUrlSafe(data));
+            assertArrayEquals(data, BASE64Encoder.decode(encoded));
+            assertArrayEquals(data, BASE64Encoder.decode(BASE64Encoder.encodeUrlSafe(data).replace("=", "")));
+        }
+        assertArrayEquals("Hello, World".getBytes(StandardCharsets.US_ASCII),
+                BASE64Encoder.decode("SGVsbG8s\r\nIFdvcmxk"));
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void testDecodeIllegalCharacter() {
+        BASE64Encoder.decode("SGVs*G8=");
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void testDecodeTruncated() {
+        BASE64Encoder.decode("SGVsb");
+    }
+
+    @Test
+    public void testStreams() throws IOException {
+        Random random = new Random(0);
+        for (int i = 0; i < 200; i++) {
+            byte[] data = new byte[random.nextInt(20000)];
+            random.nextBytes(data);
+            boolean urlSafe = random.nextBoolean();
+
+            // written in pieces of random sizes, single bytes included
+            ByteArrayOutputStream encoded = new ByteArrayOutputStream();
+            BASE64OutputStream out = new BASE64OutputStream(encoded, urlSafe);
+            for (int off = 0; off < data.length; ) {
+                int n = Math.min(data.length - off, random.nextInt(5000));
+                if (n == 1) {
+                    out.write(data[off]);
+                } else {
+                    out.write(data, off, n);
+                }
+                off += n;
+            }
+            out.close();
+            String expected = (urlSafe ? Base64.getUrlEncoder() : Base64.getEncoder()).encodeToString(data);
+            assertEquals(expected, new String(encoded.toByteArray(), StandardCharsets.US_ASCII));
+
+            InputStream in = new BASE64InputStream(new ByteArrayInputStream(encoded.toByteArray()));
+            ByteArrayOutputStream decoded = new ByteArrayOutputStream();
+            byte[] buf = new byte[1 + random.nextInt(100)];
+            int n;
+            while ((n = in.read(buf)) != -1) {
+                decoded.write(buf, 0, n);
+            }
+            assertArrayEquals(data, decoded.toByteArray());
+        }
+    }
+
+    @Test
+    public void testSmallArrayWrites() throws IOException {
+        byte[] data = "abcdefghij".getBytes(StandardCharsets.US_ASCII);
+        for (int size = 1; size <= 4; size++) {
+            ByteArrayOutputStream encoded = new ByteArrayOutputStream();
+            try (BASE64OutputStream out = new BASE64OutputStream(encoded)) {
+                for (int off = 0; off < 4; off += size) {
+                    out.write(data, off, Math.min(size, 4 - off));
+                }
+            }
+            assertEquals("YWJjZA==", new String(encoded.toByteArray(), StandardCharsets.US_ASCII));
+        }
+
+        // pending bytes completed by a longer write
+        ByteArrayOutputStream encoded = new ByteArrayOutputStream();
+        try (BASE64OutputStream out = new BASE64OutputStream(encoded)) {
+            out.write(data, 0, 2);
+            out.write(data, 2, 1);
+            out.write(data, 3, 1);
+            out.write(data, 4, 6);
+        }
+        assertEquals(Base64.getEncoder().encodeToString(data), new String(encoded.toByteArray(), StandardCharsets.US_ASCII));
+    }
+}
@@ -0,0 +1,107 @@
+package net.socialhub.http;
+
+import org.junit.Test;
+
+import java.io.FilterReader;
+import java.io.IOException;
+import java.io.Reader;
+import java.io.StringReader;
+import java.io.StringWriter;
+import java.io.Writer;
+import java.util.Random;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertSame;
+
+public class HTMLEntityTest {
+
+    @Test
+    public void testEscape() {
+        assertEquals("&lt;a href=&quot;x&quot;&gt;caf&eacute; &amp; &euro;&lt;/a&gt;",
+                HTMLEntity.escape("<a href=\"x\">café & €</a>"));
+
+        StringBuilder buf = new StringBuilder("1 < 2");
+        HTMLEntity.escape(buf);
+        assertEquals("1 &lt; 2", buf.toString());
+    }
+
+    @Test
+    public void testNothingToEscapeReturnsInput() {
+        String text = "plain text こんにちは";
+        assertSame(text, HTMLEntity.escape(text));
+        assertSame(text, HTMLEntity.unescape(text));
+    }
+
+    @Test
+    public void testUnescape() {
+        assertEquals("< ϑ&lt; & &foo; &amp",
+                HTMLEntity.unescape("&lt;&nbsp;&thetasym;&amp;lt; & &foo; &amp"));
+
+        StringBuilder buf = new StringBuilder("a &gt; b");
+        HTMLEntity.unescape(buf);
+        assertEquals("a > b", buf.toString());
+    }
+
+    @Test
+    public void testUnescapeNumericReferences() {
+        assertEquals("\" € 😀 😀 A",
+                HTMLEntity.unescape("&#34; &#8364; &#128512; &#x1F600; &#X41;"));
+        assertEquals("&#0; &#xD800; &#99999999; &#; &#x; &#12a;",
+                HTMLEntity.unescape("&#0; &#xD800; &#99999999; &#; &#x; &#12a;"));
+    }
+
+    /**
+     * Returns at most the given number of chars per read, to split entities between reads.
+     */
+    private static class ChunkedReader extends FilterReader {
+
+        private final int chunk;
+
+        ChunkedReader(Reader in, int chunk) {
+            super(in);
+            this.chunk = chunk;
+        }
+
+        @Override
+        public int read(char[] cbuf, int off, int len) throws IOException {
+            return super.read(cbuf, off, Math.min(len, chunk));
+        }
+    }
+
+    private static String readAll(Reader reader, int bufferSize) throws IOException {
+        StringBuilder text = new StringBuilder();
+        char[] buf = new char[bufferSize];
+        int n;
+        while ((n = reader.read(buf)) != -1) {
+            text.append(buf, 0, n);
+        }
+        return text.toString();
+    }
+
+    @Test
+    public void testReaderDecodesEntitiesSplitBetweenReads() throws IOException {
+        String[] pieces = {"a", " ", "&", ";", "&amp;", "&lt;", "&thetasym;", "&#128512;", "&#x41;", "&foo;", "あ"};
+        Random random = new Random(0);
+        for (int i = 0; i < 1000; i++) {
+            StringBuilder text = new StringBuilder();
+            for (int j = random.nextInt(3000); j > 0; j--) {
+                text.append(pieces[random.nextInt(pieces.length)]);
+            }
+            String escaped = text.toString();
+            int chunk = 1 + random.nextInt(16);
+            Reader reader = new HTMLEntityReader(new ChunkedReader(new StringReader(escaped), chunk));
+            assertEquals(HTMLEntity.unescape(escaped), readAll(reader, 1 + random.nextInt(32)));
+        }
+    }
+
+    @Test
+    public void testWriterEscapes() throws IOException {
+        StringWriter out = new StringWriter();
+        Writer writer = new HTMLEntityWriter(out);
+        writer.write("<a href=\"x\">");
+        writer.write('&');
+        writer.write("café</a>".toCharArray());
+        writer.flush();
+        assertEquals(HTMLEntity.escape("<a href=\"x\">&café</a>"), out.toString());
+    }
+}
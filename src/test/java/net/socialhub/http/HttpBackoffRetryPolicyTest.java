@@ -0,0 +1,92 @@
+package net.socialhub.http;
+
+import org.junit.Test;
+
+import java.io.IOException;
+import java.net.SocketTimeoutException;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+public class HttpBackoffRetryPolicyTest {
+
+    private static final HttpRequest REQUEST = new HttpRequest(RequestMethod.GET, "http://example.com/", null, null);
+
+    private static HttpResponse response(final int code, final String retryAfter) {
+        return new HttpResponse(new HttpClientConfiguration.HttpClientDefaultConfiguration()) {
+            {
+                statusCode = code;
+            }
+
+            @Override
+            public String getResponseHeader(String name) {
+                return "Retry-After".equalsIgnoreCase(name) ? retryAfter : null;
+            }
+
+            @Override
+            public Map<String, List<String>> getResponseHeaderFields() {
+                return Collections.emptyMap();
+            }
+
+            @Override
+            public void disconnect() {
+            }
+        };
+    }
+
+    @Test
+    public void testDelayIsJitteredUnderExponentialBound() {
+        HttpBackoffRetryPolicy policy = new HttpBackoffRetryPolicy(10, 100, 1000);
+        for (int i = 0; i < 1000; i++) {
+            assertTrue(policy.backoff(0) <= 100);
+            assertTrue(policy.backoff(2) <= 400);
+            assertTrue(policy.backoff(8) <= 1000);
+        }
+        assertEquals(-1, policy.getRetryDelay(REQUEST, 10, null, new IOException()));
+    }
+
+    @Test
+    public void testRetryableFailures() {
+        HttpBackoffRetryPolicy policy = new HttpBackoffRetryPolicy(3, 100, 10000);
+        assertTrue(policy.getRetryDelay(REQUEST, 0, response(502, null), null) >= 0);
+        assertEquals(-1, policy.getRetryDelay(REQUEST, 0, response(404, null), null));
+        assertEquals(-1, policy.getRetryDelay(REQUEST, 0, response(420, null), null));
+        assertTrue(policy.getRetryDelay(REQUEST, 0, null,
+                new HttpException("timeout", new SocketTimeoutException())) >= 0);
+        assertEquals(-1, policy.getRetryDelay(REQUEST, 0, null, new IllegalStateException()));
+
+        policy.retryOnStatus(503).retryOnException(IllegalStateException.class);
+        assertEquals(-1, policy.getRetryDelay(REQUEST, 0, response(502, null), null));
+        assertTrue(policy.getRetryDelay(REQUEST, 0, null, new IllegalStateException()) >= 0);
+    }
+
+    @Test
+    public void testRetryAfterIsHonored() {
+        HttpBackoffRetryPolicy policy = new HttpBackoffRetryPolicy(3, 100, 10000);
+        assertEquals(2000, policy.getRetryDelay(REQUEST, 0, response(429, "2"), null));
+        assertEquals(-1, policy.getRetryDelay(REQUEST, 0, response(503, "60"), null));
+        assertEquals(0, HttpBackoffRetryPolicy.getRetryAfter("Thu, 01 Jan 1970 00:00:00 GMT", 1000));
+        assertEquals(-1, HttpBackoffRetryPolicy.getRetryAfter("soon", 1000));
+    }
+
+    @Test
+    public void testBudgetBoundsRetries() {
+        HttpRetryBudget budget = new HttpRetryBudget(0.5, 0) {
+            @Override
+            long now() {
+                return 0;
+            }
+        };
+        for (int i = 0; i < 10; i++) {
+            budget.onRequest();
+        }
+        for (int i = 0; i < 5; i++) {
+            assertTrue(budget.tryRetry());
+        }
+        assertFalse(budget.tryRetry());
+    }
+}
@@ -0,0 +1,171 @@
+package net.socialhub.http;
+
+import org.junit.Test;
+
+import java.io.ByteArrayInputStream;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.function.BiConsumer;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+public class HttpCachingClientTest {
+
+    private static final HttpClientConfiguration DEFAULT_CONF = new HttpClientConfiguration.HttpClientDefaultConfiguration();
+
+    private static class StubResponse extends HttpResponse {
+
+        private final Map<String, List<String>> headers = new LinkedHashMap<>();
+        private boolean disconnected;
+
+        StubResponse(int statusCode, String body, String... headers) throws Exception {
+            super(DEFAULT_CONF);
+            this.statusCode = statusCode;
+            this.is = new ByteArrayInputStream(body.getBytes("UTF-8"));
+            for (int i = 0; i < headers.length; i += 2) {
+                this.headers.put(headers[i], Collections.singletonList(headers[i + 1]));
+            }
+        }
+
+        @Override
+        public String getResponseHeader(String name) {
+            return HttpCacheEntry.getHeader(headers, name);
+        }
+
+        @Override
+        public Map<String, List<String>> getResponseHeaderFields() {
+            return headers;
+        }
+
+        @Override
+        public void disconnect() {
+            disconnected = true;
+        }
+    }
+
+    /**
+     * Replies with the queued responses, throwing for statuses other than 200 as the clients do.
+     */
+    private static class StubClient implements HttpClient {
+
+        private final List<StubResponse> responses = new ArrayList<>();
+        private final List<HttpRequest> requests = new ArrayList<>();
+        private final List<CompletableFuture<HttpResponse>> futures = new ArrayList<>();
+
+        @Override
+        public HttpResponse request(HttpRequest req) throws HttpException {
+            requests.add(req);
+            StubResponse res = responses.remove(0);
+            if (res.getStatusCode() != HttpResponseCode.OK) {
+                throw new HttpException(res.asString(), res);
+            }
+            return res;
+        }
+
+        @Override
+        public CompletableFuture<HttpResponse> requestAsync(HttpRequest req) {
+            requests.add(req);
+            CompletableFuture<HttpResponse> future = new CompletableFuture<>();
+            futures.add(future);
+            return future;
+        }
+
+        @Override
+        public void shutdown() {
+        }
+    }
+
+    private static HttpRequest get(String url) {
+        return new HttpRequest(RequestMethod.GET, url, null, null);
+    }
+
+    @Test
+    public void testFreshResponseIsServedFromCache() throws Exception {
+        StubClient stub = new StubClient();
+        stub.responses.add(new StubResponse(200, "fresh", "Cache-Control", "max-age=60"));
+        HttpCachingClient client = new HttpCachingClient(DEFAULT_CONF, stub);
+
+        assertEquals("fresh", client.request(get("http://example.com/a")).asString());
+        assertEquals("fresh", client.request(get("http://example.com/a")).asString());
+        assertEquals(1, stub.requests.size());
+    }
+
+    @Test
+    public void testStaleResponseIsRevalidated() throws Exception {
+        StubClient stub = new StubClient();
+        stub.responses.add(new StubResponse(200, "body", "Cache-Control", "no-cache", "ETag", "\"v1\""));
+        stub.responses.add(new StubResponse(304, "", "ETag", "\"v1\""));
+        HttpCachingClient client = new HttpCachingClient(DEFAULT_CONF, stub);
+
+        assertEquals("body", client.request(get("http://example.com/a")).asString());
+        assertEquals("body", client.request(get("http://example.com/a")).asString());
+        assertNull(stub.requests.get(0).getRequestHeaders());
+        assertEquals("\"v1\"", stub.requests.get(1).getRequestHeaders().get("If-None-Match"));
+    }
+
+    @Test
+    public void testLargeBodyOfUnknownLengthIsPassedThrough() throws Exception {
+        StringBuilder large = new StringBuilder();
+        for (int i = 0; i < 1000; i++) {
+            large.append(i % 10);
+        }
+        StubClient stub = new StubClient();
+        stub.responses.add(new StubResponse(200, large.toString(), "Cache-Control", "max-age=60"));
+        stub.responses.add(new StubResponse(200, "again", "Cache-Control", "max-age=60"));
+        HttpCachingClient client = new HttpCachingClient(DEFAULT_CONF, stub, new HttpResponseCache(100));
+
+        assertEquals(large.toString(), client.request(get("http://example.com/a")).asString());
+        assertEquals("again", client.request(get("http://example.com/a")).asString());
+        assertEquals(2, stub.requests.size());
+    }
+
+    @Test
+    public void testCancelIsPropagated() throws Exception {
+        StubClient stub = new StubClient();
+        HttpCachingClient client = new HttpCachingClient(DEFAULT_CONF, stub);
+
+        assertTrue(client.requestAsync(get("http://example.com/a")).cancel(false));
+        assertTrue(stub.futures.get(0).isCancelled());
+    }
+
+    @Test
+    public void testLateResponseIsDisconnected() throws Exception {
+        CompletableFuture<HttpResponse> inner = new CompletableFuture<HttpResponse>() {
+            @Override
+            public boolean cancel(boolean mayInterruptIfRunning) {
+                // already sent, too late to stop
+                return false;
+            }
+        };
+        CompletableFuture<HttpResponse> future = HttpClientBase.relay(inner, new BiConsumer<HttpResponse, Throwable>() {
+            @Override
+            public void accept(HttpResponse res, Throwable e) {
+            }
+        });
+        future.cancel(false);
+
+        StubResponse late = new StubResponse(200, "late");
+        inner.complete(late);
+        assertTrue(late.disconnected);
+    }
+
+    @Test
+    public void testLeastRecentlyUsedEntryIsEvicted() throws Exception {
+        HttpResponseCache cache = new HttpResponseCache(1000);
+        Map<String, List<String>> headers = new LinkedHashMap<>();
+        for (String name : new String[]{"a", "b", "c"}) {
+            cache.put(get(name), new HttpCacheEntry(200, headers, new byte[400], 0, 0));
+            cache.get(get("a"));
+        }
+
+        assertEquals(2, cache.getEntryCount());
+        assertNull(cache.get(get("b")));
+        assertEquals(1, cache.getEvictionCount());
+    }
+}
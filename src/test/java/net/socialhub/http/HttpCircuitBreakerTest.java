@@ -0,0 +1,132 @@
+package net.socialhub.http;
+
+import net.socialhub.http.HttpCircuitBreaker.State;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+public class HttpCircuitBreakerTest {
+
+    private static final HttpClientConfiguration CONF = new HttpClientConfiguration.HttpClientDefaultConfiguration() {
+        @Override
+        public int getHttpCircuitBreakerWindowSize() {
+            return 4;
+        }
+
+        @Override
+        public int getHttpCircuitBreakerMinimumCalls() {
+            return 4;
+        }
+
+        @Override
+        public int getHttpCircuitBreakerSlowCallMillis() {
+            return 100;
+        }
+
+        @Override
+        public int getHttpCircuitBreakerOpenMillis() {
+            return 1000;
+        }
+
+        @Override
+        public int getHttpCircuitBreakerHalfOpenCalls() {
+            return 2;
+        }
+    };
+
+    private final List<String> transitions = new ArrayList<>();
+
+    private HttpCircuitBreaker breaker() {
+        return new HttpCircuitBreaker(HttpRoute.of("http://example.com/"), CONF, new HttpCircuitBreakerListener() {
+            @Override
+            public void stateChanged(HttpCircuitBreaker breaker, State from, State to) {
+                transitions.add(from + ">" + to);
+            }
+        });
+    }
+
+    @Test
+    public void testFailuresOpenAndTrialsClose() {
+        HttpCircuitBreaker breaker = breaker();
+        for (int i = 0; i < 4; i++) {
+            assertTrue(breaker.tryAcquire(0));
+            breaker.onResult(i % 2 == 0, 10, 0);
+        }
+        assertEquals(State.OPEN, breaker.getState());
+        assertFalse(breaker.tryAcquire(999));
+        assertEquals(1, breaker.getRemainingOpenMillis(999));
+
+        assertTrue(breaker.tryAcquire(1000));
+        assertTrue(breaker.tryAcquire(1000));
+        assertFalse(breaker.tryAcquire(1000));
+        breaker.onResult(false, 10, 1010);
+        breaker.onResult(false, 10, 1010);
+        assertEquals(State.CLOSED, breaker.getState());
+        assertEquals("[CLOSED>OPEN, OPEN>HALF_OPEN, HALF_OPEN>CLOSED]", transitions.toString());
+    }
+
+    @Test
+    public void testSlowCallsOpenAgainFromHalfOpen() {
+        HttpCircuitBreaker breaker = breaker();
+        for (int i = 0; i < 3; i++) {
+            breaker.onResult(false, 10, 0);
+        }
+        breaker.onResult(false, 500, 0);
+        assertEquals(State.CLOSED, breaker.getState());
+        for (int i = 0; i < 4; i++) {
+            breaker.onResult(false, 500, 0);
+        }
+        assertEquals(State.OPEN, breaker.getState());
+
+        assertTrue(breaker.tryAcquire(1000));
+        breaker.onResult(true, 10, 1000);
+        breaker.onResult(false, 10, 1000);
+        assertEquals(State.OPEN, breaker.getState());
+        assertFalse(breaker.tryAcquire(1500));
+    }
+
+    @Test
+    public void testOpenCircuitFailsFast() throws Exception {
+        final int[] calls = {0};
+        HttpCircuitBreakerClient client = new HttpCircuitBreakerClient(CONF, new HttpClient() {
+            @Override
+            public HttpResponse request(HttpRequest req) throws HttpException {
+                calls[0]++;
+                throw new HttpException("connect timed out", new java.net.SocketTimeoutException());
+            }
+
+            @Override
+            public CompletableFuture<HttpResponse> requestAsync(HttpRequest req) {
+                throw new UnsupportedOperationException();
+            }
+
+            @Override
+            public void shutdown() {
+            }
+        });
+        HttpRequest req = new HttpRequest(RequestMethod.GET, "http://example.com/a", null, null);
+        for (int i = 0; i < 6; i++) {
+            try {
+                client.request(req);
+                fail();
+            } catch (HttpException e) {
+                assertEquals(i >= 4, e instanceof HttpCircuitOpenException);
+            }
+        }
+        assertEquals(4, calls[0]);
+        try {
+            client.requestAsync(req).get();
+            fail();
+        } catch (ExecutionException e) {
+            assertTrue(e.getCause() instanceof HttpCircuitOpenException);
+        }
+    }
+}
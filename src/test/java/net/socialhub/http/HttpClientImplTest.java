@@ -0,0 +1,71 @@
+package net.socialhub.http;
+
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpHandler;
+import com.sun.net.httpserver.HttpServer;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.net.InetSocketAddress;
+import java.nio.charset.StandardCharsets;
+
+import static org.junit.Assert.assertEquals;
+
+public class HttpClientImplTest {
+
+    private HttpServer server;
+    private String url;
+
+    @Before
+    public void setUp() throws IOException {
+        server = HttpServer.create(new InetSocketAddress("127.0.0.1", 0), 0);
+        server.createContext("/", new HttpHandler() {
+            @Override
+            public void handle(HttpExchange exchange) throws IOException {
+                byte[] body = "hello".getBytes(StandardCharsets.UTF_8);
+                boolean head = "HEAD".equals(exchange.getRequestMethod());
+                exchange.sendResponseHeaders(HttpResponseCode.OK, head ? -1 : body.length);
+                try (OutputStream out = exchange.getResponseBody()) {
+                    if (!head) {
+                        out.write(body);
+                    }
+                }
+            }
+        });
+        server.start();
+        url = "http://127.0.0.1:" + server.getAddress().getPort() + "/";
+    }
+
+    @After
+    public void tearDown() {
+        server.stop(0);
+    }
+
+    @Test
+    public void testSlotReleasedWithoutReadingBody() throws HttpException {
+        HttpClientImpl client = new HttpClientImpl(new HttpClientConfiguration.HttpClientDefaultConfiguration() {
+            @Override
+            public int getHttpDefaultMaxPerRoute() {
+                return 2;
+            }
+
+            @Override
+            public int getHttpConnectionRequestTimeout() {
+                return 1000;
+            }
+        });
+        try {
+            // neither the HEAD responses nor the GET bodies are closed
+            for (int i = 0; i < 5; i++) {
+                assertEquals(HttpResponseCode.OK, client.request(new HttpRequest(RequestMethod.HEAD, url, null, null)).getStatusCode());
+                assertEquals(HttpResponseCode.OK, client.request(new HttpRequest(RequestMethod.GET, url, null, null)).getStatusCode());
+            }
+            assertEquals(0, client.getConnectionPool().getTotalStats().getLeased());
+        } finally {
+            client.shutdown();
+        }
+    }
+}
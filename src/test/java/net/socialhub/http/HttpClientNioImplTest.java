@@ -0,0 +1,293 @@
+package net.socialhub.http;
+
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpHandler;
+import com.sun.net.httpserver.HttpServer;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.BufferedInputStream;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.net.SocketTimeoutException;
+import java.nio.charset.StandardCharsets;
+import java.util.Locale;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+public class HttpClientNioImplTest {
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    private HttpServer server;
+    private String url;
+    private HttpClientNioImpl client;
+
+    /**
+     * Replies with the method, the query, the Content-Type and the body of the request.
+     */
+    private static class EchoHandler implements HttpHandler {
+        @Override
+        public void handle(HttpExchange exchange) throws IOException {
+            ByteArrayOutputStream request = new ByteArrayOutputStream();
+            byte[] buffer = new byte[8192];
+            try (InputStream in = exchange.getRequestBody()) {
+                int n;
+                while ((n = in.read(buffer)) != -1) {
+                    request.write(buffer, 0, n);
+                }
+            }
+            String echo = exchange.getRequestMethod() + " " + exchange.getRequestURI().getRawQuery() + " "
+                    + exchange.getRequestHeaders().getFirst("Content-Type") + "\n"
+                    + new String(request.toByteArray(), StandardCharsets.UTF_8);
+            byte[] body = echo.getBytes(StandardCharsets.UTF_8);
+            exchange.sendResponseHeaders(HttpResponseCode.OK, body.length);
+            try (OutputStream out = exchange.getResponseBody()) {
+                out.write(body);
+            }
+        }
+    }
+
+    @Before
+    public void setUp() throws IOException {
+        server = HttpServer.create(new InetSocketAddress("127.0.0.1", 0), 0);
+        server.createContext("/echo", new EchoHandler());
+        server.createContext("/chunked", new HttpHandler() {
+            @Override
+            public void handle(HttpExchange exchange) throws IOException {
+                exchange.sendResponseHeaders(HttpResponseCode.OK, 0);
+                try (OutputStream out = exchange.getResponseBody()) {
+                    for (int i = 0; i < 100; i++) {
+                        out.write("0123456789".getBytes(StandardCharsets.US_ASCII));
+                        out.flush();
+                    }
+                }
+            }
+        });
+        server.createContext("/empty", new HttpHandler() {
+            @Override
+            public void handle(HttpExchange exchange) throws IOException {
+                exchange.sendResponseHeaders(HttpResponseCode.NO_CONTENT, -1);
+                exchange.close();
+            }
+        });
+        server.createContext("/flaky", new HttpHandler() {
+            private final AtomicInteger calls = new AtomicInteger();
+
+            @Override
+            public void handle(HttpExchange exchange) throws IOException {
+                if (calls.getAndIncrement() == 0) {
+                    exchange.getRequestBody().close();
+                    exchange.sendResponseHeaders(HttpResponseCode.SERVICE_UNAVAILABLE, -1);
+                    exchange.close();
+                    return;
+                }
+                new EchoHandler().handle(exchange);
+            }
+        });
+        server.createContext("/slow", new HttpHandler() {
+            @Override
+            public void handle(HttpExchange exchange) throws IOException {
+                try {
+                    Thread.sleep(1000);
+                } catch (InterruptedException ignore) {
+                }
+                exchange.sendResponseHeaders(HttpResponseCode.OK, -1);
+                exchange.close();
+            }
+        });
+        server.start();
+        url = "http://127.0.0.1:" + server.getAddress().getPort();
+        client = new HttpClientNioImpl(new HttpClientConfiguration.HttpClientDefaultConfiguration());
+    }
+
+    @After
+    public void tearDown() {
+        client.shutdown();
+        server.stop(0);
+    }
+
+    @Test
+    public void testGet() throws HttpException {
+        HttpResponse res = client.request(new HttpRequest(RequestMethod.GET, url + "/echo",
+                new HttpParameter[]{new HttpParameter("q", "a b")}, null));
+        assertEquals(HttpResponseCode.OK, res.getStatusCode());
+        assertEquals("GET q=a%20b null\n", res.asString());
+    }
+
+    @Test
+    public void testFormPost() throws HttpException {
+        HttpResponse res = client.request(new HttpRequest(RequestMethod.POST, url + "/echo",
+                new HttpParameter[]{new HttpParameter("a", "1"), new HttpParameter("b", "x&y")}, null));
+        assertEquals("POST null application/x-www-form-urlencoded\na=1&b=x%26y", res.asString());
+    }
+
+    @Test
+    public void testMultipartPost() throws Exception {
+        File file = folder.newFile("upload.txt");
+        try (FileOutputStream out = new FileOutputStream(file)) {
+            out.write("file content".getBytes(StandardCharsets.US_ASCII));
+        }
+        HttpResponse res = client.request(new HttpRequest(RequestMethod.POST, url + "/echo",
+                new HttpParameter[]{new HttpParameter("text", "value"), new HttpParameter("file", file)}, null));
+        String echo = res.asString();
+        assertTrue(echo, echo.startsWith("POST null multipart/form-data; boundary="));
+        assertTrue(echo, echo.contains("name=\"text\"\r\n"));
+        assertTrue(echo, echo.contains("\r\n\r\nvalue\r\n"));
+        assertTrue(echo, echo.contains("filename=\"upload.txt\""));
+        assertTrue(echo, echo.contains("\r\n\r\nfile content\r\n"));
+    }
+
+    @Test
+    public void testStreamBodyIsResentOnRetry() throws HttpException {
+        HttpClientNioImpl retrying = new HttpClientNioImpl(new HttpClientConfiguration.HttpClientDefaultConfiguration() {
+            @Override
+            public HttpRetryPolicy getHttpRetryPolicy() {
+                return new HttpBackoffRetryPolicy(1, 1, 1);
+            }
+        });
+        try {
+            InputStream stream = new ByteArrayInputStream("streamed".getBytes(StandardCharsets.US_ASCII));
+            HttpResponse res = retrying.request(new HttpRequest(RequestMethod.POST, url + "/flaky",
+                    new HttpParameter[]{new HttpParameter("file", "upload.bin", stream)}, null));
+            assertEquals(1, res.getTimings().getRetryCount());
+            String echo = res.asString();
+            assertTrue(echo, echo.contains("filename=\"upload.bin\""));
+            assertTrue(echo, echo.contains("\r\n\r\nstreamed\r\n"));
+        } finally {
+            retrying.shutdown();
+        }
+    }
+
+    @Test
+    public void testChunkedResponse() throws HttpException {
+        HttpResponse res = client.request(new HttpRequest(RequestMethod.GET, url + "/chunked", null, null));
+        assertEquals("chunked", res.getResponseHeader("Transfer-Encoding").toLowerCase(Locale.ROOT));
+        assertEquals(1000, res.asString().length());
+    }
+
+    @Test
+    public void testResponsesWithoutBody() throws HttpException {
+        HttpResponse head = client.request(new HttpRequest(RequestMethod.HEAD, url + "/echo", null, null));
+        assertEquals(HttpResponseCode.OK, head.getStatusCode());
+        assertEquals("", head.asString());
+
+        HttpResponse empty = client.request(new HttpRequest(RequestMethod.GET, url + "/empty", null, null));
+        assertEquals(HttpResponseCode.NO_CONTENT, empty.getStatusCode());
+        assertEquals("", empty.asString());
+        assertEquals(0, client.getConnectionPool().getTotalStats().getLeased());
+    }
+
+    @Test
+    public void testConnectionIsReused() throws HttpException {
+        HttpResponse first = client.request(new HttpRequest(RequestMethod.GET, url + "/echo", null, null));
+        first.asString();
+        assertFalse(first.getTimings().isConnectionReused());
+        for (int i = 0; i < 3; i++) {
+            HttpResponse res = client.request(new HttpRequest(RequestMethod.POST, url + "/echo",
+                    new HttpParameter[]{new HttpParameter("i", i)}, null));
+            assertEquals("POST null application/x-www-form-urlencoded\ni=" + i, res.asString());
+            assertTrue(res.getTimings().isConnectionReused());
+        }
+        assertEquals(1, client.getConnectionPool().getTotalStats().getAvailable());
+    }
+
+    @Test
+    public void testFirstByteTimeout() {
+        HttpRequest req = new HttpRequest(RequestMethod.GET, url + "/slow", null, null)
+                .withTimeouts(HttpTimeouts.DEFAULT.withFirstByteTimeout(100));
+        long start = System.nanoTime();
+        try {
+            client.request(req);
+            fail();
+        } catch (HttpException e) {
+            assertTrue(e.getCause() instanceof SocketTimeoutException);
+        }
+        assertTrue(System.nanoTime() - start < 900 * 1000000L);
+    }
+
+    @Test
+    public void testResetPooledConnectionIsReplaced() throws Exception {
+        // answers one request per connection with keep-alive, then resets the connection
+        final ServerSocket reset = new ServerSocket(0, 50, InetAddress.getByName("127.0.0.1"));
+        Thread acceptor = new Thread(new Runnable() {
+            @Override
+            public void run() {
+                try {
+                    while (true) {
+                        answerAndReset(reset.accept());
+                    }
+                } catch (IOException ignore) {
+                    // closed
+                }
+            }
+        });
+        acceptor.setDaemon(true);
+        acceptor.start();
+        try {
+            String resetUrl = "http://127.0.0.1:" + reset.getLocalPort() + "/";
+            for (int i = 0; i < 3; i++) {
+                assertEquals(HttpResponseCode.OK, client.request(
+                        new HttpRequest(RequestMethod.HEAD, resetUrl, null, null)).getStatusCode());
+                // let the reset arrive before the connection is reused
+                Thread.sleep(100);
+                HttpResponse res = client.request(new HttpRequest(RequestMethod.POST, resetUrl,
+                        new HttpParameter[]{new HttpParameter("a", "b")}, null));
+                assertEquals("ok", res.asString());
+                assertFalse(res.getTimings().isConnectionReused());
+                Thread.sleep(100);
+            }
+        } finally {
+            reset.close();
+        }
+    }
+
+    private static void answerAndReset(Socket socket) throws IOException {
+        try {
+            InputStream in = new BufferedInputStream(socket.getInputStream());
+            StringBuilder head = new StringBuilder();
+            while (head.length() < 4 || !head.substring(head.length() - 4).equals("\r\n\r\n")) {
+                int b = in.read();
+                if (b < 0) {
+                    return;
+                }
+                head.append((char) b);
+            }
+            long length = 0;
+            for (String line : head.toString().split("\r\n")) {
+                if (line.toLowerCase(Locale.ROOT).startsWith("content-length:")) {
+                    length = Long.parseLong(line.substring("content-length:".length()).trim());
+                }
+            }
+            for (long i = 0; i < length; i++) {
+                in.read();
+            }
+            String body = head.toString().startsWith("HEAD") ? "" : "ok";
+            OutputStream out = socket.getOutputStream();
+            out.write(("HTTP/1.1 200 OK\r\nContent-Length: 2\r\n\r\n" + body).getBytes(StandardCharsets.ISO_8859_1));
+            out.flush();
+            Thread.sleep(20);
+        } catch (InterruptedException ignore) {
+        } finally {
+            socket.setSoLinger(true, 0);
+            socket.close();
+        }
+    }
+}
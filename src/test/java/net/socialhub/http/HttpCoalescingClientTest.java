@@ -0,0 +1,199 @@
+package net.socialhub.http;
+
+import org.junit.Test;
+
+import java.io.ByteArrayInputStream;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+public class HttpCoalescingClientTest {
+
+    private static final HttpClientConfiguration DEFAULT_CONF = new HttpClientConfiguration.HttpClientDefaultConfiguration();
+
+    private static final int THREADS = 8;
+
+    /**
+     * Replies once all the callers are waiting, with a body or a failure.
+     */
+    private static class SlowClient implements HttpClient {
+
+        private final AtomicInteger requests = new AtomicInteger();
+        private final CountDownLatch release = new CountDownLatch(1);
+        private final HttpException failure;
+        private final Map<String, List<String>> headers = new HashMap<>();
+        private final List<CompletableFuture<HttpResponse>> futures = new ArrayList<>();
+
+        SlowClient(HttpException failure) {
+            this.failure = failure;
+            headers.put("Content-Length", Collections.singletonList("6"));
+        }
+
+        @Override
+        public HttpResponse request(HttpRequest req) throws HttpException {
+            requests.incrementAndGet();
+            try {
+                release.await();
+            } catch (InterruptedException e) {
+                throw new HttpException(e.getMessage(), e);
+            }
+            if (failure != null) {
+                throw failure;
+            }
+            return new HttpResponse(DEFAULT_CONF) {
+                {
+                    statusCode = 200;
+                    is = new ByteArrayInputStream("shared".getBytes());
+                }
+
+                @Override
+                public String getResponseHeader(String name) {
+                    List<String> values = headers.get(name);
+                    return (values != null) ? values.get(0) : null;
+                }
+
+                @Override
+                public Map<String, List<String>> getResponseHeaderFields() {
+                    return headers;
+                }
+
+                @Override
+                public void disconnect() {
+                }
+            };
+        }
+
+        @Override
+        public CompletableFuture<HttpResponse> requestAsync(HttpRequest req) {
+            CompletableFuture<HttpResponse> future = new CompletableFuture<>();
+            futures.add(future);
+            return future;
+        }
+
+        @Override
+        public void shutdown() {
+        }
+    }
+
+    private static List<Future<String>> requestAll(final HttpCoalescingClient client, ExecutorService executor)
+            throws Exception {
+        List<Future<String>> results = new ArrayList<>();
+        for (int i = 0; i < THREADS; i++) {
+            results.add(executor.submit(new Callable<String>() {
+                @Override
+                public String call() throws Exception {
+                    return client.request(new HttpRequest(RequestMethod.GET, "http://example.com/a", null, null)).asString();
+                }
+            }));
+        }
+        while (client.getCoalescedCount() < THREADS - 1) {
+            Thread.sleep(1);
+        }
+        return results;
+    }
+
+    @Test
+    public void testIdenticalRequestsAreSentOnce() throws Exception {
+        SlowClient stub = new SlowClient(null);
+        HttpCoalescingClient client = new HttpCoalescingClient(DEFAULT_CONF, stub);
+        ExecutorService executor = Executors.newFixedThreadPool(THREADS);
+        try {
+            List<Future<String>> results = requestAll(client, executor);
+            stub.release.countDown();
+            for (Future<String> result : results) {
+                assertEquals("shared", result.get());
+            }
+            assertEquals(1, stub.requests.get());
+            assertEquals(0, client.getInFlightCount());
+        } finally {
+            executor.shutdown();
+        }
+    }
+
+    @Test
+    public void testFailureIsThrownToEveryCaller() throws Exception {
+        HttpException failure = new HttpException("upstream down", (Exception) null);
+        SlowClient stub = new SlowClient(failure);
+        HttpCoalescingClient client = new HttpCoalescingClient(DEFAULT_CONF, stub);
+        ExecutorService executor = Executors.newFixedThreadPool(THREADS);
+        try {
+            List<Future<String>> results = requestAll(client, executor);
+            stub.release.countDown();
+            for (Future<String> result : results) {
+                try {
+                    result.get();
+                    fail();
+                } catch (ExecutionException e) {
+                    assertSame(failure, e.getCause());
+                }
+            }
+            assertEquals(1, stub.requests.get());
+        } finally {
+            executor.shutdown();
+        }
+    }
+
+    @Test
+    public void testEventStreamIsNotBuffered() throws Exception {
+        SlowClient stub = new SlowClient(null);
+        stub.headers.clear();
+        stub.headers.put("Content-Type", Collections.singletonList(HttpEventSource.EVENT_STREAM));
+        HttpCoalescingClient client = new HttpCoalescingClient(DEFAULT_CONF, stub);
+        ExecutorService executor = Executors.newFixedThreadPool(THREADS);
+        try {
+            List<Future<String>> results = requestAll(client, executor);
+            stub.release.countDown();
+            for (Future<String> result : results) {
+                assertEquals("shared", result.get());
+            }
+            // every caller streams its own response
+            assertEquals(THREADS, stub.requests.get());
+            assertEquals(0, client.getCoalescedCount());
+        } finally {
+            executor.shutdown();
+        }
+    }
+
+    @Test
+    public void testLoneRequestIsNotBuffered() throws Exception {
+        SlowClient stub = new SlowClient(null);
+        stub.release.countDown();
+        HttpCoalescingClient client = new HttpCoalescingClient(DEFAULT_CONF, stub);
+        HttpResponse res = client.request(new HttpRequest(RequestMethod.GET, "http://example.com/a", null, null));
+        assertFalse(res instanceof HttpCachedResponse);
+        assertEquals("shared", res.asString());
+        assertEquals(0, client.getInFlightCount());
+    }
+
+    @Test
+    public void testFollowerSendsItsOwnRequestWhenLeaderIsCancelled() throws Exception {
+        SlowClient stub = new SlowClient(null);
+        HttpCoalescingClient client = new HttpCoalescingClient(DEFAULT_CONF, stub);
+        HttpRequest req = new HttpRequest(RequestMethod.GET, "http://example.com/a", null, null);
+        CompletableFuture<HttpResponse> leader = client.requestAsync(req);
+        CompletableFuture<HttpResponse> follower = client.requestAsync(req);
+        assertEquals(1, stub.futures.size());
+
+        leader.cancel(false);
+        assertTrue(stub.futures.get(0).isCancelled());
+        assertEquals(2, stub.futures.size());
+        assertFalse(follower.isDone());
+        assertEquals(0, client.getCoalescedCount());
+    }
+}
@@ -0,0 +1,94 @@
+package net.socialhub.http;
+
+import org.junit.Test;
+
+import java.io.Closeable;
+import java.util.concurrent.CompletableFuture;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.fail;
+
+public class HttpConnectionPoolTest {
+
+    private static final HttpRoute ROUTE_A = HttpRoute.of("https://example.com/a");
+    private static final HttpRoute ROUTE_B = HttpRoute.of("http://example.org/b");
+
+    @Test
+    public void testRouteLimit() throws Exception {
+        HttpConnectionPool<Closeable> pool = new HttpConnectionPool<>(10, 2, 0);
+        pool.lease(ROUTE_A, 100);
+        pool.lease(ROUTE_A, 100);
+        try {
+            pool.lease(ROUTE_A, 100);
+            fail();
+        } catch (HttpException e) {
+            assertEquals(2, pool.getStats(ROUTE_A).getLeased());
+        }
+        // other routes are not affected
+        pool.lease(ROUTE_B, 100);
+        assertEquals(3, pool.getTotalStats().getLeased());
+    }
+
+    @Test
+    public void testReuseAndEvict() throws Exception {
+        HttpConnectionPool<Closeable> pool = new HttpConnectionPool<>(1, 1, 0);
+        final boolean[] closed = new boolean[1];
+
+        HttpPoolEntry<Closeable> entry = pool.lease(ROUTE_A, 100);
+        entry.setConnection(new Closeable() {
+            @Override
+            public void close() {
+                closed[0] = true;
+            }
+        });
+        pool.release(entry, true);
+        assertSame(entry, pool.lease(ROUTE_A, 100));
+        pool.release(entry, true);
+        assertEquals(1, pool.getStats(ROUTE_A).getAvailable());
+
+        // the idle entry of another route makes room for a new route
+        pool.lease(ROUTE_B, 100);
+        assertEquals(true, closed[0]);
+        assertEquals(0, pool.getStats(ROUTE_A).getAvailable());
+    }
+
+    @Test
+    public void testWaiterIsWokenOnRelease() throws Exception {
+        final HttpConnectionPool<Closeable> pool = new HttpConnectionPool<>(1, 1, 0);
+        final HttpPoolEntry<Closeable> entry = pool.lease(ROUTE_A, 100);
+
+        Thread releaser = new Thread(new Runnable() {
+            @Override
+            public void run() {
+                try {
+                    Thread.sleep(100);
+                } catch (InterruptedException ignore) {
+                }
+                pool.release(entry, false);
+            }
+        });
+        releaser.start();
+        pool.lease(ROUTE_A, 5000);
+        releaser.join();
+        assertEquals(1, pool.getTotalStats().getLeased());
+    }
+
+    @Test
+    public void testAsyncLeaseIsCompletedOnRelease() throws Exception {
+        HttpConnectionPool<Closeable> pool = new HttpConnectionPool<>(1, 1, 0);
+        HttpPoolEntry<Closeable> entry = pool.leaseAsync(ROUTE_A).get();
+
+        CompletableFuture<HttpPoolEntry<Closeable>> cancelled = pool.leaseAsync(ROUTE_A);
+        CompletableFuture<HttpPoolEntry<Closeable>> waiting = pool.leaseAsync(ROUTE_A);
+        assertFalse(waiting.isDone());
+        assertEquals(2, pool.getStats(ROUTE_A).getPending());
+
+        cancelled.cancel(false);
+        pool.release(entry, false);
+        assertTrue(waiting.isDone());
+        assertEquals(1, pool.getTotalStats().getLeased());
+    }
+}
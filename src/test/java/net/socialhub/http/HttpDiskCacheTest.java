@@ -0,0 +1,136 @@
+package net.socialhub.http;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+public class HttpDiskCacheTest {
+
+    private static final HttpClientConfiguration DEFAULT_CONF = new HttpClientConfiguration.HttpClientDefaultConfiguration();
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    private static HttpRequest get(String url) {
+        return new HttpRequest(RequestMethod.GET, url, null, null);
+    }
+
+    private static HttpCacheEntry entry(String body, String... headers) throws Exception {
+        Map<String, List<String>> map = new LinkedHashMap<>();
+        for (int i = 0; i < headers.length; i += 2) {
+            map.put(headers[i], Collections.singletonList(headers[i + 1]));
+        }
+        long now = System.currentTimeMillis();
+        return new HttpCacheEntry(200, map, body.getBytes("UTF-8"), now, now);
+    }
+
+    @Test
+    public void testEntrySurvivesReopen() throws Exception {
+        File dir = folder.newFolder();
+        HttpDiskCache cache = new HttpDiskCache(dir, 1024 * 1024, 16);
+        cache.put(get("http://example.com/a"), entry("body", "Cache-Control", "max-age=60", "ETag", "\"v1\""));
+        cache.close();
+
+        cache = new HttpDiskCache(dir, 1024 * 1024, 16);
+        HttpDiskCache.Record record = cache.lookup(get("http://example.com/a"));
+        assertNotNull(record);
+        assertTrue(record.isFresh(System.currentTimeMillis()));
+        assertEquals("\"v1\"", record.etag);
+
+        HttpResponse res = cache.open(DEFAULT_CONF, record);
+        assertEquals("body", res.asString());
+        assertEquals("\"v1\"", res.getResponseHeader("ETag"));
+        assertNull(cache.lookup(get("http://example.com/b")));
+
+        cache.removeURL("http://example.com/a");
+        assertEquals(0, cache.getEntryCount());
+        assertEquals(0, cache.getByteCount());
+        cache.close();
+    }
+
+    @Test
+    public void testReplacedEntryIsNotOpened() throws Exception {
+        HttpDiskCache cache = new HttpDiskCache(folder.newFolder(), 1024 * 1024, 16);
+        cache.put(get("http://example.com/a"), entry("old", "Cache-Control", "max-age=60"));
+        HttpDiskCache.Record old = cache.lookup(get("http://example.com/a"));
+        // same key, same slot
+        cache.put(get("http://example.com/a"), entry("new", "Cache-Control", "max-age=60"));
+
+        assertNull(cache.open(DEFAULT_CONF, old));
+        assertNull(cache.load(old));
+        assertEquals("new", cache.open(DEFAULT_CONF, cache.lookup(get("http://example.com/a"))).asString());
+        cache.close();
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void testNoEntriesIsRejected() throws Exception {
+        new HttpDiskCache(folder.newFolder(), 1024 * 1024, 0);
+    }
+
+    @Test
+    public void testLeastRecentlyUsedEntryIsEvicted() throws Exception {
+        HttpDiskCache cache = new HttpDiskCache(folder.newFolder(), 1000, 16);
+        char[] body = new char[400];
+        for (String name : new String[]{"a", "b", "c"}) {
+            cache.put(get(name), entry(new String(body)));
+            cache.lookup(get("a"));
+        }
+
+        assertEquals(2, cache.getEntryCount());
+        assertNotNull(cache.lookup(get("a")));
+        assertNull(cache.lookup(get("b")));
+        assertTrue(cache.getByteCount() <= 1000);
+        cache.close();
+    }
+
+    @Test
+    public void testOnlyCacheFilesAreDeleted() throws Exception {
+        File dir = folder.newFolder();
+        File other = new File(dir, "notes.txt");
+        assertTrue(other.createNewFile());
+        File orphan = new File(dir, "0123456789abcdef0123456789abcdef01234567.body");
+        assertTrue(orphan.createNewFile());
+        File temp = new File(dir, "0123456789abcdef0123456789abcdef01234567.-42.tmp");
+        assertTrue(temp.createNewFile());
+
+        HttpDiskCache cache = new HttpDiskCache(dir, 1024 * 1024, 16);
+        assertTrue(other.isFile());
+        assertFalse(orphan.exists());
+        assertFalse(temp.exists());
+
+        try {
+            new HttpDiskCache(dir, 1024 * 1024, 16);
+            throw new AssertionError("the directory is locked");
+        } catch (IOException expected) {
+        }
+        // a client of the same directory runs without the disk tier
+        final String directory = dir.getPath();
+        HttpClient client = HttpClientFactory.getInstance(new HttpClientConfiguration.HttpClientDefaultConfiguration() {
+            @Override
+            public boolean isHttpCacheEnabled() {
+                return true;
+            }
+
+            @Override
+            public String getHttpDiskCacheDirectory() {
+                return directory;
+            }
+        });
+        assertNull(((HttpCachingClient) client).getDiskCache());
+        client.shutdown();
+        cache.close();
+    }
+}
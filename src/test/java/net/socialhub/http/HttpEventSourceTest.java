@@ -0,0 +1,134 @@
+package net.socialhub.http;
+
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpHandler;
+import com.sun.net.httpserver.HttpServer;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.net.InetSocketAddress;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+public class HttpEventSourceTest {
+
+    private HttpServer server;
+    private String url;
+    private HttpClient client;
+
+    /** Last-Event-ID of each connection */
+    private final List<String> lastEventIds = Collections.synchronizedList(new ArrayList<String>());
+
+    /**
+     * Sends one event per connection, the first also sets the retry delay, then answers 204 to stop the source.
+     */
+    private class EventsHandler implements HttpHandler {
+        @Override
+        public void handle(HttpExchange exchange) throws IOException {
+            lastEventIds.add(exchange.getRequestHeaders().getFirst("Last-Event-ID"));
+            int connection = lastEventIds.size();
+            if (connection > 2) {
+                exchange.sendResponseHeaders(HttpResponseCode.NO_CONTENT, -1);
+                exchange.close();
+                return;
+            }
+            String stream = (connection == 1 ? "retry: 100\n" : "") + "id: " + connection + "\ndata: event " + connection + "\n\n";
+            exchange.getResponseHeaders().set("Content-Type", HttpEventSource.EVENT_STREAM);
+            exchange.sendResponseHeaders(HttpResponseCode.OK, 0);
+            try (OutputStream out = exchange.getResponseBody()) {
+                out.write(stream.getBytes(StandardCharsets.UTF_8));
+            }
+        }
+    }
+
+    /**
+     * Records what the source reports, optionally failing on every event.
+     */
+    private static class RecordingListener implements HttpEventListener {
+
+        private final List<String> events = Collections.synchronizedList(new ArrayList<String>());
+        private final List<HttpException> errors = Collections.synchronizedList(new ArrayList<HttpException>());
+        private final boolean failing;
+
+        RecordingListener(boolean failing) {
+            this.failing = failing;
+        }
+
+        @Override
+        public void onOpen(HttpResponse response) {
+        }
+
+        @Override
+        public void onEvent(HttpEvent event) {
+            events.add(event.getData());
+            if (failing) {
+                throw new IllegalStateException("listener failed");
+            }
+        }
+
+        @Override
+        public void onError(HttpException e, boolean reconnect) {
+            errors.add(e);
+        }
+    }
+
+    @Before
+    public void setUp() throws IOException {
+        server = HttpServer.create(new InetSocketAddress("127.0.0.1", 0), 0);
+        server.createContext("/events", new EventsHandler());
+        server.start();
+        url = "http://127.0.0.1:" + server.getAddress().getPort() + "/events";
+        client = new HttpClientImpl(new HttpClientConfiguration.HttpClientDefaultConfiguration());
+    }
+
+    @After
+    public void tearDown() {
+        client.shutdown();
+        server.stop(0);
+    }
+
+    private static void awaitClosed(HttpEventSource source) throws InterruptedException {
+        for (int i = 0; i < 500 && !source.isClosed(); i++) {
+            Thread.sleep(10);
+        }
+        assertTrue(source.isClosed());
+    }
+
+    @Test
+    public void testReconnectsWithLastEventIdAfterRetryDelay() throws Exception {
+        RecordingListener listener = new RecordingListener(false);
+        HttpEventSource source = new HttpEventSource(client, url, listener);
+        long start = System.currentTimeMillis();
+        source.start();
+        awaitClosed(source);
+
+        assertEquals(Arrays.asList("event 1", "event 2"), listener.events);
+        assertEquals(Arrays.asList(null, "1", "2"), lastEventIds);
+        assertEquals(100, source.getRetry());
+        // well under the default delay of the two reconnections
+        assertTrue(System.currentTimeMillis() - start < HttpEventSource.DEFAULT_RETRY);
+        assertTrue(listener.errors.isEmpty());
+    }
+
+    @Test
+    public void testListenerFailureIsReported() throws Exception {
+        RecordingListener listener = new RecordingListener(true);
+        HttpEventSource source = new HttpEventSource(client, url, listener);
+        source.start();
+        awaitClosed(source);
+
+        assertEquals(Arrays.asList("event 1", "event 2"), listener.events);
+        assertEquals(2, listener.errors.size());
+        assertTrue(listener.errors.get(0).getCause() instanceof IllegalStateException);
+        assertEquals(Arrays.asList(null, "1", "2"), lastEventIds);
+    }
+}
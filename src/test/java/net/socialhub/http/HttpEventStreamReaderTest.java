@@ -0,0 +1,43 @@
+package net.socialhub.http;
+
+import org.junit.Test;
+
+import java.io.ByteArrayInputStream;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+
+public class HttpEventStreamReaderTest {
+
+    private static HttpEventStreamReader reader(String stream) throws Exception {
+        return new HttpEventStreamReader(new ByteArrayInputStream(stream.getBytes("UTF-8")), null);
+    }
+
+    @Test
+    public void testEvents() throws Exception {
+        HttpEventStreamReader reader = reader("﻿: comment\r\n"
+                + "data: first\r\n"
+                + "data:second\r\n\r\n"
+                + "event: update\n"
+                + "id: 42\n"
+                + "retry: 1500\n"
+                + "data: こんにちは\n\n"
+                + "id\r"
+                + "data\r\r"
+                + "data: incomplete\n");
+
+        assertEquals(new HttpEvent("message", "first\nsecond", null), reader.next());
+        assertEquals(new HttpEvent("update", "こんにちは", "42"), reader.next());
+        assertEquals(1500, reader.getRetry());
+        assertEquals(new HttpEvent("message", "", ""), reader.next());
+        assertNull(reader.next());
+    }
+
+    @Test
+    public void testInvalidFieldsAreIgnored() throws Exception {
+        HttpEventStreamReader reader = reader("retry: 1s\nid: a\u0000b\nevent: x\n\ndata: y\n\n");
+
+        assertEquals(new HttpEvent("message", "y", null), reader.next());
+        assertEquals(-1, reader.getRetry());
+    }
+}
@@ -0,0 +1,185 @@
+package net.socialhub.http;
+
+import org.junit.Test;
+
+import java.io.ByteArrayInputStream;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+public class HttpHedgingClientTest {
+
+    private static final HttpClientConfiguration CONF = new HttpClientConfiguration.HttpClientDefaultConfiguration() {
+        @Override
+        public int getHttpHedgeDelayMillis() {
+            return 50;
+        }
+    };
+
+    /**
+     * Never answers the first request, answers the others at once.
+     * A blocking first request is answered once the client is shut down.
+     */
+    private static class StuckClient implements HttpClient {
+
+        private final List<CompletableFuture<HttpResponse>> futures = new ArrayList<>();
+        private final AtomicInteger requests = new AtomicInteger();
+        private final CountDownLatch stuck = new CountDownLatch(1);
+
+        @Override
+        public HttpResponse request(HttpRequest req) throws HttpException {
+            if (requests.getAndIncrement() == 0) {
+                try {
+                    stuck.await();
+                } catch (InterruptedException e) {
+                    throw new HttpException(e.getMessage(), e);
+                }
+                return response("primary");
+            }
+            return response("hedge");
+        }
+
+        @Override
+        public synchronized CompletableFuture<HttpResponse> requestAsync(HttpRequest req) {
+            CompletableFuture<HttpResponse> future = new CompletableFuture<>();
+            if (!futures.isEmpty()) {
+                future.complete(response("hedge"));
+            }
+            futures.add(future);
+            return future;
+        }
+
+        synchronized List<CompletableFuture<HttpResponse>> getFutures() {
+            return new ArrayList<>(futures);
+        }
+
+        @Override
+        public void shutdown() {
+            stuck.countDown();
+        }
+    }
+
+    /**
+     * Answers every second request at once, leaving the others pending.
+     */
+    private static class AlternatingClient extends StuckClient {
+
+        private final AtomicInteger count = new AtomicInteger();
+
+        @Override
+        public CompletableFuture<HttpResponse> requestAsync(HttpRequest req) {
+            CompletableFuture<HttpResponse> future = new CompletableFuture<>();
+            if (count.getAndIncrement() % 2 == 1) {
+                future.complete(response("hedge"));
+            }
+            return future;
+        }
+    }
+
+    private static HttpResponse response(final String body) {
+        return new HttpResponse(CONF) {
+            {
+                statusCode = 200;
+                is = new ByteArrayInputStream(body.getBytes());
+            }
+
+            @Override
+            public String getResponseHeader(String name) {
+                return null;
+            }
+
+            @Override
+            public Map<String, List<String>> getResponseHeaderFields() {
+                return Collections.emptyMap();
+            }
+
+            @Override
+            public void disconnect() {
+            }
+        };
+    }
+
+    @Test
+    public void testHedgeWinsAndPrimaryIsCancelled() throws Exception {
+        StuckClient stub = new StuckClient();
+        HttpHedgingClient client = new HttpHedgingClient(CONF, stub);
+        try {
+            HttpResponse res = client.requestAsync(new HttpRequest(RequestMethod.GET, "http://example.com/a", null, null)).get();
+            assertEquals("hedge", res.asString());
+            assertEquals(1, client.getHedgedCount());
+            // the loser is cancelled right after the result is completed
+            CompletableFuture<HttpResponse> primary = stub.getFutures().get(0);
+            for (int i = 0; i < 100 && !primary.isCancelled(); i++) {
+                Thread.sleep(10);
+            }
+            assertTrue(primary.isCancelled());
+            assertEquals(1, client.getHedgeWonCount());
+        } finally {
+            client.shutdown();
+        }
+    }
+
+    @Test
+    public void testBlockingRequestIsHedged() throws Exception {
+        StuckClient stub = new StuckClient();
+        HttpHedgingClient client = new HttpHedgingClient(CONF, stub);
+        try {
+            HttpResponse res = client.request(new HttpRequest(RequestMethod.GET, "http://example.com/a", null, null));
+            assertEquals("hedge", res.asString());
+            assertEquals(2, stub.requests.get());
+            assertEquals(1, client.getHedgeWonCount());
+            // not sent through the asynchronous executor of the client below
+            assertTrue(stub.getFutures().isEmpty());
+        } finally {
+            client.shutdown();
+        }
+    }
+
+    @Test
+    public void testLatencyIsRecordedFromFirstAttempt() throws Exception {
+        HttpHedgingClient client = new HttpHedgingClient(new HttpClientConfiguration.HttpClientDefaultConfiguration() {
+            @Override
+            public int getHttpHedgeDelayMillis() {
+                return 50;
+            }
+
+            @Override
+            public double getHttpHedgeBudgetRatio() {
+                return 1;
+            }
+        }, new AlternatingClient());
+        try {
+            for (int i = 0; i < HttpLatencyWindow.MIN_SAMPLES; i++) {
+                assertEquals("hedge", client.requestAsync(
+                        new HttpRequest(RequestMethod.GET, "http://example.com/a", null, null)).get().asString());
+            }
+            assertEquals(HttpLatencyWindow.MIN_SAMPLES, client.getHedgeWonCount());
+            // the hedges answer at once, but only after the hedge delay
+            assertTrue(client.getLatencyWindow(HttpRoute.of("http://example.com/a")).getValue() >= 50);
+        } finally {
+            client.shutdown();
+        }
+    }
+
+    @Test
+    public void testPostIsNotHedged() throws Exception {
+        StuckClient stub = new StuckClient();
+        HttpHedgingClient client = new HttpHedgingClient(CONF, stub);
+        try {
+            CompletableFuture<HttpResponse> future = client.requestAsync(
+                    new HttpRequest(RequestMethod.POST, "http://example.com/a", null, null));
+            Thread.sleep(150);
+            assertEquals(1, stub.getFutures().size());
+            future.cancel(false);
+        } finally {
+            client.shutdown();
+        }
+    }
+}
@@ -0,0 +1,64 @@
+package net.socialhub.http;
+
+import org.junit.Test;
+
+import java.io.IOException;
+import java.util.Map;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+public class HttpMetricsTest {
+
+    @Test
+    public void testPercentilesWithinBucketError() {
+        HttpLatencyHistogram histogram = new HttpLatencyHistogram();
+        for (long i = 1; i <= 10000; i++) {
+            histogram.record(i * 1000);
+        }
+        HttpLatencyHistogram.Snapshot snapshot = histogram.snapshot();
+        assertEquals(10000, snapshot.getCount());
+        assertEquals(10000000, snapshot.getMax());
+        assertEquals(5000500, snapshot.getMean(), 1);
+        assertEquals(5000000, snapshot.getPercentile(50), 5000000 * 0.04);
+        assertEquals(9900000, snapshot.getPercentile(99), 9900000 * 0.04);
+        assertEquals(10000000, snapshot.getPercentile(100));
+    }
+
+    @Test
+    public void testBucketBounds() {
+        for (long v : new long[]{0, 1, 31, 32, 33, 1000, 123456789, Long.MAX_VALUE}) {
+            int index = HttpLatencyHistogram.index(v);
+            assertTrue(v <= HttpLatencyHistogram.upperBound(index));
+            assertTrue(index == 0 || v > HttpLatencyHistogram.upperBound(index - 1));
+        }
+    }
+
+    @Test
+    public void testRecordsTimings() {
+        HttpMetrics metrics = new HttpMetrics();
+        HttpRoute route = HttpRoute.of("http://example.com/");
+
+        HttpTimings ok = new HttpTimings(metrics, route);
+        HttpTimings failed = new HttpTimings(metrics, route);
+        assertEquals(2, metrics.getActiveRequests());
+
+        ok.addBytesOut(10);
+        ok.addBytesIn(20);
+        ok.finish(200, null);
+        ok.finish(200, null);
+        failed.startAttempt(2);
+        failed.finish(HttpRouteMetrics.NO_RESPONSE, new HttpException("failed", new IOException()));
+
+        assertEquals(0, metrics.getActiveRequests());
+        assertEquals(2, metrics.getRequestCount());
+        assertEquals(2, metrics.getRetryCount());
+        assertEquals(10, metrics.getBytesSent());
+        assertEquals(20, metrics.getBytesReceived());
+        assertEquals(Long.valueOf(1), metrics.getErrorCounts().get(IOException.class.getName()));
+
+        Map<Integer, Long> statuses = metrics.getRouteMetrics().get(route).getStatusCounts();
+        assertEquals(Long.valueOf(1), statuses.get(200));
+        assertEquals(Long.valueOf(1), statuses.get(HttpRouteMetrics.NO_RESPONSE));
+    }
+}
@@ -0,0 +1,44 @@
+package net.socialhub.http;
+
+import org.junit.Test;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+public class HttpMultipartEntityTest {
+
+    @Test
+    public void testContentLength() throws Exception {
+        File file = File.createTempFile("multipart", ".png");
+        file.deleteOnExit();
+        FileOutputStream out = new FileOutputStream(file);
+        out.write(new byte[12345]);
+        out.close();
+
+        HttpMultipartEntity entity = new HttpMultipartEntity(new HttpParameter[]{
+                new HttpParameter("status", "こんにちは"),
+                new HttpParameter("media", file),
+        }, HttpMediaType.TEXT_PLAIN);
+
+        ByteArrayOutputStream body = new ByteArrayOutputStream();
+        entity.writeTo(body);
+        assertEquals(body.size(), entity.getContentLength());
+
+        String text = new String(body.toByteArray(), "ISO-8859-1");
+        assertTrue(text.startsWith("--" + entity.getBoundary() + "\r\n"));
+        assertTrue(text.endsWith("--" + entity.getBoundary() + "--\r\n\r\n"));
+    }
+
+    @Test
+    public void testUnknownLength() throws Exception {
+        HttpMultipartEntity entity = new HttpMultipartEntity(new HttpParameter[]{
+                new HttpParameter("media", "media.jpg", new ByteArrayInputStream(new byte[10])),
+        }, null);
+        assertEquals(-1, entity.getContentLength());
+    }
+}
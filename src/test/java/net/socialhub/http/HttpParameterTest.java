@@ -0,0 +1,42 @@
+package net.socialhub.http;
+
+import org.junit.Test;
+
+import java.nio.charset.StandardCharsets;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertSame;
+
+public class HttpParameterTest {
+
+    @Test
+    public void testEncode() {
+        // http://wiki.oauth.net/TestCases
+        assertEquals("abcABC123", HttpParameter.encode("abcABC123"));
+        assertEquals("-._~", HttpParameter.encode("-._~"));
+        assertEquals("%25", HttpParameter.encode("%"));
+        assertEquals("%2B", HttpParameter.encode("+"));
+        assertEquals("%26%3D%2A", HttpParameter.encode("&=*"));
+        assertEquals("%0A", HttpParameter.encode("\n"));
+        assertEquals("%20", HttpParameter.encode(" "));
+        assertEquals("%7F", HttpParameter.encode("\u007F"));
+        assertEquals("%C2%80", HttpParameter.encode("\u0080"));
+        assertEquals("%E3%80%81", HttpParameter.encode("、"));
+        assertEquals("%F0%9F%98%80", HttpParameter.encode("😀"));
+        assertEquals("%3Fa", HttpParameter.encode("\uD83Da"));
+
+        String safe = "already-safe_value.~";
+        assertSame(safe, HttpParameter.encode(safe));
+    }
+
+    @Test
+    public void testEncodeParameters() {
+        HttpParameter[] params = {new HttpParameter("status", "こんにちは world!"), new HttpParameter("count", 20)};
+        String encoded = "status=%E3%81%93%E3%82%93%E3%81%AB%E3%81%A1%E3%81%AF%20world%21&count=20";
+        assertEquals(encoded, HttpParameter.encodeParameters(params));
+        assertEquals(encoded, new String(HttpParameter.encodeParametersAsBytes(params), StandardCharsets.US_ASCII));
+
+        assertEquals("http://example.com/a?b=c&" + encoded,
+                new HttpRequest(RequestMethod.GET, "http://example.com/a?b=c", params, null).getURL());
+    }
+}
@@ -0,0 +1,226 @@
+package net.socialhub.http;
+
+import org.junit.Test;
+
+import java.io.ByteArrayInputStream;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+public class HttpRateLimitedClientTest {
+
+    private static final String URL = "http://example.com/a";
+
+    private static HttpClientConfiguration conf(final double perSecond, final int burst, final int maxWaitMillis) {
+        return new HttpClientConfiguration.HttpClientDefaultConfiguration() {
+            @Override
+            public double getHttpRateLimitPerSecond() {
+                return perSecond;
+            }
+
+            @Override
+            public int getHttpRateLimitBurst() {
+                return burst;
+            }
+
+            @Override
+            public int getHttpRateLimitMaxWaitMillis() {
+                return maxWaitMillis;
+            }
+        };
+    }
+
+    private static HttpResponse response(final int status, String... headers) {
+        final Map<String, List<String>> map = new LinkedHashMap<>();
+        for (int i = 0; i < headers.length; i += 2) {
+            map.put(headers[i], Collections.singletonList(headers[i + 1]));
+        }
+        return new HttpResponse(new HttpClientConfiguration.HttpClientDefaultConfiguration()) {
+            {
+                this.statusCode = status;
+                this.is = new ByteArrayInputStream(new byte[0]);
+            }
+
+            @Override
+            public String getResponseHeader(String name) {
+                return HttpCacheEntry.getHeader(map, name);
+            }
+
+            @Override
+            public Map<String, List<String>> getResponseHeaderFields() {
+                return map;
+            }
+
+            @Override
+            public void disconnect() {
+            }
+        };
+    }
+
+    /**
+     * Replies with the queued responses, 200 once they are used up, throwing for statuses other than 200.
+     */
+    private static class StubClient implements HttpClient {
+
+        private final ConcurrentLinkedQueue<HttpResponse> responses = new ConcurrentLinkedQueue<>();
+        private final AtomicInteger requests = new AtomicInteger();
+
+        @Override
+        public HttpResponse request(HttpRequest req) throws HttpException {
+            requests.incrementAndGet();
+            HttpResponse res = responses.poll();
+            if (res == null) {
+                return response(200);
+            }
+            if (res.getStatusCode() != HttpResponseCode.OK) {
+                throw new HttpException("status " + res.getStatusCode(), res);
+            }
+            return res;
+        }
+
+        @Override
+        public CompletableFuture<HttpResponse> requestAsync(HttpRequest req) {
+            CompletableFuture<HttpResponse> future = new CompletableFuture<>();
+            try {
+                future.complete(request(req));
+            } catch (HttpException e) {
+                future.completeExceptionally(e);
+            }
+            return future;
+        }
+
+        @Override
+        public void shutdown() {
+        }
+    }
+
+    private static HttpRequest get() {
+        return new HttpRequest(RequestMethod.GET, URL, null, null);
+    }
+
+    @Test
+    public void testFailsFastWithoutWait() throws Exception {
+        StubClient stub = new StubClient();
+        HttpRateLimitedClient client = new HttpRateLimitedClient(conf(1, 1, 0), stub);
+
+        client.request(get());
+        try {
+            client.request(get());
+            fail();
+        } catch (HttpRateLimitException e) {
+            assertEquals("example.com", e.getKey());
+        }
+        assertEquals(1, stub.requests.get());
+    }
+
+    @Test
+    public void testBlocksUntilPermit() throws Exception {
+        StubClient stub = new StubClient();
+        HttpRateLimitedClient client = new HttpRateLimitedClient(conf(10, 1, 1000), stub);
+
+        client.request(get());
+        long start = System.nanoTime();
+        client.request(get());
+        assertTrue(System.nanoTime() - start >= TimeUnit.MILLISECONDS.toNanos(50));
+        assertEquals(2, stub.requests.get());
+    }
+
+    @Test
+    public void testTooManyRequestsPausesForRetryAfter() throws Exception {
+        StubClient stub = new StubClient();
+        stub.responses.add(response(HttpResponseCode.TOO_MANY_REQUESTS, "Retry-After", "5"));
+        HttpRateLimitedClient client = new HttpRateLimitedClient(conf(100, 10, 0), stub);
+
+        try {
+            client.request(get());
+            fail();
+        } catch (HttpException e) {
+            assertEquals(HttpResponseCode.TOO_MANY_REQUESTS, e.getResponse().getStatusCode());
+        }
+        HttpRateLimiter limiter = client.getRateLimiter("example.com");
+        assertEquals(50, limiter.getRate(), 0.01);
+        try {
+            client.request(get());
+            fail();
+        } catch (HttpRateLimitException expected) {
+        }
+        assertEquals(1, stub.requests.get());
+    }
+
+    @Test
+    public void testResetHeaderPauses() throws Exception {
+        StubClient stub = new StubClient();
+        stub.responses.add(response(HttpResponseCode.ENHANCE_YOUR_CLAIM, "X-Rate-Limit-Reset", "5"));
+        stub.responses.add(response(HttpResponseCode.OK, "X-RateLimit-Remaining", "0", "X-RateLimit-Reset", "5"));
+        HttpRateLimitedClient client = new HttpRateLimitedClient(conf(100, 10, 0), stub);
+
+        try {
+            client.request(get());
+            fail();
+        } catch (HttpException e) {
+            assertEquals(HttpResponseCode.ENHANCE_YOUR_CLAIM, e.getResponse().getStatusCode());
+        }
+        assertTrue(client.getRateLimiter("example.com").reserve(TimeUnit.SECONDS.toNanos(10))
+                > TimeUnit.SECONDS.toNanos(4));
+
+        client = new HttpRateLimitedClient(conf(100, 10, 0), stub);
+        client.request(get());
+        try {
+            // the remaining requests are used up until the reset
+            client.request(get());
+            fail();
+        } catch (HttpRateLimitException expected) {
+        }
+        assertEquals(2, stub.requests.get());
+    }
+
+    @Test
+    public void testAsyncWaitsOnTimer() throws Exception {
+        StubClient stub = new StubClient();
+        HttpRateLimitedClient client = new HttpRateLimitedClient(conf(10, 1, 1000), stub);
+        try {
+            assertTrue(client.requestAsync(get()).isDone());
+            long start = System.nanoTime();
+            CompletableFuture<HttpResponse> waiting = client.requestAsync(get());
+            assertFalse(waiting.isDone());
+            assertEquals(1, stub.requests.get());
+
+            assertEquals(200, waiting.get(1, TimeUnit.SECONDS).getStatusCode());
+            assertTrue(System.nanoTime() - start >= TimeUnit.MILLISECONDS.toNanos(50));
+            assertEquals(2, stub.requests.get());
+
+            // cancelled while waiting, never sent
+            CompletableFuture<HttpResponse> cancelled = client.requestAsync(get());
+            assertTrue(cancelled.cancel(false));
+            Thread.sleep(200);
+            assertEquals(2, stub.requests.get());
+        } finally {
+            client.shutdown();
+        }
+    }
+
+    @Test
+    public void testAsyncFailsFastWithoutWait() throws Exception {
+        StubClient stub = new StubClient();
+        HttpRateLimitedClient client = new HttpRateLimitedClient(conf(1, 1, 0), stub);
+
+        client.requestAsync(get()).get();
+        try {
+            client.requestAsync(get()).get();
+            fail();
+        } catch (ExecutionException e) {
+            assertTrue(e.getCause() instanceof HttpRateLimitException);
+        }
+    }
+}
@@ -0,0 +1,39 @@
+package net.socialhub.http;
+
+import org.junit.Test;
+
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+public class HttpRateLimiterTest {
+
+    @Test
+    public void testBurstThenWait() {
+        HttpRateLimiter limiter = new HttpRateLimiter(1, 3);
+        for (int i = 0; i < 3; i++) {
+            assertTrue(limiter.tryAcquire());
+        }
+        assertFalse(limiter.tryAcquire());
+
+        long wait = limiter.reserve(TimeUnit.SECONDS.toNanos(10));
+        assertTrue(wait > TimeUnit.MILLISECONDS.toNanos(900) && wait <= TimeUnit.SECONDS.toNanos(1));
+        assertEquals(-1, limiter.reserve(TimeUnit.MILLISECONDS.toNanos(1500)));
+    }
+
+    @Test
+    public void testRateLimitedSlowsDownAndRecovers() {
+        HttpRateLimiter limiter = new HttpRateLimiter(8, 4);
+        limiter.onRateLimited(TimeUnit.SECONDS.toNanos(5));
+        assertEquals(4, limiter.getRate(), 0.01);
+        assertFalse(limiter.tryAcquire());
+        assertTrue(limiter.reserve(TimeUnit.SECONDS.toNanos(10)) > TimeUnit.SECONDS.toNanos(4));
+
+        for (int i = 0; i < 1000; i++) {
+            limiter.onSuccess();
+        }
+        assertEquals(8, limiter.getRate(), 0.01);
+    }
+}
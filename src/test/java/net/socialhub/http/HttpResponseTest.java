@@ -0,0 +1,126 @@
+package net.socialhub.http;
+
+import org.junit.Test;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.nio.channels.Channels;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.zip.GZIPInputStream;
+import java.util.zip.GZIPOutputStream;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+public class HttpResponseTest {
+
+    private static class StreamResponse extends HttpResponse {
+
+        private final Map<String, String> headers = new HashMap<>();
+        private boolean disconnected = false;
+
+        StreamResponse(InputStream is) {
+            super(new HttpClientConfiguration.HttpClientDefaultConfiguration());
+            this.statusCode = HttpResponseCode.OK;
+            this.is = is;
+        }
+
+        @Override
+        public String getResponseHeader(String name) {
+            return headers.get(name);
+        }
+
+        @Override
+        public Map<String, List<String>> getResponseHeaderFields() {
+            return null;
+        }
+
+        @Override
+        public void disconnect() {
+            disconnected = true;
+        }
+    }
+
+    @Test
+    public void testTransferGzipBody() throws Exception {
+        byte[] data = new byte[300000];
+        for (int i = 0; i < data.length; i++) {
+            data[i] = (byte) (i % 251);
+        }
+        ByteArrayOutputStream zipped = new ByteArrayOutputStream();
+        GZIPOutputStream gzip = new GZIPOutputStream(zipped);
+        gzip.write(data);
+        gzip.close();
+
+        StreamResponse response = new StreamResponse(
+                new GZIPInputStream(new ByteArrayInputStream(zipped.toByteArray())));
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        long written = response.transferTo(Channels.newChannel(out));
+
+        assertEquals(data.length, written);
+        assertArrayEquals(data, out.toByteArray());
+        assertTrue(response.disconnected);
+    }
+
+    @Test
+    public void testAsStringIsByteExact() throws Exception {
+        String body = "{\"text\": \"こんにちは\"}\r\nline\r\n\r\nlast";
+        byte[] bytes = body.getBytes("UTF-8");
+        StreamResponse response = new StreamResponse(new ByteArrayInputStream(bytes));
+        response.headers.put("Content-Length", Integer.toString(bytes.length));
+
+        assertEquals(body, response.asString());
+        assertTrue(response.disconnected);
+    }
+
+    @Test
+    public void testAsStringUsesCharset() throws Exception {
+        String body = "日本語のテキスト";
+        StreamResponse response = new StreamResponse(new ByteArrayInputStream(body.getBytes("Shift_JIS")));
+        response.headers.put("Content-Type", "text/plain; charset=\"Shift_JIS\"");
+        // too small a hint
+        response.headers.put("Content-Length", "3");
+
+        assertEquals(body, response.asString());
+    }
+
+    @Test
+    public void testAsBytes() throws Exception {
+        byte[] data = new byte[20000];
+        for (int i = 0; i < data.length; i++) {
+            data[i] = (byte) (i * 7);
+        }
+        assertArrayEquals(data, new StreamResponse(new ByteArrayInputStream(data)).asBytes());
+    }
+
+    @Test
+    public void testAsPooledByteBuffer() throws Exception {
+        HttpBufferPool pool = new HttpBufferPool(1024, 4, true);
+        byte[] small = "{\"id\": 1}".getBytes("UTF-8");
+
+        HttpPooledBuffer first = new StreamResponse(new ByteArrayInputStream(small)).asByteBuffer(pool);
+        ByteBuffer buffer = first.getBuffer();
+        assertTrue(buffer.isDirect());
+        assertEquals(small.length, buffer.remaining());
+        first.close();
+
+        HttpPooledBuffer second = new StreamResponse(new ByteArrayInputStream(small)).asByteBuffer(pool);
+        assertSame(buffer, second.getBuffer());
+        second.close();
+
+        // larger than the pooled buffers
+        byte[] large = new byte[5000];
+        large[4999] = 1;
+        HttpPooledBuffer third = new StreamResponse(new ByteArrayInputStream(large)).asByteBuffer(pool);
+        byte[] read = new byte[third.getBuffer().remaining()];
+        third.getBuffer().get(read);
+        assertArrayEquals(large, read);
+        third.close();
+    }
+}
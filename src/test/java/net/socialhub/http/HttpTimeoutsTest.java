@@ -0,0 +1,54 @@
+package net.socialhub.http;
+
+import org.junit.Test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+public class HttpTimeoutsTest {
+
+    private static final HttpClientConfiguration CONF = new HttpClientConfiguration.HttpClientDefaultConfiguration() {
+        @Override
+        public int getHttpConnectionTimeout() {
+            return 20000;
+        }
+
+        @Override
+        public int getHttpReadTimeout() {
+            return 120000;
+        }
+    };
+
+    @Test
+    public void testPhaseTimeoutsFallBackToConfiguration() {
+        HttpTimeouts timeouts = HttpTimeouts.DEFAULT.withFirstByteTimeout(500);
+        assertEquals(20000, timeouts.getConnectTimeout(CONF));
+        assertEquals(500, timeouts.getFirstByteTimeout(CONF));
+        assertEquals(120000, timeouts.getIdleTimeout(CONF));
+        assertFalse(timeouts.hasDeadline());
+        assertEquals(Long.MAX_VALUE, timeouts.getRemainingMillis(0));
+    }
+
+    @Test
+    public void testLimitToDeadline() {
+        HttpTimeouts timeouts = HttpTimeouts.DEFAULT.withDeadline(10000);
+        assertTrue(timeouts.hasDeadline());
+        assertEquals(3000, timeouts.limit(20000, 7000));
+        assertEquals(1000, timeouts.limit(1000, 7000));
+        // 0 waits forever, but not past the deadline
+        assertEquals(3000, timeouts.limit(0, 7000));
+        // never 0, which would mean no timeout
+        assertEquals(1, timeouts.limit(20000, 11000));
+        assertEquals(20000, HttpTimeouts.DEFAULT.limit(20000, 11000));
+    }
+
+    @Test
+    public void testTimeoutsAreNotPartOfTheRequestIdentity() {
+        HttpRequest req = new HttpRequest(RequestMethod.GET, "http://example.com/", null, null);
+        HttpRequest limited = req.withTimeouts(HttpTimeouts.DEFAULT.withTimeout(1000));
+        assertEquals(req, limited);
+        assertEquals(req.hashCode(), limited.hashCode());
+        assertTrue(limited.getTimeouts().hasDeadline());
+    }
+}
@@ -0,0 +1,45 @@
+package net.socialhub.http;
+
+import org.junit.Test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+public class HttpTimingsTest {
+
+    @Test
+    public void testAttemptResetsPhasesButKeepsTotals() {
+        HttpTimings timings = new HttpTimings();
+        timings.startAttempt(0);
+        timings.setConnectNanos(100);
+        timings.setTimeToFirstByteNanos(200);
+        timings.addBytesOut(10);
+        timings.addBytesIn(20);
+
+        timings.startAttempt(1);
+        assertEquals(1, timings.getRetryCount());
+        assertEquals(-1, timings.getConnectNanos());
+        assertEquals(-1, timings.getTimeToFirstByteNanos());
+        assertEquals(10, timings.getBytesOut());
+        assertEquals(20, timings.getBytesIn());
+        assertFalse(timings.isBodyRead());
+
+        timings.setBodyReadNanos(0);
+        assertTrue(timings.isBodyRead());
+        timings.finish(200, null);
+        assertTrue(timings.getTotalNanos() >= 0);
+    }
+
+    @Test
+    public void testEventTimingsOfFailure() {
+        HttpRequest req = new HttpRequest(RequestMethod.GET, "http://example.com/", null, null);
+        HttpTimings timings = new HttpTimings();
+        HttpException e = new HttpException("failed", (Exception) null);
+        assertSame(HttpTimings.NONE, new HttpResponseEvent(req, null, e).getTimings());
+
+        e.setTimings(timings);
+        assertSame(timings, new HttpResponseEvent(req, null, e).getTimings());
+    }
+}